@@ -0,0 +1,22 @@
+package alt.collections.concurrent;
+
+/**
+ * Backoff is the wait of the thread between attempts of the failed compare-and-swap
+ * 
+ * Implementations are stateless and shared by threads, see Backoffs.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public interface Backoff {
+	
+	/**
+	 * Waits before the next attempt
+	 * 
+	 * @param attempt number of the failed attempts in the loop, starts from 1
+	 */
+	
+	void backoff(int attempt);
+
+}
@@ -0,0 +1,134 @@
+package alt.collections.concurrent;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+import alt.collections.util.Requires;
+
+/**
+ * Backoff strategies
+ * 
+ * spin        - retries immediately, best for short loops and threads <= cores
+ * yield       - gives the core to another thread
+ * exponential - spins first, after that parks the thread for exponentially growing random time
+ * park        - parks the thread for the fixed time
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class Backoffs {
+	
+	private static final Backoff SPIN = new Backoff() {
+		
+		@Override
+		public void backoff(int attempt) {
+			// no pause hint of the CPU in Java 7
+		}
+		
+		@Override
+		public String toString() {
+			return "spin";
+		}
+	
+	};
+	
+	private static final Backoff YIELD = new Backoff() {
+		
+		@Override
+		public void backoff(int attempt) {
+			Thread.yield();
+		}
+		
+		@Override
+		public String toString() {
+			return "yield";
+		}
+	
+	};
+	
+	private Backoffs() {
+	}
+	
+	public static Backoff spin() {
+		return SPIN;
+	}
+	
+	public static Backoff yield() {
+		return YIELD;
+	}
+	
+	/**
+	 * Exponential backoff with the random jitter
+	 * 
+	 * @param spins number of attempts that retry immediately
+	 * @param minNanos park time of the first parked attempt
+	 * @param maxNanos max park time
+	 * @return
+	 */
+	
+	public static Backoff exponential(int spins, long minNanos, long maxNanos) {
+		Requires.positive(spins, "spins");
+		Requires.positive(minNanos, "minNanos");
+		Requires.greaterOrEquals(maxNanos, minNanos, "maxNanos");
+		return new ExponentialBackoff(spins, minNanos, maxNanos);
+	}
+	
+	public static Backoff park(long nanos) {
+		Requires.positive(nanos, "nanos");
+		return new ParkBackoff(nanos);
+	}
+	
+	private static final class ExponentialBackoff implements Backoff {
+		
+		private final int spins;
+		private final long minNanos;
+		private final long maxNanos;
+		
+		ExponentialBackoff(int spins, long minNanos, long maxNanos) {
+			this.spins = spins;
+			this.minNanos = minNanos;
+			this.maxNanos = maxNanos;
+		}
+		
+		@Override
+		public void backoff(int attempt) {
+			if (attempt <= spins) {
+				return;
+			}
+			long nanos = minNanos;
+			for (int i = spins + 1; i < attempt && nanos < maxNanos; ++i) {
+				nanos <<= 1;
+			}
+			nanos = Math.min(nanos, maxNanos);
+			LockSupport.parkNanos(nanos / 2 + ThreadLocalRandom.current().nextLong(nanos / 2 + 1));
+		}
+		
+		@Override
+		public String toString() {
+			return "exponential(" + spins + ", " + minNanos + ", " + maxNanos + ")";
+		}
+	
+	}
+	
+	private static final class ParkBackoff implements Backoff {
+		
+		private final long nanos;
+		
+		ParkBackoff(long nanos) {
+			this.nanos = nanos;
+		}
+		
+		@Override
+		public void backoff(int attempt) {
+			LockSupport.parkNanos(nanos);
+		}
+		
+		@Override
+		public String toString() {
+			return "park(" + nanos + ")";
+		}
+	
+	}
+
+}
@@ -0,0 +1,117 @@
+package alt.collections.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import alt.collections.util.Requires;
+
+/**
+ * Contention keeps the backoff strategy of the store and counts retries of CAS loops by sites
+ * 
+ * Counters are updated only on the failed attempt. Counters are striped by threads and summed on read,
+ * stripes are placed in different cache lines, that is why counters do not add the contention to the loops.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class Contention {
+	
+	/**
+	 * Contention for the code that is not bound to the store
+	 */
+	
+	public static final Contention SHARED = new Contention(Backoffs.spin());
+	
+	private static final int PADDING = 8;
+	private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+	
+	public enum Site {
+		
+		STORE_TAIL,
+		PAGE_HEAP,
+		CRITICAL_SECTION,
+		WRITER_GATE,
+		EPOCH_GATE,
+		LEAF_LINK,
+		LEAF_VALUE,
+		INNER_LINK,
+		FROZEN_PAGE,
+		SPLIT,
+		TREE_ROOT,
+		NAMED_TREE,
+		LONG_UPDATER,
+		SHARED_LOCK,
+		EXCLUSIVE_LOCK,
+		NODE_VERSION;
+	
+	}
+	
+	private static final int SITES = Site.values().length;
+	
+	/**
+	 * Sites of the stripe are in adjacent cells, padding separates stripes
+	 */
+	
+	private static final int STRIPE_SIZE = (SITES + PADDING - 1) / PADDING * PADDING + PADDING;
+	
+	private final Backoff backoff;
+	private final AtomicLongArray retries = new AtomicLongArray(STRIPES * STRIPE_SIZE);
+	
+	public Contention(Backoff backoff) {
+		Requires.nonNull(backoff, "backoff");
+		this.backoff = backoff;
+	}
+	
+	public Backoff getBackoff() {
+		return backoff;
+	}
+	
+	/**
+	 * Counts the failed attempt and waits before the next one
+	 * 
+	 * @param site
+	 * @param attempt number of the failed attempts in the loop, starts from 1
+	 */
+	
+	public void retry(Site site, int attempt) {
+		int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+		retries.incrementAndGet(stripe * STRIPE_SIZE + site.ordinal());
+		backoff.backoff(attempt);
+	}
+	
+	public long getRetries(Site site) {
+		long sum = 0;
+		for (int stripe = 0; stripe != STRIPES; ++stripe) {
+			sum += retries.get(stripe * STRIPE_SIZE + site.ordinal());
+		}
+		return sum;
+	}
+	
+	public void reset() {
+		for (int i = 0; i != retries.length(); ++i) {
+			retries.set(i, 0);
+		}
+	}
+	
+	/**
+	 * Power of two that is not less than twice the number of processors
+	 */
+	
+	private static int stripes(int processors) {
+		int stripes = 1;
+		while(stripes < processors * 2) {
+			stripes <<= 1;
+		}
+		return stripes;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder("Contention [backoff=").append(backoff);
+		for (Site site : Site.values()) {
+			str.append(", ").append(site).append('=').append(getRetries(site));
+		}
+		return str.append(']').toString();
+	}
+
+}
@@ -1,7 +1,6 @@
 package alt.collections.concurrent;
 
-import alt.collections.util.JniThreadUtil;
-import alt.collections.util.ThreadUtil;
+import alt.collections.concurrent.Contention.Site;
 
 /**
  * Simple algorithm to work in critical sections
@@ -14,14 +13,21 @@ public class CriticalSection {
 	
 	private final IntegerCas integerCas;
 	private final int defaultValue;
+	private final Contention contention;
 
 	public CriticalSection(IntegerCas integerCas, int defaultValue) {
+		this(integerCas, defaultValue, Contention.SHARED);
+	}
+	
+	public CriticalSection(IntegerCas integerCas, int defaultValue, Contention contention) {
 		this.integerCas = integerCas;
 		this.defaultValue = defaultValue;
+		this.contention = contention;
 	}
 	
 	public <T> T execute(Callback<T> cb) {
 		
+		int attempt = 0;
 		while(true) {
 		
 			if (integerCas.casInt(defaultValue, defaultValue + 1)) {
@@ -30,16 +36,24 @@ public class CriticalSection {
 					return cb.doInCriticalSection();
 				}
 				finally {
-					integerCas.putInt(defaultValue);
+					integerCas.putIntVolatile(defaultValue);
 				}
 			}
 			
-			ThreadUtil.loopSleep();
+			contention.retry(Site.CRITICAL_SECTION, ++attempt);
 		
 		}
 		
 	}
 	
+	/**
+	 * Leaves the section that could be left entered by the dead owner, no thread must be in the section
+	 */
+	
+	public void reset() {
+		integerCas.putIntVolatile(defaultValue);
+	}
+	
 	public interface Callback<T> {
 		
 		T doInCriticalSection();
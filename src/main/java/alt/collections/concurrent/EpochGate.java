@@ -0,0 +1,159 @@
+package alt.collections.concurrent;
+
+import alt.collections.concurrent.Contention.Site;
+
+/**
+ * Epoch Gate counts readers by epochs and allows to find the moment
+ * when retired memory is not visible for any reader.
+ * 
+ * [epoch:int], readers: [readers:int * EPOCHS] * STRIPES, every stripe in the own cache line
+ * 
+ * Reader enters the current epoch before the access to the pages and exits it after.
+ * Epoch can be advanced only if there are no readers in the previous epoch,
+ * that is why memory retired in the epoch e is not reachable after the epoch e + 2.
+ * 
+ * Readers count themselves in the stripe selected by the thread, like in SharedExclusiveLock,
+ * so readers of different stripes never touch the same cache line. Reader must exit in the thread that entered.
+ * 
+ * Epochs are cycled in range [0, EPOCHS), only one thread can advance the epoch at a time.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class EpochGate {
+	
+	public static final int EPOCHS = 3;
+	public static final int STRIPES = 8;
+	public static final int CACHE_LINE = 64;
+	public static final int SIZE = CACHE_LINE * STRIPES;
+	
+	private final IntegerCas epoch;
+	private final IntegerCas[][] readers;
+	private final Contention contention;
+	
+	public EpochGate(IntegerCas epoch, long readersAddress) {
+		this(epoch, readersAddress, Contention.SHARED);
+	}
+	
+	/**
+	 * Creates the gate
+	 * 
+	 * @param epoch
+	 * @param readersAddress of SIZE bytes
+	 * @param contention
+	 */
+	
+	public EpochGate(IntegerCas epoch, long readersAddress, Contention contention) {
+		this.epoch = epoch;
+		this.readers = new IntegerCas[STRIPES][EPOCHS];
+		for (int i = 0; i != STRIPES; ++i) {
+			for (int e = 0; e != EPOCHS; ++e) {
+				readers[i][e] = new IntegerCas(readersAddress, CACHE_LINE * i + 4 * e);
+			}
+		}
+		this.contention = contention;
+	}
+	
+	/**
+	 * Enters the current epoch
+	 * 
+	 * @return epoch that must be used to exit
+	 */
+	
+	public int enter() {
+		IntegerCas[] stripe = readers[stripe()];
+		while(true) {
+			int e = epoch.getIntVolatile();
+			increment(stripe[e]);
+			if (epoch.getIntVolatile() == e) {
+				return e;
+			}
+			// epoch was advanced, reader must not be counted in the old one
+			decrement(stripe[e]);
+		}
+	}
+	
+	public void exit(int e) {
+		decrement(readers[stripe()][e]);
+	}
+	
+	/**
+	 * Clears counters of readers that could be left by the dead process, no reader must be in the gate
+	 */
+	
+	public void reset() {
+		for (IntegerCas[] stripe : readers) {
+			for (IntegerCas counter : stripe) {
+				counter.putIntVolatile(0);
+			}
+		}
+	}
+	
+	public int getEpoch() {
+		return epoch.getIntVolatile();
+	}
+	
+	/**
+	 * Checks readers of the previous epoch
+	 * 
+	 * @param e current epoch
+	 * @return true if the epoch can be advanced
+	 */
+	
+	public boolean isQuiescent(int e) {
+		int p = previous(e);
+		for (int i = 0; i != STRIPES; ++i) {
+			if (readers[i][p].getIntVolatile() != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Advances the epoch, must be called by single thread after isQuiescent
+	 * 
+	 * @param e current epoch
+	 * @return false if the epoch was changed
+	 */
+	
+	public boolean advance(int e) {
+		return epoch.casInt(e, next(e));
+	}
+	
+	public static int next(int e) {
+		return (e + 1) % EPOCHS;
+	}
+	
+	public static int previous(int e) {
+		return (e + EPOCHS - 1) % EPOCHS;
+	}
+	
+	private static int stripe() {
+		return (int) (Thread.currentThread().getId() % STRIPES);
+	}
+	
+	private void increment(IntegerCas counter) {
+		int attempt = 0;
+		while(true) {
+			int value = counter.getInt();
+			if (counter.casInt(value, value + 1)) {
+				return;
+			}
+			contention.retry(Site.EPOCH_GATE, ++attempt);
+		}
+	}
+	
+	private void decrement(IntegerCas counter) {
+		int attempt = 0;
+		while(true) {
+			int value = counter.getInt();
+			if (counter.casInt(value, value - 1)) {
+				return;
+			}
+			contention.retry(Site.EPOCH_GATE, ++attempt);
+		}
+	}
+
+}
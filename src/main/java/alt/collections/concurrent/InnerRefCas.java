@@ -1,6 +1,7 @@
 package alt.collections.concurrent;
 
 import alt.collections.paging.InnerRef;
+import alt.collections.paging.Paging;
 
 /**
  * Atomic Operations under the InnerRef
@@ -14,11 +15,21 @@ public class InnerRefCas {
 	private final long address;
 	private final int ref;
 	private final InnerRef innerRef;
+	private final Paging paging;
 
 	public InnerRefCas(long address, int ref, InnerRef innerRef) {
+		this(address, ref, innerRef, null);
+	}
+	
+	/**
+	 * Atomic operations in the page of the paging, changes are marked for the flusher
+	 */
+	
+	public InnerRefCas(long address, int ref, InnerRef innerRef, Paging paging) {
 		this.address = address;
 		this.ref = ref;
 		this.innerRef = innerRef;
+		this.paging = paging;
 	}
 	
 	public int getInnerRef() {
@@ -27,11 +38,21 @@ public class InnerRefCas {
 
 	public void putInnerRef(int value) {
 		this.innerRef.writeInnerRef(address + ref, value);
+		markChanged();
 	}
 	
 	public boolean casInnerRef(int oldValue, int newValue) {
-		return innerRef.casInnerRef(address + ref, oldValue, newValue);
+		if (innerRef.casInnerRef(address + ref, oldValue, newValue)) {
+			markChanged();
+			return true;
+		}
+		return false;
 	}
 	
+	private void markChanged() {
+		if (paging != null) {
+			paging.markChanged(address);
+		}
+	}
 	
 }
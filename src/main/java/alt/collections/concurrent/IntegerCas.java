@@ -1,5 +1,6 @@
 package alt.collections.concurrent;
 
+import alt.collections.paging.Paging;
 import alt.collections.util.BigEndian;
 import alt.collections.util.Unsafe;
 
@@ -14,10 +15,20 @@ public class IntegerCas {
 
 	private final long address;
 	private final int ref;
+	private final Paging paging;
 	
 	public IntegerCas(long address, int ref) {
+		this(address, ref, null);
+	}
+	
+	/**
+	 * Atomic operations in the page of the paging, changes are marked for the flusher
+	 */
+	
+	public IntegerCas(long address, int ref, Paging paging) {
 		this.address = address;
 		this.ref = ref;
+		this.paging = paging;
 	}
 
 	public int getInt() {
@@ -25,12 +36,33 @@ public class IntegerCas {
 		return BigEndian.ioInt(value);
 	}
 	
+	public int getIntVolatile() {
+		int value = Unsafe.INSTANCE.getIntVolatile(null, address + ref);
+		return BigEndian.ioInt(value);
+	}
+	
 	public void putInt(int value) {
 		Unsafe.INSTANCE.putInt(address + ref, BigEndian.ioInt(value));
+		markChanged();
+	}
+	
+	public void putIntVolatile(int value) {
+		Unsafe.INSTANCE.putIntVolatile(null, address + ref, BigEndian.ioInt(value));
+		markChanged();
 	}
 	
 	public boolean casInt(int oldValue, int newValue) {
-		return Unsafe.INSTANCE.compareAndSwapInt(null, address + ref,  BigEndian.ioInt(oldValue), BigEndian.ioInt(newValue));
+		if (Unsafe.INSTANCE.compareAndSwapInt(null, address + ref,  BigEndian.ioInt(oldValue), BigEndian.ioInt(newValue))) {
+			markChanged();
+			return true;
+		}
+		return false;
+	}
+	
+	private void markChanged() {
+		if (paging != null) {
+			paging.markChanged(address);
+		}
 	}
 	
 }
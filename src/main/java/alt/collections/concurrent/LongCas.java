@@ -1,5 +1,6 @@
 package alt.collections.concurrent;
 
+import alt.collections.paging.Paging;
 import alt.collections.util.BigEndian;
 import alt.collections.util.Unsafe;
 
@@ -14,10 +15,20 @@ public class LongCas {
 
 	private final long address;
 	private final int ref;
+	private final Paging paging;
 	
 	public LongCas(long address, int ref) {
+		this(address, ref, null);
+	}
+	
+	/**
+	 * Atomic operations in the page of the paging, changes are marked for the flusher
+	 */
+	
+	public LongCas(long address, int ref, Paging paging) {
 		this.address = address;
 		this.ref = ref;
+		this.paging = paging;
 	}
 
 	public long getLong() {
@@ -27,10 +38,21 @@ public class LongCas {
 	
 	public void putLong(long value) {
 		Unsafe.INSTANCE.putLong(address + ref, BigEndian.ioLong(value));
+		markChanged();
 	}
 	
 	public boolean casLong(long oldValue, long newValue) {
-		return Unsafe.INSTANCE.compareAndSwapLong(null, address + ref,  BigEndian.ioLong(oldValue), BigEndian.ioLong(newValue));
+		if (Unsafe.INSTANCE.compareAndSwapLong(null, address + ref,  BigEndian.ioLong(oldValue), BigEndian.ioLong(newValue))) {
+			markChanged();
+			return true;
+		}
+		return false;
+	}
+	
+	private void markChanged() {
+		if (paging != null) {
+			paging.markChanged(address);
+		}
 	}
 	
 }
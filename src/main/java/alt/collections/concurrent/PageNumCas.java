@@ -1,6 +1,7 @@
 package alt.collections.concurrent;
 
 import alt.collections.paging.PageNum;
+import alt.collections.paging.Paging;
 
 /**
  * Atomic Operations under the PageNum
@@ -14,11 +15,21 @@ public class PageNumCas {
 	private final long address;
 	private final int ref;
 	private final PageNum pageNum;
+	private final Paging paging;
 
 	public PageNumCas(long address, int ref, PageNum pageNum) {
+		this(address, ref, pageNum, null);
+	}
+	
+	/**
+	 * Atomic operations in the page of the paging, changes are marked for the flusher
+	 */
+	
+	public PageNumCas(long address, int ref, PageNum pageNum, Paging paging) {
 		this.address = address;
 		this.ref = ref;
 		this.pageNum = pageNum;
+		this.paging = paging;
 	}
 	
 	public long getPageNum() {
@@ -27,10 +38,21 @@ public class PageNumCas {
 
 	public void putPageNum(long page) {
 		this.pageNum.writePageNum(address + ref, page);
+		markChanged();
 	}
 	
 	public boolean casPageNum(long oldPageNum, long newPageNum) {
-		return pageNum.casPageNum(address + ref, oldPageNum, newPageNum);
+		if (pageNum.casPageNum(address + ref, oldPageNum, newPageNum)) {
+			markChanged();
+			return true;
+		}
+		return false;
+	}
+	
+	private void markChanged() {
+		if (paging != null) {
+			paging.markChanged(address);
+		}
 	}
 	
 }
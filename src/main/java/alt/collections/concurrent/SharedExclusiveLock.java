@@ -0,0 +1,172 @@
+package alt.collections.concurrent;
+
+import alt.collections.concurrent.Contention.Site;
+import alt.collections.concurrent.CriticalSection.Callback;
+
+/**
+ * Shared Exclusive Lock is the reader-writer lock placed in the memory of the store
+ * 
+ * [writer:int], [readers:int * STRIPES], every word in the own cache line
+ * 
+ * Lock keeps all state off-heap, that is why it works between processes that map the same file.
+ * Readers count themselves in the stripe selected by the thread, readers of different stripes never touch the same word.
+ * 
+ * Lock favours readers: writer announces itself by PENDING, waits until all stripes are empty
+ * and takes the lock by LOCKED. Readers pass through PENDING and wait only for LOCKED,
+ * that is why continuous readers can delay the writer.
+ * 
+ * Reader increments the stripe before the check of the writer word, writer sets LOCKED before the check of stripes,
+ * so the reader sees LOCKED or the writer sees the reader.
+ * 
+ * Lock is not reentrant, the lock held by the crashed process is never released.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class SharedExclusiveLock {
+	
+	public static final int STRIPES = 8;
+	public static final int CACHE_LINE = 64;
+	public static final int SIZE = CACHE_LINE * (STRIPES + 1);
+	
+	public static final int FREE = 0;
+	public static final int PENDING = 1;
+	public static final int LOCKED = 2;
+	
+	private final IntegerCas writer;
+	private final IntegerCas[] readers;
+	private final Contention contention;
+	
+	/**
+	 * Creates the lock on the zeroed memory
+	 * 
+	 * @param address of SIZE bytes
+	 * @param contention
+	 */
+	
+	public SharedExclusiveLock(long address, Contention contention) {
+		this.writer = new IntegerCas(address, 0);
+		this.readers = new IntegerCas[STRIPES];
+		for (int i = 0; i != STRIPES; ++i) {
+			readers[i] = new IntegerCas(address, CACHE_LINE * (i + 1));
+		}
+		this.contention = contention;
+	}
+	
+	/**
+	 * Takes the lock shared
+	 * 
+	 * @return stripe that must be used to unlock
+	 */
+	
+	public int lockShared() {
+		
+		int index = stripe();
+		IntegerCas stripe = readers[index];
+		
+		int attempt = 0;
+		while(true) {
+			increment(stripe);
+			if (writer.getIntVolatile() != LOCKED) {
+				return index;
+			}
+			decrement(stripe);
+			
+			while(writer.getIntVolatile() == LOCKED) {
+				contention.retry(Site.SHARED_LOCK, ++attempt);
+			}
+		}
+	}
+	
+	public void unlockShared(int stripe) {
+		decrement(readers[stripe]);
+	}
+	
+	public void lockExclusive() {
+		
+		int attempt = 0;
+		while(!writer.casInt(FREE, PENDING)) {
+			contention.retry(Site.EXCLUSIVE_LOCK, ++attempt);
+		}
+		
+		while(true) {
+			
+			while(hasReaders()) {
+				contention.retry(Site.EXCLUSIVE_LOCK, ++attempt);
+			}
+			
+			writer.putIntVolatile(LOCKED);
+			if (!hasReaders()) {
+				return;
+			}
+			
+			// reader entered between the check and the lock
+			writer.putIntVolatile(PENDING);
+		}
+	}
+	
+	public void unlockExclusive() {
+		writer.putIntVolatile(FREE);
+	}
+	
+	public <T> T executeShared(Callback<T> cb) {
+		int stripe = lockShared();
+		try {
+			return cb.doInCriticalSection();
+		}
+		finally {
+			unlockShared(stripe);
+		}
+	}
+	
+	public <T> T executeExclusive(Callback<T> cb) {
+		lockExclusive();
+		try {
+			return cb.doInCriticalSection();
+		}
+		finally {
+			unlockExclusive();
+		}
+	}
+	
+	public boolean isLockedExclusive() {
+		return writer.getIntVolatile() == LOCKED;
+	}
+	
+	private boolean hasReaders() {
+		for (int i = 0; i != STRIPES; ++i) {
+			if (readers[i].getIntVolatile() != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static int stripe() {
+		return (int) (Thread.currentThread().getId() % STRIPES);
+	}
+	
+	private void increment(IntegerCas counter) {
+		int attempt = 0;
+		while(true) {
+			int value = counter.getInt();
+			if (counter.casInt(value, value + 1)) {
+				return;
+			}
+			contention.retry(Site.SHARED_LOCK, ++attempt);
+		}
+	}
+	
+	private void decrement(IntegerCas counter) {
+		int attempt = 0;
+		while(true) {
+			int value = counter.getInt();
+			if (counter.casInt(value, value - 1)) {
+				return;
+			}
+			contention.retry(Site.SHARED_LOCK, ++attempt);
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package alt.collections.concurrent;
+
+import alt.collections.concurrent.Contention.Site;
+
+/**
+ * Writer Gate counts writers that are working inside the page
+ * and allows to freeze the page for structural changes.
+ * 
+ * Readers never touch the gate.
+ * Writers enter the gate, do lock-free modifications and exit the gate.
+ * Freeze is one-shot operation, after it no writers can enter the gate,
+ * freeze waits for writers that already entered the gate.
+ * 
+ * [frozen:bit31], [writers:bits0-30]
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class WriterGate {
+	
+	public static final int FROZEN = 0x80000000;
+	public static final int WRITERS = 0x7FFFFFFF;
+	
+	private final IntegerCas integerCas;
+	private final Contention contention;
+	
+	public WriterGate(IntegerCas integerCas) {
+		this(integerCas, Contention.SHARED);
+	}
+	
+	public WriterGate(IntegerCas integerCas, Contention contention) {
+		this.integerCas = integerCas;
+		this.contention = contention;
+	}
+	
+	/**
+	 * Enters the gate
+	 * 
+	 * @return false if the gate is frozen
+	 */
+	
+	public boolean enter() {
+		int attempt = 0;
+		while(true) {
+			int value = integerCas.getInt();
+			if ((value & FROZEN) != 0) {
+				return false;
+			}
+			if (integerCas.casInt(value, value + 1)) {
+				return true;
+			}
+			contention.retry(Site.WRITER_GATE, ++attempt);
+		}
+	}
+	
+	public void exit() {
+		int attempt = 0;
+		while(true) {
+			int value = integerCas.getInt();
+			if (integerCas.casInt(value, value - 1)) {
+				return;
+			}
+			contention.retry(Site.WRITER_GATE, ++attempt);
+		}
+	}
+	
+	/**
+	 * Freezes the gate and waits for all writers
+	 * 
+	 * @return false if the gate was frozen by somebody else
+	 */
+	
+	public boolean freeze() {
+		int attempt = 0;
+		while(true) {
+			int value = integerCas.getInt();
+			if ((value & FROZEN) != 0) {
+				return false;
+			}
+			if (integerCas.casInt(value, value | FROZEN)) {
+				break;
+			}
+			contention.retry(Site.WRITER_GATE, ++attempt);
+		}
+		
+		attempt = 0;
+		while((integerCas.getIntVolatile() & WRITERS) != 0) {
+			contention.retry(Site.WRITER_GATE, ++attempt);
+		}
+		
+		return true;
+	}
+	
+	public boolean isFrozen() {
+		return (integerCas.getIntVolatile() & FROZEN) != 0;
+	}
+
+}
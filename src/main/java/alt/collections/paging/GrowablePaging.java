@@ -0,0 +1,32 @@
+package alt.collections.paging;
+
+/**
+ * Growable Paging adds pages to the store at runtime
+ * 
+ * Pages of the store never move, readers keep using addresses of existing pages during the growth.
+ * New capacity is visible by getTotalPages after the growth.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public interface GrowablePaging extends Paging {
+	
+	/**
+	 * Adds pages to the store
+	 * 
+	 * @param minTotalPages required number of pages
+	 * @return false if the store can not grow
+	 */
+	
+	boolean grow(long minTotalPages);
+	
+	/**
+	 * Number of pages added by one step of the growth
+	 * 
+	 * @return 0 if the store can not grow
+	 */
+	
+	long getGrowthPages();
+
+}
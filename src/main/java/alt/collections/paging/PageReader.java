@@ -57,6 +57,13 @@ public final class PageReader extends PageStream {
     	return BigEndian.ioInt(value);
     }
 
+    public int readIntVolatile() {
+    	ensureCanGrow(4);
+    	int value = Unsafe.INSTANCE.getIntVolatile(null, address + position);
+    	position += 4;
+    	return BigEndian.ioInt(value);
+    }
+    
     public long readLong() {
     	ensureCanGrow(8);
     	long value = Unsafe.INSTANCE.getLong(address + position);
@@ -196,14 +203,14 @@ public final class PageReader extends PageStream {
 	
 	public IntegerCas readIntegerCas() {
     	ensureCanGrow(4);
-    	IntegerCas result = new IntegerCas(address, position);
+    	IntegerCas result = new IntegerCas(address, position, paging);
     	position += 4;
     	return result;
 	}
 	
 	public LongCas readLongCas() {
     	ensureCanGrow(8);
-    	LongCas result = new LongCas(address, position);
+    	LongCas result = new LongCas(address, position, paging);
     	position += 8;
     	return result;
 	}
@@ -211,7 +218,7 @@ public final class PageReader extends PageStream {
 	public InnerRefCas readInnerRefCas() {
 		InnerRef innerRef = paging.getInnerRef();
     	ensureCanGrow(innerRef.size());
-    	InnerRefCas result = new InnerRefCas(address, position, innerRef);
+    	InnerRefCas result = new InnerRefCas(address, position, innerRef, paging);
     	position += innerRef.size();
     	return result;
 	}
@@ -219,11 +226,50 @@ public final class PageReader extends PageStream {
 	public PageNumCas readPageNumCas() {
 		PageNum pageNum = paging.getPageNum();
     	ensureCanGrow(pageNum.size());
-    	PageNumCas result = new PageNumCas(address, position, pageNum);
+    	PageNumCas result = new PageNumCas(address, position, pageNum, paging);
     	position += pageNum.size();
     	return result;
 	}
 	
+	/**
+	 * Compares stored bytes with the buffer as unsigned bytes, reads by 8 bytes
+	 * 
+	 * @param length of the stored bytes
+	 * @param buffer
+	 * @param bufferLength
+	 * @return
+	 */
+	
+	public int compareToBytes(int length, byte[] buffer, int bufferLength) {
+		ensureCanGrow(length);
+		
+		long from = address + position;
+		position += length;
+		
+		int n = Math.min(length, bufferLength);
+		int i = 0;
+		for (; i + 8 <= n; i += 8) {
+			long w1 = Unsafe.INSTANCE.getLong(from + i);
+			long w2 = Unsafe.INSTANCE.getLong(buffer, Unsafe.BYTEARRAY_BASEOFFSET + i);
+			if (w1 != w2) {
+				// the first byte in memory must be the most significant
+				if (!BigEndian.isBigEndian()) {
+					w1 = Long.reverseBytes(w1);
+					w2 = Long.reverseBytes(w2);
+				}
+				return w1 + Long.MIN_VALUE < w2 + Long.MIN_VALUE ? -1 : 1;
+			}
+		}
+		for (; i != n; ++i) {
+			int b1 = Unsafe.INSTANCE.getByte(from + i) & 0xFF;
+			int b2 = buffer[i] & 0xFF;
+			if (b1 != b2) {
+				return b1 - b2;
+			}
+		}
+		return length - bufferLength;
+	}
+	
 	public int compareToString(String str) {
 		int len1 = (int) readVLong();
 		int len2 = str.length();
@@ -11,6 +11,8 @@ import alt.collections.util.Unsafe;
 /**
  * Common Page Writer for all algorithms
  * 
+ * Writer marks the page as changed when it is switched to the page, see Paging.markChanged
+ * 
  * @author Albert Shift
  *
  */
@@ -23,10 +25,26 @@ public final class PageWriter extends PageStream {
     
     public PageWriter(Paging paging, long pageNum) {
     	super(paging, pageNum);
+    	paging.markChanged(address);
     }
 
     public PageWriter(PageStream pageStream) {
     	super(pageStream);
+    	if (address != 0) {
+    		paging.markChanged(address);
+    	}
+    }
+    
+    @Override
+    public void switchAddress(long address) {
+    	super.switchAddress(address);
+    	paging.markChanged(address);
+    }
+    
+    @Override
+    public void switchAddress(long address, int position) {
+    	super.switchAddress(address, position);
+    	paging.markChanged(address);
     }
   
     public void writeByte(byte value) {
@@ -114,9 +132,6 @@ public final class PageWriter extends PageStream {
 			writeByte((byte)(0xC0 | ch >> 6 & 0x1F));
 			writeByte((byte)(0x80 | ch & 0x3F));
 		}
-		else if (ch >= 0xd800 && ch <= 0xdfff) {
-			writeByte((byte) 0x3F);
-		}
 		else {
 			writeByte((byte)(0xE0 | ch >> 12 & 0x0F));;
 			writeByte((byte)(0x80 | ch >> 6 & 0x3F));
@@ -135,9 +150,6 @@ public final class PageWriter extends PageStream {
 		else if (ch <= 0x07FF) {
 			return 2;
 		}
-		else if (ch >= 0xd800 && ch <= 0xdfff) {
-			return 1;
-		}
 		else {
 			return 3;
 		}
@@ -187,9 +199,44 @@ public final class PageWriter extends PageStream {
 		ensureCanGrow(lenSize + length);
 		writeVLong(length);
 		Unsafe.INSTANCE.copyMemory(bytes, Unsafe.BYTEARRAY_BASEOFFSET + offset * Unsafe.BYTEARRAY_INDEXSCALE, null, address + position, length);
-		position += bytes.length;
+		position += length;
 	}
-    
+	
+	/**
+	 * Writes raw bytes without length
+	 * 
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 */
+	
+	public void writeBytesFrom(byte[] buffer, int offset, int length) {
+		Requires.nonNull(buffer, "buffer");
+		Requires.positive(offset, "offset");
+		Requires.positive(length, "length");
+		
+		ensureCanGrow(length);
+		Unsafe.INSTANCE.copyMemory(buffer, Unsafe.BYTEARRAY_BASEOFFSET + offset * Unsafe.BYTEARRAY_INDEXSCALE, null, address + position, length);
+		position += length;
+	}
+	
+	/**
+	 * Copies raw bytes from the current position of the reader, moves both streams
+	 * 
+	 * @param reader
+	 * @param length
+	 */
+	
+	public void copyBytes(PageReader reader, int length) {
+		Requires.nonNull(reader, "reader");
+		Requires.positive(length, "length");
+		
+		ensureCanGrow(length);
+		int from = reader.getPositionAndSkip(length);
+		Unsafe.INSTANCE.copyMemory(reader.getAddress() + from, address + position, length);
+		position += length;
+	}
+	
 	public void writeInnerRef(int ref) {
 		InnerRef innerRef = paging.getInnerRef();
 		ensureCanGrow(innerRef.size());
@@ -206,14 +253,14 @@ public final class PageWriter extends PageStream {
 
 	public IntegerCas writeIntegerCas() {
     	ensureCanGrow(4);
-    	IntegerCas result = new IntegerCas(address, position);
+    	IntegerCas result = new IntegerCas(address, position, paging);
     	position += 4;
     	return result;
 	}
 	
 	public LongCas writeLongCas() {
     	ensureCanGrow(8);
-    	LongCas result = new LongCas(address, position);
+    	LongCas result = new LongCas(address, position, paging);
     	position += 8;
     	return result;
 	}
@@ -221,7 +268,7 @@ public final class PageWriter extends PageStream {
 	public InnerRefCas writeInnerRefCas() {
 		InnerRef innerRef = paging.getInnerRef();
     	ensureCanGrow(innerRef.size());
-    	InnerRefCas result = new InnerRefCas(address, position, innerRef);
+    	InnerRefCas result = new InnerRefCas(address, position, innerRef, paging);
     	position += innerRef.size();
     	return result;
 	}
@@ -229,7 +276,7 @@ public final class PageWriter extends PageStream {
 	public PageNumCas writePageNumCas() {
 		PageNum pageNum = paging.getPageNum();
     	ensureCanGrow(pageNum.size());
-    	PageNumCas result = new PageNumCas(address, position, pageNum);
+    	PageNumCas result = new PageNumCas(address, position, pageNum, paging);
     	position += pageNum.size();
     	return result;
 	}
@@ -1,5 +1,6 @@
 package alt.collections.paging;
 
+import alt.collections.concurrent.Contention;
 import alt.collections.util.PageSize;
 
 /**
@@ -29,4 +30,20 @@ public interface Paging {
 	
 	int getPageSize();
 	
+	/**
+	 * Marks the page of the address as changed, the file store writes it by the background flusher
+	 * 
+	 * @param address in the page
+	 */
+	
+	void markChanged(long address);
+	
+	/**
+	 * Backoff and retry counters of CAS loops that work with pages of the store
+	 * 
+	 * @return
+	 */
+	
+	Contention getContention();
+
 }
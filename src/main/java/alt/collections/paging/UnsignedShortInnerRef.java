@@ -24,9 +24,45 @@ public class UnsignedShortInnerRef implements InnerRef {
 		Unsafe.INSTANCE.putChar(address, BigEndian.ioChar((char) ref));
 	}
 
+	/**
+	 * CAS is working with the aligned int that contains the inner ref,
+	 * unaligned CAS that crosses the cache line is very expensive (split lock)
+	 */
+	
 	@Override
 	public boolean casInnerRef(long address, int oldRef, int newRef) {
 
+		long alignedAddress = address & ~3L;
+		int offset = (int) (address - alignedAddress);
+		
+		if (offset == 3) {
+			return casUnalignedInnerRef(address, oldRef, newRef);
+		}
+		
+		int shift = BigEndian.isBigEndian() ? (2 - offset) * 8 : offset * 8;
+		long mask = 0xffffL << shift;
+		long rawOld = ((long) BigEndian.ioChar((char) oldRef)) << shift;
+		long rawNew = ((long) BigEndian.ioChar((char) newRef)) << shift;
+		
+		while(true) {
+			
+			long value = UnsignedInt.toLong(Unsafe.INSTANCE.getIntVolatile(null, alignedAddress));
+			if ((value & mask) != rawOld) {
+				return false;
+			}
+			
+			long newV = (value & ~mask) | rawNew;
+			
+			if (Unsafe.INSTANCE.compareAndSwapInt(null, alignedAddress, UnsignedInt.fromLong(value), UnsignedInt.fromLong(newV))) {
+				return true;
+			}
+			
+			// other two bytes of the int were changed, try again
+		}
+	}
+	
+	private boolean casUnalignedInnerRef(long address, int oldRef, int newRef) {
+		
 		long loldRef = oldRef; 
 		long lnewRef = newRef;
 		
@@ -1,5 +1,7 @@
 package alt.collections.store;
 
+import alt.collections.concurrent.Backoff;
+import alt.collections.concurrent.Backoffs;
 import alt.collections.paging.InnerRef;
 import alt.collections.paging.PageNum;
 import alt.collections.util.PageSize;
@@ -10,6 +12,7 @@ public class AbstractStoreBuilder<T extends AbstractStoreBuilder<T>> {
 	protected PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
 	protected PageNum pageNum = PageNum.DEFAULT;
 	protected InnerRef innerRef = InnerRef.DEFAULT;
+	protected Backoff backoff = Backoffs.spin();
 
 	@SuppressWarnings("unchecked")
 	public T withPageSize(int pageSize) {
@@ -32,4 +35,11 @@ public class AbstractStoreBuilder<T extends AbstractStoreBuilder<T>> {
 		return (T) this;
 	}
 
+	@SuppressWarnings("unchecked")
+	public T withBackoff(Backoff backoff) {
+		Requires.nonNull(backoff, "backoff");
+		this.backoff = backoff;
+		return (T) this;
+	}
+
 }
\ No newline at end of file
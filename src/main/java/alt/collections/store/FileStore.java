@@ -15,4 +15,19 @@ public interface FileStore extends Paging, Closeable {
 
 	void close();
 	
+	/**
+	 * Writes all changed pages of mapped files to the disk
+	 */
+	
+	void force();
+	
+	/**
+	 * Writes changed pages of the range [pageFrom, pageTo) to the disk
+	 * 
+	 * @param pageFrom
+	 * @param pageTo
+	 */
+	
+	void force(long pageFrom, long pageTo);
+
 }
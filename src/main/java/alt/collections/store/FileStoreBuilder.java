@@ -24,6 +24,11 @@ public class FileStoreBuilder extends AbstractStoreBuilder<FileStoreBuilder> {
 	private MapFileMode fileMode = MapFileMode.READ_WRITE;
 	private final List<FileEntry> files = new ArrayList<FileEntry>();
 	private boolean deleteOnExit = false;
+	private String growthPattern;
+	private long growthSize;
+	private boolean lazyMapping = false;
+	private long flushIntervalMillis;
+	private long flushBytes;
 	
 	public FileStoreBuilder() {
 	}
@@ -92,15 +97,67 @@ public class FileStoreBuilder extends AbstractStoreBuilder<FileStoreBuilder> {
 		return this;
 	}
 
+	/**
+	 * Files are mapped by the first access to pages, open of the store does not depend on the size
+	 * 
+	 * @return
+	 */
+	
+	public FileStoreBuilder lazyMapping() {
+		return lazyMapping(true);
+	}
+	
+	public FileStoreBuilder lazyMapping(boolean flag) {
+		this.lazyMapping = flag;
+		return this;
+	}
+	
+	/**
+	 * Store grows at runtime by new files when pages are running low
+	 * 
+	 * @param filePathPattern pattern of new files, see addFiles
+	 * @param size of each new file
+	 * @return
+	 */
+	
+	public FileStoreBuilder withGrowth(String filePathPattern, long size) {
+		Requires.nonNull(filePathPattern, "filePathPattern");
+		Requires.nonNull(pageSize, "pageSize");
+		Requires.nonZero(size, "size");
+		Requires.aligned(pageSize, size, "size");
+		this.growthPattern = filePathPattern;
+		this.growthSize = size;
+		return this;
+	}
+	
+	/**
+	 * Changed pages are written to the disk by the background flusher, see StoreFlusher
+	 * 
+	 * @param intervalMillis max time between flushes, 0 to flush only by the threshold
+	 * @param maxDirtyBytes changed bytes that start the flush before the interval, 0 to flush only by the interval
+	 * @return
+	 */
+	
+	public FileStoreBuilder withFlusher(long intervalMillis, long maxDirtyBytes) {
+		Requires.positive(intervalMillis, "intervalMillis");
+		Requires.positive(maxDirtyBytes, "maxDirtyBytes");
+		if (intervalMillis == 0 && maxDirtyBytes == 0) {
+			throw new IllegalArgumentException("interval or threshold of the flusher must be set");
+		}
+		this.flushIntervalMillis = intervalMillis;
+		this.flushBytes = maxDirtyBytes;
+		return this;
+	}
+	
 	public FileStore build() throws Exception {
 		Requires.nonNull(pageSize, "pageSize");
 		if (files.isEmpty()) {
 			throw new IllegalStateException("empty files");
 		}
-		if (files.size() == 1) {
-			return new SingleFileStore(pageSize, pageNum, innerRef, fileMode, files.get(0), deleteOnExit);
+		if (files.size() == 1 && growthPattern == null && !lazyMapping) {
+			return new SingleFileStore(pageSize, pageNum, innerRef, backoff, fileMode, files.get(0), flushIntervalMillis, flushBytes, deleteOnExit);
 		}
-		return new MultipleFileStore(pageSize, pageNum, innerRef, fileMode, files, deleteOnExit);
+		return new MultipleFileStore(pageSize, pageNum, innerRef, backoff, fileMode, files, growthPattern, growthSize, lazyMapping, flushIntervalMillis, flushBytes, deleteOnExit);
 	}
 	
 	public static class FileEntry {
@@ -31,6 +31,6 @@ public class MemStoreBuilder extends AbstractStoreBuilder<MemStoreBuilder> {
 	
 	public MemStore build() throws Exception {
 		Requires.positive(size, "size");
-		return new DefaultMemStore(pageSize, pageNum, innerRef, size);
+		return new DefaultMemStore(pageSize, pageNum, innerRef, backoff, size);
 	}
 }
@@ -0,0 +1,541 @@
+package alt.collections.store;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import alt.collections.util.Requires;
+
+/**
+ * Write Ahead Log is the append-only log of records with the group commit
+ * 
+ * Records are appended to the buffer in memory, commit waits until the record is written and synced.
+ * The first waiting thread writes all buffered records and syncs the file once for the whole group,
+ * other threads wait for it, records appended during the sync go to the next group.
+ * 
+ * Log is the sequence of files path.1, path.2, ..., checkpoint starts the new file and deletes
+ * previous files after the store is forced. Replay reads records of all files in order,
+ * torn record at the tail of the log is cut off on open.
+ * 
+ * Checkpoint with the image writes the copy of the store to path.image.N, where N is the first file
+ * of records after the image. Image is written to path.image.tmp and renamed after the sync, that is why
+ * the last image is always complete. Recovery restores the image and replays files from N, records that
+ * are applied in place to the store can not leave it torn after the crash.
+ * 
+ * Record in the file is [int length][int crc32][bytes].
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class WriteAheadLog implements Closeable {
+	
+	private static final int HEADER_SIZE = 8;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String IMAGE = "image.";
+	private static final String IMAGE_TMP = IMAGE + "tmp";
+	
+	private final File dir;
+	private final String prefix;
+	
+	private final Object lock = new Object();
+	
+	private final List<Integer> fileNums;
+	private FileChannel channel;
+	private int imageNum;
+	
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+	
+	private long appendedLsn;
+	private long syncedLsn;
+	private boolean syncing;
+	private IOException failure;
+	
+	public interface RecordConsumer {
+		
+		void accept(byte[] record);
+	
+	}
+	
+	/**
+	 * Copy of the store that is the base for records of the log
+	 */
+	
+	public interface Image {
+		
+		void write(FileChannel channel) throws IOException;
+		
+		void read(FileChannel channel) throws IOException;
+	
+	}
+	
+	/**
+	 * Opens the log, torn record at the tail is cut off
+	 * 
+	 * @param path of log files without the number
+	 * @throws IOException
+	 */
+	
+	public WriteAheadLog(String path) throws IOException {
+		Requires.nonNull(path, "path");
+		
+		File file = new File(path).getAbsoluteFile();
+		this.dir = file.getParentFile();
+		dir.mkdirs();
+		this.prefix = file.getName() + ".";
+		this.fileNums = findFileNums("");
+		
+		List<Integer> imageNums = findFileNums(IMAGE);
+		this.imageNum = imageNums.isEmpty() ? 0 : imageNums.get(imageNums.size() - 1);
+		new File(dir, prefix + IMAGE_TMP).delete();
+		
+		// files before the image could be left by the crash in the checkpoint
+		for (int fileNum : new ArrayList<Integer>(fileNums)) {
+			if (fileNum < imageNum && getFile(fileNum).delete()) {
+				fileNums.remove(Integer.valueOf(fileNum));
+			}
+		}
+		
+		if (fileNums.isEmpty()) {
+			fileNums.add(1);
+		}
+		
+		int last = fileNums.get(fileNums.size() - 1);
+		long validSize = readFile(last, null);
+		
+		RandomAccessFile raf = new RandomAccessFile(getFile(last), "rw");
+		this.channel = raf.getChannel();
+		if (channel.size() > validSize) {
+			channel.truncate(validSize);
+			channel.force(false);
+		}
+		channel.position(validSize);
+	}
+	
+	/**
+	 * Reads all records of the log after the image in order, must be called before the first append
+	 * 
+	 * @param consumer
+	 * @return number of records
+	 * @throws IOException
+	 */
+	
+	public long replay(RecordConsumer consumer) throws IOException {
+		Requires.nonNull(consumer, "consumer");
+		
+		long[] count = new long[1];
+		for (int fileNum : fileNums) {
+			if (fileNum >= imageNum) {
+				readFile(fileNum, new CountingConsumer(consumer, count));
+			}
+		}
+		return count[0];
+	}
+	
+	/**
+	 * Reads the last image to the store, must be called before the replay
+	 * 
+	 * @param image
+	 * @return false if there is no image
+	 * @throws IOException
+	 */
+	
+	public boolean restore(Image image) throws IOException {
+		Requires.nonNull(image, "image");
+		
+		if (imageNum == 0) {
+			return false;
+		}
+		
+		FileChannel imageChannel = new RandomAccessFile(getImageFile(imageNum), "r").getChannel();
+		try {
+			image.read(imageChannel);
+		}
+		finally {
+			imageChannel.close();
+		}
+		return true;
+	}
+	
+	/**
+	 * Appends the record to the buffer of the next group
+	 * 
+	 * @param record
+	 * @return sequence number of the record for the commit
+	 */
+	
+	public long append(byte[] record) {
+		Requires.nonNull(record, "record");
+		
+		CRC32 crc = new CRC32();
+		crc.update(record, 0, record.length);
+		
+		synchronized(lock) {
+			checkFailure();
+			
+			int size = HEADER_SIZE + record.length;
+			if (buffer.remaining() < size) {
+				ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+				buffer.flip();
+				newBuffer.put(buffer);
+				buffer = newBuffer;
+			}
+			
+			buffer.putInt(record.length);
+			buffer.putInt((int) crc.getValue());
+			buffer.put(record);
+			
+			appendedLsn += size;
+			return appendedLsn;
+		}
+	}
+	
+	/**
+	 * Waits until the record is written to the disk, one thread syncs the group for all
+	 * 
+	 * @param lsn sequence number of the record
+	 */
+	
+	public void commit(long lsn) {
+		
+		while(true) {
+			
+			ByteBuffer group;
+			long groupLsn;
+			FileChannel channel;
+			
+			synchronized(lock) {
+				while(true) {
+					checkFailure();
+					if (syncedLsn >= lsn) {
+						return;
+					}
+					if (!syncing) {
+						break;
+					}
+					waitLock();
+				}
+				
+				syncing = true;
+				group = buffer;
+				buffer = spare;
+				groupLsn = appendedLsn;
+				channel = this.channel;
+			}
+			
+			IOException error = null;
+			try {
+				write(channel, group);
+			}
+			catch(IOException e) {
+				error = e;
+			}
+			
+			synchronized(lock) {
+				group.clear();
+				spare = group;
+				syncing = false;
+				if (error != null) {
+					failure = error;
+				}
+				else {
+					syncedLsn = groupLsn;
+				}
+				lock.notifyAll();
+			}
+		}
+	
+	}
+	
+	/**
+	 * Appends and commits the record
+	 * 
+	 * @param record
+	 */
+	
+	public void write(byte[] record) {
+		commit(append(record));
+	}
+	
+	/**
+	 * Starts the new file of the log and deletes previous files after the store is forced.
+	 * 
+	 * Records of previous files must be in the forced store, that is why the checkpoint is safe
+	 * if every record is appended after its change is applied to the store.
+	 * 
+	 * @param forceStore writes changes of the store to the disk
+	 */
+	
+	public void checkpoint(Runnable forceStore) {
+		Requires.nonNull(forceStore, "forceStore");
+		
+		List<Integer> oldFileNums = startFile();
+		
+		forceStore.run();
+		
+		deleteFiles(oldFileNums);
+	}
+	
+	/**
+	 * Starts the new file of the log and writes the image of the store, previous files and images are deleted after that.
+	 * 
+	 * Image is the base of records of the new file, no change must be applied to the store until the checkpoint returns.
+	 * 
+	 * @param image of the store
+	 */
+	
+	public void checkpoint(Image image) {
+		Requires.nonNull(image, "image");
+		
+		List<Integer> oldFileNums = startFile();
+		int fileNum = oldFileNums.get(oldFileNums.size() - 1) + 1;
+		
+		File tmp = new File(dir, prefix + IMAGE_TMP);
+		try {
+			FileChannel imageChannel = new RandomAccessFile(tmp, "rw").getChannel();
+			try {
+				imageChannel.truncate(0);
+				image.write(imageChannel);
+				imageChannel.force(true);
+			}
+			finally {
+				imageChannel.close();
+			}
+		}
+		catch(IOException e) {
+			tmp.delete();
+			throw new IllegalStateException("image of the store is not written", e);
+		}
+		
+		int oldImageNum;
+		synchronized(lock) {
+			if (!tmp.renameTo(getImageFile(fileNum))) {
+				throw new IllegalStateException("image of the store is not renamed " + tmp);
+			}
+			oldImageNum = imageNum;
+			imageNum = fileNum;
+		}
+		
+		if (oldImageNum != 0) {
+			getImageFile(oldImageNum).delete();
+		}
+		deleteFiles(oldFileNums);
+	}
+	
+	/**
+	 * Number of files in the log, the last one is the current
+	 */
+	
+	public int getFiles() {
+		synchronized(lock) {
+			return fileNums.size();
+		}
+	}
+	
+	/**
+	 * Commits appended records and closes the log
+	 */
+	
+	@Override
+	public void close() {
+		long lsn;
+		synchronized(lock) {
+			lsn = appendedLsn;
+		}
+		try {
+			commit(lsn);
+		}
+		finally {
+			synchronized(lock) {
+				try {
+					channel.close();
+				}
+				catch(IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Writes buffered records and starts the new file
+	 * 
+	 * @return previous files
+	 */
+	
+	private List<Integer> startFile() {
+		synchronized(lock) {
+			while(syncing) {
+				waitLock();
+			}
+			checkFailure();
+			
+			try {
+				write(channel, buffer);
+				buffer.clear();
+				syncedLsn = appendedLsn;
+				
+				int fileNum = fileNums.get(fileNums.size() - 1) + 1;
+				FileChannel newChannel = new RandomAccessFile(getFile(fileNum), "rw").getChannel();
+				channel.close();
+				channel = newChannel;
+				
+				List<Integer> oldFileNums = new ArrayList<Integer>(fileNums);
+				fileNums.add(fileNum);
+				return oldFileNums;
+			}
+			catch(IOException e) {
+				failure = e;
+				throw new IllegalStateException("checkpoint of the log failed", e);
+			}
+			finally {
+				lock.notifyAll();
+			}
+		}
+	}
+	
+	private void deleteFiles(List<Integer> oldFileNums) {
+		synchronized(lock) {
+			for (int fileNum : oldFileNums) {
+				if (getFile(fileNum).delete() || !getFile(fileNum).exists()) {
+					fileNums.remove(Integer.valueOf(fileNum));
+				}
+			}
+		}
+	}
+	
+	private void checkFailure() {
+		if (failure != null) {
+			throw new IllegalStateException("write ahead log failed", failure);
+		}
+		if (!channel.isOpen()) {
+			throw new IllegalStateException("write ahead log is closed");
+		}
+	}
+	
+	private void waitLock() {
+		try {
+			lock.wait();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted commit", e);
+		}
+	}
+	
+	private static void write(FileChannel channel, ByteBuffer group) throws IOException {
+		group.flip();
+		while(group.hasRemaining()) {
+			channel.write(group);
+		}
+		channel.force(false);
+	}
+	
+	/**
+	 * Reads valid records of the file
+	 * 
+	 * @return size of valid records
+	 */
+	
+	private long readFile(int fileNum, RecordConsumer consumer) throws IOException {
+		File file = getFile(fileNum);
+		if (!file.exists()) {
+			return 0;
+		}
+		
+		long validSize = 0;
+		long fileSize = file.length();
+		CRC32 crc = new CRC32();
+		
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			while(true) {
+				int length = in.readInt();
+				int checksum = in.readInt();
+				if (length < 0 || validSize + HEADER_SIZE + length > fileSize) {
+					break;
+				}
+				
+				byte[] record = new byte[length];
+				in.readFully(record);
+				
+				crc.reset();
+				crc.update(record, 0, length);
+				if ((int) crc.getValue() != checksum) {
+					break;
+				}
+				
+				validSize += HEADER_SIZE + length;
+				if (consumer != null) {
+					consumer.accept(record);
+				}
+			}
+		}
+		catch(EOFException e) {
+			// torn tail
+		}
+		finally {
+			in.close();
+		}
+		return validSize;
+	}
+	
+	private List<Integer> findFileNums(String kind) {
+		List<Integer> result = new ArrayList<Integer>();
+		String[] names = dir.list();
+		String filePrefix = prefix + kind;
+		if (names != null) {
+			for (String name : names) {
+				if (name.startsWith(filePrefix) && name.length() > filePrefix.length()) {
+					try {
+						result.add(Integer.parseInt(name.substring(filePrefix.length())));
+					}
+					catch(NumberFormatException e) {
+						// not the file of the log
+					}
+				}
+			}
+		}
+		Collections.sort(result);
+		return result;
+	}
+	
+	private File getFile(int fileNum) {
+		return new File(dir, prefix + fileNum);
+	}
+	
+	private File getImageFile(int fileNum) {
+		return new File(dir, prefix + IMAGE + fileNum);
+	}
+	
+	private static final class CountingConsumer implements RecordConsumer {
+		
+		private final RecordConsumer consumer;
+		private final long[] count;
+		
+		CountingConsumer(RecordConsumer consumer, long[] count) {
+			this.consumer = consumer;
+			this.count = count;
+		}
+		
+		@Override
+		public void accept(byte[] record) {
+			consumer.accept(record);
+			count[0]++;
+		}
+	
+	}
+
+}
@@ -1,5 +1,7 @@
 package alt.collections.store.impl;
 
+import alt.collections.concurrent.Backoff;
+import alt.collections.concurrent.Contention;
 import alt.collections.paging.InnerRef;
 import alt.collections.paging.PageNum;
 import alt.collections.paging.Paging;
@@ -16,14 +18,22 @@ import alt.collections.util.PageSize;
 
 public abstract class AbstractPagingStore implements Paging {
 
+	/**
+	 * Checks of page numbers in getAddress, -Dalt.collections.checkBounds=false turns them off
+	 */
+	
+	public static final boolean CHECK_BOUNDS = Boolean.parseBoolean(System.getProperty("alt.collections.checkBounds", "true"));
+	
 	protected final PageSize pageSize;
 	protected final PageNum pageNum;
 	protected final InnerRef innerRef;
+	protected final Contention contention;
 	
-	public AbstractPagingStore(PageSize pageSize, PageNum pageNum, InnerRef innerRef) {
+	public AbstractPagingStore(PageSize pageSize, PageNum pageNum, InnerRef innerRef, Backoff backoff) {
 		this.pageSize = pageSize;
 		this.pageNum = pageNum;
 		this.innerRef = innerRef;
+		this.contention = new Contention(backoff);
 	}
 	
 	@Override
@@ -45,4 +55,14 @@ public abstract class AbstractPagingStore implements Paging {
 	public int getPageSize() {
 		return pageSize.getPageSize();
 	}
+	
+	@Override
+	public Contention getContention() {
+		return contention;
+	}
+	
+	@Override
+	public void markChanged(long address) {
+		// nothing to flush
+	}
 }
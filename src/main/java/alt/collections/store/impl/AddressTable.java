@@ -0,0 +1,94 @@
+package alt.collections.store.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import alt.collections.util.Requires;
+
+/**
+ * Address Table translates the address inside the mapped segment to the index of the segment
+ * 
+ * Mapped segments are sorted by addresses, the segment is found by the binary search.
+ * Segment with address 0 is not mapped and is not in the table.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class AddressTable {
+	
+	private final long[] addresses;
+	private final long[] ends;
+	private final int[] indexes;
+	
+	/**
+	 * Builds the table
+	 * 
+	 * @param segmentAddresses address of each segment or 0 if it is not mapped
+	 * @param segmentSizes size of each segment in bytes
+	 */
+	
+	public AddressTable(final long[] segmentAddresses, long[] segmentSizes) {
+		Requires.nonNull(segmentAddresses, "segmentAddresses");
+		Requires.nonNull(segmentSizes, "segmentSizes");
+		
+		List<Integer> mapped = new ArrayList<Integer>();
+		for (int i = 0; i != segmentAddresses.length; ++i) {
+			if (segmentAddresses[i] != 0) {
+				mapped.add(i);
+			}
+		}
+		Collections.sort(mapped, new Comparator<Integer>() {
+			
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				long a1 = segmentAddresses[i1];
+				long a2 = segmentAddresses[i2];
+				return a1 < a2 ? -1 : (a1 == a2 ? 0 : 1);
+			}
+		
+		});
+		
+		this.addresses = new long[mapped.size()];
+		this.ends = new long[mapped.size()];
+		this.indexes = new int[mapped.size()];
+		for (int i = 0; i != indexes.length; ++i) {
+			int index = mapped.get(i);
+			indexes[i] = index;
+			addresses[i] = segmentAddresses[index];
+			ends[i] = segmentAddresses[index] + segmentSizes[index];
+		}
+	}
+	
+	/**
+	 * Binary search of the mapped segment that contains the address
+	 * 
+	 * @param address
+	 * @return index of the segment or -1
+	 */
+	
+	public int indexOf(long address) {
+		int low = 0;
+		int high = addresses.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (address < addresses[mid]) {
+				high = mid - 1;
+			}
+			else if (address >= ends[mid]) {
+				low = mid + 1;
+			}
+			else {
+				return indexes[mid];
+			}
+		}
+		return -1;
+	}
+	
+	public int getMappedSegments() {
+		return indexes.length;
+	}
+
+}
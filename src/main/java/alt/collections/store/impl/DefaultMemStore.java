@@ -1,5 +1,6 @@
 package alt.collections.store.impl;
 
+import alt.collections.concurrent.Backoff;
 import alt.collections.paging.InnerRef;
 import alt.collections.paging.PageNum;
 import alt.collections.store.MemStore;
@@ -18,10 +19,11 @@ public class DefaultMemStore extends AbstractPagingStore implements MemStore {
 	private final long totalPages;
 	private long address;
 	
-	public DefaultMemStore(PageSize pageSize, PageNum pageNum, InnerRef innerRef, long size) {
-		super(pageSize, pageNum, innerRef);
+	public DefaultMemStore(PageSize pageSize, PageNum pageNum, InnerRef innerRef, Backoff backoff, long size) {
+		super(pageSize, pageNum, innerRef, backoff);
 		this.totalPages = size / pageSize.getPageSize();
 		this.address = Unsafe.INSTANCE.allocateMemory(size);
+		Unsafe.INSTANCE.setMemory(address, size, (byte) 0);
 	}
 
 	@Override
@@ -34,8 +36,10 @@ public class DefaultMemStore extends AbstractPagingStore implements MemStore {
 
 	@Override
 	public long getAddress(long pageNum) {
-		Requires.positive(pageNum, "pageNum");
-		Requires.less(pageNum, this.totalPages, "pageNum");
+		if (CHECK_BOUNDS) {
+			Requires.positive(pageNum, "pageNum");
+			Requires.less(pageNum, this.totalPages, "pageNum");
+		}
 
 		return address + pageNum * pageSize.getPageSize();
 	}
@@ -1,11 +1,20 @@
 package alt.collections.store.impl;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import alt.collections.concurrent.Backoff;
+import alt.collections.paging.GrowablePaging;
 import alt.collections.paging.InnerRef;
 import alt.collections.paging.PageNum;
 import alt.collections.store.FileStore;
+import alt.collections.store.FileStoreBuilder;
 import alt.collections.store.FileStoreBuilder.FileEntry;
 import alt.collections.util.MapFileMode;
 import alt.collections.util.PageSize;
@@ -15,152 +24,400 @@ import alt.collections.util.UnsafeMemoryMappedFile;
 /**
  * Multiple File Store
  * 
+ * Page address is the base of the segment plus the offset of the page, base of the segment
+ * is shifted back by the start page, segment is found by the SegmentTable.
+ * 
+ * Segments are mapped in parallel on open or lazily by the first access to the page inside them,
+ * base of the unmapped segment is 0 in the layout, that is the only check of the access. Map and unmap
+ * publish the new layout, published layouts are never changed. Cold segment can be unmapped inside the package
+ * by unmapSegment and is mapped again by the next access.
+ * 
+ * Store with the growth pattern appends new segment files at runtime. Segments are published
+ * by the volatile layout, old layouts stay valid because segments are unmapped only by close or unmapSegment.
+ * Segment files created by the growth are found again on the next open.
+ * 
+ * Force syncs mapped segments of the range, segment is synced before the unmap.
+ * 
  * @author Albert Shift
  *
  */
 
-public class MultipleFileStore extends AbstractPagingStore implements FileStore {
+public class MultipleFileStore extends AbstractPagingStore implements FileStore, GrowablePaging {
+	
+	private final MapFileMode fileMode;
+	private final boolean deleteOnExit;
+	private final String growthPattern;
+	private final long growthSize;
+	private final StoreFlusher flusher;
+	
+	private final List<Segment> segments = new ArrayList<Segment>();
+	private int growthFiles;
+	private volatile Layout layout;
+	
+	public MultipleFileStore(PageSize pageSize, PageNum pageNum0, InnerRef innerRef, Backoff backoff, MapFileMode fileMode, List<FileEntry> fileEntries, boolean deleteOnExit) throws Exception {
+		this(pageSize, pageNum0, innerRef, backoff, fileMode, fileEntries, null, 0, false, 0, 0, deleteOnExit);
+	}
 	
-	private final Segment[] segments;
-	private final long totalPages;
+	/**
+	 * Opens the store
+	 * 
+	 * @param growthPattern pattern of segment files added by the growth, see FileStoreBuilder.addFiles, null if the store does not grow
+	 * @param growthSize size of segment files added by the growth
+	 * @param lazyMapping true to map segments by the first access
+	 * @param flushIntervalMillis interval of the background flusher, see StoreFlusher
+	 * @param flushBytes threshold of changed bytes of the background flusher, both 0 if the store has no flusher
+	 */
 	
-	public MultipleFileStore(PageSize pageSize, PageNum pageNum0, InnerRef innerRef, MapFileMode fileMode, List<FileEntry> fileEntries, boolean deleteOnExit) throws Exception {
-		super(pageSize, pageNum0, innerRef);
-		this.segments = new Segment[fileEntries.size()];
+	public MultipleFileStore(PageSize pageSize, PageNum pageNum0, InnerRef innerRef, Backoff backoff, MapFileMode fileMode, List<FileEntry> fileEntries, String growthPattern, long growthSize, boolean lazyMapping, long flushIntervalMillis, long flushBytes, boolean deleteOnExit) throws Exception {
+		super(pageSize, pageNum0, innerRef, backoff);
+		this.fileMode = fileMode;
+		this.deleteOnExit = deleteOnExit;
+		this.growthPattern = growthPattern;
+		this.growthSize = growthSize;
 		
-		long pageNum = 0;
+		for (FileEntry file : fileEntries) {
+			addSegment(file);
+		}
 		
-		for (int i = 0; i != fileEntries.size(); ++i) {
-			FileEntry file = fileEntries.get(i);
-			
-			UnsafeMemoryMappedFile mmf = null;
+		if (growthPattern != null) {
+			while(new File(getGrowthFilePath(growthFiles + 1)).exists()) {
+				addSegment(new FileEntry(getGrowthFilePath(++growthFiles), growthSize));
+			}
+		}
+		
+		if (!lazyMapping) {
 			try {
-				mmf = new UnsafeMemoryMappedFile(file.getFilePath(), fileMode, file.getSize());
+				mapAll();
 			} catch (Exception e) {
 				close();
 				throw e;
 			}
-			
-			long segmentPages = file.getSize() / pageSize.getPageSize();
-			
-			this.segments[i] = new Segment(mmf, pageNum, segmentPages);
-			
-			pageNum += segmentPages;
-			
-			if (deleteOnExit) {
-				new File(file.getFilePath()).deleteOnExit();
-			}
-			
 		}
 		
-		this.totalPages = pageNum;
-		
+		this.layout = new Layout(segments, pageSize);
+		this.flusher = flushIntervalMillis != 0 || flushBytes != 0 ? new StoreFlusher(this, flushIntervalMillis, flushBytes) : null;
 	}
 	
 	@Override
 	public void close() {
-		for (int i = 0; i != segments.length; ++i) {
-			Segment segment = segments[i];
-			if (segment != null) {
-				segment.close();
+		try {
+			if (flusher != null) {
+				flusher.close();
 			}
 		}
+		finally {
+			closeSegments();
+		}
 	}
-
+	
+	private synchronized void closeSegments() {
+		for (Segment segment : segments) {
+			segment.close();
+		}
+	}
+	
 	@Override
-	public long getAddress(long pageNum) {
-		Requires.positive(pageNum, "pageNum");
-		Requires.less(pageNum, this.totalPages, "pageNum");
+	public void force() {
+		force(0, layout.totalPages);
+	}
+	
+	@Override
+	public void force(long pageFrom, long pageTo) {
+		Layout layout = this.layout;
+		Requires.positive(pageFrom, "pageFrom");
+		Requires.lessOrEquals(pageFrom, pageTo, "pageFrom");
+		Requires.lessOrEquals(pageTo, layout.totalPages, "pageTo");
 		
-		int index = search(pageNum);
-		if (index > 0) {
-			Segment segment = segments[index];
-			return segment.getAddress(pageNum - segment.startPageNum);
+		if (pageFrom == pageTo) {
+			return;
 		}
 		
-		index = -(index + 1);
-		
-		Segment segment = segments[index-1];
-		return segment.getAddress(pageNum - segment.startPageNum);
+		int last = layout.segmentTable.indexOf(pageTo - 1);
+		for (int index = layout.segmentTable.indexOf(pageFrom); index <= last; ++index) {
+			long startPage = layout.segmentTable.getStartPage(index);
+			long from = Math.max(pageFrom, startPage) - startPage;
+			long to = Math.min(pageTo, startPage + layout.segments[index].getPages()) - startPage;
+			try {
+				layout.segments[index].force(from * pageSize.getPageSize(), (to - from) * pageSize.getPageSize());
+			} catch (Exception e) {
+				throw new IllegalStateException("can not force the segment " + index, e);
+			}
+		}
+	}
+
+	@Override
+	public long getAddress(long pageNum) {
+		Layout layout = this.layout;
+		if (CHECK_BOUNDS) {
+			Requires.positive(pageNum, "pageNum");
+			Requires.less(pageNum, layout.totalPages, "pageNum");
+		}
 		
+		int index = layout.segmentTable.indexOf(pageNum);
+		long base = layout.bases[index];
+		if (base == 0) {
+			base = mapSegment(layout, index);
+		}
+		return base + pageNum * pageSize.getPageSize();
 	}
 
+	/**
+	 * Finds the segment of the address by the binary search in mapped segments of the layout
+	 */
+	
+	@Override
+	public void markChanged(long address) {
+		if (flusher == null) {
+			return;
+		}
+		Layout layout = this.layout;
+		int index = layout.addressTable.indexOf(address);
+		if (index != -1) {
+			flusher.mark((address - layout.bases[index]) / pageSize.getPageSize());
+		}
+	}
+	
 	@Override
 	public long getTotalPages() {
-		return this.totalPages;
+		return layout.totalPages;
 	}
 	
-    private int compare(long thisVal, long anotherVal) {
-    	return (thisVal<anotherVal ? -1 : (thisVal==anotherVal ? 0 : 1));
-    }
+	@Override
+	public long getGrowthPages() {
+		return growthPattern != null ? growthSize / pageSize.getPageSize() : 0;
+	}
 	
-	private int binarySearch(Segment[] a, int fromIndex, int toIndex,
-			long key) {
-
-		int low = fromIndex;
-		int high = toIndex - 1;
-
-		while (low <= high) {
-			int mid = (low >>> 1) + (high >>> 1);
-			mid += ((low & 1) + (high & 1)) >>> 1;
-			
-			//int mid = (low + high) >>> 1;
-			Segment midVal = a[mid];
-			int cmp = compare(midVal.startPageNum, key);
-
-			if (cmp < 0) {
-				low = mid + 1;
+	@Override
+	public synchronized boolean grow(long minTotalPages) {
+		if (growthPattern == null) {
+			return layout.totalPages >= minTotalPages;
+		}
+		
+		while(layout.totalPages < minTotalPages) {
+			try {
+				Segment segment = addSegment(new FileEntry(getGrowthFilePath(growthFiles + 1), growthSize));
+				segment.map();
+			} catch (Exception e) {
+				throw new IllegalStateException("can not grow the store to " + minTotalPages + " pages", e);
+			}
+			growthFiles++;
+			Layout newLayout = new Layout(segments, pageSize);
+			if (flusher != null) {
+				flusher.ensureCapacity(newLayout.totalPages);
 			}
-			else if (cmp > 0) {
-				high = mid - 1;
+			layout = newLayout;
+		}
+		return true;
+	}
+	
+	public int getSegments() {
+		return layout.segments.length;
+	}
+	
+	public boolean isMapped(int index) {
+		return layout.segments[index].address != 0;
+	}
+	
+	/**
+	 * Unmaps the cold segment, segment is mapped again by the next access
+	 * 
+	 * Addresses of pages in the segment are not valid after the unmap, caller must guarantee
+	 * that no thread works with pages of the segment, that is why the unmap is not public.
+	 * The layout without the segment is published before the unmap under the monitor of the segment,
+	 * the next access waits for the unmap and maps the segment again.
+	 * 
+	 * @param index of the segment
+	 */
+	
+	synchronized void unmapSegment(int index) {
+		Segment segment = layout.segments[index];
+		synchronized(segment) {
+			try {
+				segment.force(0, segment.file.getSize());
+			} catch (Exception e) {
+				throw new IllegalStateException("can not force the segment " + index, e);
 			}
-			else {
-				return mid; // key found
+			layout = new Layout(layout, index, 0, pageSize);
+			segment.close();
+		}
+	}
+	
+	/**
+	 * Maps the segment and publishes the layout with its base,
+	 * segments are only appended, that is why the index of the segment is the same in the live layout
+	 */
+	
+	private long mapSegment(Layout layout, int index) {
+		long address;
+		try {
+			address = layout.segments[index].map();
+		} catch (Exception e) {
+			throw new IllegalStateException("can not map the segment " + index, e);
+		}
+		long base = address - layout.segmentTable.getStartPage(index) * pageSize.getPageSize();
+		
+		synchronized(this) {
+			Layout live = this.layout;
+			if (live.bases[index] != base) {
+				this.layout = new Layout(live, index, base, pageSize);
 			}
 		}
-		return -(low + 1); // key not found.
+		return base;
 	}
 	
-	private int search(long key) {
-		if (key > 7) {
-			return binarySearch(segments, 0, segments.length, key);
+	/**
+	 * Maps all segments in parallel, most of the time is spent to create and extend files
+	 */
+	
+	private void mapAll() throws Exception {
+		int threads = Math.min(Runtime.getRuntime().availableProcessors(), segments.size());
+		if (threads <= 1) {
+			for (Segment segment : segments) {
+				segment.map();
+			}
+			return;
 		}
-		else {
-		    for (int i = 0; i != segments.length; i++) {
-		    	int c = compare(segments[i].startPageNum, key);
-				if (c == 0) {
-				    return i;
-				}
-				else if (c > 0) {
-					return -(i + 1);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Long>> futures = new ArrayList<Future<Long>>(segments.size());
+			for (final Segment segment : segments) {
+				futures.add(executor.submit(new Callable<Long>() {
+					
+					@Override
+					public Long call() throws Exception {
+						return segment.map();
+					}
+				
+				}));
+			}
+			for (Future<Long> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw (Exception) e.getCause();
 				}
-		    }
-		    return -(segments.length + 1);
+			}
+		}
+		finally {
+			executor.shutdown();
 		}
 	}
+	
+	private String getGrowthFilePath(int i) {
+		return String.format(growthPattern, i / FileStoreBuilder.DIR_MAX_FILES, i % FileStoreBuilder.DIR_MAX_FILES);
+	}
+	
+	private Segment addSegment(FileEntry file) {
+		Segment segment = new Segment(file);
+		segments.add(segment);
+		
+		if (deleteOnExit) {
+			new File(file.getFilePath()).deleteOnExit();
+		}
+		return segment;
+	}
 
 	public final class Segment {
 	
-		final UnsafeMemoryMappedFile mmf;
-		final long startPageNum;
-		final long segmentPages;
+		final FileEntry file;
+		private UnsafeMemoryMappedFile mmf;
+		volatile long address;
 		
-		Segment(UnsafeMemoryMappedFile mmf, long startPageNum, long segmentPages) {
-			this.mmf = mmf;
-			this.startPageNum = startPageNum;
-			this.segmentPages = segmentPages;
+		Segment(FileEntry file) {
+			this.file = file;
 		}
 		
-		long getAddress(long pageNum) {
-			Requires.positive(pageNum, "pageNum");
-			Requires.less(pageNum, this.segmentPages, "pageNum");
-			return mmf.getAddress() + pageNum * pageSize.getPageSize();
+		long getPages() {
+			return file.getSize() / pageSize.getPageSize();
 		}
 		
-		void close() {
-			mmf.close();
+		synchronized long map() throws Exception {
+			if (mmf == null) {
+				mmf = new UnsafeMemoryMappedFile(file.getFilePath(), fileMode, file.getSize());
+				address = mmf.getAddress();
+			}
+			return address;
+		}
+		
+		synchronized void force(long offset, long length) throws Exception {
+			if (mmf != null) {
+				mmf.force(offset, length);
+			}
+		}
+		
+		synchronized void close() {
+			if (mmf != null) {
+				address = 0;
+				mmf.close();
+				mmf = null;
+			}
 		}
 		
 	}
 	
+	/**
+	 * Immutable translation of pages to segments, bases are cached addresses of mapped segments.
+	 * Segment of the address is found by the AddressTable.
+	 */
+	
+	private static final class Layout {
+		
+		final Segment[] segments;
+		final SegmentTable segmentTable;
+		final long[] bases;
+		final long totalPages;
+		final AddressTable addressTable;
+		
+		Layout(List<Segment> segments, PageSize pageSize) {
+			this.segments = segments.toArray(new Segment[segments.size()]);
+			
+			long[] segmentPages = new long[this.segments.length];
+			for (int i = 0; i != segmentPages.length; ++i) {
+				segmentPages[i] = this.segments[i].getPages();
+			}
+			
+			this.segmentTable = new SegmentTable(segmentPages);
+			this.totalPages = segmentTable.getTotalPages();
+			
+			this.bases = new long[segmentPages.length];
+			for (int i = 0; i != segmentPages.length; ++i) {
+				long address = this.segments[i].address;
+				if (address != 0) {
+					bases[i] = address - segmentTable.getStartPage(i) * pageSize.getPageSize();
+				}
+			}
+			
+			this.addressTable = buildAddressTable(pageSize);
+		}
+		
+		/**
+		 * Copies the layout with the new base of the segment, the segment table is shared
+		 */
+		
+		Layout(Layout layout, int index, long base, PageSize pageSize) {
+			this.segments = layout.segments;
+			this.segmentTable = layout.segmentTable;
+			this.totalPages = layout.totalPages;
+			
+			this.bases = layout.bases.clone();
+			bases[index] = base;
+			
+			this.addressTable = buildAddressTable(pageSize);
+		}
+		
+		private AddressTable buildAddressTable(PageSize pageSize) {
+			long[] addresses = new long[bases.length];
+			long[] sizes = new long[bases.length];
+			for (int i = 0; i != bases.length; ++i) {
+				if (bases[i] != 0) {
+					addresses[i] = bases[i] + segmentTable.getStartPage(i) * pageSize.getPageSize();
+				}
+				sizes[i] = segments[i].getPages() * pageSize.getPageSize();
+			}
+			return new AddressTable(addresses, sizes);
+		}
+	
+	}
+
 }
@@ -0,0 +1,121 @@
+package alt.collections.store.impl;
+
+import alt.collections.util.Requires;
+
+/**
+ * Segment Table translates the page number to the index of the segment
+ * 
+ * Uniform segments of 2^n pages are found by the shift of the page number.
+ * Other segments are found by the table of granules, granule is the max power of two
+ * that divides sizes of all segments, that is why the granule never crosses the border of segments.
+ * Table is limited by MAX_TABLE_SIZE, bigger tables are replaced by the binary search.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class SegmentTable {
+	
+	public static final int MAX_TABLE_SIZE = 1 << 20;
+	
+	private final long[] startPages;
+	private final long totalPages;
+	private final int shift;
+	private final int[] table;
+	
+	/**
+	 * Builds the table
+	 * 
+	 * @param segmentPages number of pages in each segment
+	 */
+	
+	public SegmentTable(long[] segmentPages) {
+		Requires.nonNull(segmentPages, "segmentPages");
+		Requires.nonZero(segmentPages.length, "segmentPages");
+		
+		this.startPages = new long[segmentPages.length];
+		
+		long pageNum = 0;
+		long bits = 0;
+		boolean uniform = true;
+		for (int i = 0; i != segmentPages.length; ++i) {
+			Requires.nonZero(segmentPages[i], "segmentPages");
+			startPages[i] = pageNum;
+			pageNum += segmentPages[i];
+			bits |= segmentPages[i];
+			uniform &= segmentPages[i] == segmentPages[0];
+		}
+		this.totalPages = pageNum;
+		
+		int granuleShift = Long.numberOfTrailingZeros(bits);
+		
+		if (uniform && Long.bitCount(segmentPages[0]) == 1) {
+			this.shift = granuleShift;
+			this.table = null;
+		}
+		else if ((totalPages >>> granuleShift) <= MAX_TABLE_SIZE) {
+			this.shift = granuleShift;
+			this.table = new int[(int) (totalPages >>> granuleShift)];
+			for (int i = 0; i != segmentPages.length; ++i) {
+				int from = (int) (startPages[i] >>> granuleShift);
+				int to = (int) ((startPages[i] + segmentPages[i]) >>> granuleShift);
+				for (int g = from; g != to; ++g) {
+					table[g] = i;
+				}
+			}
+		}
+		else {
+			this.shift = -1;
+			this.table = null;
+		}
+	}
+	
+	/**
+	 * Finds the segment of the page
+	 * 
+	 * @param pageNum in range [0, totalPages)
+	 * @return index of the segment
+	 */
+	
+	public int indexOf(long pageNum) {
+		if (table != null) {
+			return table[(int) (pageNum >>> shift)];
+		}
+		if (shift != -1) {
+			return (int) (pageNum >>> shift);
+		}
+		return search(pageNum);
+	}
+	
+	public long getStartPage(int index) {
+		return startPages[index];
+	}
+	
+	public int getSegments() {
+		return startPages.length;
+	}
+	
+	public long getTotalPages() {
+		return totalPages;
+	}
+	
+	/**
+	 * Binary search of the last segment that starts before or at the page
+	 */
+	
+	private int search(long pageNum) {
+		int low = 0;
+		int high = startPages.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (startPages[mid] <= pageNum) {
+				low = mid;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+}
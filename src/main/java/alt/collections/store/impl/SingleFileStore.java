@@ -2,6 +2,7 @@ package alt.collections.store.impl;
 
 import java.io.File;
 
+import alt.collections.concurrent.Backoff;
 import alt.collections.paging.InnerRef;
 import alt.collections.paging.PageNum;
 import alt.collections.store.FileStore;
@@ -23,29 +24,76 @@ public class SingleFileStore  extends AbstractPagingStore implements FileStore {
 
 	private final UnsafeMemoryMappedFile mmf;
 	private final long totalPages;
+	private final StoreFlusher flusher;
 	
-	public SingleFileStore(PageSize pageSize, PageNum pageNum, InnerRef innerRef, MapFileMode fileMode, FileEntry file, boolean deleteOnExit) throws Exception {
-		super(pageSize, pageNum, innerRef);
+	public SingleFileStore(PageSize pageSize, PageNum pageNum, InnerRef innerRef, Backoff backoff, MapFileMode fileMode, FileEntry file, boolean deleteOnExit) throws Exception {
+		this(pageSize, pageNum, innerRef, backoff, fileMode, file, 0, 0, deleteOnExit);
+	}
+	
+	/**
+	 * Opens the store
+	 * 
+	 * @param flushIntervalMillis interval of the background flusher, see StoreFlusher
+	 * @param flushBytes threshold of changed bytes of the background flusher, both 0 if the store has no flusher
+	 */
+	
+	public SingleFileStore(PageSize pageSize, PageNum pageNum, InnerRef innerRef, Backoff backoff, MapFileMode fileMode, FileEntry file, long flushIntervalMillis, long flushBytes, boolean deleteOnExit) throws Exception {
+		super(pageSize, pageNum, innerRef, backoff);
 		this.mmf = new UnsafeMemoryMappedFile(file.getFilePath(), fileMode, file.getSize());
 		this.totalPages = mmf.getSize() / pageSize.getPageSize();
 		
 		if (deleteOnExit) {
 			new File(file.getFilePath()).deleteOnExit();
 		}
+		
+		this.flusher = flushIntervalMillis != 0 || flushBytes != 0 ? new StoreFlusher(this, flushIntervalMillis, flushBytes) : null;
 	}
 	
 	@Override
 	public void close() {
-		mmf.close();
+		try {
+			if (flusher != null) {
+				flusher.close();
+			}
+		}
+		finally {
+			mmf.close();
+		}
+	}
+	
+	@Override
+	public void force() {
+		force(0, totalPages);
+	}
+	
+	@Override
+	public void force(long pageFrom, long pageTo) {
+		Requires.positive(pageFrom, "pageFrom");
+		Requires.lessOrEquals(pageFrom, pageTo, "pageFrom");
+		Requires.lessOrEquals(pageTo, totalPages, "pageTo");
+		
+		try {
+			mmf.force(pageFrom * pageSize.getPageSize(), (pageTo - pageFrom) * pageSize.getPageSize());
+		} catch (Exception e) {
+			throw new IllegalStateException("can not force pages [" + pageFrom + ", " + pageTo + ")", e);
+		}
 	}
 
 	@Override
 	public long getAddress(long pageNum) {
-		Requires.positive(pageNum, "pageNum");
-		Requires.less(pageNum, this.totalPages, "pageNum");
-		
+		if (CHECK_BOUNDS) {
+			Requires.positive(pageNum, "pageNum");
+			Requires.less(pageNum, this.totalPages, "pageNum");
+		}
 		return mmf.getAddress() + pageNum * pageSize.getPageSize();
 	}
+	
+	@Override
+	public void markChanged(long address) {
+		if (flusher != null) {
+			flusher.mark((address - mmf.getAddress()) / pageSize.getPageSize());
+		}
+	}
 
 	@Override
 	public long getTotalPages() {
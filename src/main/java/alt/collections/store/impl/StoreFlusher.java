@@ -0,0 +1,226 @@
+package alt.collections.store.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import alt.collections.store.FileStore;
+import alt.collections.util.Requires;
+
+/**
+ * Store Flusher writes changed pages of the file store to the disk in the background
+ * 
+ * Writers mark the chunk of pages by Paging.markChanged, the mark is set once per flush,
+ * next writes only read it. Reads do not mark chunks.
+ * Flush is started by the interval or when marked chunks exceed the threshold of bytes.
+ * 
+ * Writer could take the address before the flush and write after it, that is why
+ * the chunk is flushed twice: by the flush that finds it dirty and by the next one.
+ * 
+ * Explicit force of the store does not depend on marks.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class StoreFlusher implements Runnable {
+	
+	public static final int CHUNK_SHIFT = 8;
+	
+	private static final int BLOCK_SHIFT = 16;
+	private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+	
+	private static final int CLEAN = 0;
+	private static final int DIRTY = 1;
+	private static final int FLUSHED = 2;
+	
+	private final FileStore store;
+	private final long intervalNanos;
+	private final long thresholdChunks;
+	
+	private final AtomicLong markedChunks = new AtomicLong();
+	private volatile AtomicIntegerArray[] blocks = new AtomicIntegerArray[0];
+	
+	private final Thread thread;
+	private volatile boolean closed;
+	private volatile RuntimeException failure;
+	
+	/**
+	 * Starts the flusher
+	 * 
+	 * @param store
+	 * @param intervalMillis max time between flushes, 0 to flush only by the threshold
+	 * @param maxDirtyBytes threshold of marked bytes, 0 to flush only by the interval
+	 */
+	
+	public StoreFlusher(FileStore store, long intervalMillis, long maxDirtyBytes) {
+		Requires.nonNull(store, "store");
+		Requires.positive(intervalMillis, "intervalMillis");
+		Requires.positive(maxDirtyBytes, "maxDirtyBytes");
+		if (intervalMillis == 0 && maxDirtyBytes == 0) {
+			throw new IllegalArgumentException("interval or threshold of the flusher must be set");
+		}
+		
+		this.store = store;
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+		
+		long chunkBytes = (long) store.getPageSize() << CHUNK_SHIFT;
+		this.thresholdChunks = maxDirtyBytes == 0 ? Long.MAX_VALUE : Math.max(1, maxDirtyBytes / chunkBytes);
+		
+		ensureCapacity(store.getTotalPages());
+		
+		this.thread = new Thread(this, "StoreFlusher");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+	
+	/**
+	 * Marks the chunk of the page, called by the store on the change of the page
+	 * 
+	 * @param pageNum
+	 */
+	
+	public void mark(long pageNum) {
+		long chunk = pageNum >>> CHUNK_SHIFT;
+		AtomicIntegerArray block = blocks[(int) (chunk >>> BLOCK_SHIFT)];
+		int i = (int) chunk & BLOCK_MASK;
+		
+		if (block.get(i) != DIRTY && block.getAndSet(i, DIRTY) == CLEAN) {
+			if (markedChunks.incrementAndGet() == thresholdChunks) {
+				LockSupport.unpark(thread);
+			}
+		}
+	}
+	
+	/**
+	 * Extends marks to new pages, called by the store before new pages are published
+	 * 
+	 * @param totalPages
+	 */
+	
+	public synchronized void ensureCapacity(long totalPages) {
+		long chunks = (totalPages + (1 << CHUNK_SHIFT) - 1) >>> CHUNK_SHIFT;
+		int numBlocks = (int) ((chunks + BLOCK_MASK) >>> BLOCK_SHIFT);
+		
+		AtomicIntegerArray[] blocks = this.blocks;
+		if (numBlocks > blocks.length) {
+			AtomicIntegerArray[] newBlocks = new AtomicIntegerArray[numBlocks];
+			System.arraycopy(blocks, 0, newBlocks, 0, blocks.length);
+			for (int i = blocks.length; i != numBlocks; ++i) {
+				newBlocks[i] = new AtomicIntegerArray(1 << BLOCK_SHIFT);
+			}
+			this.blocks = newBlocks;
+		}
+	}
+	
+	public long getMarkedBytes() {
+		return markedChunks.get() * ((long) store.getPageSize() << CHUNK_SHIFT);
+	}
+	
+	/**
+	 * Flushes marked chunks, adjacent chunks are forced by one call
+	 * 
+	 * @return number of forced chunks
+	 */
+	
+	public synchronized long flush() {
+		AtomicIntegerArray[] blocks = this.blocks;
+		long totalPages = store.getTotalPages();
+		
+		long forced = 0;
+		long runFrom = -1;
+		long chunk = 0;
+		
+		for (AtomicIntegerArray block : blocks) {
+			for (int i = 0; i != block.length(); ++i, ++chunk) {
+				if (take(block, i)) {
+					if (runFrom == -1) {
+						runFrom = chunk;
+					}
+					forced++;
+				}
+				else if (runFrom != -1) {
+					force(runFrom, chunk, totalPages);
+					runFrom = -1;
+				}
+			}
+		}
+		
+		if (runFrom != -1) {
+			force(runFrom, chunk, totalPages);
+		}
+		return forced;
+	}
+	
+	/**
+	 * Stops the flusher after the last flush
+	 */
+	
+	public void close() {
+		closed = true;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		
+		RuntimeException failure = this.failure;
+		if (failure != null) {
+			throw new IllegalStateException("background flush failed", failure);
+		}
+	}
+	
+	@Override
+	public void run() {
+		while(!closed) {
+			if (intervalNanos == 0) {
+				LockSupport.park(this);
+			}
+			else {
+				LockSupport.parkNanos(this, intervalNanos);
+			}
+			if (closed) {
+				break;
+			}
+			try {
+				flush();
+			}
+			catch(RuntimeException e) {
+				failure = e;
+			}
+		}
+	}
+	
+	private void force(long chunkFrom, long chunkTo, long totalPages) {
+		long pageFrom = chunkFrom << CHUNK_SHIFT;
+		long pageTo = Math.min(chunkTo << CHUNK_SHIFT, totalPages);
+		if (pageFrom < pageTo) {
+			store.force(pageFrom, pageTo);
+		}
+	}
+	
+	/**
+	 * Moves the chunk to the next state of the flush
+	 * 
+	 * @return true if the chunk must be forced
+	 */
+	
+	private boolean take(AtomicIntegerArray block, int i) {
+		int state = block.get(i);
+		if (state == DIRTY) {
+			block.compareAndSet(i, DIRTY, FLUSHED);
+			return true;
+		}
+		if (state == FLUSHED) {
+			if (block.compareAndSet(i, FLUSHED, CLEAN)) {
+				markedChunks.decrementAndGet();
+			}
+			return true;
+		}
+		return false;
+	}
+
+}
@@ -1,9 +1,9 @@
 package alt.collections.tree.paging;
 
+import alt.collections.concurrent.Contention.Site;
 import alt.collections.concurrent.InnerRefCas;
 import alt.collections.concurrent.PageNumCas;
 import alt.collections.paging.Paging;
-import alt.collections.util.ThreadUtil;
 
 /**
  * Abstract Master Page
@@ -34,6 +34,7 @@ public abstract class AbstractMasterPage implements PageHeapSpace {
 	
 	@Override
 	public int tryAllocate(int size) {
+		int attempt = 0;
 		while(true) {
 			int tail = pageTail.getInnerRef();
 			if (tail + size > paging.getPageSize()) {
@@ -42,10 +43,15 @@ public abstract class AbstractMasterPage implements PageHeapSpace {
 			if (pageTail.casInnerRef(tail, tail + size)) {
 				return tail;
 			}
-			ThreadUtil.loopSleep();
+			paging.getContention().retry(Site.PAGE_HEAP, ++attempt);
 		}
 	}
 	
+	@Override
+	public int getFreeSize() {
+		return paging.getPageSize() - pageTail.getInnerRef();
+	}
+	
 	@Override
 	public PageNumCas getNextPageNum() {
 		return nextPageNum;
@@ -0,0 +1,309 @@
+package alt.collections.tree.paging;
+
+import java.util.Iterator;
+
+import alt.collections.paging.PageReader;
+import alt.collections.paging.PageWriter;
+import alt.collections.paging.Paging;
+import alt.collections.tree.Tree;
+import alt.collections.util.Requires;
+
+/**
+ * Builds the tree bottom-up from entries sorted in the key order
+ * 
+ * Leaf pages are filled up to the end of the page and allocated one after another,
+ * after that every level of inner pages is built from the first keys of the pages of the lower level.
+ * Levels of entries in the skip lists are assigned by position, every 4th entry goes up.
+ * 
+ * Pages are not reachable until the root is published, loader frees them if the build fails.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class BulkLoader {
+	
+	private final Paging paging;
+	private final PageManager pageManager;
+	private final PageReader pageReader;
+	
+	private Level[] levels = new Level[4];
+	private int height;
+	
+	public BulkLoader(Paging paging, PageManager pageManager) {
+		this.paging = paging;
+		this.pageManager = pageManager;
+		this.pageReader = new PageReader(paging);
+	}
+	
+	/**
+	 * Builds the tree, pages that were built are freed on exception
+	 * 
+	 * @param sortedEntries entries with unique keys in ascending order
+	 * @return root page of the tree or 0 if there are no entries
+	 */
+	
+	public long load(Iterator<? extends Tree.Entry<?, ?>> sortedEntries) {
+		
+		try {
+			
+			Level level = loadLeafs(sortedEntries);
+			
+			while(level.size > 1) {
+				level = loadInners(level);
+			}
+			
+			return level.size == 1 ? level.pages[0] : 0;
+		}
+		catch(RuntimeException e) {
+			free();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Frees all pages that were built by the loader, they must not be published
+	 */
+	
+	public void free() {
+		
+		if (height != 0) {
+			
+			Level leafs = levels[0];
+			for (int i = 0; i != leafs.size; ++i) {
+				pageReader.switchAddress(paging.getAddress(leafs.pages[i]));
+				LeafNodePage.freeDataPageValues(paging, pageReader, pageManager, false);
+			}
+		}
+		
+		for (int h = 0; h != height; ++h) {
+			Level level = levels[h];
+			for (int i = 0; i != level.size; ++i) {
+				pageManager.freePage(level.pages[i], false);
+			}
+		}
+		
+		height = 0;
+	}
+	
+	private Level loadLeafs(Iterator<? extends Tree.Entry<?, ?>> sortedEntries) {
+		
+		Level leafs = newLevel();
+		
+		int[] links = new int[LeafNodePage.MAX_LEVEL];
+		PageWriter pageWriter = null;
+		int index = 0;
+		
+		long lastAddress = 0;
+		int lastKeyPos = 0;
+		
+		while(sortedEntries.hasNext()) {
+			
+			Tree.Entry<?, ?> entry = sortedEntries.next();
+			Object key = PagingTree.writeKey(entry.getKey());
+			Object value = entry.getValue();
+			checkEntry(key, value);
+			
+			if (lastAddress != 0) {
+				pageReader.switchAddress(lastAddress);
+				pageReader.seek(lastKeyPos);
+				if (ValueHolder.compareTo(pageReader, key) >= 0) {
+					throw new PagingTreeException("keys are not in ascending order at the key " + entry.getKey());
+				}
+			}
+			
+			int level = levelOf(index);
+			int size = LeafNodePage.estimateEntrySize(paging, key, value, level);
+			
+			if (pageWriter == null || pageWriter.getPosition() + size > paging.getPageSize()) {
+				
+				if (pageWriter != null) {
+					LeafNodePage.finishBlank(paging, pageWriter);
+				}
+				
+				long pageNum = pageManager.allocatePage();
+				pageWriter = LeafNodePage.structBlank(paging, pageNum);
+				leafs.add(key, pageNum);
+				
+				for (int l = 0; l != LeafNodePage.MAX_LEVEL; ++l) {
+					links[l] = LeafNodePage.getHeadPos(paging, l);
+				}
+				index = 0;
+				level = levelOf(index);
+				size = LeafNodePage.estimateEntrySize(paging, key, value, level);
+			}
+			
+			if (LeafNodePage.isDataPageValue(paging, value)) {
+				value = DataPage.writeValue(paging, pageManager, value);
+			}
+			
+			int entryPos = LeafNodePage.writeEntry(paging, pageWriter, key, value, level);
+			int savePosition = LeafNodePage.align(paging, pageWriter.getPosition());
+			
+			for (int l = 0; l != level; ++l) {
+				pageWriter.seek(links[l]);
+				pageWriter.writeInnerRef(entryPos);
+				links[l] = LeafNodePage.getNextPos(paging, entryPos, l);
+			}
+			
+			pageWriter.seek(savePosition);
+			index++;
+			
+			lastAddress = paging.getAddress(leafs.pages[leafs.size - 1]);
+			lastKeyPos = LeafNodePage.getKeyPos(paging, entryPos);
+		}
+		
+		if (pageWriter != null) {
+			LeafNodePage.finishBlank(paging, pageWriter);
+		}
+		
+		return leafs;
+	}
+	
+	/**
+	 * Builds the level of inner pages, every page has at least two childs
+	 * 
+	 * Bounds of pages are planned before the write,
+	 * the last page takes one child from the previous page if it has only one.
+	 * 
+	 * @param childs
+	 * @return
+	 */
+	
+	private Level loadInners(Level childs) {
+		
+		int[] bounds = new int[8];
+		int count = 0;
+		
+		int start = 0;
+		while(start != childs.size) {
+			
+			int position = InnerNodePage.getHeapPos(paging);
+			int end = start + 1;
+			while(end != childs.size) {
+				int size = InnerNodePage.estimateEntrySize(paging, childs.keys[end], levelOf(end - start - 1));
+				if (position + size > paging.getPageSize()) {
+					break;
+				}
+				position += size;
+				end++;
+			}
+			
+			if (count == bounds.length) {
+				int[] newBounds = new int[bounds.length * 2];
+				System.arraycopy(bounds, 0, newBounds, 0, count);
+				bounds = newBounds;
+			}
+			bounds[count++] = end;
+			start = end;
+		}
+		
+		if (count > 1 && bounds[count - 1] - bounds[count - 2] == 1) {
+			bounds[count - 2]--;
+		}
+		
+		Level inners = newLevel();
+		int[] links = new int[InnerNodePage.MAX_LEVEL];
+		
+		start = 0;
+		for (int i = 0; i != count; ++i) {
+			
+			int end = bounds[i];
+			
+			long pageNum = pageManager.allocatePage();
+			PageWriter pageWriter = InnerNodePage.structBlank(paging, pageNum, childs.pages[end - 1]);
+			inners.add(childs.keys[start], pageNum);
+			
+			for (int l = 0; l != InnerNodePage.MAX_LEVEL; ++l) {
+				links[l] = InnerNodePage.getHeadPos(paging, l);
+			}
+			
+			for (int c = start + 1; c != end; ++c) {
+				
+				int level = levelOf(c - start - 1);
+				int entryPos = InnerNodePage.writeEntry(paging, pageWriter, childs.keys[c], childs.pages[c - 1], level);
+				int savePosition = pageWriter.getPosition();
+				
+				for (int l = 0; l != level; ++l) {
+					pageWriter.seek(links[l]);
+					pageWriter.writeInnerRef(entryPos);
+					links[l] = InnerNodePage.getNextPos(paging, entryPos, l);
+				}
+				
+				pageWriter.seek(savePosition);
+			}
+			
+			InnerNodePage.finishBlank(paging, pageWriter);
+			start = end;
+		}
+		
+		return inners;
+	}
+	
+	private void checkEntry(Object key, Object value) {
+		Requires.nonNull(key, "key");
+		Requires.nonNull(value, "value");
+		if (value instanceof MutableLongUpdater) {
+			throw new PagingTreeException("updater is not supported in the bulk load for the key " + key);
+		}
+		if (LeafNodePage.estimateEntrySize(paging, key, value) > LeafNodePage.getMaxEntrySize(paging) ||
+				InnerNodePage.estimateEntrySize(paging, key) > InnerNodePage.getMaxEntrySize(paging)) {
+			throw new PagingTreeException("too big entry for the key " + key);
+		}
+	}
+	
+	/**
+	 * Level of the entry in the skip list of the packed page
+	 * 
+	 * @param index of the entry in the page
+	 * @return level in range [1, MAX_LEVEL]
+	 */
+	
+	private static int levelOf(int index) {
+		int n = index + 1;
+		int level = 1;
+		while(level < LeafNodePage.MAX_LEVEL && (n & 3) == 0) {
+			n >>>= 2;
+			level++;
+		}
+		return level;
+	}
+	
+	private Level newLevel() {
+		if (height == levels.length) {
+			Level[] newLevels = new Level[levels.length * 2];
+			System.arraycopy(levels, 0, newLevels, 0, height);
+			levels = newLevels;
+		}
+		Level level = new Level();
+		levels[height++] = level;
+		return level;
+	}
+	
+	/**
+	 * Pages of the level with the first keys
+	 */
+	
+	private static final class Level {
+		
+		Object[] keys = new Object[16];
+		long[] pages = new long[16];
+		int size;
+		
+		void add(Object key, long pageNum) {
+			if (size == pages.length) {
+				Object[] newKeys = new Object[size * 2];
+				System.arraycopy(keys, 0, newKeys, 0, size);
+				keys = newKeys;
+				long[] newPages = new long[size * 2];
+				System.arraycopy(pages, 0, newPages, 0, size);
+				pages = newPages;
+			}
+			keys[size] = key;
+			pages[size] = pageNum;
+			size++;
+		}
+	
+	}
+
+}
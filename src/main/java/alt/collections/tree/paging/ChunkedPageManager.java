@@ -0,0 +1,157 @@
+package alt.collections.tree.paging;
+
+import java.lang.ref.WeakReference;
+
+import alt.collections.tree.paging.ProcessPage.ChunkSlot;
+
+/**
+ * Chunked Page Manager allocates new pages from the runs reserved by threads
+ * 
+ * Every thread reserves the run of pages at the end of the store by one CAS and takes pages from it
+ * without synchronization, pages of the writer are placed together in the store.
+ * 
+ * Free and reclaimed pages are detached to the chunk of the thread by batches of chunkPages in one critical section
+ * of the free list, the shared list is used only when the chunk is empty. Free pages are reused before
+ * the reservation of the new run.
+ * 
+ * Chunk is kept in the slot of the ProcessPage claimed by the thread, so reserved pages are not lost 
+ * if the process dies: the exclusive open of the store returns them to the free list, see MasterPage.getOrCreate.
+ * Slots of dead threads are freed and reused by new threads. Thread that finds no free slot 
+ * allocates pages from the master page.
+ * 
+ * Unused pages of chunks are returned to the free list by release, writers must be stopped before it.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class ChunkedPageManager implements PageManager {
+	
+	private final MasterPage masterPage;
+	private final int chunkPages;
+	
+	private final PageChunk[] chunks;
+	private final ThreadLocal<PageChunk> threadChunks;
+	
+	public ChunkedPageManager(MasterPage masterPage, int chunkPages) {
+		if (chunkPages < 1) {
+			throw new IllegalArgumentException("chunkPages must be positive " + chunkPages);
+		}
+		this.masterPage = masterPage;
+		this.chunkPages = chunkPages;
+		
+		ChunkSlot[] slots = masterPage.getChunkSlots();
+		this.chunks = new PageChunk[slots.length];
+		for (int i = 0; i != slots.length; ++i) {
+			chunks[i] = new PageChunk(slots[i]);
+		}
+		
+		this.threadChunks = new ThreadLocal<PageChunk>() {
+			
+			@Override
+			protected PageChunk initialValue() {
+				return claimChunk();
+			}
+		
+		};
+	}
+	
+	@Override
+	public long allocatePage() {
+		
+		PageChunk chunk = threadChunks.get();
+		if (chunk == null) {
+			return masterPage.allocatePage();
+		}
+		
+		ChunkSlot slot = chunk.slot;
+		
+		long pageNum = slot.freeHead.getPageNum();
+		if (pageNum == 0) {
+			
+			long next = slot.next.getPageNum();
+			if (next != slot.end.getPageNum()) {
+				slot.next.putPageNum(next + 1);
+				return next;
+			}
+			
+			pageNum = masterPage.allocateFreePages(chunkPages);
+			if (pageNum == 0) {
+				
+				long first = masterPage.reservePages(chunkPages);
+				if (first == 0) {
+					// tail of the store
+					return masterPage.allocatePage();
+				}
+				slot.next.putPageNum(first + 1);
+				slot.end.putPageNum(first + chunkPages);
+				return first;
+			}
+		}
+		
+		slot.freeHead.putPageNum(FreePage.getNextPage(masterPage.paging, pageNum));
+		return pageNum;
+	}
+	
+	@Override
+	public void freePage(long pageNum, boolean delay) {
+		masterPage.freePage(pageNum, delay);
+	}
+	
+	/**
+	 * Returns unused pages of all chunks to the free list and frees their slots
+	 */
+	
+	public synchronized void release() {
+		for (PageChunk chunk : chunks) {
+			if (chunk.thread != null) {
+				masterPage.freeChunk(chunk.slot);
+				chunk.thread = null;
+			}
+		}
+	}
+	
+	/**
+	 * Frees chunks of dead threads and claims the free slot for the current thread
+	 * 
+	 * @return chunk or null if there is no free slot
+	 */
+	
+	private synchronized PageChunk claimChunk() {
+		
+		for (PageChunk chunk : chunks) {
+			if (chunk.thread != null) {
+				Thread thread = chunk.thread.get();
+				if (thread == null || !thread.isAlive()) {
+					masterPage.freeChunk(chunk.slot);
+					chunk.thread = null;
+				}
+			}
+		}
+		
+		for (PageChunk chunk : chunks) {
+			if (chunk.slot.owner.casInt(0, 1)) {
+				chunk.thread = new WeakReference<Thread>(Thread.currentThread());
+				return chunk;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Slot of the thread, owner thread is guarded by the manager
+	 */
+	
+	private static final class PageChunk {
+		
+		final ChunkSlot slot;
+		WeakReference<Thread> thread;
+		
+		PageChunk(ChunkSlot slot) {
+			this.slot = slot;
+		}
+	
+	}
+
+}
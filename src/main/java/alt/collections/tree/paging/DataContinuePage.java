@@ -1,9 +1,12 @@
 package alt.collections.tree.paging;
 
+import alt.collections.paging.PageWriter;
+import alt.collections.paging.Paging;
+
 /**
  * Data Continue Page is using to store values that are bigger than Page size
  * 
- * [magic:char], [pageTail:innerRef] 
+ * [magic:char], [pageTail:innerRef], [nextPage:pageNum], [data:bytes]
  * 
  * @author Albert Shift
  *
@@ -11,4 +14,36 @@ package alt.collections.tree.paging;
 
 public final class DataContinuePage {
 
+	public static int getNextPagePos(Paging paging) {
+		return 2 + paging.getInnerRef().size();
+	}
+	
+	public static int getDataPos(Paging paging) {
+		return 2 + paging.getInnerRef().size() + paging.getPageNum().size();
+	}
+	
+	/**
+	 * Formats new page, writes header of the page.
+	 * 
+	 * @param paging
+	 * @param pageNum
+	 * @return page writer pointed to the data, page must be finished by DataPage.finishBlank
+	 */
+	
+	public static PageWriter structBlank(Paging paging, long pageNum) {
+		
+		PageWriter pageWriter = new PageWriter(paging, pageNum);
+		
+		// magic
+		pageWriter.writeChar(MagicCodes.DATA_CONTINUE.getMagic());
+		
+		// pageTail
+		pageWriter.writeInnerRef(0);
+		
+		// nextPage
+		pageWriter.writePageNum(0);
+		
+		return pageWriter;
+	}
+
 }
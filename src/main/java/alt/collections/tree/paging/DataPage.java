@@ -1,9 +1,28 @@
 package alt.collections.tree.paging;
 
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+import alt.collections.paging.PageReader;
+import alt.collections.paging.PageWriter;
+import alt.collections.paging.Paging;
+import alt.collections.util.Requires;
+
 /**
- * Data Page is using to store values that are bigger than 3/4 Page size
+ * Data Page is using to store values that do not fit inline in the LeafNode page
+ * 
+ * [magic:char], [pageTail:innerRef], [useCounter:int], [nextPage:pageNum], [data:bytes]
+ * 
+ * Value schema in the chain of the pages:
  * 
- * [magic:char], [pageTail:innerRef], [useCounter:int]
+ * [valueType:byte], [sizeInBytes:vLong], [value:bytes]
+ * 
+ * Value bytes are continued in DataContinuePage pages linked by [nextPage:pageNum],
+ * LeafNode page keeps only the reference to the first page of the chain.
+ * Pages are immutable after the reference is published,
+ * chain is freed with delay when the reference is replaced or removed.
+ * 
+ * STRING values are stored in UTF-8 encoding.
  * 
  * @author Albert Shift
  *
@@ -11,4 +30,365 @@ package alt.collections.tree.paging;
 
 public final class DataPage {
 
+	public static final int PAGE_TAIL_POS = 2;
+	
+	private static final char REPLACEMENT_CHAR = '\uFFFD';
+	
+	public static int getUseCounterPos(Paging paging) {
+		return 2 + paging.getInnerRef().size();
+	}
+	
+	public static int getNextPagePos(Paging paging) {
+		return 2 + paging.getInnerRef().size() + 4;
+	}
+	
+	public static int getDataPos(Paging paging) {
+		return 2 + paging.getInnerRef().size() + 4 + paging.getPageNum().size();
+	}
+	
+	/**
+	 * Size of the reference to the value that is stored in the DataPage
+	 * 
+	 * @param paging
+	 * @return
+	 */
+	
+	public static int estimateRefSize(Paging paging) {
+		return ValueHolder.VALUETYPE_SIZE + paging.getPageNum().size() + paging.getInnerRef().size();
+	}
+	
+	/**
+	 * Writes value to the new chain of pages
+	 * 
+	 * @param paging
+	 * @param pageManager
+	 * @param value STRING or BLOB
+	 * @return reference to the value
+	 */
+	
+	public static DataPageRef writeValue(Paging paging, PageManager pageManager, Object value) {
+		
+		ValueType vt = ValueHolder.detectValueType(value);
+		byte[] bytes;
+		if (vt == ValueType.STRING) {
+			bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+		}
+		else if (vt == ValueType.BLOB) {
+			bytes = (byte[]) value;
+		}
+		else {
+			throw new PagingTreeException("unsupported value type for the data page " + vt);
+		}
+		
+		long pageNum = pageManager.allocatePage();
+		PageWriter pageWriter = structBlank(paging, pageNum);
+		
+		int dataRef = pageWriter.getPosition();
+		pageWriter.writeByte(vt.getType());
+		pageWriter.writeVLong(bytes.length);
+		
+		int nextPagePos = getNextPagePos(paging);
+		int offset = 0;
+		while(true) {
+			
+			int length = Math.min(bytes.length - offset, paging.getPageSize() - pageWriter.getPosition());
+			pageWriter.writeBytesFrom(bytes, offset, length);
+			offset += length;
+			
+			finishBlank(paging, pageWriter);
+			
+			if (offset == bytes.length) {
+				break;
+			}
+			
+			long nextPageNum = pageManager.allocatePage();
+			pageWriter.seek(nextPagePos);
+			pageWriter.writePageNum(nextPageNum);
+			
+			pageWriter = DataContinuePage.structBlank(paging, nextPageNum);
+			nextPagePos = DataContinuePage.getNextPagePos(paging);
+		}
+		
+		return new DataPageRef(pageNum, dataRef);
+	}
+	
+	/**
+	 * Reads value from the chain of pages
+	 * 
+	 * @param paging
+	 * @param pageNum first page of the chain
+	 * @param dataRef position of the value in the first page
+	 * @return STRING or BLOB
+	 */
+	
+	public static Object readValue(Paging paging, long pageNum, int dataRef) {
+		
+		PageReader pageReader = new PageReader(paging, pageNum);
+		ValueType vt = seekValue(pageReader, pageNum, dataRef);
+		int sizeInBytes = (int) pageReader.readVLong();
+		Requires.positive(sizeInBytes, "sizeInBytes");
+		
+		byte[] bytes = new byte[sizeInBytes];
+		readBytesTo(paging, pageReader, sizeInBytes, bytes);
+		
+		if (vt == ValueType.STRING) {
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Copies bytes of the value to the buffer, STRING is copied in UTF-8 encoding
+	 * 
+	 * @param paging
+	 * @param pageReader is reused to walk through the chain
+	 * @param pageNum first page of the chain
+	 * @param dataRef position of the value in the first page
+	 * @param buffer is filled only if the value fits in it
+	 * @return size of the value in bytes
+	 */
+	
+	public static int readValueTo(Paging paging, PageReader pageReader, long pageNum, int dataRef, byte[] buffer) {
+		
+		pageReader.switchAddress(paging.getAddress(pageNum));
+		seekValue(pageReader, pageNum, dataRef);
+		int sizeInBytes = (int) pageReader.readVLong();
+		Requires.positive(sizeInBytes, "sizeInBytes");
+		
+		if (sizeInBytes <= buffer.length) {
+			readBytesTo(paging, pageReader, sizeInBytes, buffer);
+		}
+		
+		return sizeInBytes;
+	}
+	
+	/**
+	 * Decodes STRING value to the buffer
+	 * 
+	 * @param paging
+	 * @param pageReader is reused to walk through the chain
+	 * @param pageNum first page of the chain
+	 * @param dataRef position of the value in the first page
+	 * @param buffer
+	 * @return number of decoded chars
+	 */
+	
+	public static int readCharsTo(Paging paging, PageReader pageReader, long pageNum, int dataRef, CharBuffer buffer) {
+		
+		pageReader.switchAddress(paging.getAddress(pageNum));
+		ValueType vt = seekValue(pageReader, pageNum, dataRef);
+		if (vt != ValueType.STRING) {
+			throw new PagingTreeException("value in the data page " + pageNum + " is not a STRING");
+		}
+		int sizeInBytes = (int) pageReader.readVLong();
+		Requires.positive(sizeInBytes, "sizeInBytes");
+		
+		int startPosition = buffer.position();
+		int codePoint = 0;
+		int pending = 0;
+		
+		int nextPagePos = getNextPagePos(paging);
+		int offset = 0;
+		while(true) {
+			
+			int length = Math.min(sizeInBytes - offset, getPageTail(pageReader) - pageReader.getPosition());
+			for (int i = 0; i != length; ++i) {
+				
+				int b = pageReader.readByte() & 0xFF;
+				
+				if (pending != 0 && (b & 0xC0) == 0x80) {
+					codePoint = codePoint << 6 | b & 0x3F;
+					if (--pending == 0) {
+						putCodePoint(buffer, codePoint);
+					}
+					continue;
+				}
+				
+				if (pending != 0) {
+					// truncated sequence
+					buffer.put(REPLACEMENT_CHAR);
+					pending = 0;
+				}
+				
+				if (b < 0x80) {
+					buffer.put((char) b);
+				}
+				else if ((b >> 5) == 0x06) {
+					codePoint = b & 0x1F;
+					pending = 1;
+				}
+				else if ((b >> 4) == 0x0E) {
+					codePoint = b & 0x0F;
+					pending = 2;
+				}
+				else if ((b >> 3) == 0x1E) {
+					codePoint = b & 0x07;
+					pending = 3;
+				}
+				else {
+					buffer.put(REPLACEMENT_CHAR);
+				}
+			}
+			offset += length;
+			
+			if (offset == sizeInBytes) {
+				break;
+			}
+			
+			nextPagePos = switchToNextPage(paging, pageReader, nextPagePos, sizeInBytes, offset);
+		}
+		
+		if (pending != 0) {
+			buffer.put(REPLACEMENT_CHAR);
+		}
+		
+		return buffer.position() - startPosition;
+	}
+	
+	private static void putCodePoint(CharBuffer buffer, int codePoint) {
+		if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+			buffer.put(Character.highSurrogate(codePoint));
+			buffer.put(Character.lowSurrogate(codePoint));
+		}
+		else {
+			buffer.put((char) codePoint);
+		}
+	}
+	
+	private static ValueType seekValue(PageReader pageReader, long pageNum, int dataRef) {
+		checkMagic(pageReader, MagicCodes.DATA, pageNum);
+		pageReader.seek(dataRef);
+		return ValueHolder.getValueType(pageReader);
+	}
+	
+	private static void readBytesTo(Paging paging, PageReader pageReader, int sizeInBytes, byte[] bytes) {
+		
+		int nextPagePos = getNextPagePos(paging);
+		int offset = 0;
+		while(true) {
+			
+			int length = Math.min(sizeInBytes - offset, getPageTail(pageReader) - pageReader.getPosition());
+			pageReader.readBytesTo(bytes, offset, length);
+			offset += length;
+			
+			if (offset == sizeInBytes) {
+				break;
+			}
+			
+			nextPagePos = switchToNextPage(paging, pageReader, nextPagePos, sizeInBytes, offset);
+		}
+		
+	}
+	
+	private static int getPageTail(PageReader pageReader) {
+		int dataPos = pageReader.getPosition();
+		pageReader.seek(PAGE_TAIL_POS);
+		int pageTail = pageReader.readInnerRef();
+		pageReader.seek(dataPos);
+		return pageTail;
+	}
+	
+	/**
+	 * Switches reader to the data of the next page in the chain
+	 * 
+	 * @return position of the nextPage in the new page
+	 */
+	
+	private static int switchToNextPage(Paging paging, PageReader pageReader, int nextPagePos, int sizeInBytes, int offset) {
+		
+		pageReader.seek(nextPagePos);
+		long pageNum = pageReader.readPageNum();
+		if (pageNum == 0) {
+			throw new PagingTreeException("broken chain of data pages, expected " + sizeInBytes + " bytes, found " + offset);
+		}
+		
+		pageReader.switchAddress(paging.getAddress(pageNum));
+		checkMagic(pageReader, MagicCodes.DATA_CONTINUE, pageNum);
+		pageReader.seek(DataContinuePage.getDataPos(paging));
+		return DataContinuePage.getNextPagePos(paging);
+	}
+	
+	/**
+	 * Frees the chain of pages
+	 * 
+	 * @param paging
+	 * @param pageManager
+	 * @param pageNum first page of the chain
+	 * @param delay true if the value could be used by readers
+	 */
+	
+	public static void freeValue(Paging paging, PageManager pageManager, long pageNum, boolean delay) {
+		
+		PageReader pageReader = new PageReader(paging, pageNum);
+		checkMagic(pageReader, MagicCodes.DATA, pageNum);
+		
+		int nextPagePos = getNextPagePos(paging);
+		while(pageNum != 0) {
+			
+			pageReader.seek(nextPagePos);
+			long nextPageNum = pageReader.readPageNum();
+			
+			pageManager.freePage(pageNum, delay);
+			
+			pageNum = nextPageNum;
+			if (pageNum != 0) {
+				pageReader.switchAddress(paging.getAddress(pageNum));
+				checkMagic(pageReader, MagicCodes.DATA_CONTINUE, pageNum);
+				nextPagePos = DataContinuePage.getNextPagePos(paging);
+			}
+		}
+	
+	}
+	
+	/**
+	 * Formats new page, writes header of the page.
+	 * 
+	 * @param paging
+	 * @param pageNum
+	 * @return page writer pointed to the data, page must be finished by finishBlank
+	 */
+	
+	public static PageWriter structBlank(Paging paging, long pageNum) {
+		
+		PageWriter pageWriter = new PageWriter(paging, pageNum);
+		
+		// magic
+		pageWriter.writeChar(MagicCodes.DATA.getMagic());
+		
+		// pageTail
+		pageWriter.writeInnerRef(0);
+		
+		// useCounter
+		pageWriter.writeInt(1);
+		
+		// nextPage
+		pageWriter.writePageNum(0);
+		
+		return pageWriter;
+	}
+	
+	/**
+	 * Writes pageTail of the DataPage or DataContinuePage
+	 * 
+	 * @param paging
+	 * @param pageWriter must be pointed to the tail of the data
+	 */
+	
+	public static void finishBlank(Paging paging, PageWriter pageWriter) {
+		
+		int tail = pageWriter.getPosition();
+		pageWriter.seek(PAGE_TAIL_POS);
+		pageWriter.writeInnerRef(tail);
+		pageWriter.seek(tail);
+	
+	}
+	
+	private static void checkMagic(PageReader pageReader, MagicCodes magicCode, long pageNum) {
+		pageReader.reset();
+		char magic = pageReader.readChar();
+		if (magic != magicCode.getMagic()) {
+			throw new PagingTreeException("unexpected magic " + Integer.toHexString(magic) + " for data page " + pageNum);
+		}
+	}
+
 }
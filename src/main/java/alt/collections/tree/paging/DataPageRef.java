@@ -0,0 +1,28 @@
+package alt.collections.tree.paging;
+
+/**
+ * Reference to the value stored in the chain of data pages
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class DataPageRef {
+	
+	private final long pageNum;
+	private final int dataRef;
+	
+	public DataPageRef(long pageNum, int dataRef) {
+		this.pageNum = pageNum;
+		this.dataRef = dataRef;
+	}
+	
+	public long getPageNum() {
+		return pageNum;
+	}
+	
+	public int getDataRef() {
+		return dataRef;
+	}
+
+}
@@ -0,0 +1,66 @@
+package alt.collections.tree.paging;
+
+import alt.collections.paging.PageReader;
+import alt.collections.paging.PageWriter;
+import alt.collections.paging.Paging;
+
+/**
+ * Free Page is the element of the free list of the store, page can be allocated again
+ * 
+ * [magic:char], [pageTail:innerRef], [nextPage:pageNum]
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class FreePage {
+	
+	public static int getNextPagePos(Paging paging) {
+		return 2 + paging.getInnerRef().size();
+	}
+	
+	/**
+	 * Formats free page
+	 * 
+	 * @param paging
+	 * @param pageNum
+	 * @param nextPage next free page or 0
+	 */
+	
+	public static void structBlank(Paging paging, long pageNum, long nextPage) {
+		
+		PageWriter pageWriter = new PageWriter(paging, pageNum);
+		
+		// magic
+		pageWriter.writeChar(MagicCodes.FREE.getMagic());
+		
+		// pageTail
+		pageWriter.writeInnerRef(getNextPagePos(paging) + paging.getPageNum().size());
+		
+		// nextPage
+		pageWriter.writePageNum(nextPage);
+	
+	}
+	
+	/**
+	 * Reads next page of the free list
+	 * 
+	 * @param paging
+	 * @param pageNum free page
+	 * @return next free page or 0
+	 */
+	
+	public static long getNextPage(Paging paging, long pageNum) {
+		
+		PageReader pageReader = new PageReader(paging, pageNum);
+		
+		char magic = pageReader.readChar();
+		if (magic != MagicCodes.FREE.getMagic()) {
+			throw new PagingTreeException("unexpected magic " + Integer.toHexString(magic) + " for free page " + pageNum);
+		}
+		
+		pageReader.seek(getNextPagePos(paging));
+		return pageReader.readPageNum();
+	}
+
+}
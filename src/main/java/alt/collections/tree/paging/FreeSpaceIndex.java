@@ -0,0 +1,118 @@
+package alt.collections.tree.paging;
+
+/**
+ * Free Space Index finds the page of the virtual space that has enough free space
+ * 
+ * Index is the max tree over pages: leaf keeps the free size of the page, inner node keeps the max of childs.
+ * Search goes to the first page that fits in O(log pages) instead of the scan of all pages.
+ * 
+ * Free space of the heap page only decreases, index keeps the upper bound of it.
+ * Stale value is corrected after the failed allocation in the page, that is why
+ * the index can be shared by threads without locks, only adding of pages is synchronized.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class FreeSpaceIndex {
+	
+	private volatile int[] tree = new int[2 * 8];
+	private volatile int pages;
+	
+	public int getPages() {
+		return pages;
+	}
+	
+	/**
+	 * Adds the page to the end of the index
+	 * 
+	 * @param freeSize
+	 * @return index of the page
+	 */
+	
+	public synchronized int addPage(int freeSize) {
+		
+		int page = pages;
+		int[] tree = this.tree;
+		int capacity = tree.length / 2;
+		
+		if (page == capacity) {
+			int[] newTree = new int[tree.length * 2];
+			System.arraycopy(tree, capacity, newTree, 2 * capacity, capacity);
+			for (int node = 2 * capacity - 1; node != 0; --node) {
+				newTree[node] = Math.max(newTree[2 * node], newTree[2 * node + 1]);
+			}
+			tree = newTree;
+			this.tree = newTree;
+		}
+		
+		update(tree, page, freeSize);
+		pages = page + 1;
+		return page;
+	}
+	
+	/**
+	 * Sets the free size of the page after the allocation
+	 * 
+	 * @param page
+	 * @param freeSize
+	 */
+	
+	public void update(int page, int freeSize) {
+		update(tree, page, freeSize);
+	}
+	
+	/**
+	 * Finds the first page that could have enough free space
+	 * 
+	 * @param size
+	 * @return index of the page or -1 if there is no page with enough free space
+	 */
+	
+	public int find(int size) {
+		
+		while(true) {
+			
+			int[] tree = this.tree;
+			int capacity = tree.length / 2;
+			
+			if (tree[1] < size) {
+				return -1;
+			}
+			
+			int node = 1;
+			while(node < capacity) {
+				if (tree[2 * node] >= size) {
+					node = 2 * node;
+				}
+				else if (tree[2 * node + 1] >= size) {
+					node = 2 * node + 1;
+				}
+				else {
+					// stale bound of the inner node
+					break;
+				}
+			}
+			
+			if (node >= capacity) {
+				return node - capacity;
+			}
+			
+			fix(tree, node);
+		}
+	
+	}
+	
+	private static void update(int[] tree, int page, int freeSize) {
+		int node = tree.length / 2 + page;
+		tree[node] = freeSize;
+		fix(tree, node / 2);
+	}
+	
+	private static void fix(int[] tree, int node) {
+		for (; node != 0; node /= 2) {
+			tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+		}
+	}
+
+}
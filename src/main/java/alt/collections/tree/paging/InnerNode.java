@@ -1,5 +1,11 @@
 package alt.collections.tree.paging;
 
+import java.io.PrintStream;
+
+import alt.collections.paging.PageReader;
+import alt.collections.paging.PageWriter;
+import alt.collections.paging.Paging;
+
 /**
  * Stateless Service class that encapsulate high-level scope algorithms that are working in InnerNode
  * 
@@ -9,4 +15,175 @@ package alt.collections.tree.paging;
 
 public final class InnerNode {
 
+	private Paging paging;
+	
+	public InnerNode(Paging paging) {
+		this.paging = paging;
+	}
+	
+	/**
+	 * Finds child page for the key
+	 * 
+	 * @param pageReader
+	 * @param key
+	 * @return pageNum of the child page
+	 */
+	
+	public long findChild(PageReader pageReader, Object key) {
+		return InnerNodePage.findChild(paging, pageReader, key);
+	}
+	
+	/**
+	 * Replaces child page by the split, writer must enter to the gate of the page
+	 * 
+	 * @param pageReader
+	 * @param key is any key of the child page
+	 * @param childPageNum
+	 * @param split
+	 * @return false if there is no space in the page
+	 */
+	
+	public boolean replaceChild(PageReader pageReader, Object key, long childPageNum, Split split) {
+		
+		PageWriter pageWriter = new PageWriter(pageReader);
+		
+		if (split.isReplace()) {
+			int childPos = InnerNodePage.searchChild(paging, pageReader, key);
+			if (!InnerNodePage.tryUpdateChild(paging, pageWriter, childPos, childPageNum, split.getLesserPageNum())) {
+				throw new PagingTreeException("child page " + childPageNum + " not found for the key " + key);
+			}
+			return true;
+		}
+		
+		int level = LeafNodePage.randomLevel();
+		int requiredSize = InnerNodePage.estimateEntrySize(paging, split.getKey(), level);
+		
+		int allocatedPos = InnerNodePage.tryAllocate(paging, pageReader, requiredSize);
+		
+		if (allocatedPos == -1) {
+			return false;
+		}
+		
+		pageWriter.seek(allocatedPos);
+		int entryPos = InnerNodePage.writeEntry(paging, pageWriter, split.getKey(), split.getLesserPageNum(), level);
+		
+		int[] links = new int[2 * InnerNodePage.MAX_LEVEL];
+		while(true) {
+			if (InnerNodePage.search(paging, pageReader, split.getKey(), links) < 0) {
+				throw new PagingTreeException("duplicate key in the inner node " + split.getKey());
+			}
+			if (InnerNodePage.tryLinkEntry(paging, pageReader, links, entryPos, split.getKey())) {
+				break;
+			}
+		}
+		
+		// readers that missed the new entry must not see the new child
+		InnerNodePage.incrementVersion(paging, pageReader);
+		
+		// keys greater or equals to the split key are still in the old child
+		int childPos = InnerNodePage.searchChild(paging, pageReader, split.getKey());
+		if (!InnerNodePage.tryUpdateChild(paging, pageWriter, childPos, childPageNum, split.getGreaterPageNum())) {
+			throw new PagingTreeException("child page " + childPageNum + " not found for the key " + split.getKey());
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Copies entries of the frozen page to the new pages.
+	 * 
+	 * Middle entry is moving to the parent page.
+	 * 
+	 * @param pageReader frozen page
+	 * @param pageManager
+	 * @return split
+	 */
+	
+	public Split split(PageReader pageReader, PageManager pageManager) {
+		
+		int[] entries = InnerNodePage.collectEntries(paging, pageReader);
+		
+		pageReader.seek(InnerNodePage.getLastChildPos(paging));
+		long lastChild = pageReader.readPageNum();
+		
+		if (entries.length == 0) {
+			long pageNum = pageManager.allocatePage();
+			copyEntries(pageReader, entries, 0, 0, lastChild, pageNum);
+			return new Split(pageNum);
+		}
+		
+		int middle = entries.length / 2;
+		
+		pageReader.seek(InnerNodePage.getLesserChildPos(paging, entries[middle]));
+		long middleChild = pageReader.readPageNum();
+		pageReader.seek(InnerNodePage.getKeyPos(paging, entries[middle]));
+		Object key = ValueHolder.readValue(pageReader);
+		
+		long lesserPageNum = pageManager.allocatePage();
+		copyEntries(pageReader, entries, 0, middle, middleChild, lesserPageNum);
+		
+		long greaterPageNum = pageManager.allocatePage();
+		copyEntries(pageReader, entries, middle + 1, entries.length, lastChild, greaterPageNum);
+		
+		return new Split(lesserPageNum, key, greaterPageNum);
+	}
+	
+	/**
+	 * Collects child references of the page in the key order
+	 * 
+	 * @param pageReader
+	 * @return lesser childs of entries and the last child
+	 */
+	
+	public long[] getChilds(PageReader pageReader) {
+		
+		int[] entries = InnerNodePage.collectEntries(paging, pageReader);
+		long[] childs = new long[entries.length + 1];
+		
+		for (int i = 0; i != entries.length; ++i) {
+			pageReader.seek(InnerNodePage.getLesserChildPos(paging, entries[i]));
+			childs[i] = pageReader.readPageNum();
+		}
+		
+		pageReader.seek(InnerNodePage.getLastChildPos(paging));
+		childs[entries.length] = pageReader.readPageNum();
+		
+		return childs;
+	}
+	
+	private void copyEntries(PageReader pageReader, int[] entries, int from, int to, long lastChild, long pageNum) {
+		PageWriter pageWriter = InnerNodePage.structBlank(paging, pageNum, lastChild);
+		InnerNodePage.copyEntries(paging, pageReader, entries, from, to, pageWriter);
+		InnerNodePage.finishBlank(paging, pageWriter);
+	}
+	
+	/**
+	 * Prints child references of the page
+	 * 
+	 * @param pageReader
+	 * @param pageNum
+	 * @param ps
+	 * @return child pages
+	 */
+	
+	public long[] printChilds(PageReader pageReader, long pageNum, PrintStream ps) {
+		
+		int[] entries = InnerNodePage.collectEntries(paging, pageReader);
+		long[] childs = new long[entries.length + 1];
+		
+		for (int i = 0; i != entries.length; ++i) {
+			pageReader.seek(InnerNodePage.getLesserChildPos(paging, entries[i]));
+			childs[i] = pageReader.readPageNum();
+			pageReader.seek(InnerNodePage.getKeyPos(paging, entries[i]));
+			Object key = ValueHolder.readValue(pageReader);
+			ps.println("\"page" + pageNum + "\" -> \"page" + childs[i] + "\" [label=\"<" + key + "\"]");
+		}
+		
+		pageReader.seek(InnerNodePage.getLastChildPos(paging));
+		childs[entries.length] = pageReader.readPageNum();
+		ps.println("\"page" + pageNum + "\" -> \"page" + childs[entries.length] + "\"");
+		
+		return childs;
+	}
+
 }
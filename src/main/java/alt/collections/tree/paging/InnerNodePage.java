@@ -1,14 +1,33 @@
 package alt.collections.tree.paging;
 
+import alt.collections.concurrent.Contention.Site;
+import alt.collections.concurrent.InnerRefCas;
+import alt.collections.concurrent.IntegerCas;
+import alt.collections.concurrent.PageNumCas;
+import alt.collections.concurrent.WriterGate;
+import alt.collections.paging.PageReader;
+import alt.collections.paging.PageWriter;
+import alt.collections.paging.Paging;
+
 /**
  * InnerNode Page stores only Keys and childs
  * 
- * [magic:char], [pageTail:innerRef], [lastChild:pageNum], [heapSpace:heap]
+ * [magic:char], [pageTail:innerRef], [head:innerRef * MAX_LEVEL], [writers:int], [version:int], [lastChild:pageNum], [heapSpace:heap]
  * 
  * Entry schema:
  * 
- * [lesser:innerRef], [greater:innerRef], [lesserChild:pageNum], [keyType:byte], [keySize:vLong:optional], [key:bytes]
- * [lesser:innerRef], [greater:innerRef], [lesserChild:pageNum], [keyType:byte], [dataPage:pageNum]
+ * [next:innerRef * level], [lesserChild:pageNum], [level:byte], [key:valueHolder]
+ * 
+ * Entries are organized in the skip list sorted by keys in the same way as in the LeafNode page,
+ * entry position points to the [lesserChild:pageNum]. Entries are aligned by the size of pageNum,
+ * CAS of the child never crosses the cache line.
+ * 
+ * Child page that stores the key is the lesserChild of the minimum entry greater than the key,
+ * or the lastChild if there is no such entry.
+ * 
+ * Writer increments [version:int] between linking of the new entry and update of the child,
+ * readers repeat the search if the version was changed, otherwise the reader could miss the new entry
+ * and see the new child at the same time.
  * 
  * @author Albert Shift
  *
@@ -16,4 +35,677 @@ package alt.collections.tree.paging;
 
 public final class InnerNodePage {
 
+	public static final int PAGE_TAIL_POS = 2;
+	public static final int MAX_LEVEL = LeafNodePage.MAX_LEVEL;
+	
+	public static int getHeadPos(Paging paging, int level) {
+		return 2 + paging.getInnerRef().size() * (1 + level);
+	}
+	
+	public static int getWritersPos(Paging paging) {
+		return 2 + paging.getInnerRef().size() * (1 + MAX_LEVEL);
+	}
+	
+	public static int getVersionPos(Paging paging) {
+		return 2 + paging.getInnerRef().size() * (1 + MAX_LEVEL) + 4;
+	}
+	
+	public static int getLastChildPos(Paging paging) {
+		return 2 + paging.getInnerRef().size() * (1 + MAX_LEVEL) + 8;
+	}
+	
+	public static int getHeapPos(Paging paging) {
+		return align(paging, getLastChildPos(paging) + paging.getPageNum().size());
+	}
+	
+	public static int getLesserChildPos(Paging paging, int entryPos) {
+		return entryPos;
+	}
+	
+	public static int getNextPos(Paging paging, int entryPos, int level) {
+		return entryPos - paging.getInnerRef().size() * (1 + level);
+	}
+	
+	public static int getLevel(Paging paging, PageReader pageReader, int entryPos) {
+		pageReader.seek(entryPos + paging.getPageNum().size());
+		return pageReader.readByte();
+	}
+	
+	public static int getKeyPos(Paging paging, int entryPos) {
+		return entryPos + paging.getPageNum().size() + 1;
+	}
+	
+	/**
+	 * Estimates size of the entry with the maximum level
+	 * 
+	 * @param paging
+	 * @param key
+	 * @return
+	 */
+	
+	public static int estimateEntrySize(Paging paging, Object key) {
+		return estimateEntrySize(paging, key, MAX_LEVEL);
+	}
+	
+	public static int estimateEntrySize(Paging paging, Object key, int level) {
+		return align(paging, align(paging, paging.getInnerRef().size() * level) + paging.getPageNum().size() + 1 + ValueHolder.estimateSize(key));
+	}
+	
+	/**
+	 * Aligns size or position of the heap block by the size of pageNum
+	 * 
+	 * @param paging
+	 * @param size
+	 * @return
+	 */
+	
+	public static int align(Paging paging, int size) {
+		int mask = paging.getPageNum().size() - 1;
+		return (size + mask) & ~mask;
+	}
+	
+	/**
+	 * Max size of the entry, any two entries must fit to the blank page
+	 * 
+	 * @param paging
+	 * @return
+	 */
+	
+	public static int getMaxEntrySize(Paging paging) {
+		return (paging.getPageSize() - getHeapPos(paging)) / 2;
+	}
+	
+	public static WriterGate getWriterGate(Paging paging, PageReader pageReader) {
+		pageReader.seek(getWritersPos(paging));
+		return new WriterGate(pageReader.readIntegerCas(), paging.getContention());
+	}
+	
+	/**
+	 * Searches child page for the key
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @param key
+	 * @return position of the child pageNum
+	 */
+	
+	public static int searchChild(Paging paging, PageReader pageReader, Object key) {
+		
+		int greaterPos = search(paging, pageReader, key, null);
+		
+		if (greaterPos > 0) {
+			return getLesserChildPos(paging, greaterPos);
+		}
+		
+		return getLastChildPos(paging);
+	}
+	
+	/**
+	 * Searches the minimum entry greater than the key and collects links to add new entry.
+	 * 
+	 * links[level] is the position of the next innerRef of the last entry lesser than the key (or head),
+	 * links[MAX_LEVEL + level] is the entry that was found in this innerRef. 
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @param key
+	 * @param links null or array of size 2 * MAX_LEVEL
+	 * @return positive - is the position of the minimum entry greater than the key
+	 *         zero - there is no such entry
+	 *         negative - is the position of the entry equals to the key, only if links are collected
+	 */
+	
+	public static int search(Paging paging, PageReader pageReader, Object key, int[] links) {
+		
+		int predPos = 0;
+		int greaterPos = 0;
+		
+		for (int level = MAX_LEVEL - 1; level >= 0; --level) {
+			
+			int linkPos = predPos == 0 ? getHeadPos(paging, level) : getNextPos(paging, predPos, level);
+			
+			while(true) {
+				
+				pageReader.seek(linkPos);
+				int entryPos = pageReader.readInnerRef();
+				
+				if (entryPos == 0 || entryPos == greaterPos) {
+					// already compared on the upper level
+					greaterPos = entryPos;
+					break;
+				}
+				
+				pageReader.seek(getKeyPos(paging, entryPos));
+				int c = ValueHolder.compareTo(pageReader, key);
+				
+				if (c > 0) {
+					greaterPos = entryPos;
+					break;
+				}
+				
+				if (c == 0 && links != null) {
+					return -entryPos;
+				}
+				
+				predPos = entryPos;
+				linkPos = getNextPos(paging, entryPos, level);
+			}
+			
+			if (links != null) {
+				links[level] = linkPos;
+				links[MAX_LEVEL + level] = greaterPos;
+			}
+		}
+		
+		return greaterPos;
+	}
+	
+	/**
+	 * Searches the maximum entry lesser than the key
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @param key or null to find the last entry
+	 * @return position of the entry or 0 if there is no such entry
+	 */
+	
+	public static int searchLesser(Paging paging, PageReader pageReader, Object key) {
+		
+		int predPos = 0;
+		
+		for (int level = MAX_LEVEL - 1; level >= 0; --level) {
+			
+			int linkPos = predPos == 0 ? getHeadPos(paging, level) : getNextPos(paging, predPos, level);
+			
+			while(true) {
+				
+				pageReader.seek(linkPos);
+				int entryPos = pageReader.readInnerRef();
+				
+				if (entryPos == 0) {
+					break;
+				}
+				
+				if (key != null) {
+					pageReader.seek(getKeyPos(paging, entryPos));
+					if (ValueHolder.compareTo(pageReader, key) >= 0) {
+						break;
+					}
+				}
+				
+				predPos = entryPos;
+				linkPos = getNextPos(paging, entryPos, level);
+			}
+		}
+		
+		return predPos;
+	}
+	
+	/**
+	 * Finds child page for the cursor.
+	 * 
+	 * Forward cursor needs the child that contains the key and the minimum entry greater than the key,
+	 * that is the first key of the next child.
+	 * Reverse cursor needs the child that contains keys lesser than the key and the maximum entry lesser than the key,
+	 * that is the first key of this child.
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @param key or null for the first child (forward) or the last child (reverse)
+	 * @param reverse
+	 * @param bound bound[0] is the position of the entry that bounds the child or 0
+	 * @return pageNum of the child
+	 */
+	
+	public static long findCursorChild(Paging paging, PageReader pageReader, Object key, boolean reverse, int[] bound) {
+		
+		pageReader.seek(getVersionPos(paging));
+		IntegerCas version = pageReader.readIntegerCas();
+		
+		while(true) {
+			
+			int startVersion = version.getIntVolatile();
+			
+			int childEntryPos;
+			if (reverse) {
+				bound[0] = searchLesser(paging, pageReader, key);
+				pageReader.seek(bound[0] == 0 ? getHeadPos(paging, 0) : getNextPos(paging, bound[0], 0));
+				childEntryPos = pageReader.readInnerRef();
+			}
+			else if (key != null) {
+				childEntryPos = search(paging, pageReader, key, null);
+				bound[0] = childEntryPos;
+			}
+			else {
+				pageReader.seek(getHeadPos(paging, 0));
+				childEntryPos = pageReader.readInnerRef();
+				bound[0] = childEntryPos;
+			}
+			
+			pageReader.seek(childEntryPos != 0 ? getLesserChildPos(paging, childEntryPos) : getLastChildPos(paging));
+			long childPageNum = pageReader.readPageNum();
+			
+			if (version.getIntVolatile() == startVersion) {
+				return childPageNum;
+			}
+		}
+	}
+	
+	/**
+	 * Finds child page for the key
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @param key
+	 * @return pageNum of the child
+	 */
+	
+	public static long findChild(Paging paging, PageReader pageReader, Object key) {
+		
+		int versionPos = getVersionPos(paging);
+		
+		while(true) {
+			
+			pageReader.seek(versionPos);
+			int startVersion = pageReader.readIntVolatile();
+			
+			int childPos = searchChild(paging, pageReader, key);
+			pageReader.seek(childPos);
+			long childPageNum = pageReader.readPageNum();
+			
+			pageReader.seek(versionPos);
+			if (pageReader.readIntVolatile() == startVersion) {
+				return childPageNum;
+			}
+		}
+	}
+	
+	/**
+	 * Finds child page for the key and the entries that bound the child.
+	 * 
+	 * Child contains keys in the range [bounds[0], bounds[1]), 
+	 * bounds[0] is the maximum entry lesser or equals to the key, bounds[1] is the minimum entry greater than the key.
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @param key
+	 * @param bounds positions of the entries or 0 if the child is not bounded in this page
+	 * @return pageNum of the child
+	 */
+	
+	public static long findChildBounds(Paging paging, PageReader pageReader, Object key, int[] bounds) {
+		
+		int versionPos = getVersionPos(paging);
+		
+		while(true) {
+			
+			pageReader.seek(versionPos);
+			int startVersion = pageReader.readIntVolatile();
+			
+			int predPos = 0;
+			int greaterPos = 0;
+			
+			for (int level = MAX_LEVEL - 1; level >= 0; --level) {
+				
+				int linkPos = predPos == 0 ? getHeadPos(paging, level) : getNextPos(paging, predPos, level);
+				
+				while(true) {
+					
+					pageReader.seek(linkPos);
+					int entryPos = pageReader.readInnerRef();
+					
+					if (entryPos == 0 || entryPos == greaterPos) {
+						// already compared on the upper level
+						break;
+					}
+					
+					pageReader.seek(getKeyPos(paging, entryPos));
+					if (ValueHolder.compareTo(pageReader, key) > 0) {
+						greaterPos = entryPos;
+						break;
+					}
+					
+					predPos = entryPos;
+					linkPos = getNextPos(paging, entryPos, level);
+				}
+			}
+			
+			pageReader.seek(greaterPos != 0 ? getLesserChildPos(paging, greaterPos) : getLastChildPos(paging));
+			long childPageNum = pageReader.readPageNum();
+			
+			pageReader.seek(versionPos);
+			if (pageReader.readIntVolatile() == startVersion) {
+				bounds[0] = predPos;
+				bounds[1] = greaterPos;
+				return childPageNum;
+			}
+		}
+	}
+	
+	/**
+	 * Increments version of the page, must be called after linking of the new entry and before update of the child
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 */
+	
+	public static void incrementVersion(Paging paging, PageReader pageReader) {
+		
+		pageReader.seek(getVersionPos(paging));
+		IntegerCas version = pageReader.readIntegerCas();
+		
+		int attempt = 0;
+		while(true) {
+			int value = version.getInt();
+			if (version.casInt(value, value + 1)) {
+				return;
+			}
+			paging.getContention().retry(Site.NODE_VERSION, ++attempt);
+		}
+	}
+	
+	/**
+	 * Tries to allocate heap memory in the page
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @param size
+	 * @return positive integer value for success, that is position of the memory block in the page
+	 *         negative integer value shows that there is no space in the page
+	 */
+	
+	public static int tryAllocate(Paging paging, PageReader pageReader, int size) {
+		size = align(paging, size);
+		pageReader.seek(PAGE_TAIL_POS);
+		InnerRefCas pageTail = pageReader.readInnerRefCas();
+		int attempt = 0;
+		while(true) {
+			int tail = pageTail.getInnerRef();
+			if (tail + size > paging.getPageSize()) {
+				return -1;
+			}
+			if (pageTail.casInnerRef(tail, tail + size)) {
+				return tail;
+			}
+			paging.getContention().retry(Site.PAGE_HEAP, ++attempt);
+		}
+	}
+	
+	/**
+	 * Formats new page with a single key, writes header of the page.
+	 * 
+	 * @param paging
+	 * @param pageNum
+	 * @param key
+	 * @param lesserChild
+	 * @param lastChild
+	 */
+	
+	public static void structBlank(Paging paging, long pageNum, Object key, long lesserChild, long lastChild) {
+		
+		PageWriter pageWriter = structBlank(paging, pageNum, lastChild);
+		
+		int entryPos = writeEntry(paging, pageWriter, key, lesserChild, 1);
+		
+		int savePosition = pageWriter.getPosition();
+		pageWriter.seek(getHeadPos(paging, 0));
+		pageWriter.writeInnerRef(entryPos);
+		pageWriter.seek(savePosition);
+		
+		finishBlank(paging, pageWriter);
+	}
+	
+	/**
+	 * Formats new empty page, writes header of the page.
+	 * 
+	 * @param paging
+	 * @param pageNum
+	 * @param lastChild
+	 * @return page writer pointed to the heap space, page must be finished by finishBlank
+	 */
+	
+	public static PageWriter structBlank(Paging paging, long pageNum, long lastChild) {
+		
+		PageWriter pageWriter = new PageWriter(paging, pageNum);
+		
+		// magic
+		pageWriter.writeChar(MagicCodes.INNER_NODE.getMagic());
+		
+		// pageTail
+		pageWriter.writeInnerRef(0);
+		
+		// head
+		for (int level = 0; level != MAX_LEVEL; ++level) {
+			pageWriter.writeInnerRef(0);
+		}
+		
+		// writers
+		pageWriter.writeInt(0);
+		
+		// version
+		pageWriter.writeInt(0);
+		
+		// lastChild
+		pageWriter.writePageNum(lastChild);
+		
+		pageWriter.seek(getHeapPos(paging));
+		
+		return pageWriter;
+	}
+	
+	/**
+	 * Writes pageTail of the blank page
+	 * 
+	 * @param paging
+	 * @param pageWriter must be pointed to the tail of the heap space
+	 */
+	
+	public static void finishBlank(Paging paging, PageWriter pageWriter) {
+		
+		int tail = align(paging, pageWriter.getPosition());
+		pageWriter.seek(PAGE_TAIL_POS);
+		pageWriter.writeInnerRef(tail);
+	
+	}
+	
+	/**
+	 * Writes blank entry to the page, memory must be preallocated
+	 * 
+	 * @param paging
+	 * @param pageWriter must be pointed to the allocated memory block
+	 * @param key
+	 * @param lesserChild
+	 * @param level
+	 * @return position of the entry
+	 */
+	
+	public static int writeEntry(Paging paging, PageWriter pageWriter, Object key, long lesserChild, int level) {
+		
+		// next
+		int entryPos = align(paging, pageWriter.getPosition() + paging.getInnerRef().size() * level);
+		pageWriter.seek(getNextPos(paging, entryPos, level - 1));
+		for (int l = 0; l != level; ++l) {
+			pageWriter.writeInnerRef(0);
+		}
+		
+		// lesserChild
+		pageWriter.writePageNum(lesserChild);
+		
+		// level
+		pageWriter.writeByte((byte) level);
+		
+		// key
+		ValueHolder.writeValue(pageWriter, key);
+		
+		return entryPos;
+	}
+	
+	/**
+	 * Links new entry to the skip list, entry becomes visible after CAS in the level 0
+	 * 
+	 * Upper levels are linked after level 0, search is repeated if links were changed by another writer.
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @param links collected by search
+	 * @param newEntryPos
+	 * @param key of the new entry
+	 * @return false if level 0 was changed by another writer, links must be collected again
+	 */
+	
+	public static boolean tryLinkEntry(Paging paging, PageReader pageReader, int[] links, int newEntryPos, Object key) {
+		
+		PageWriter pageWriter = new PageWriter(pageReader);
+		
+		int level = getLevel(paging, pageReader, newEntryPos);
+		
+		for (int l = 0; l != level; ++l) {
+			
+			int attempt = 0;
+			while(true) {
+				
+				int greaterPos = links[MAX_LEVEL + l];
+				
+				pageWriter.seek(getNextPos(paging, newEntryPos, l));
+				pageWriter.writeInnerRef(greaterPos);
+				
+				pageWriter.seek(links[l]);
+				InnerRefCas innerRefCas = pageWriter.writeInnerRefCas();
+				
+				if (innerRefCas.casInnerRef(greaterPos, newEntryPos)) {
+					break;
+				}
+				
+				if (l == 0) {
+					return false;
+				}
+				
+				// new entry is already visible, collect links for the upper levels
+				search(paging, pageReader, key, links);
+				
+				paging.getContention().retry(Site.INNER_LINK, ++attempt);
+			}
+		
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Updates child pageNum
+	 * 
+	 * @param paging
+	 * @param pageWriter
+	 * @param childPos
+	 * @param oldChild
+	 * @param newChild
+	 * @return
+	 */
+	
+	public static boolean tryUpdateChild(Paging paging, PageWriter pageWriter, int childPos, long oldChild, long newChild) {
+		
+		pageWriter.seek(childPos);
+		
+		PageNumCas pageNumCas = pageWriter.writePageNumCas();
+		
+		return pageNumCas.casPageNum(oldChild, newChild);
+	}
+	
+	/**
+	 * Collects all entries in the key order
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @return positions of entries
+	 */
+	
+	public static int[] collectEntries(Paging paging, PageReader pageReader) {
+		
+		int[] entries = new int[8];
+		int count = 0;
+		
+		pageReader.seek(getHeadPos(paging, 0));
+		int entryPos = pageReader.readInnerRef();
+		
+		while(entryPos != 0) {
+			
+			if (count == entries.length) {
+				entries = grow(entries);
+			}
+			entries[count++] = entryPos;
+			
+			pageReader.seek(getNextPos(paging, entryPos, 0));
+			entryPos = pageReader.readInnerRef();
+		}
+		
+		int[] result = new int[count];
+		System.arraycopy(entries, 0, result, 0, count);
+		return result;
+	}
+	
+	/**
+	 * Copies sorted entries from another page and builds the skip list, memory must be preallocated
+	 * 
+	 * Entries keep levels, that is why the copy has the same size.
+	 * 
+	 * @param paging
+	 * @param pageReader source page
+	 * @param entries sorted positions of entries in the source page
+	 * @param from inclusive
+	 * @param to exclusive
+	 * @param pageWriter must be pointed to the free space of the blank page
+	 */
+	
+	public static void copyEntries(Paging paging, PageReader pageReader, int[] entries, int from, int to, PageWriter pageWriter) {
+		
+		int[] links = new int[MAX_LEVEL];
+		for (int level = 0; level != MAX_LEVEL; ++level) {
+			links[level] = getHeadPos(paging, level);
+		}
+		
+		for (int i = from; i != to; ++i) {
+			
+			int sourcePos = entries[i];
+			int level = getLevel(paging, pageReader, sourcePos);
+			
+			// next
+			int entryPos = align(paging, pageWriter.getPosition() + paging.getInnerRef().size() * level);
+			pageWriter.seek(getNextPos(paging, entryPos, level - 1));
+			for (int l = 0; l != level; ++l) {
+				pageWriter.writeInnerRef(0);
+			}
+			
+			// lesserChild
+			pageReader.seek(getLesserChildPos(paging, sourcePos));
+			pageWriter.writePageNum(pageReader.readPageNum());
+			
+			// level
+			pageWriter.writeByte((byte) level);
+			
+			// key
+			int keyPos = getKeyPos(paging, sourcePos);
+			pageReader.seek(keyPos);
+			int keySize = ValueHolder.sizeOf(pageReader);
+			pageReader.seek(keyPos);
+			pageWriter.copyBytes(pageReader, keySize);
+			
+			int savePosition = align(paging, pageWriter.getPosition());
+			
+			for (int l = 0; l != level; ++l) {
+				pageWriter.seek(links[l]);
+				pageWriter.writeInnerRef(entryPos);
+				links[l] = getNextPos(paging, entryPos, l);
+			}
+			
+			pageWriter.seek(savePosition);
+		}
+		
+	}
+	
+	private static int[] grow(int[] array) {
+		int[] newArray = new int[array.length * 2];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+
 }
@@ -1,22 +1,34 @@
 package alt.collections.tree.paging;
 
 import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
 
 import alt.collections.concurrent.LongCas;
+import alt.collections.concurrent.WriterGate;
 import alt.collections.paging.PageReader;
 import alt.collections.paging.PageWriter;
 import alt.collections.paging.Paging;
+import alt.collections.tree.SimpleEntry;
 import alt.collections.tree.paging.PagingTree.ValuePredicate;
 
 /**
  * Stateless Service class that encapsulate high-level scope algorithms that are working in LeafNode
  * 
+ * Modification operations can return special results:
+ * 
+ * SPLIT - no space in the page, page must be split and operation must be repeated
+ * RETRY - page is frozen by another thread, operation must be repeated from the root
+ * 
  * @author Albert Shift
  *
  */
 
 public final class LeafNode {
 
+	public static final Object SPLIT = new Object();
+	public static final Object RETRY = new Object();
+	
 	private Paging paging;
 	
 	public LeafNode(Paging paging) {
@@ -44,20 +56,110 @@ public final class LeafNode {
 	}
 	
 	/**
-	 * Puts entry to the tree. 
+	 * Finds value for the key without reading it
+	 * 
+	 * @param pageReader is pointing to the value after the call if it exists
+	 * @param key
+	 * @return true if the value exists
+	 */
+	
+	public boolean seekValue(PageReader pageReader, Object key) {
+		
+		int pos = LeafNodePage.search(paging, pageReader, key);
+		
+		if (pos > 0) {
+			// exact match
+			return LeafNodePage.seekValue(paging, pageReader, pos);
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Reads live entries with keys in the range [fromKey, toKey)
+	 * 
+	 * @param pageReader
+	 * @param fromKey inclusive or null
+	 * @param toKey exclusive or null
+	 * @param reverse order of entries
+	 * @param entries output
+	 */
+	
+	public void readRange(PageReader pageReader, Object fromKey, Object toKey, boolean reverse, List<SimpleEntry<Object, Object>> entries) {
+		
+		int[] entryPositions = LeafNodePage.collectEntries(paging, pageReader, true);
+		
+		int start = entries.size();
+		for (int entryPos : entryPositions) {
+			
+			int keyPos = LeafNodePage.getKeyPos(paging, entryPos);
+			
+			if (fromKey != null) {
+				pageReader.seek(keyPos);
+				if (ValueHolder.compareTo(pageReader, fromKey) < 0) {
+					continue;
+				}
+			}
+			
+			if (toKey != null) {
+				pageReader.seek(keyPos);
+				if (ValueHolder.compareTo(pageReader, toKey) >= 0) {
+					break;
+				}
+			}
+			
+			Object value = LeafNodePage.readValue(paging, pageReader, LeafNodePage.getValuePos(paging, entryPos));
+			if (value == null) {
+				// removed after collection
+				continue;
+			}
+			
+			pageReader.seek(keyPos);
+			Object key = ValueHolder.readValue(pageReader);
+			
+			entries.add(new SimpleEntry<Object, Object>(key, value));
+		}
+		
+		if (reverse) {
+			Collections.reverse(entries.subList(start, entries.size()));
+		}
+	}
+	
+	/**
+	 * Puts entry to the tree.
 	 * If entry exists then value will be replaced and old value will be returned.
 	 * If entry does not exist then new entry will be added, null will be returned.
 	 * 
 	 * @param pageReader
 	 * @param key
 	 * @param value
-	 * @return
+	 * @param valuePredicate
+	 * @param pageManager to store big values
+	 * @return old value, SPLIT or RETRY
 	 */
 	
-	public Object put(PageReader pageReader, Object key, Object value, ValuePredicate valuePredicate) {
+	public Object put(PageReader pageReader, Object key, Object value, ValuePredicate valuePredicate, PageManager pageManager) {
 
-		int pos = LeafNodePage.search(paging, pageReader, key);
+		WriterGate gate = LeafNodePage.getWriterGate(paging, pageReader);
+		if (!gate.enter()) {
+			return RETRY;
+		}
+		
+		try {
+			return doPut(pageReader, key, value, valuePredicate, pageManager);
+		}
+		finally {
+			gate.exit();
+		}
+	
+	}
+	
+	private Object doPut(PageReader pageReader, Object key, Object value, ValuePredicate valuePredicate, PageManager pageManager) {
+		
+		int[] links = new int[2 * LeafNodePage.MAX_LEVEL];
+		int pos = LeafNodePage.search(paging, pageReader, key, links);
 		
+		int level = 0;
 		int requiredSize;
 		if (pos > 0) {
 			// exact match
@@ -73,48 +175,91 @@ public final class LeafNode {
 				if (oldValue != null) {
 					return oldValue;
 				}
+				if (value instanceof MutableLongUpdater) {
+					throw new PagingTreeException("updater requires mutable long or striped long value for the key " + key);
+				}
 			}
 
-			requiredSize = LeafNodePage.estimateValueSize(value);
+			requiredSize = LeafNodePage.estimateValueSize(paging, value);
 		}
 		else {
 
-			if (!valuePredicate.apply(false)) {
+			if (!valuePredicate.apply(false) || value instanceof MutableLongUpdater) {
+				// updater does not create the value
 				return null;
 			}
 
-			requiredSize = LeafNodePage.estimateEntrySize(paging, key, value);
+			level = LeafNodePage.randomLevel();
+			requiredSize = LeafNodePage.estimateEntrySize(paging, key, value, level);
 		}
 
 
 		int	allocatedPos = LeafNodePage.tryAllocate(paging, pageReader, requiredSize);
 		
 		if (allocatedPos == -1) {
-			throw new PagingTreeException("need to split");
+			return SPLIT;
+		}
+		
+		if (LeafNodePage.isDataPageValue(paging, value)) {
+			value = DataPage.writeValue(paging, pageManager, value);
 		}
 
 		PageWriter pageWriter = new PageWriter(pageReader);
 
 		while(true) {
-		
+			
 			pageWriter.seek(allocatedPos);
 			
 			if (pos > 0) {
 				LeafNodePage.writeValue(paging, pageWriter, value);
-				return LeafNodePage.updateValue(paging, pageReader, pos, allocatedPos);
+				return LeafNodePage.updateValue(paging, pageReader, pos, allocatedPos, pageManager);
 			}
 			else {
-				LeafNodePage.writeEntry(paging, pageWriter, key, value);
-				if (LeafNodePage.tryUpdateEntry(paging, pageWriter, -pos, allocatedPos)) {
+				int entryPos = LeafNodePage.writeEntry(paging, pageWriter, key, value, level);
+				if (LeafNodePage.tryLinkEntry(paging, pageReader, links, entryPos, key)) {
 					return null;
 				}
-				pos = LeafNodePage.search(paging, pageReader, key);
+				pos = LeafNodePage.search(paging, pageReader, key, links);
+				if (pos > 0 && !valuePredicate.apply(true)) {
+					// entry was added by another thread
+					if (value instanceof DataPageRef) {
+						DataPage.freeValue(paging, pageManager, ((DataPageRef) value).getPageNum(), false);
+					}
+					return LeafNodePage.readValue(paging, pageReader, pos);
+				}
 			}
 		
 		}
 	}
 	
-	public boolean replace(PageReader pageReader, Object key, Object oldValue, Object newValue) {
+	/**
+	 * Replaces value if it equals to old value
+	 * 
+	 * @param pageReader
+	 * @param key
+	 * @param oldValue
+	 * @param newValue
+	 * @param pageManager to store big values
+	 * @return Boolean, SPLIT or RETRY
+	 */
+	
+	public Object replace(PageReader pageReader, Object key, Object oldValue, Object newValue, PageManager pageManager) {
+		
+		WriterGate gate = LeafNodePage.getWriterGate(paging, pageReader);
+		if (!gate.enter()) {
+			return RETRY;
+		}
+		
+		try {
+			return doReplace(pageReader, key, oldValue, newValue, pageManager);
+		}
+		finally {
+			gate.exit();
+		}
+	
+	}
+	
+	private Object doReplace(PageReader pageReader, Object key, Object oldValue, Object newValue, PageManager pageManager) {
 
 		int pos = LeafNodePage.search(paging, pageReader, key);
 		
@@ -134,26 +279,41 @@ public final class LeafNode {
 						}
 						return null;
 					}
-					
+				
 				});
 			}
 			
 			if (!LeafNodePage.isEqualsValue(paging, pageReader, pos, oldValue)) {
-				return false;
+				return Boolean.FALSE;
 			}
 			
-			int requiredSize = LeafNodePage.estimateValueSize(newValue);
+			int requiredSize = LeafNodePage.estimateValueSize(paging, newValue);
 			
 			int	allocatedPos = LeafNodePage.tryAllocate(paging, pageReader, requiredSize);
 			
 			if (allocatedPos == -1) {
-				throw new PagingTreeException("need to split");
+				return SPLIT;
+			}
+			
+			if (LeafNodePage.isDataPageValue(paging, newValue)) {
+				newValue = DataPage.writeValue(paging, pageManager, newValue);
 			}
 
-			return LeafNodePage.updateValue(paging, pageReader, pos, oldValue, allocatedPos);
+			PageWriter pageWriter = new PageWriter(pageReader);
+			pageWriter.seek(allocatedPos);
+			LeafNodePage.writeValue(paging, pageWriter, newValue);
+			
+			boolean updated = LeafNodePage.updateValue(paging, pageReader, pos, oldValue, allocatedPos, pageManager);
+			
+			if (!updated && newValue instanceof DataPageRef) {
+				// value was not published
+				DataPage.freeValue(paging, pageManager, ((DataPageRef) newValue).getPageNum(), false);
+			}
+			
+			return updated;
 		}
 		
-		return false;
+		return Boolean.FALSE;
 	}
 	
 	/**
@@ -161,21 +321,33 @@ public final class LeafNode {
 	 * 
 	 * @param pageReader
 	 * @param key
-	 * @return
+	 * @param pageManager to free big values
+	 * @return old value or RETRY
 	 */
 	
-	public Object remove(PageReader pageReader, Object key) {
-	
-		int pos = LeafNodePage.search(paging, pageReader, key);
+	public Object remove(PageReader pageReader, Object key, PageManager pageManager) {
 		
-		if (pos > 0) {
-			// exact match
-			return LeafNodePage.updateValue(paging, pageReader, pos, 0);
-			
+		WriterGate gate = LeafNodePage.getWriterGate(paging, pageReader);
+		if (!gate.enter()) {
+			return RETRY;
 		}
 		
-		return null;
-		
+		try {
+			
+			int pos = LeafNodePage.search(paging, pageReader, key);
+			
+			if (pos > 0) {
+				// exact match
+				return LeafNodePage.updateValue(paging, pageReader, pos, 0, pageManager);
+			
+			}
+			
+			return null;
+		}
+		finally {
+			gate.exit();
+		}
+	
 	}
 	
 	/**
@@ -184,73 +356,334 @@ public final class LeafNode {
 	 * @param pageReader
 	 * @param key
 	 * @param oldValue
-	 * @return
+	 * @param pageManager to free big values
+	 * @return Boolean or RETRY
 	 */
 	
-	public boolean remove(PageReader pageReader, Object key, Object oldValue) {
+	public Object remove(PageReader pageReader, Object key, Object oldValue, PageManager pageManager) {
 		
-		int pos = LeafNodePage.search(paging, pageReader, key);
+		WriterGate gate = LeafNodePage.getWriterGate(paging, pageReader);
+		if (!gate.enter()) {
+			return RETRY;
+		}
 		
-		if (pos > 0) {
-			// exact match
-			return LeafNodePage.updateValue(paging, pageReader, pos, oldValue, 0);
+		try {
+			
+			int pos = LeafNodePage.search(paging, pageReader, key);
+			
+			if (pos > 0) {
+				// exact match
+				return LeafNodePage.updateValue(paging, pageReader, pos, oldValue, 0, pageManager);
+			
+			}
+			
+			return Boolean.FALSE;
+		}
+		finally {
+			gate.exit();
+		}
+	
+	}
+	
+	/**
+	 * Applies the group of puts and removes with keys that belong to this page.
+	 * 
+	 * Memory for new entries and values of the group is reserved by one allocation.
+	 * Run of new entries that are in the same gap of the skip list is linked by one CAS per level.
+	 * 
+	 * @param pageReader
+	 * @param keys sorted keys make longer runs
+	 * @param values null value removes the entry
+	 * @param from
+	 * @param to
+	 * @param pageManager to store and free big values
+	 * @param done end of applied operations of all keys, it is moved as operations are applied and kept if the write fails
+	 * @return number of applied operations from the start of the group, page must be split if the group is not finished
+	 *         or -1 for RETRY
+	 */
+	
+	public int write(PageReader pageReader, Object[] keys, Object[] values, int from, int to, PageManager pageManager, int[] done) {
+		
+		WriterGate gate = LeafNodePage.getWriterGate(paging, pageReader);
+		if (!gate.enter()) {
+			return -1;
+		}
+		
+		try {
+			return doWrite(pageReader, keys, values, from, to, pageManager, done);
+		}
+		finally {
+			gate.exit();
+		}
+	
+	}
+	
+	private int doWrite(PageReader pageReader, Object[] keys, Object[] values, int from, int to, PageManager pageManager, int[] done) {
+		
+		int count = to - from;
+		int[] positions = new int[count];
+		int[] levels = new int[count];
+		int[] sizes = new int[count];
+		int[] gaps = new int[2 * count];
+		int[] links = new int[2 * LeafNodePage.MAX_LEVEL];
+		
+		int total = 0;
+		for (int k = 0; k != count; ++k) {
+			
+			Object key = keys[from + k];
+			Object value = values[from + k];
+			
+			if (value == null) {
+				continue;
+			}
 			
+			positions[k] = LeafNodePage.search(paging, pageReader, key, links);
+			
+			if (positions[k] > 0) {
+				sizes[k] = LeafNodePage.align(paging, LeafNodePage.estimateValueSize(paging, value));
+			}
+			else {
+				levels[k] = LeafNodePage.randomLevel();
+				sizes[k] = LeafNodePage.estimateEntrySize(paging, key, value, levels[k]);
+				gaps[2 * k] = links[0];
+				gaps[2 * k + 1] = links[LeafNodePage.MAX_LEVEL];
+			}
+			total += sizes[k];
 		}
 		
-		return false;
+		// reserve memory for the longest part of the group that fits to the page
+		int applied = count;
+		int allocatedPos = 0;
+		while(total != 0) {
+			
+			allocatedPos = LeafNodePage.tryAllocate(paging, pageReader, total);
+			if (allocatedPos != -1) {
+				break;
+			}
+			
+			int freeSize = LeafNodePage.getFreeSize(paging, pageReader);
+			applied = 0;
+			total = 0;
+			while(applied != count && total + sizes[applied] <= freeSize) {
+				total += sizes[applied++];
+			}
+			
+			if (applied == 0) {
+				return 0;
+			}
+		}
+		
+		PageWriter pageWriter = new PageWriter(pageReader);
+		int[] entries = new int[count];
+		int blockPos = allocatedPos;
+		
+		int k = 0;
+		while(k != applied) {
+			
+			Object value = values[from + k];
+			
+			if (value == null) {
+				// entry could be added by the previous operation of the group
+				int pos = LeafNodePage.search(paging, pageReader, keys[from + k]);
+				if (pos > 0) {
+					LeafNodePage.updateValue(paging, pageReader, pos, 0, pageManager);
+				}
+				done[0] = from + ++k;
+				continue;
+			}
+			
+			if (positions[k] > 0) {
+				pageWriter.seek(blockPos);
+				LeafNodePage.writeValue(paging, pageWriter, storeValue(value, pageManager));
+				LeafNodePage.updateValue(paging, pageReader, positions[k], blockPos, pageManager);
+				blockPos += sizes[k];
+				done[0] = from + ++k;
+				continue;
+			}
+			
+			// run of new entries in the same gap
+			int start = k;
+			do {
+				pageWriter.seek(blockPos);
+				entries[k] = LeafNodePage.writeEntry(paging, pageWriter, keys[from + k], storeValue(values[from + k], pageManager), levels[k]);
+				blockPos += sizes[k];
+				k++;
+			}
+			while(k != applied && isNextInRun(pageReader, keys, values, from, positions, gaps, entries, k));
+			
+			linkRun(pageReader, keys, entries, from, start, k, pageManager);
+			done[0] = from + k;
+		}
 		
+		return applied;
 	}
 	
+	private Object storeValue(Object value, PageManager pageManager) {
+		if (LeafNodePage.isDataPageValue(paging, value)) {
+			return DataPage.writeValue(paging, pageManager, value);
+		}
+		return value;
+	}
 	
-	public void printGraph(PageReader pageReader, PrintStream ps) {
+	/**
+	 * Checks that the new entry continues the run, it must be in the same gap and greater than the previous one
+	 */
+	
+	private boolean isNextInRun(PageReader pageReader, Object[] keys, Object[] values, int from, int[] positions, int[] gaps, int[] entries, int k) {
 		
-		ps.println("digraph{");
+		if (values[from + k] == null || positions[k] > 0) {
+			return false;
+		}
+		
+		if (gaps[2 * k] != gaps[2 * k - 2] || gaps[2 * k + 1] != gaps[2 * k - 1]) {
+			return false;
+		}
 		
-		// seek to first entry
-		int entryPos = LeafNodePage.getFirstEntryPos(paging);
+		pageReader.seek(LeafNodePage.getKeyPos(paging, entries[k - 1]));
+		return ValueHolder.compareTo(pageReader, keys[from + k]) < 0;
+	}
+	
+	/**
+	 * Links the run of written entries, falls back to one by one linking if the gap was changed by another writer
+	 */
+	
+	private void linkRun(PageReader pageReader, Object[] keys, int[] entries, int from, int start, int end, PageManager pageManager) {
 		
-		printLeafEntry(pageReader, entryPos, ps, null);
+		int[] links = new int[2 * LeafNodePage.MAX_LEVEL];
 		
-		ps.println("}");
+		if (end - start > 1) {
+			
+			int pos = LeafNodePage.search(paging, pageReader, keys[from + start], links);
+			
+			if (pos < 0) {
+				
+				// run is still in the same gap if the last key is lesser than the next entry of the first key
+				boolean sameGap = true;
+				int greaterPos = links[LeafNodePage.MAX_LEVEL];
+				if (greaterPos != 0) {
+					pageReader.seek(LeafNodePage.getKeyPos(paging, greaterPos));
+					sameGap = ValueHolder.compareTo(pageReader, keys[from + end - 1]) > 0;
+				}
+				
+				if (sameGap && LeafNodePage.tryLinkRun(paging, pageReader, links, entries, keys, from, start, end)) {
+					return;
+				}
+			}
+		}
 		
+		for (int k = start; k != end; ++k) {
+			
+			Object key = keys[from + k];
+			
+			while(true) {
+				
+				int pos = LeafNodePage.search(paging, pageReader, key, links);
+				
+				if (pos > 0) {
+					// entry was added by another thread, entry is not linked, its value is used
+					pageReader.seek(entries[k]);
+					int valuePos = pageReader.readInnerRef();
+					LeafNodePage.updateValue(paging, pageReader, pos, valuePos, pageManager);
+					break;
+				}
+				
+				if (LeafNodePage.tryLinkEntry(paging, pageReader, links, entries[k], key)) {
+					break;
+				}
+			}
+		}
+	
 	}
 	
-	private static int globalStaticInt = 1;
+	/**
+	 * Copies live entries of the frozen page to the new pages.
+	 * 
+	 * Removed entries and replaced values are not copied. If live entries fit to the half of the page, 
+	 * page is compacted and replaced by a single page, otherwise entries are divided between two pages by size.
+	 * 
+	 * @param pageReader frozen page
+	 * @param pageManager
+	 * @return split
+	 */
 	
-	private String printLeafEntry(PageReader pageReader, int entryPos, PrintStream ps, String parent) {
+	public Split split(PageReader pageReader, PageManager pageManager) {
 		
-		pageReader.seek(LeafNodePage.getKeyPos(paging, entryPos));
-		Object key = ValueHolder.readValue(pageReader);
-
-		pageReader.seek(LeafNodePage.getValuePos(paging, entryPos));
-		int valuePos = pageReader.readInnerRef();
-		pageReader.seek(valuePos);
-		Object value = ValueHolder.readValue(pageReader);
-
-		String me = "\"" + key + ":" + value + "\"";
+		int[] entries = LeafNodePage.collectEntries(paging, pageReader, true);
 		
-		String childLesser = "null" + Integer.toString(globalStaticInt++);
-		String childGreater = "null" + Integer.toString(globalStaticInt++);
+		int totalSize = 0;
+		int[] sizes = new int[entries.length];
+		for (int i = 0; i != entries.length; ++i) {
+			sizes[i] = LeafNodePage.sizeOfEntry(paging, pageReader, entries[i]);
+			totalSize += sizes[i];
+		}
 		
-		int innerRef = LeafNodePage.getLesserPos(entryPos);
-		pageReader.seek(innerRef);
-		int pos = pageReader.readInnerRef();
-		if (pos != 0) {
-			childLesser = printLeafEntry(pageReader, pos, ps, me);
+		if (entries.length < 2 || totalSize <= LeafNodePage.getMaxCompactSize(paging)) {
+			long pageNum = pageManager.allocatePage();
+			copyEntries(pageReader, entries, 0, entries.length, pageNum);
+			return new Split(pageNum);
 		}
 		
-		innerRef = LeafNodePage.getGreaterPos(paging, entryPos);
-		pageReader.seek(innerRef);
-		pos = pageReader.readInnerRef();
-		if (pos != 0) {
-			childGreater = printLeafEntry(pageReader, pos, ps, me);
+		int middle = 1;
+		int lesserSize = sizes[0];
+		while(middle < entries.length - 1 && lesserSize + sizes[middle] <= totalSize / 2) {
+			lesserSize += sizes[middle];
+			middle++;
 		}
 		
-
-		ps.println(me + " -> { " + childLesser + " " + childGreater + " }");
+		pageReader.seek(LeafNodePage.getKeyPos(paging, entries[middle]));
+		Object key = ValueHolder.readValue(pageReader);
+		
+		long lesserPageNum = pageManager.allocatePage();
+		copyEntries(pageReader, entries, 0, middle, lesserPageNum);
+		
+		long greaterPageNum = pageManager.allocatePage();
+		copyEntries(pageReader, entries, middle, entries.length, greaterPageNum);
+		
+		return new Split(lesserPageNum, key, greaterPageNum);
+	}
+	
+	private void copyEntries(PageReader pageReader, int[] entries, int from, int to, long pageNum) {
+		PageWriter pageWriter = LeafNodePage.structBlank(paging, pageNum);
+		LeafNodePage.copyEntries(paging, pageReader, entries, from, to, pageWriter);
+		LeafNodePage.finishBlank(paging, pageWriter);
+	}
+	
+	public void printGraph(PageReader pageReader, PrintStream ps) {
+		
+		ps.println("digraph{");
 		
+		printEntries(pageReader, ps);
+		
+		ps.println("}");
+	
+	}
+	
+	public void printEntries(PageReader pageReader, PrintStream ps) {
 		
-		return me;
+		String prev = null;
 		
+		int[] entries = LeafNodePage.collectEntries(paging, pageReader, false);
+		for (int entryPos : entries) {
+			
+			int level = LeafNodePage.getLevel(paging, pageReader, entryPos);
+			
+			pageReader.seek(LeafNodePage.getKeyPos(paging, entryPos));
+			Object key = ValueHolder.readValue(pageReader);
+			
+			Object value = LeafNodePage.readValue(paging, pageReader, LeafNodePage.getValuePos(paging, entryPos));
+			
+			String me = "\"" + key + ":" + value + ":" + level + "\"";
+			
+			if (prev != null) {
+				ps.println(prev + " -> " + me);
+			}
+			else {
+				ps.println(me);
+			}
+			
+			prev = me;
+		}
+	
 	}
+	
 }
@@ -1,19 +1,39 @@
 package alt.collections.tree.paging;
 
+import java.util.concurrent.ThreadLocalRandom;
+
+import alt.collections.concurrent.Contention.Site;
 import alt.collections.concurrent.InnerRefCas;
+import alt.collections.concurrent.WriterGate;
 import alt.collections.paging.PageReader;
 import alt.collections.paging.PageWriter;
 import alt.collections.paging.Paging;
-import alt.collections.util.ThreadUtil;
 
 /**
  * LeafNode Page stores Keys and Values
  * 
- * [magic:char], [pageTail:innerRef], [lastValue:innerRef], [heapSpace:heap]
+ * [magic:char], [pageTail:innerRef], [head:innerRef * MAX_LEVEL], [writers:int], [heapSpace:heap]
  * 
  * Entry schema:
  * 
- * [lesser:innerRef], [greater:innerRef], [value:innerRef], [key:valueHolder]
+ * [next:innerRef * level], [value:innerRef], [level:byte], [key:valueHolder]
+ * 
+ * Entry position points to the [value:innerRef], next of the level l is placed before it in the reversed order,
+ * that is why key position does not depend on the level.
+ * 
+ * Entries are organized in the skip list sorted by keys, [head] contains first entry for each level.
+ * Level of the new entry is random, probability to have level l + 1 is 1/4 of the probability to have level l,
+ * that is why search is logarithmic for any order of inserts.
+ * 
+ * New entry becomes visible by CAS in the level 0, upper levels are linked after that and are only shortcuts.
+ * Entries are never unlinked, removed entry has zero value.
+ * 
+ * Big values are stored in the DataPage, entry keeps only the reference to the value.
+ * 
+ * Heap blocks are aligned by the size of innerRef, CAS of the innerRef never crosses the cache line.
+ * 
+ * Writers must enter the gate [writers:int] before any modification of the page,
+ * frozen page is immutable and is going to be replaced by the split.
  * 
  * @author Albert Shift
  *
@@ -21,80 +41,241 @@ import alt.collections.util.ThreadUtil;
 
 public final class LeafNodePage {
 
-	public static int getFirstEntryPos(Paging paging) {
-		return 2 + 2 * paging.getInnerRef().size();
+	public static final int PAGE_TAIL_POS = 2;
+	public static final int MAX_LEVEL = 8;
+	
+	public static int getHeadPos(Paging paging, int level) {
+		return 2 + paging.getInnerRef().size() * (1 + level);
 	}
 	
-	public static int getLesserPos(int entryPos) {
-		return entryPos;
+	public static int getWritersPos(Paging paging) {
+		return 2 + paging.getInnerRef().size() * (1 + MAX_LEVEL);
 	}
-
-	public static int getGreaterPos(Paging paging, int entryPos) {
-		return entryPos + paging.getInnerRef().size();
+	
+	public static int getHeapPos(Paging paging) {
+		return align(paging, 2 + paging.getInnerRef().size() * (1 + MAX_LEVEL) + 4);
 	}
-
+	
 	public static int getValuePos(Paging paging, int entryPos) {
-		return entryPos + 2 * paging.getInnerRef().size();
+		return entryPos;
+	}
+	
+	public static int getNextPos(Paging paging, int entryPos, int level) {
+		return entryPos - paging.getInnerRef().size() * (1 + level);
+	}
+	
+	public static int getLevel(Paging paging, PageReader pageReader, int entryPos) {
+		pageReader.seek(entryPos + paging.getInnerRef().size());
+		return pageReader.readByte();
 	}
 	
 	public static int getKeyPos(Paging paging, int entryPos) {
-		return entryPos + 3 * paging.getInnerRef().size();
+		return entryPos + paging.getInnerRef().size() + 1;
 	}
 	
+	/**
+	 * Aligns size or position of the heap block by the size of innerRef
+	 * 
+	 * @param paging
+	 * @param size
+	 * @return
+	 */
+	
+	public static int align(Paging paging, int size) {
+		int mask = paging.getInnerRef().size() - 1;
+		return (size + mask) & ~mask;
+	}
+	
+	/**
+	 * Estimates size of the entry with the maximum level
+	 * 
+	 * @param paging
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	
 	public static int estimateEntrySize(Paging paging, Object key, Object value) {
-		return 3 * paging.getInnerRef().size() + ValueHolder.estimateSize(key) + ValueHolder.estimateSize(value);
+		return estimateEntrySize(paging, key, value, MAX_LEVEL);
+	}
+	
+	public static int estimateEntrySize(Paging paging, Object key, Object value, int level) {
+		return align(paging, paging.getInnerRef().size() * (1 + level) + 1 + ValueHolder.estimateSize(key) + estimateValueSize(paging, value));
 	}
 
-	public static int estimateValueSize(Object value) {
+	public static int estimateValueSize(Paging paging, Object value) {
+		if (isDataPageValue(paging, value)) {
+			return DataPage.estimateRefSize(paging);
+		}
 		return ValueHolder.estimateSize(value);
 	}
+	
+	/**
+	 * Max size of the value that is stored inline in the page
+	 * 
+	 * @param paging
+	 * @return
+	 */
+	
+	public static int getMaxInlineValueSize(Paging paging) {
+		return getMaxEntrySize(paging) / 4;
+	}
+	
+	/**
+	 * Checks if the value must be stored in the DataPage, page keeps only the reference to the value
+	 * 
+	 * @param paging
+	 * @param value
+	 * @return true for big STRING and BLOB values
+	 */
+	
+	public static boolean isDataPageValue(Paging paging, Object value) {
+		if (value instanceof String || value instanceof byte[]) {
+			return ValueHolder.estimateSize(value) > getMaxInlineValueSize(paging);
+		}
+		return false;
+	}
 
 	/**
-	 * Searches entry in the LeafNode by using key. PageReader must by pointed to the first entry.
+	 * Max size of the entry, any two entries must fit to the blank page
+	 * 
+	 * @param paging
+	 * @return
+	 */
+	
+	public static int getMaxEntrySize(Paging paging) {
+		return (paging.getPageSize() - getHeapPos(paging)) / 2;
+	}
+	
+	/**
+	 * Max size of live entries to compact the page instead of the split,
+	 * compacted page has at least half of the heap space for new values
+	 * 
+	 * @param paging
+	 * @return
+	 */
+	
+	public static int getMaxCompactSize(Paging paging) {
+		return (paging.getPageSize() - getHeapPos(paging)) / 2;
+	}
+	
+	/**
+	 * Returns random level for the new entry
+	 * 
+	 * @return level in range [1, MAX_LEVEL]
+	 */
+	
+	public static int randomLevel() {
+		int random = ThreadLocalRandom.current().nextInt();
+		int level = 1;
+		while(level < MAX_LEVEL && (random & 3) == 0) {
+			random >>>= 2;
+			level++;
+		}
+		return level;
+	}
+	
+	/**
+	 * Returns writers gate of the page
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @return
+	 */
+	
+	public static WriterGate getWriterGate(Paging paging, PageReader pageReader) {
+		pageReader.seek(getWritersPos(paging));
+		return new WriterGate(pageReader.readIntegerCas(), paging.getContention());
+	}
+	
+	/**
+	 * Searches entry in the LeafNode by using key.
 	 * 
 	 * @param paging
 	 * @param pageReader
 	 * @param key
-	 * @return negative - is the position of the lesser or greater innerRef to add new entry
+	 * @return negative - is the position of the next innerRef in the level 0 to add new entry
 	 *         positive - is the position of the value inner reference inside the entry
 	 */
 	
 	public static int search(Paging paging, PageReader pageReader, Object key) {
+		return search(paging, pageReader, key, null);
+	}
+	
+	/**
+	 * Searches entry in the LeafNode by using key and collects links to add new entry.
+	 * 
+	 * links[level] is the position of the next innerRef of the last entry lesser than the key (or head),
+	 * links[MAX_LEVEL + level] is the entry that was found in this innerRef. 
+	 * Links are collected only if the key is not found.
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @param key
+	 * @param links null or array of size 2 * MAX_LEVEL
+	 * @return negative - is the position of the next innerRef in the level 0 to add new entry
+	 *         positive - is the position of the value inner reference inside the entry
+	 */
+	
+	public static int search(Paging paging, PageReader pageReader, Object key, int[] links) {
 		
-		// seek to first entry
-		int entryPos = getFirstEntryPos(paging);
-		
-		while(true) {
+		int predPos = 0;
+		int greaterPos = 0;
+		int linkPos = 0;
 		
-			pageReader.seek(getKeyPos(paging, entryPos));
+		for (int level = MAX_LEVEL - 1; level >= 0; --level) {
 			
-			int c = ValueHolder.compareTo(pageReader, key);
+			linkPos = predPos == 0 ? getHeadPos(paging, level) : getNextPos(paging, predPos, level);
 			
-			if (c > 0) {
-				pageReader.seek(getLesserPos(entryPos));
-				int lesserEntryPos = pageReader.readInnerRef();
-				if (lesserEntryPos != 0) {
-					entryPos = lesserEntryPos;
-					continue;
+			while(true) {
+				
+				pageReader.seek(linkPos);
+				int entryPos = pageReader.readInnerRef();
+				
+				if (entryPos == 0 || entryPos == greaterPos) {
+					// already compared on the upper level
+					greaterPos = entryPos;
+					break;
 				}
-				return -getLesserPos(entryPos);
-			}
-			else if (c < 0) { 
-				pageReader.seek(getGreaterPos(paging, entryPos));
-				int greaterEntryPos = pageReader.readInnerRef();
-				if (greaterEntryPos != 0) {
-					entryPos = greaterEntryPos;
-					continue;
+				
+				pageReader.seek(getKeyPos(paging, entryPos));
+				int c = ValueHolder.compareTo(pageReader, key);
+				
+				if (c < 0) {
+					predPos = entryPos;
+					linkPos = getNextPos(paging, entryPos, level);
+				}
+				else if (c > 0) {
+					greaterPos = entryPos;
+					break;
+				}
+				else {
+					// exact match
+					return getValuePos(paging, entryPos);
 				}
-				return -getGreaterPos(paging, entryPos);				
 			}
-			else {
-				// exact match
-				return getValuePos(paging, entryPos);
+			
+			if (links != null) {
+				links[level] = linkPos;
+				links[MAX_LEVEL + level] = greaterPos;
 			}
-		
 		}
 		
+		return -linkPos;
+	}
+	
+	
+	/**
+	 * Size of the heap memory that is not allocated yet
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @return size in bytes
+	 */
+	
+	public static int getFreeSize(Paging paging, PageReader pageReader) {
+		pageReader.seek(PAGE_TAIL_POS);
+		return paging.getPageSize() - pageReader.readInnerRef();
 	}
 	
 	/**
@@ -109,8 +290,10 @@ public final class LeafNodePage {
 	
 	
 	public static int tryAllocate(Paging paging, PageReader pageReader, int size) {
-		pageReader.seek(2);
+		size = align(paging, size);
+		pageReader.seek(PAGE_TAIL_POS);
 		InnerRefCas pageTail = pageReader.readInnerRefCas();
+		int attempt = 0;
 		while(true) {
 			int tail = pageTail.getInnerRef();
 			if (tail + size > paging.getPageSize()) {
@@ -119,6 +302,7 @@ public final class LeafNodePage {
 			if (pageTail.casInnerRef(tail, tail + size)) {
 				return tail;
 			}
+			paging.getContention().retry(Site.PAGE_HEAP, ++attempt);
 		}
 	}
 	
@@ -133,28 +317,211 @@ public final class LeafNodePage {
 	
 	public static void structBlank(Paging paging, long pageNum, Object key, Object value) {
 
+		PageWriter pageWriter = structBlank(paging, pageNum);
+		
+		// first entry
+		int entryPos = writeEntry(paging, pageWriter, key, value, 1);
+		
+		int savePosition = pageWriter.getPosition();
+		pageWriter.seek(getHeadPos(paging, 0));
+		pageWriter.writeInnerRef(entryPos);
+		pageWriter.seek(savePosition);
+		
+		finishBlank(paging, pageWriter);
+	
+	}
+	
+	/**
+	 * Formats new empty page, writes header of the page.
+	 * 
+	 * @param paging
+	 * @param pageNum
+	 * @return page writer pointed to the heap space, page must be finished by finishBlank
+	 */
+	
+	public static PageWriter structBlank(Paging paging, long pageNum) {
+		
 		PageWriter pageWriter = new PageWriter(paging, pageNum);
 		
 		// magic
 		pageWriter.writeChar(MagicCodes.LEAF_NODE.getMagic()); 
 
 		// pageTail
-		int pageTailPos = pageWriter.getPositionAndSkipInnerRef();
-
-		// lastValue
 		pageWriter.writeInnerRef(0);
+
+		// head
+		for (int level = 0; level != MAX_LEVEL; ++level) {
+			pageWriter.writeInnerRef(0);
+		}
 		
-		// first entry
-		writeEntry(paging, pageWriter, key, value);
+		// writers
+		pageWriter.writeInt(0);
+		
+		pageWriter.seek(getHeapPos(paging));
+		
+		return pageWriter;
+	}
+	
+	/**
+	 * Writes pageTail of the blank page
+	 * 
+	 * @param paging
+	 * @param pageWriter must be pointed to the tail of the heap space
+	 */
+	
+	public static void finishBlank(Paging paging, PageWriter pageWriter) {
 		
-		int tail = pageWriter.getPosition();
-		pageWriter.seek(pageTailPos);
+		int tail = align(paging, pageWriter.getPosition());
+		pageWriter.seek(PAGE_TAIL_POS);
 		pageWriter.writeInnerRef(tail);
 		
 	}
 	
 	/**
-	 * Tries to update mutable long value
+	 * Collects all entries in the key order
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @param liveOnly skip removed entries
+	 * @return positions of entries
+	 */
+	
+	public static int[] collectEntries(Paging paging, PageReader pageReader, boolean liveOnly) {
+		
+		int[] entries = new int[8];
+		int count = 0;
+		
+		pageReader.seek(getHeadPos(paging, 0));
+		int entryPos = pageReader.readInnerRef();
+		
+		while(entryPos != 0) {
+			
+			pageReader.seek(getValuePos(paging, entryPos));
+			if (!liveOnly || pageReader.readInnerRef() != 0) {
+				if (count == entries.length) {
+					entries = grow(entries);
+				}
+				entries[count++] = entryPos;
+			}
+			
+			pageReader.seek(getNextPos(paging, entryPos, 0));
+			entryPos = pageReader.readInnerRef();
+		}
+		
+		int[] result = new int[count];
+		System.arraycopy(entries, 0, result, 0, count);
+		return result;
+	}
+	
+	/**
+	 * Calculates size of the stored entry with the value
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @param entryPos
+	 * @return
+	 */
+	
+	public static int sizeOfEntry(Paging paging, PageReader pageReader, int entryPos) {
+		
+		int level = getLevel(paging, pageReader, entryPos);
+		int keyPos = getKeyPos(paging, entryPos);
+		pageReader.seek(keyPos);
+		int size = keyPos - getNextPos(paging, entryPos, level - 1) + ValueHolder.sizeOf(pageReader);
+		
+		pageReader.seek(getValuePos(paging, entryPos));
+		int valuePos = pageReader.readInnerRef();
+		if (valuePos != 0) {
+			pageReader.seek(valuePos);
+			size += ValueHolder.sizeOf(pageReader);
+		}
+		
+		return align(paging, size);
+	}
+	
+	/**
+	 * Copies sorted entries from another page and builds the skip list, memory must be preallocated.
+	 * 
+	 * Entries keep levels, that is why the copy has the same size.
+	 * 
+	 * @param paging
+	 * @param pageReader source page
+	 * @param entries sorted positions of entries in the source page
+	 * @param from inclusive
+	 * @param to exclusive
+	 * @param pageWriter must be pointed to the free space of the blank page
+	 */
+	
+	public static void copyEntries(Paging paging, PageReader pageReader, int[] entries, int from, int to, PageWriter pageWriter) {
+		
+		int[] links = new int[MAX_LEVEL];
+		for (int level = 0; level != MAX_LEVEL; ++level) {
+			links[level] = getHeadPos(paging, level);
+		}
+		
+		for (int i = from; i != to; ++i) {
+			
+			int sourcePos = entries[i];
+			int level = getLevel(paging, pageReader, sourcePos);
+			
+			// next, value ref, level
+			for (int l = 0; l != level; ++l) {
+				pageWriter.writeInnerRef(0);
+			}
+			int entryPos = pageWriter.getPositionAndSkipInnerRef();
+			pageWriter.writeByte((byte) level);
+			
+			// key
+			int keyPos = getKeyPos(paging, sourcePos);
+			pageReader.seek(keyPos);
+			int keySize = ValueHolder.sizeOf(pageReader);
+			pageReader.seek(keyPos);
+			pageWriter.copyBytes(pageReader, keySize);
+			
+			// value
+			int newValuePos = 0;
+			pageReader.seek(getValuePos(paging, sourcePos));
+			int valuePos = pageReader.readInnerRef();
+			if (valuePos != 0) {
+				newValuePos = pageWriter.getPosition();
+				pageReader.seek(valuePos);
+				if (ValueHolder.getValueType(pageReader) == ValueType.STRIPED_LONG) {
+					// cells are aligned by the position in the page
+					pageReader.seek(valuePos);
+					ValueHolder.writeValue(pageWriter, ValueHolder.readValue(pageReader));
+				}
+				else {
+					pageReader.seek(valuePos);
+					int valueSize = ValueHolder.sizeOf(pageReader);
+					pageReader.seek(valuePos);
+					pageWriter.copyBytes(pageReader, valueSize);
+				}
+			}
+			
+			int savePosition = align(paging, pageWriter.getPosition());
+			
+			pageWriter.seek(entryPos);
+			pageWriter.writeInnerRef(newValuePos);
+			
+			for (int l = 0; l != level; ++l) {
+				pageWriter.seek(links[l]);
+				pageWriter.writeInnerRef(entryPos);
+				links[l] = getNextPos(paging, entryPos, l);
+			}
+			
+			pageWriter.seek(savePosition);
+		}
+		
+	}
+	
+	private static int[] grow(int[] array) {
+		int[] newArray = new int[array.length * 2];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+	
+	/**
+	 * Tries to update mutable long or striped long value in place
 	 * 
 	 * @param paging
 	 * @param pageReader
@@ -176,6 +543,13 @@ public final class LeafNodePage {
 		
 		pageReader.seek(valuePos);
 		ValueType vt = ValueHolder.getValueType(pageReader);
+		
+		if (vt == ValueType.STRIPED_LONG && newValue instanceof MutableLongUpdater) {
+			pageReader.seek(valuePos);
+			pageWriter.seek(valuePos);
+			return ValueHolder.updateStripedLong(pageReader, pageWriter, (MutableLongUpdater) newValue);
+		}
+		
 		if (vt != ValueType.MUTABLE_LONG) {
 			return null;
 		}
@@ -213,6 +587,28 @@ public final class LeafNodePage {
 		return null;
 	}
 	
+	/**
+	 * Seeks to the value
+	 * 
+	 * @param paging
+	 * @param pageReader is pointing to the value after the call if it exists
+	 * @param valuePosInnerRef
+	 * @return false if the value was removed
+	 */
+	
+	public static boolean seekValue(Paging paging, PageReader pageReader, int valuePosInnerRef) {
+		
+		pageReader.seek(valuePosInnerRef);
+		int valuePos = pageReader.readInnerRef();
+		
+		if (valuePos != 0) {
+			pageReader.seek(valuePos);
+			return true;
+		}
+		
+		return false;
+	}
+	
 	/**
 	 * Compare existing value
 	 * 
@@ -250,14 +646,17 @@ public final class LeafNodePage {
 	 * @param pageReader
 	 * @param valuePosInnerRef
 	 * @param newValuePos
+	 * @param pageManager to free the old value stored in the DataPage
+	 * @return old value
 	 */
 	
-	public static final Object updateValue(Paging paging, PageReader pageReader, int valuePosInnerRef, int newValuePos) {
+	public static final Object updateValue(Paging paging, PageReader pageReader, int valuePosInnerRef, int newValuePos, PageManager pageManager) {
 		
 		pageReader.seek(valuePosInnerRef);
 		InnerRefCas valueRefCas = pageReader.readInnerRefCas();
 		
 		int oldValuePos = 0;
+		int attempt = 0;
 		while(true) {
 
 			oldValuePos = valueRefCas.getInnerRef();
@@ -266,14 +665,17 @@ public final class LeafNodePage {
 				break;
 			}
 			
-			ThreadUtil.loopSleep();
+			paging.getContention().retry(Site.LEAF_VALUE, ++attempt);
 		}
 		
 		if (oldValuePos != 0) {
 			
 			pageReader.seek(oldValuePos);
-			return ValueHolder.readValue(pageReader);
+			Object oldValue = ValueHolder.readValue(pageReader);
+			
+			freeDataPageValue(paging, pageReader, oldValuePos, pageManager);
 			
+			return oldValue;
 		}
 		
 		return null;
@@ -287,14 +689,16 @@ public final class LeafNodePage {
 	 * @param valuePosInnerRef
 	 * @param oldValue
 	 * @param newValuePos
+	 * @param pageManager to free the old value stored in the DataPage
 	 * @return
 	 */
 	
-	public static final boolean updateValue(Paging paging, PageReader pageReader, int valuePosInnerRef, Object oldValue, int newValuePos) {
+	public static final boolean updateValue(Paging paging, PageReader pageReader, int valuePosInnerRef, Object oldValue, int newValuePos, PageManager pageManager) {
 		
 		pageReader.seek(valuePosInnerRef);
 		InnerRefCas valueRefCas = pageReader.readInnerRefCas();
 		
+		int attempt = 0;
 		while(true) {
 
 			int oldValuePos = valueRefCas.getInnerRef();
@@ -315,35 +719,218 @@ public final class LeafNodePage {
 			}
 			
 			if (valueRefCas.casInnerRef(oldValuePos, newValuePos)) {
+				if (oldValuePos != 0) {
+					freeDataPageValue(paging, pageReader, oldValuePos, pageManager);
+				}
 				return true;
 			}
 			
-			ThreadUtil.loopSleep();
+			paging.getContention().retry(Site.LEAF_VALUE, ++attempt);
+		}
+		
+	}
+	
+	/**
+	 * Frees with delay the chain of data pages if the value is stored in the DataPage,
+	 * value is not reachable from the page after the update of the reference
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @param valuePos
+	 * @param pageManager
+	 */
+	
+	private static void freeDataPageValue(Paging paging, PageReader pageReader, int valuePos, PageManager pageManager) {
+		
+		pageReader.seek(valuePos);
+		if (ValueHolder.getValueType(pageReader) == ValueType.DATAPAGE) {
+			DataPage.freeValue(paging, pageManager, pageReader.readPageNum(), true);
 		}
+	
+	}
+	
+	/**
+	 * Frees chains of data pages of all values in the page, page itself is not freed
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @param pageManager
+	 * @param delay true if the page could be used by readers
+	 */
+	
+	public static void freeDataPageValues(Paging paging, PageReader pageReader, PageManager pageManager, boolean delay) {
+		
+		pageReader.seek(getHeadPos(paging, 0));
+		int entryPos = pageReader.readInnerRef();
 		
+		while(entryPos != 0) {
+			
+			pageReader.seek(getValuePos(paging, entryPos));
+			int valuePos = pageReader.readInnerRef();
+			
+			if (valuePos != 0) {
+				pageReader.seek(valuePos);
+				if (ValueHolder.getValueType(pageReader) == ValueType.DATAPAGE) {
+					DataPage.freeValue(paging, pageManager, pageReader.readPageNum(), delay);
+				}
+			}
+			
+			pageReader.seek(getNextPos(paging, entryPos, 0));
+			entryPos = pageReader.readInnerRef();
+		}
+	
 	}
 	
 	/**
-	 * Updates entry inner reference in the innerRef of another entry
+	 * Links new entry to the skip list, entry becomes visible after CAS in the level 0
 	 * 
-	 *     entryPosInnerRef             newEntryPos
+	 *     links[level]                 newEntryPos
 	 *           \/                        \/
-	 * [ entry1, *lesser or greater -----> [entry2]  ]
+	 * [ entry1, *next -----> entry2 ] => [ entry1, *next -----> [newEntry, *next -----> entry2] ]
+	 * 
+	 * Upper levels are linked after level 0, search is repeated if links were changed by another writer.
 	 * 
 	 * @param paging
-	 * @param pageWriter
-	 * @param entryPosInnerRef
+	 * @param pageReader
+	 * @param links collected by search
 	 * @param newEntryPos
-	 * @return
+	 * @param key of the new entry
+	 * @return false if level 0 was changed by another writer, links must be collected again
 	 */
 	
-	public static final boolean tryUpdateEntry(Paging paging, PageWriter pageWriter, int entryPosInnerRef, int newEntryPos) {
-	
-		pageWriter.seek(entryPosInnerRef);
+	public static final boolean tryLinkEntry(Paging paging, PageReader pageReader, int[] links, int newEntryPos, Object key) {
+		
+		PageWriter pageWriter = new PageWriter(pageReader);
+		
+		int greaterPos = links[MAX_LEVEL];
+		
+		pageWriter.seek(getNextPos(paging, newEntryPos, 0));
+		pageWriter.writeInnerRef(greaterPos);
 		
+		pageWriter.seek(links[0]);
 		InnerRefCas innerRefCas = pageWriter.writeInnerRefCas();
 		
-		return innerRefCas.casInnerRef(0, newEntryPos);
+		if (!innerRefCas.casInnerRef(greaterPos, newEntryPos)) {
+			return false;
+		}
+		
+		linkUpperLevels(paging, pageReader, pageWriter, links, newEntryPos, key, 1);
+		
+		return true;
+	}
+	
+	/**
+	 * Links the run of new entries that are in the same gap of the skip list, 
+	 * every level is linked by one CAS if there are no concurrent writers in the gap.
+	 * 
+	 *     links[0]                                              links[MAX_LEVEL]
+	 *        \/                                                        \/
+	 * [ entry1, *next -----> [newEntry1, *next -----> newEntry2 ... *next -----> entry2] ]
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @param links collected by search of the first key
+	 * @param entries positions of the new entries sorted by key
+	 * @param keys keys of the entries, keys[offset + i] is the key of entries[i]
+	 * @param offset
+	 * @param from
+	 * @param to
+	 * @return false if level 0 was changed by another writer, nothing was linked
+	 */
+	
+	public static final boolean tryLinkRun(Paging paging, PageReader pageReader, int[] links, int[] entries, Object[] keys, int offset, int from, int to) {
+		
+		PageWriter pageWriter = new PageWriter(pageReader);
+		
+		for (int l = 0; l != MAX_LEVEL; ++l) {
+			
+			int first = 0;
+			int last = 0;
+			for (int i = from; i != to; ++i) {
+				if (getLevel(paging, pageReader, entries[i]) > l) {
+					if (first == 0) {
+						first = entries[i];
+					}
+					else {
+						pageWriter.seek(getNextPos(paging, last, l));
+						pageWriter.writeInnerRef(entries[i]);
+					}
+					last = entries[i];
+				}
+			}
+			
+			if (first == 0) {
+				return true;
+			}
+			
+			int greaterPos = links[MAX_LEVEL + l];
+			
+			pageWriter.seek(getNextPos(paging, last, l));
+			pageWriter.writeInnerRef(greaterPos);
+			
+			pageWriter.seek(links[l]);
+			InnerRefCas innerRefCas = pageWriter.writeInnerRefCas();
+			
+			if (!innerRefCas.casInnerRef(greaterPos, first)) {
+				
+				if (l == 0) {
+					return false;
+				}
+				
+				// entries are already visible, link them one by one
+				for (int i = from; i != to; ++i) {
+					if (getLevel(paging, pageReader, entries[i]) > l) {
+						search(paging, pageReader, keys[offset + i], links);
+						linkUpperLevels(paging, pageReader, pageWriter, links, entries[i], keys[offset + i], l);
+					}
+				}
+				return true;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Links visible entry to the upper levels of the skip list
+	 * 
+	 * @param paging
+	 * @param pageReader
+	 * @param pageWriter
+	 * @param links collected by search of the key
+	 * @param entryPos
+	 * @param key
+	 * @param fromLevel
+	 */
+	
+	private static void linkUpperLevels(Paging paging, PageReader pageReader, PageWriter pageWriter, int[] links, int entryPos, Object key, int fromLevel) {
+		
+		int level = getLevel(paging, pageReader, entryPos);
+		
+		for (int l = fromLevel; l < level; ++l) {
+			
+			int attempt = 0;
+			while(true) {
+				
+				int greaterPos = links[MAX_LEVEL + l];
+				
+				pageWriter.seek(getNextPos(paging, entryPos, l));
+				pageWriter.writeInnerRef(greaterPos);
+				
+				pageWriter.seek(links[l]);
+				InnerRefCas innerRefCas = pageWriter.writeInnerRefCas();
+				
+				if (innerRefCas.casInnerRef(greaterPos, entryPos)) {
+					break;
+				}
+				
+				// new entry is already visible, collect links for the upper levels
+				search(paging, pageReader, key, links);
+				
+				paging.getContention().retry(Site.LEAF_LINK, ++attempt);
+			}
+		
+		}
 		
 	}
 	
@@ -366,21 +953,25 @@ public final class LeafNodePage {
 	 * Writes blank entry to the page, memory must be preallocated
 	 * 
 	 * @param paging
-	 * @param pageWriter must be pointed to the entry position
+	 * @param pageWriter must be pointed to the allocated memory block
 	 * @param key
 	 * @param value
+	 * @param level
+	 * @return position of the entry
 	 */
 	
-	public static final void writeEntry(Paging paging, PageWriter pageWriter, Object key, Object value) {
-		
-		// lesser
-		pageWriter.writeInnerRef(0);
+	public static final int writeEntry(Paging paging, PageWriter pageWriter, Object key, Object value, int level) {
 		
-		// greater
-		pageWriter.writeInnerRef(0);
+		// next
+		for (int l = 0; l != level; ++l) {
+			pageWriter.writeInnerRef(0);
+		}
 		
 		// value ref
-		int valueRefPos = pageWriter.getPositionAndSkipInnerRef();
+		int entryPos = pageWriter.getPositionAndSkipInnerRef();
+		
+		// level
+		pageWriter.writeByte((byte) level);
 		
 		// key
 		ValueHolder.writeValue(pageWriter, key);
@@ -393,10 +984,12 @@ public final class LeafNodePage {
 		// write value ref
 		int savePosition = pageWriter.getPosition();
 		
-		pageWriter.seek(valueRefPos);
+		pageWriter.seek(entryPos);
 		pageWriter.writeInnerRef(valuePos);
 		
 		pageWriter.seek(savePosition);
+		
+		return entryPos;
 	}
 	
 }
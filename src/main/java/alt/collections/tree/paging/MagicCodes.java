@@ -10,12 +10,16 @@ package alt.collections.tree.paging;
 public enum MagicCodes {
 
 	NEW_STORE((char) 0), 
-	MASTER((char) 0x5555), 
+	MASTER((char) 0x5656), 
+	LEGACY_MASTER((char) 0x5555), 
 	MASTER_CONTINUE((char) 0x7777), 
 	INNER_NODE((char) 0xAAAA), 
 	LEAF_NODE((char) 0xBBBB), 
 	DATA((char) 0xCCCC),
-	DATA_CONTINUE((char) 0xDDDD);
+	DATA_CONTINUE((char) 0xDDDD),
+	FREE((char) 0xEEEE),
+	RETIRED((char) 0x9999),
+	PROCESS((char) 0x8888);
 	
 	private char magic;
 	
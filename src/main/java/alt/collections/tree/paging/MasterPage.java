@@ -1,25 +1,47 @@
 package alt.collections.tree.paging;
 
+import alt.collections.concurrent.Contention.Site;
 import alt.collections.concurrent.CriticalSection;
+import alt.collections.concurrent.EpochGate;
 import alt.collections.concurrent.IntegerCas;
 import alt.collections.concurrent.PageNumCas;
 import alt.collections.concurrent.CriticalSection.Callback;
+import alt.collections.paging.GrowablePaging;
 import alt.collections.paging.PageReader;
 import alt.collections.paging.PageWriter;
 import alt.collections.paging.Paging;
-import alt.collections.util.ThreadUtil;
 
 /**
  * Master page is using as an entry point to the store.
  * 
  * Master Page:
  * 
- * [magic:char], [pageTail:innerRef], [nextPageNum:pageNum], [storeTail:pageNum], [rootTree:int], [heapSpace:heap]
+ * [magic:char], [version:char], [pageTail:innerRef], [nextPageNum:pageNum], [storeTail:pageNum], [rootTree:int],
+ * [freePages:pageNum], [freeLock:int], [epoch:int], [processPage:pageNum, 12 bytes], [retiredPages:pageNum * 3], [heapSpace:heap]
  * 
  * Master Continue Page:
  * 
  * [magic:char], [pageTail:innerRef], [nextPageNum:pageNum], [heapSpace:heap]
  * 
+ * Free pages are linked in the list [freePages] by FreePage headers, allocation takes the page from the list
+ * before the growth of [storeTail]. 
+ * 
+ * Page that could be used by lock-free readers is freed with delay: it is added to the list of RetiredPage
+ * of the current epoch [retiredPages] and is not modified until reclamation. Readers enter the [epoch:int] 
+ * by EpochGate, retired pages of the epoch are moved to the free list when the epoch is passed by all readers.
+ * Counters of readers are striped by threads in the ProcessPage [processPage].
+ * 
+ * Pages reserved by threads of the ChunkedPageManager are recorded in slots of the ProcessPage,
+ * the exclusive open returns reservations left by dead processes to the free list, see getOrCreate.
+ * 
+ * Free and retired lists are modified only in the critical section [freeLock].
+ * 
+ * Stores of the first format (magic LEGACY_MASTER, without the version and free lists) can not be opened,
+ * the heap of their master page starts right after [rootTree].
+ * 
+ * Stores of the version 2 keep [readers:int * 3] in place of [processPage], they are upgraded on open
+ * by the allocation of the process page at [storeTail]. Upgrade needs the critical section of the creation,
+ * so processes of the version 2 must not use the store at the same time.
  * 
  * @author Albert Shift
  *
@@ -27,8 +49,18 @@ import alt.collections.util.ThreadUtil;
 
 public final class MasterPage extends AbstractMasterPage implements PageHeapSpace, PageManager {
 
+	public static final char FORMAT_VERSION = 3;
+	private static final char PREVIOUS_FORMAT_VERSION = 2;
+	
+	private static final int PROCESS_PAGE_SIZE = 12;
+	
 	private PageNumCas storeTail;
 	private IntegerCas rootEntry;
+	private PageNumCas freePages;
+	private CriticalSection freeLock;
+	private EpochGate epochGate;
+	private ProcessPage.ChunkSlot[] chunkSlots;
+	private PageNumCas[] retiredPages;
 	
 	//private static final AtomicBoolean structed = new AtomicBoolean(false);
 	
@@ -45,16 +77,38 @@ public final class MasterPage extends AbstractMasterPage implements PageHeapSpac
 		
 		this.magic = pageReader.readChar();
 		
+		if (magic == MagicCodes.LEGACY_MASTER.getMagic()) {
+			throw new PagingTreeException("store of the format version 1 is not supported, version " + (int) FORMAT_VERSION + " is expected");
+		}
 		if (magic != MagicCodes.MASTER.getMagic()) {
 			throw new PagingTreeException("invalid magic in store " + Integer.toHexString(magic));
 		}
 		
+		char version = pageReader.readChar();
+		if (version != FORMAT_VERSION) {
+			throw new PagingTreeException("unsupported format version of the store " + (int) version);
+		}
+		
 		this.pageTail = pageReader.readInnerRefCas();
 		this.nextPageNum = pageReader.readPageNumCas();
 		
 		this.storeTail = pageReader.readPageNumCas();
 		this.rootEntry = pageReader.readIntegerCas();
 		
+		this.freePages = pageReader.readPageNumCas();
+		this.freeLock = new CriticalSection(pageReader.readIntegerCas(), 0, paging.getContention());
+		
+		IntegerCas epoch = pageReader.readIntegerCas();
+		long processPage = pageReader.readPageNum();
+		pageReader.skip(PROCESS_PAGE_SIZE - paging.getPageNum().size());
+		this.epochGate = new EpochGate(epoch, ProcessPage.getReadersAddress(paging, processPage), paging.getContention());
+		this.chunkSlots = ProcessPage.getChunkSlots(paging, processPage);
+		
+		this.retiredPages = new PageNumCas[EpochGate.EPOCHS];
+		for (int i = 0; i != EpochGate.EPOCHS; ++i) {
+			retiredPages[i] = pageReader.readPageNumCas();
+		}
+		
 		int tail = this.pageTail.getInnerRef();
 		if (tail < pageReader.getPosition() || tail > paging.getPageSize()) {
 			throw new PagingTreeException("invalid pageTail in the page " + tail);
@@ -72,7 +126,7 @@ public final class MasterPage extends AbstractMasterPage implements PageHeapSpac
 		
 		final PageReader pageReader = new PageReader(paging, 0);
         char magic = pageReader.readChar();
-		if (magic == MagicCodes.MASTER.getMagic()) {
+		if (magic == MagicCodes.MASTER.getMagic() && pageReader.readChar() == FORMAT_VERSION) {
 			return new MasterPage(paging, 0, false);  
 		}
         
@@ -80,7 +134,7 @@ public final class MasterPage extends AbstractMasterPage implements PageHeapSpac
 		pageReader.seek(paging.getPageSize() - 4);
 		IntegerCas semaphore = pageReader.readIntegerCas();
 		
-		Boolean created = new CriticalSection(semaphore, 0).execute(new Callback<Boolean>() {
+		Boolean created = new CriticalSection(semaphore, 0, paging.getContention()).execute(new Callback<Boolean>() {
 
 			@Override
 			public Boolean doInCriticalSection() {
@@ -90,6 +144,9 @@ public final class MasterPage extends AbstractMasterPage implements PageHeapSpac
 					structBlank(paging);
 					return true;
 				}
+				if (magic == MagicCodes.MASTER.getMagic()) {
+					upgrade(paging);
+				}
 				return false;
 			}
 			
@@ -103,6 +160,16 @@ public final class MasterPage extends AbstractMasterPage implements PageHeapSpac
 
 	}
 	
+	/**
+	 * Opens the store exclusively, no other thread or process uses it.
+	 * 
+	 * Counters of readers and freeLock are reset, they could be left by the process that died in the section.
+	 * Pages reserved by chunks of dead processes are returned to the free list.
+	 * 
+	 * @param paging
+	 * @return
+	 */
+	
 	public static MasterPage getOrCreate(Paging paging) {
 	
 		PageReader pageReader = new PageReader(paging, 0);
@@ -111,8 +178,19 @@ public final class MasterPage extends AbstractMasterPage implements PageHeapSpac
 		if (magic == 0) {
 			structBlank(paging);
 		}
+		else if (magic == MagicCodes.MASTER.getMagic()) {
+			upgrade(paging);
+		}
 		
-		return new MasterPage(paging, 0, magic == 0);  
+		MasterPage masterPage = new MasterPage(paging, 0, magic == 0);
+		masterPage.freeLock.reset();
+		masterPage.epochGate.reset();
+		for (ProcessPage.ChunkSlot slot : masterPage.chunkSlots) {
+			if (slot.owner.getInt() != 0) {
+				masterPage.freeChunk(slot);
+			}
+		}
+		return masterPage;
 	}
 	
 	public static void structBlank(Paging paging) {
@@ -121,6 +199,9 @@ public final class MasterPage extends AbstractMasterPage implements PageHeapSpac
 		
 		// magic
 		pageWriter.skip(2); 
+		
+		// version
+		pageWriter.writeChar(FORMAT_VERSION);
 
 		// pageTail
 		int pageTailPos = pageWriter.getPositionAndSkipInnerRef();
@@ -128,12 +209,34 @@ public final class MasterPage extends AbstractMasterPage implements PageHeapSpac
 		// nextPageNum
 		pageWriter.writePageNum(0);
 		
-		// storeTail (one page is used)
-		pageWriter.writePageNum(1);
+		// storeTail (master and process pages are used)
+		pageWriter.writePageNum(2);
 		
 		// rootEntry
 		pageWriter.writeInt(0);
 		
+		// freePages
+		pageWriter.writePageNum(0);
+		
+		// freeLock
+		pageWriter.writeInt(0);
+		
+		// epoch
+		pageWriter.writeInt(0);
+		
+		// processPage
+		ensureTotalPages(paging, 2);
+		ProcessPage.structBlank(paging, 1);
+		pageWriter.writePageNum(1);
+		for (int i = paging.getPageNum().size(); i != PROCESS_PAGE_SIZE; ++i) {
+			pageWriter.writeByte((byte) 0);
+		}
+		
+		// retiredPages
+		for (int i = 0; i != EpochGate.EPOCHS; ++i) {
+			pageWriter.writePageNum(0);
+		}
+		
 		int tail = pageWriter.getPosition();
 		pageWriter.seek(pageTailPos);
 		pageWriter.writeInnerRef(tail);
@@ -142,24 +245,365 @@ public final class MasterPage extends AbstractMasterPage implements PageHeapSpac
 		pageWriter.writeChar(MagicCodes.MASTER.getMagic()); 
 
 	}
+	
+	/**
+	 * Upgrades the store of the previous format version, the process page is allocated at [storeTail].
+	 * Must be called in the critical section of the creation.
+	 * 
+	 * @param paging
+	 */
+	
+	static void upgrade(Paging paging) {
+		
+		PageReader pageReader = new PageReader(paging, 0);
+		pageReader.skip(2);
+		if (pageReader.readChar() != PREVIOUS_FORMAT_VERSION) {
+			return;
+		}
+		
+		pageReader.getPositionAndSkipInnerRef();
+		pageReader.getPositionAndSkipPageNum();
+		PageNumCas storeTail = pageReader.readPageNumCas();
+		
+		long processPage = storeTail.getPageNum();
+		ensureTotalPages(paging, processPage + 1);
+		ProcessPage.structBlank(paging, processPage);
+		storeTail.putPageNum(processPage + 1);
+		
+		PageWriter pageWriter = new PageWriter(paging, 0);
+		pageWriter.seek(getProcessPagePos(paging));
+		pageWriter.writePageNum(processPage);
+		for (int i = paging.getPageNum().size(); i != PROCESS_PAGE_SIZE; ++i) {
+			pageWriter.writeByte((byte) 0);
+		}
+		
+		pageWriter.seek(2);
+		pageWriter.writeChar(FORMAT_VERSION);
+	}
+	
+	static int getProcessPagePos(Paging paging) {
+		int pageNumSize = paging.getPageNum().size();
+		// magic, version, pageTail, nextPageNum, storeTail, rootTree, freePages, freeLock, epoch
+		return 4 + paging.getInnerRef().size() + 3 * pageNumSize + 12;
+	}
+	
+	private static void ensureTotalPages(Paging paging, long totalPages) {
+		if (paging.getTotalPages() < totalPages && 
+				!(paging instanceof GrowablePaging && ((GrowablePaging) paging).grow(totalPages))) {
+			throw new PagingTreeException("store has no space for " + totalPages + " pages");
+		}
+	}
 
 	@Override
 	public long allocatePage() {
+		
+		long pageNum = allocateFreePage();
+		if (pageNum != 0) {
+			return pageNum;
+		}
+		
+		return growStore();
+	}
+	
+	/**
+	 * Takes the page from the free list, retired pages are reclaimed before
+	 * 
+	 * @return pageNum or 0 if there are no free pages
+	 */
+	
+	public long allocateFreePage() {
+		
+		if (freePages.getPageNum() != 0 || hasRetiredPages()) {
+			
+			return freeLock.execute(new Callback<Long>() {
+				
+				@Override
+				public Long doInCriticalSection() {
+					reclaimRetiredPages();
+					return popFreePage();
+				}
+			
+			});
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * Detaches up to count pages from the head of the free list by one critical section, 
+	 * retired pages are reclaimed before
+	 * 
+	 * @param count
+	 * @return first page of the detached list linked by FreePage headers or 0 if there are no free pages
+	 */
+	
+	public long allocateFreePages(final int count) {
+		
+		if (freePages.getPageNum() != 0 || hasRetiredPages()) {
+			
+			return freeLock.execute(new Callback<Long>() {
+				
+				@Override
+				public Long doInCriticalSection() {
+					reclaimRetiredPages();
+					long first = freePages.getPageNum();
+					if (first == 0) {
+						return 0L;
+					}
+					long last = first;
+					for (int i = 1; i != count; ++i) {
+						long nextPageNum = FreePage.getNextPage(paging, last);
+						if (nextPageNum == 0) {
+							break;
+						}
+						last = nextPageNum;
+					}
+					freePages.putPageNum(FreePage.getNextPage(paging, last));
+					FreePage.structBlank(paging, last, 0);
+					return first;
+				}
+			
+			});
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * Reserves the run of pages at the end of the store by one CAS of [storeTail]
+	 * 
+	 * @param count
+	 * @return first page of the run or 0 if there is no space for the run
+	 */
+	
+	public long reservePages(int count) {
+		int attempt = 0;
+		while(true) {
+			long tail = storeTail.getPageNum();
+			if (tail + count > paging.getTotalPages()) {
+				if (!growPaging(tail + count)) {
+					return 0;
+				}
+				continue;
+			}
+			if (storeTail.casPageNum(tail, tail + count)) {
+				growBeforeEnd(tail, count);
+				return tail;
+			}
+			paging.getContention().retry(Site.STORE_TAIL, ++attempt);
+		}
+	}
+	
+	/**
+	 * Frees the page
+	 * 
+	 * @param pageNum
+	 * @param delay true if the page could be used by readers, page is reused after all readers of the current epoch exit
+	 */
+	
+	@Override
+	public void freePage(final long pageNum, final boolean delay) {
+		
+		if (pageNum <= 0 || pageNum >= storeTail.getPageNum()) {
+			throw new PagingTreeException("invalid page to free " + pageNum);
+		}
+		
+		freeLock.execute(new Callback<Void>() {
+			
+			@Override
+			public Void doInCriticalSection() {
+				if (delay) {
+					retirePage(pageNum);
+					reclaimRetiredPages();
+				}
+				else {
+					pushFreePage(pageNum);
+				}
+				return null;
+			}
+		
+		});
+	}
+	
+	/**
+	 * Returns all pages reserved in the slot to the free list by one critical section and frees the slot
+	 * 
+	 * @param slot
+	 */
+	
+	void freeChunk(final ProcessPage.ChunkSlot slot) {
+		
+		freeLock.execute(new Callback<Void>() {
+			
+			@Override
+			public Void doInCriticalSection() {
+				long pageNum = slot.freeHead.getPageNum();
+				while(pageNum != 0) {
+					long nextPageNum = FreePage.getNextPage(paging, pageNum);
+					pushFreePage(pageNum);
+					pageNum = nextPageNum;
+				}
+				for (long end = slot.end.getPageNum(), next = slot.next.getPageNum(); next < end; ++next) {
+					pushFreePage(next);
+				}
+				slot.freeHead.putPageNum(0);
+				slot.next.putPageNum(0);
+				slot.end.putPageNum(0);
+				return null;
+			}
+		
+		});
+		
+		slot.owner.putIntVolatile(0);
+	}
+	
+	/**
+	 * Returns slots of chunks in the process page
+	 * 
+	 * @return
+	 */
+	
+	ProcessPage.ChunkSlot[] getChunkSlots() {
+		return chunkSlots;
+	}
+	
+	/**
+	 * Returns epoch gate for readers, pages freed with delay are not reused while readers are inside
+	 * 
+	 * @return
+	 */
+	
+	public EpochGate getEpochGate() {
+		return epochGate;
+	}
+	
+	public long getStoreTail() {
+		return storeTail.getPageNum();
+	}
+	
+	private long growStore() {
+		int attempt = 0;
 		while(true) {
 			long tail = storeTail.getPageNum();
 			if (tail + 1 > paging.getTotalPages()) {
-				throw new PagingTreeException("no space in pages");
+				if (!growPaging(tail + 1)) {
+					throw new PagingTreeException("no space in pages");
+				}
+				continue;
 			}
 			if (storeTail.casPageNum(tail, tail + 1)) {
+				growBeforeEnd(tail, 1);
 				return tail;
 			}
-			ThreadUtil.loopSleep();
+			paging.getContention().retry(Site.STORE_TAIL, ++attempt);
 		}
 	}
-
-	@Override
-	public void freePage(long pageNum, boolean delay) {
-		throw new IllegalStateException("unsupported operation");
+	
+	private boolean growPaging(long minTotalPages) {
+		return paging instanceof GrowablePaging && ((GrowablePaging) paging).grow(minTotalPages);
+	}
+	
+	/**
+	 * Grows the store before the end of pages, only the thread that moves the tail over
+	 * the low-water mark grows the store, other threads continue with remaining pages
+	 * 
+	 * @param tail
+	 * @param count
+	 */
+	
+	private void growBeforeEnd(long tail, long count) {
+		if (paging instanceof GrowablePaging) {
+			GrowablePaging growablePaging = (GrowablePaging) paging;
+			long growthPages = growablePaging.getGrowthPages();
+			if (growthPages != 0) {
+				long totalPages = growablePaging.getTotalPages();
+				long mark = totalPages - growthPages / 4;
+				if (tail < mark && tail + count >= mark) {
+					growablePaging.grow(totalPages + 1);
+				}
+			}
+		}
+	}
+	
+	private boolean hasRetiredPages() {
+		for (int i = 0; i != EpochGate.EPOCHS; ++i) {
+			if (retiredPages[i].getPageNum() != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/*
+	 * Methods below must be called in the critical section
+	 */
+	
+	private long popFreePage() {
+		long pageNum = freePages.getPageNum();
+		if (pageNum != 0) {
+			freePages.putPageNum(FreePage.getNextPage(paging, pageNum));
+		}
+		return pageNum;
+	}
+	
+	private void pushFreePage(long pageNum) {
+		FreePage.structBlank(paging, pageNum, freePages.getPageNum());
+		freePages.putPageNum(pageNum);
+	}
+	
+	private void retirePage(long pageNum) {
+		
+		PageNumCas retired = retiredPages[epochGate.getEpoch()];
+		
+		long listPageNum = retired.getPageNum();
+		if (listPageNum != 0 && RetiredPage.tryAdd(paging, listPageNum, pageNum)) {
+			return;
+		}
+		
+		long newListPageNum = popFreePage();
+		if (newListPageNum == 0) {
+			newListPageNum = growStore();
+		}
+		
+		RetiredPage.structBlank(paging, newListPageNum, listPageNum, pageNum);
+		retired.putPageNum(newListPageNum);
+	}
+	
+	/**
+	 * Advances the epoch while it is possible, 
+	 * pages retired two epochs ago are moved to the free list before each advance.
+	 */
+	
+	private void reclaimRetiredPages() {
+		
+		for (int i = 0; i != EpochGate.EPOCHS && hasRetiredPages(); ++i) {
+			
+			int epoch = epochGate.getEpoch();
+			if (!epochGate.isQuiescent(epoch)) {
+				return;
+			}
+			
+			PageNumCas retired = retiredPages[EpochGate.next(epoch)];
+			
+			long listPageNum = retired.getPageNum();
+			while(listPageNum != 0) {
+				
+				for (long pageNum : RetiredPage.getRetiredPages(paging, listPageNum)) {
+					pushFreePage(pageNum);
+				}
+				
+				long nextListPageNum = RetiredPage.getNextPage(paging, listPageNum);
+				pushFreePage(listPageNum);
+				listPageNum = nextListPageNum;
+			}
+			
+			retired.putPageNum(0);
+			
+			if (!epochGate.advance(epoch)) {
+				throw new PagingTreeException("epoch was advanced outside of the critical section");
+			}
+		}
+	
 	}
 	
 	public IntegerCas getRootEntry() {
@@ -1,7 +1,8 @@
 package alt.collections.tree.paging;
 
+import alt.collections.concurrent.Contention;
+import alt.collections.concurrent.Contention.Site;
 import alt.collections.concurrent.LongCas;
-import alt.collections.util.ThreadUtil;
 
 /**
  * Mutable Long Updater is using to atomically update value by compare-and-swap lock-free user algorithm.
@@ -28,12 +29,13 @@ public interface MutableLongUpdater {
 
 		@Override
 		public MutableLong update(LongCas longCas) {
+			int attempt = 0;
 			while(true) {
 				long oldValue = longCas.getLong();
 				if (longCas.casLong(oldValue, oldValue+1)) {
 					return new MutableLong(oldValue);
 				}
-				ThreadUtil.loopSleep();
+				Contention.SHARED.retry(Site.LONG_UPDATER, ++attempt);
 			}
 		}
 		
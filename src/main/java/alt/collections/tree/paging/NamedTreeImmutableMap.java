@@ -4,12 +4,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import alt.collections.concurrent.Contention.Site;
 import alt.collections.concurrent.IntegerCas;
 import alt.collections.concurrent.PageNumCas;
 import alt.collections.paging.PageReader;
 import alt.collections.paging.PageWriter;
 import alt.collections.paging.Paging;
-import alt.collections.util.ThreadUtil;
 
 /**
  * NamedTreeImmutableMap is the Tree that stores associated pairs
@@ -21,6 +21,8 @@ import alt.collections.util.ThreadUtil;
  * Entries in Root Tree can not be deleted, because PageNumCas must be fixed in the tree.
  * Or can be deleted in shutdown.
  * 
+ * Dropped tree keeps the entry with the empty root, pages of the tree are returned to the store.
+ * 
  * Storing information:
  * 
  * Each Entry is stored information in this form:
@@ -161,7 +163,7 @@ public final class NamedTreeImmutableMap implements NamedTreeMap {
 				return createdTreePageNum;
 			}
 			
-			ThreadUtil.loopSleep();
+			paging.getContention().retry(Site.NAMED_TREE, 1);
 			return doFindOrCreate(treeName, createdEntryRef, createdTreePageNum);
 		}
 		
@@ -196,7 +198,7 @@ public final class NamedTreeImmutableMap implements NamedTreeMap {
 					return createdTreePageNum;
 				}
 				
-				ThreadUtil.loopSleep();
+				paging.getContention().retry(Site.NAMED_TREE, 1);
 				return doFindOrCreate(treeName, createdEntryRef, createdTreePageNum);
 				
 			}
@@ -220,7 +222,7 @@ public final class NamedTreeImmutableMap implements NamedTreeMap {
 					return createdTreePageNum;
 				}
 				
-				ThreadUtil.loopSleep();
+				paging.getContention().retry(Site.NAMED_TREE, 1);
 				return doFindOrCreate(treeName, createdEntryRef, createdTreePageNum);
 				
 			}
@@ -20,6 +20,14 @@ public interface PageHeapSpace {
 	 */
 	
 	int tryAllocate(int size);
+	
+	/**
+	 * Free space in the page, it only decreases
+	 * 
+	 * @return
+	 */
+	
+	int getFreeSize();
 
 	long getAddress();
 
@@ -1,8 +1,5 @@
 package alt.collections.tree.paging;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import alt.collections.concurrent.PageNumCas;
 import alt.collections.paging.PageStream;
 import alt.collections.paging.Paging;
@@ -10,6 +7,11 @@ import alt.collections.paging.Paging;
 /**
  * Paged Virtual Space is used to store Root Tree
  * 
+ * Space can be shared by threads, loaded pages are published by copy of the array,
+ * only the loading of the pages is synchronized.
+ * 
+ * Allocation goes to the first page with enough free space found by FreeSpaceIndex.
+ * 
  * @author Albert Shift
  *
  */
@@ -20,15 +22,26 @@ public final class PagedVirtualSpace implements VirtualSpace {
 	
 	private final PageManager pageManager;
 	
-	private final List<PageHeapSpace> pages = new ArrayList<PageHeapSpace>();;
+	private volatile PageHeapSpace[] pages;
+	
+	private final FreeSpaceIndex freeSpace = new FreeSpaceIndex();
 
 	public PagedVirtualSpace(Paging paging, PageManager pageManager, PageHeapSpace master) {
 		this.pageSize = paging.getPageSize();
 		this.pageManager = pageManager;
-		this.pages.add(master);
+		this.pages = new PageHeapSpace[] { master };
+		this.freeSpace.addPage(master.getFreeSize());
+	}
+	
+	private void addPage(PageHeapSpace page) {
+		PageHeapSpace[] newPages = new PageHeapSpace[pages.length + 1];
+		System.arraycopy(pages, 0, newPages, 0, pages.length);
+		newPages[pages.length] = page;
+		pages = newPages;
+		freeSpace.addPage(page.getFreeSize());
 	}
 	
-	private boolean loadNextPage() {
+	private synchronized boolean loadNextPage() {
 		
 		PageHeapSpace lastPage = getLastPage();
 		
@@ -36,14 +49,14 @@ public final class PagedVirtualSpace implements VirtualSpace {
 		
 		long nextPageNum = nextPageCas.getPageNum();
 		if (nextPageNum != 0) {
-			pages.add(lastPage.getNextPage(nextPageNum));
+			addPage(lastPage.getNextPage(nextPageNum));
 			return true;
 		}
 		
 		return false;
 	}
 	
-	private void createNewPage() {
+	private synchronized void createNewPage() {
 		
 		long newPage = pageManager.allocatePage();
 		
@@ -57,10 +70,10 @@ public final class PagedVirtualSpace implements VirtualSpace {
 			long nextPageNum = nextPageCas.getPageNum();
 			if (nextPageNum != 0) {
 				lastPage = lastPage.getNextPage(nextPageNum);
-				pages.add(lastPage);
+				addPage(lastPage);
 			}
 			else if (nextPageCas.casPageNum(0, newPage)) {
-				pages.add(createdPage);
+				addPage(createdPage);
 				return;
 			}
 			
@@ -69,7 +82,8 @@ public final class PagedVirtualSpace implements VirtualSpace {
 	}
 	
 	private PageHeapSpace getLastPage() {
-		return this.pages.get(pages.size() - 1);
+		PageHeapSpace[] pages = this.pages;
+		return pages[pages.length - 1];
 	}
 	
 	@Override
@@ -80,19 +94,22 @@ public final class PagedVirtualSpace implements VirtualSpace {
 	private int allocateSpace(int size, boolean lookInAll, boolean justCreatedNewPage) {
 		
 		if (lookInAll) {
-			for (int i = 0; i != pages.size(); ++i) {
-				int innerRef = pages.get(i).tryAllocate(size);
+			while(true) {
+				int i = freeSpace.find(size);
+				if (i == -1) {
+					break;
+				}
+				int innerRef = tryAllocate(i, size);
 				if (innerRef != -1) {
-					return innerRef + i * pageSize;
+					return innerRef;
 				}
 			}
 		}
 		else {
 			// look in last page
-			int i = pages.size() - 1;
-			int innerRef = pages.get(i).tryAllocate(size);
+			int innerRef = tryAllocate(pages.length - 1, size);
 			if (innerRef != -1) {
-				return innerRef + i * pageSize;
+				return innerRef;
 			}
 		}
 
@@ -109,17 +126,32 @@ public final class PagedVirtualSpace implements VirtualSpace {
 
 	}
 
+	/**
+	 * Allocates space in the page and updates the free size of the page in the index
+	 * 
+	 * @param i index of the page
+	 * @param size
+	 * @return virtualRef or -1 if there is no space in the page
+	 */
+	
+	private int tryAllocate(int i, int size) {
+		PageHeapSpace page = pages[i];
+		int innerRef = page.tryAllocate(size);
+		freeSpace.update(i, page.getFreeSize());
+		return innerRef != -1 ? innerRef + i * pageSize : -1;
+	}
+	
 	@Override
 	public void seek(PageStream stream, int virtualRef) {
 		int pageInList = virtualRef / pageSize;
 		
-		while (pageInList >= pages.size()) {
+		while (pageInList >= pages.length) {
 			if (!loadNextPage()) {
-				throw new IndexOutOfBoundsException("invalid virtualRef = " + virtualRef + ", pages = " + pages.size());
+				throw new IndexOutOfBoundsException("invalid virtualRef = " + virtualRef + ", pages = " + pages.length);
 			}
 		}
 		
-		PageHeapSpace page = pages.get(pageInList);
+		PageHeapSpace page = pages[pageInList];
 		
 		stream.switchAddress(page.getAddress());
 		stream.seek(virtualRef % pageSize);
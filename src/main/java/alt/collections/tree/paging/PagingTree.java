@@ -1,16 +1,44 @@
 package alt.collections.tree.paging;
 
 import java.io.PrintStream;
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
+import alt.collections.concurrent.Contention;
+import alt.collections.concurrent.Contention.Site;
+import alt.collections.concurrent.EpochGate;
 import alt.collections.concurrent.PageNumCas;
+import alt.collections.concurrent.WriterGate;
 import alt.collections.paging.PageReader;
 import alt.collections.paging.Paging;
+import alt.collections.tree.SimpleEntry;
+import alt.collections.tree.Tree;
 import alt.collections.util.Requires;
-import alt.collections.util.ThreadUtil;
 
 /**
  * Paging Tree implementation
  * 
+ * Lock-free B+Tree in pages. Readers never wait, writers modify leaf pages by CAS operations.
+ * Full page is frozen by one of the writers, copied to new pages and replaced in the parent page.
+ * 
+ * Every operation enters the epoch of the store, replaced pages are freed with delay 
+ * and are reused only after all operations that could see them are finished.
+ * 
+ * Read operations reuse the page reader of the current thread, primitive accessors
+ * getLong, getInto and containsKey do not allocate memory for existing keys.
+ * 
+ * Tree of the store with the write ahead log appends the record of the applied change
+ * under the stripe lock of the key and waits for the group commit, see TreeLog.
+ * 
  * @author Albert Shift
  *
  */
@@ -19,22 +47,73 @@ public final class PagingTree<K, V> {
 
 	private final Paging paging;
 	private final String treeName;
-	private final MasterPage masterPage;
-	private final NamedTreeMap namedTreeMap;
+	private final PageManager pageManager;
+	private final Contention contention;
+	private final EpochGate epochGate;
 	private final PageNumCas treeAddress;
 	private final LeafNode leafNode;
+	private final InnerNode innerNode;
+	private final ThreadLocal<PageReader> pageReaders;
+	private final ThreadLocal<Utf8Key> utf8Keys;
+	private final TreeLog log;
+	
+	/**
+	 * Test hook, runs in the split after the parent of the frozen page is found
+	 */
+	
+	volatile Runnable splitHook;
+	
+	/**
+	 * Opens the tree in the registered handle of the store, see PagingTreeStore.of
+	 * 
+	 * @param paging
+	 * @param treeName
+	 */
 	
 	public PagingTree(Paging paging, String treeName) {
-		this.paging = paging;
+		this(PagingTreeStore.of(paging), treeName);
+	}
+	
+	/**
+	 * Opens the tree in the shared store handle, the root is resolved by the name once per store
+	 * 
+	 * @param store
+	 * @param treeName
+	 */
+	
+	public PagingTree(PagingTreeStore store, String treeName) {
+		Requires.nonNull(store, "store");
+		Requires.nonNull(treeName, "treeName");
+		
+		this.paging = store.getPaging();
 		this.treeName = treeName;
-		this.masterPage = MasterPage.concurrentGetOrCreate(paging);  
-
-		PagedVirtualSpace pagedVirtualSpace = new PagedVirtualSpace(paging, masterPage, masterPage);
-		this.namedTreeMap = new NamedTreeImmutableMap(paging, pagedVirtualSpace, masterPage.getRootEntry());
+		this.pageManager = store.getPageManager();
+		this.contention = paging.getContention();
+		this.epochGate = store.getMasterPage().getEpochGate();
+		this.log = store.getLog();
 		
-		this.treeAddress = namedTreeMap.findOrCreate(treeName);
+		this.treeAddress = store.findOrCreateRoot(treeName);
 		
 		this.leafNode = new LeafNode(paging);
+		this.innerNode = new InnerNode(paging);
+		
+		this.pageReaders = new ThreadLocal<PageReader>() {
+			
+			@Override
+			protected PageReader initialValue() {
+				return new PageReader(PagingTree.this.paging);
+			}
+		
+		};
+		
+		this.utf8Keys = new ThreadLocal<Utf8Key>() {
+			
+			@Override
+			protected Utf8Key initialValue() {
+				return new Utf8Key();
+			}
+		
+		};
 	}
 
 	public String getTreeName() {
@@ -45,7 +124,394 @@ public final class PagingTree<K, V> {
 	public V get(K key) {
 		Requires.nonNull(key, "key");
 		
-		return (V) doGet(key);
+		int epoch = epochGate.enter();
+		try {
+			return (V) doGet(readKey(key));
+		}
+		finally {
+			epochGate.exit(epoch);
+		}
+	}
+	
+	public boolean containsKey(K key) {
+		Requires.nonNull(key, "key");
+		
+		int epoch = epochGate.enter();
+		try {
+			return findValue(readKey(key)) != null;
+		}
+		finally {
+			epochGate.exit(epoch);
+		}
+	}
+	
+	/**
+	 * Reads LONG, MUTABLE_LONG or INTEGER value without boxing
+	 * 
+	 * @param key
+	 * @return value or 0 if the key is not found
+	 */
+	
+	public long getLong(K key) {
+		return getLong(key, 0L);
+	}
+	
+	public long getLong(K key, long defaultValue) {
+		Requires.nonNull(key, "key");
+		
+		int epoch = epochGate.enter();
+		try {
+			PageReader pageReader = findValue(readKey(key));
+			if (pageReader == null) {
+				return defaultValue;
+			}
+			return ValueHolder.readLong(pageReader);
+		}
+		finally {
+			epochGate.exit(epoch);
+		}
+	}
+	
+	/**
+	 * Copies BLOB or STRING value in UTF-8 encoding to the buffer
+	 * 
+	 * @param key
+	 * @param buffer is filled from the beginning only if the value fits in it
+	 * @return size of the value in bytes or -1 if the key is not found
+	 */
+	
+	public int getInto(K key, byte[] buffer) {
+		Requires.nonNull(key, "key");
+		Requires.nonNull(buffer, "buffer");
+		
+		int epoch = epochGate.enter();
+		try {
+			PageReader pageReader = findValue(readKey(key));
+			if (pageReader == null) {
+				return -1;
+			}
+			return ValueHolder.readBytesTo(pageReader, buffer);
+		}
+		finally {
+			epochGate.exit(epoch);
+		}
+	}
+	
+	/**
+	 * Decodes STRING value to the buffer starting from the position of the buffer
+	 * 
+	 * @param key
+	 * @param buffer
+	 * @return number of chars or -1 if the key is not found
+	 * @throws BufferOverflowException if the value does not fit, position of the buffer is not changed
+	 */
+	
+	public int getInto(K key, CharBuffer buffer) {
+		Requires.nonNull(key, "key");
+		Requires.nonNull(buffer, "buffer");
+		
+		int epoch = epochGate.enter();
+		try {
+			PageReader pageReader = findValue(readKey(key));
+			if (pageReader == null) {
+				return -1;
+			}
+			int position = buffer.position();
+			try {
+				return ValueHolder.readCharsTo(pageReader, buffer);
+			}
+			catch(BufferOverflowException e) {
+				buffer.position(position);
+				throw e;
+			}
+		}
+		finally {
+			epochGate.exit(epoch);
+		}
+	}
+	
+	/**
+	 * Finds values for the keys, keys are sorted to share the descents
+	 * 
+	 * @param keys
+	 * @return map of found keys
+	 */
+	
+	public Map<K, V> getAll(Collection<? extends K> keys) {
+		Requires.nonNull(keys, "keys");
+		
+		Object[] sortedKeys = keys.toArray();
+		if (isComparable(sortedKeys)) {
+			Arrays.sort(sortedKeys);
+		}
+		
+		final Map<K, V> result = new HashMap<K, V>(sortedKeys.length * 2);
+		
+		@SuppressWarnings("unchecked")
+		List<K> keyList = (List<K>) Arrays.asList(sortedKeys);
+		getAll(keyList, new EntryConsumer<K, V>() {
+			
+			@Override
+			public void accept(int index, K key, V value) {
+				if (value != null) {
+					result.put(key, value);
+				}
+			}
+		
+		});
+		
+		return result;
+	}
+	
+	/**
+	 * Finds values for the keys, keys that are in the same leaf page share the descent from the root.
+	 * 
+	 * Keys must be sorted in order of the tree to share the descents, any order gives the right result.
+	 * Consumer is called inside of the operation for every key in order of the list, 
+	 * it must not keep the thread for a long time.
+	 * 
+	 * @param sortedKeys
+	 * @param consumer receives null value if the key is not found
+	 */
+	
+	public void getAll(List<? extends K> sortedKeys, EntryConsumer<K, V> consumer) {
+		Requires.nonNull(sortedKeys, "sortedKeys");
+		Requires.nonNull(consumer, "consumer");
+		
+		int epoch = epochGate.enter();
+		try {
+			doGetAll(sortedKeys, consumer);
+		}
+		finally {
+			epochGate.exit(epoch);
+		}
+	}
+	
+	/**
+	 * Applies puts and removes of the batch.
+	 * 
+	 * Operations are sorted by key and grouped by leaf pages, every group reserves memory in the page once.
+	 * Every operation is atomic, but the batch is not, the last operation with the same key wins.
+	 * 
+	 * @param batch
+	 */
+	
+	@SuppressWarnings("unchecked")
+	public void write(WriteBatch<K, V> batch) {
+		Requires.nonNull(batch, "batch");
+		
+		List<SimpleEntry<K, V>> entries = batch.getEntries();
+		
+		Object[] keys = new Object[entries.size()];
+		for (int i = 0; i != keys.length; ++i) {
+			keys[i] = entries.get(i).getKey();
+		}
+		
+		if (isComparable(keys)) {
+			// stable sort keeps the order of operations with the same key
+			entries = new ArrayList<SimpleEntry<K, V>>(entries);
+			Collections.sort(entries, new Comparator<SimpleEntry<K, V>>() {
+				
+				@Override
+				public int compare(SimpleEntry<K, V> o1, SimpleEntry<K, V> o2) {
+					return ((Comparable<Object>) o1.getKey()).compareTo(o2.getKey());
+				}
+			
+			});
+		}
+		
+		Object[] values = new Object[keys.length];
+		for (int i = 0; i != keys.length; ++i) {
+			SimpleEntry<K, V> entry = entries.get(i);
+			keys[i] = writeKey(entry.getKey());
+			values[i] = entry.getValue();
+			if (values[i] instanceof MutableLongUpdater) {
+				throw new PagingTreeException("updater is not supported in the batch for the key " + entry.getKey());
+			}
+			if (values[i] != null) {
+				checkEntrySize(keys[i], values[i]);
+			}
+		}
+		
+		TreeLog.Record[] records = null;
+		if (log != null) {
+			records = new TreeLog.Record[keys.length];
+			for (int i = 0; i != keys.length; ++i) {
+				records[i] = log.record(treeName, entries.get(i).getKey(), values[i]);
+			}
+			log.lockAll(records);
+		}
+		
+		// applied operations are logged even if the batch fails
+		int[] applied = new int[1];
+		int epoch = epochGate.enter();
+		try {
+			doWrite(keys, values, applied);
+		}
+		finally {
+			epochGate.exit(epoch);
+			if (records != null) {
+				log.unlockAll(records, applied[0]);
+			}
+		}
+		
+		if (records != null && records.length != 0) {
+			log.commit(records[records.length - 1]);
+		}
+	}
+	
+	/**
+	 * Loads entries to the empty tree.
+	 * 
+	 * Tree is built bottom-up in the new packed pages that are allocated in order,
+	 * the root is published by one CAS, readers see the empty tree or all entries.
+	 * 
+	 * Load is not logged, in the store with the log it is followed by the checkpoint and is lost by the crash before it.
+	 * 
+	 * @param sortedEntries entries with unique keys in ascending order of the tree
+	 * @throws PagingTreeException if the tree is not empty or keys are not in order
+	 */
+	
+	public void load(Iterator<? extends Tree.Entry<? extends K, ? extends V>> sortedEntries) {
+		Requires.nonNull(sortedEntries, "sortedEntries");
+		
+		if (treeAddress.getPageNum() != 0) {
+			throw new PagingTreeException("tree is not empty " + treeName);
+		}
+		
+		if (log != null) {
+			log.lockFence();
+		}
+		try {
+			BulkLoader loader = new BulkLoader(paging, pageManager);
+			long root = loader.load(sortedEntries);
+			
+			if (root != 0 && !treeAddress.casPageNum(0, root)) {
+				loader.free();
+				throw new PagingTreeException("tree is not empty " + treeName);
+			}
+		}
+		finally {
+			if (log != null) {
+				log.unlockFence();
+			}
+		}
+		
+		if (log != null) {
+			log.checkpoint();
+		}
+	}
+	
+	/**
+	 * Publishes entries of the shadow tree under the name of this tree, the shadow tree becomes empty.
+	 * 
+	 * Shadow tree is built in the background under another name, the root is swapped by one CAS,
+	 * readers see the old or the new tree and never wait. Pages of the old tree are freed with delay
+	 * and are reused after all operations that could see them are finished.
+	 * 
+	 * Writers of both trees must be stopped during the swap, their changes could be lost.
+	 * Swap is not logged, in the store with the log it is followed by the checkpoint like the load.
+	 * 
+	 * @param shadow tree in the same store
+	 */
+	
+	public void replaceWith(PagingTree<K, V> shadow) {
+		Requires.nonNull(shadow, "shadow");
+		
+		if (shadow.paging != paging) {
+			throw new PagingTreeException("shadow tree " + shadow.treeName + " is in another store");
+		}
+		if (shadow.treeName.equals(treeName)) {
+			throw new PagingTreeException("shadow tree is the same tree " + treeName);
+		}
+		
+		if (log != null) {
+			log.lockFence();
+		}
+		int epoch = epochGate.enter();
+		try {
+			long newRoot = swapRoot(shadow.treeAddress, 0);
+			long oldRoot = swapRoot(treeAddress, newRoot);
+			
+			if (oldRoot != 0) {
+				freeTree(oldRoot);
+			}
+		}
+		finally {
+			epochGate.exit(epoch);
+			if (log != null) {
+				log.unlockFence();
+			}
+		}
+		
+		if (log != null) {
+			log.checkpoint();
+		}
+	}
+	
+	/**
+	 * Removes all entries of the tree.
+	 * 
+	 * The root is reset by one CAS, readers see all entries or the empty tree.
+	 * Pages of the tree are returned to the store with delay.
+	 * 
+	 * Writers must be stopped during the truncate, their changes could be lost.
+	 */
+	
+	public void truncate() {
+		
+		if (log != null) {
+			log.lockFence();
+		}
+		TreeLog.Record record = null;
+		try {
+			int epoch = epochGate.enter();
+			try {
+				doTruncate();
+			}
+			finally {
+				epochGate.exit(epoch);
+			}
+			if (log != null) {
+				record = log.append(TreeLog.TRUNCATE, treeName);
+			}
+		}
+		finally {
+			if (log != null) {
+				log.unlockFence();
+			}
+		}
+		
+		if (record != null) {
+			log.commit(record);
+		}
+	}
+	
+	/**
+	 * Drops the tree by name and returns its pages to the store.
+	 * 
+	 * Name stays in the store with the empty root, because opened trees keep the reference to the root,
+	 * the tree is empty if it is opened again.
+	 * 
+	 * @param paging
+	 * @param treeName
+	 * @return false if there is no tree with the name
+	 */
+	
+	public static boolean drop(Paging paging, String treeName) {
+		return drop(PagingTreeStore.of(paging), treeName);
+	}
+	
+	public static boolean drop(PagingTreeStore store, String treeName) {
+		Requires.nonNull(store, "store");
+		Requires.nonNull(treeName, "treeName");
+		
+		if (store.findRoot(treeName) == null) {
+			return false;
+		}
+		
+		new PagingTree<Object, Object>(store, treeName).truncate();
+		return true;
 	}
 	
 	public boolean replace(K key, V oldValue, V newValue) {
@@ -53,173 +519,961 @@ public final class PagingTree<K, V> {
 		Requires.nonNull(oldValue, "oldValue");
 		Requires.nonNull(newValue, "newValue");
 		
-		return doReplace(key, oldValue, newValue);
+		TreeLog.Record record = lockLog(key, newValue);
+		boolean result = false;
+		int epoch = epochGate.enter();
+		try {
+			result = doReplace(writeKey(key), oldValue, newValue);
+		}
+		finally {
+			epochGate.exit(epoch);
+			unlockLog(record, result);
+		}
+		commitLog(record);
+		return result;
 	}
 	
-	@SuppressWarnings("unchecked")
 	public V putIfAbsent(K key, V value) {
 		Requires.nonNull(key, "key");
 		Requires.nonNull(value, "value");
 		
-		return (V) doPut(key, value, PUT_IF_ABSENT);
-	 }
+		return loggedPut(key, value, PUT_IF_ABSENT);
+	}
 
-	@SuppressWarnings("unchecked")
 	public V put(K key, V value) {
 		Requires.nonNull(key, "key");
 		Requires.nonNull(value, "value");
 
-		return (V) doPut(key, value, PUT);
+		return loggedPut(key, value, PUT);
 	}
 	
-	@SuppressWarnings("unchecked")
 	public V replace(K key, V value) {
 		Requires.nonNull(key, "key");
 		Requires.nonNull(value, "value");
 
-		return (V) doPut(key, value, REPLACE);
+		return loggedPut(key, value, REPLACE);
 	}
 	
 	@SuppressWarnings("unchecked")
 	public V remove(Object key) {
 		Requires.nonNull(key, "key");
 
-		return (V) doRemove(key);
+		TreeLog.Record record = lockLog(key, null);
+		V result = null;
+		int epoch = epochGate.enter();
+		try {
+			result = (V) doRemove(writeKey(key));
+		}
+		finally {
+			epochGate.exit(epoch);
+			unlockLog(record, result != null);
+		}
+		commitLog(record);
+		return result;
 	}
 	
 	public boolean remove(Object key, Object oldValue) {
 		Requires.nonNull(key, "key");
 		Requires.nonNull(oldValue, "oldValue");
 
-		return doRemove(key, oldValue);
+		TreeLog.Record record = lockLog(key, null);
+		boolean result = false;
+		int epoch = epochGate.enter();
+		try {
+			result = doRemove(writeKey(key), oldValue);
+		}
+		finally {
+			epochGate.exit(epoch);
+			unlockLog(record, result);
+		}
+		commitLog(record);
+		return result;
 	}
 	
-	private Object doGet(Object key) {
+	/**
+	 * Applies the record of the log without logging, used by the replay on open
+	 * 
+	 * @param op
+	 * @param key
+	 * @param value
+	 */
+	
+	void applyLogged(byte op, Object key, Object value) {
+		int epoch = epochGate.enter();
+		try {
+			if (op == TreeLog.PUT) {
+				doPut(writeKey(key), value, PUT);
+			}
+			else if (op == TreeLog.REMOVE) {
+				doRemove(writeKey(key));
+			}
+			else if (op == TreeLog.TRUNCATE) {
+				doTruncate();
+			}
+			else {
+				throw new PagingTreeException("unknown record of the log " + op);
+			}
+		}
+		finally {
+			epochGate.exit(epoch);
+		}
+	}
+	
+	/**
+	 * Iterates all entries in the key order
+	 * 
+	 * @return weakly consistent iterable
+	 */
+	
+	public Iterable<SimpleEntry<K, V>> entries() {
+		return range(null, null);
+	}
+	
+	/**
+	 * Iterates entries with keys in the range [fromKey, toKey) in the key order
+	 * 
+	 * @param fromKey inclusive or null
+	 * @param toKey exclusive or null
+	 * @return weakly consistent iterable
+	 */
+	
+	public Iterable<SimpleEntry<K, V>> range(final K fromKey, final K toKey) {
+		return new Iterable<SimpleEntry<K, V>>() {
+			
+			@Override
+			public Iterator<SimpleEntry<K, V>> iterator() {
+				return cursor(fromKey, toKey, false);
+			}
 		
-		long pageNum = treeAddress.getPageNum();
-		if (pageNum == 0) {
-			return null;
+		};
+	}
+	
+	/**
+	 * Iterates entries with keys in the range [fromKey, toKey) in the reverse key order
+	 * 
+	 * @param fromKey inclusive or null
+	 * @param toKey exclusive or null
+	 * @return weakly consistent iterable
+	 */
+	
+	public Iterable<SimpleEntry<K, V>> descendingRange(final K fromKey, final K toKey) {
+		return new Iterable<SimpleEntry<K, V>>() {
+			
+			@Override
+			public Iterator<SimpleEntry<K, V>> iterator() {
+				return cursor(fromKey, toKey, true);
+			}
+		
+		};
+	}
+	
+	/**
+	 * Opens cursor for the range [fromKey, toKey)
+	 * 
+	 * Cursor reads one leaf page at a time, it does not block writers and sees
+	 * all changes that were made before the read of the leaf page.
+	 * 
+	 * @param fromKey inclusive or null
+	 * @param toKey exclusive or null
+	 * @param reverse
+	 * @return cursor
+	 */
+	
+	public PagingTreeCursor<K, V> cursor(K fromKey, K toKey, boolean reverse) {
+		return new PagingTreeCursor<K, V>(this, fromKey, toKey, reverse);
+	}
+	
+	/**
+	 * Reads entries of the single leaf page for the cursor
+	 * 
+	 * @param key is the start of the batch, inclusive lower bound for the forward cursor 
+	 *        and exclusive upper bound for the reverse cursor, null for the start of the tree
+	 * @param fromKey inclusive or null
+	 * @param toKey exclusive or null
+	 * @param reverse
+	 * @param entries output in the order of the cursor
+	 * @return key for the next batch or null if there are no more pages in the range
+	 */
+	
+	Object readCursorBatch(Object key, Object fromKey, Object toKey, boolean reverse, List<SimpleEntry<Object, Object>> entries) {
+		
+		int epoch = epochGate.enter();
+		try {
+			return doReadCursorBatch(writeKey(key), writeKey(fromKey), writeKey(toKey), reverse, entries);
+		}
+		finally {
+			epochGate.exit(epoch);
 		}
+	}
+	
+	private Object doReadCursorBatch(Object key, Object fromKey, Object toKey, boolean reverse, List<SimpleEntry<Object, Object>> entries) {
 		
-		PageReader pageReader = new PageReader(paging, pageNum);
+		PageReader pageReader = new PageReader(paging);
 		
-		char magic = pageReader.readChar();
+		Object nextKey = null;
+		int[] bound = new int[1];
+		
+		long pageNum = treeAddress.getPageNum();
+		
+		while(pageNum != 0) {
+			
+			pageReader.switchAddress(paging.getAddress(pageNum));
+			
+			char magic = pageReader.readChar();
+			
+			if (magic == MagicCodes.INNER_NODE.getMagic()) {
+				
+				pageNum = InnerNodePage.findCursorChild(paging, pageReader, key, reverse, bound);
+				
+				if (bound[0] != 0) {
+					// deeper page has closer bound
+					pageReader.seek(InnerNodePage.getKeyPos(paging, bound[0]));
+					
+					Object limitKey = reverse ? fromKey : toKey;
+					int c = limitKey != null ? ValueHolder.compareTo(pageReader, limitKey) : reverse ? 1 : -1;
+					
+					if (reverse ? c > 0 : c < 0) {
+						pageReader.seek(InnerNodePage.getKeyPos(paging, bound[0]));
+						nextKey = ValueHolder.readValue(pageReader);
+					}
+					else {
+						nextKey = null;
+					}
+				}
+			
+			}
+			else if (magic == MagicCodes.LEAF_NODE.getMagic())  {
+				
+				if (reverse) {
+					leafNode.readRange(pageReader, fromKey, key, true, entries);
+				}
+				else {
+					leafNode.readRange(pageReader, key, toKey, false, entries);
+				}
+				
+				return nextKey;
+			}
+			else {
+				throw new PagingTreeException("unknown magic " + Integer.toHexString(magic) + " for page " + pageNum);
+			}
 		
-		if (magic == MagicCodes.INNER_NODE.getMagic()) {
-			throw new IllegalStateException("unsupported INNER_NODE");
 		}
-		else if (magic == MagicCodes.LEAF_NODE.getMagic())  {
-			return leafNode.get(pageReader, key);
+		
+		return null;
+	}
+	
+	/**
+	 * Descends from the root only if the key is out of bounds of the last leaf page.
+	 * Consumer can call operations of the tree, that is why thread-local reader and key are not used.
+	 * 
+	 * @param keys
+	 * @param consumer
+	 */
+	
+	@SuppressWarnings("unchecked")
+	private void doGetAll(List<? extends K> keys, EntryConsumer<K, V> consumer) {
+		
+		PageReader pageReader = new PageReader(paging);
+		Utf8Key utf8Key = new Utf8Key();
+		LeafBounds bounds = new LeafBounds();
+		
+		int size = keys.size();
+		for (int i = 0; i != size; ++i) {
+			
+			K key = keys.get(i);
+			Requires.nonNull(key, "key");
+			Object searchKey = key instanceof String ? utf8Key.encode((String) key) : key;
+			
+			if (bounds.pageNum == 0 || !isInBounds(pageReader, searchKey, bounds)) {
+				findLeafBounds(pageReader, searchKey, bounds);
+			}
+			
+			Object value = null;
+			if (bounds.pageNum != 0) {
+				pageReader.switchAddress(bounds.address);
+				value = leafNode.get(pageReader, searchKey);
+			}
+			
+			consumer.accept(i, key, (V) value);
 		}
-		else {
-			throw new PagingTreeException("unknown magic " + Integer.toHexString(magic) + " for page " + pageNum);
+	
+	}
+	
+	/**
+	 * Applies sorted operations of the batch
+	 * 
+	 * @param keys
+	 * @param values
+	 * @param applied number of applied operations from the start, it is kept if the write fails
+	 */
+	
+	private void doWrite(Object[] keys, Object[] values, int[] applied) {
+		
+		PageReader pageReader = new PageReader(paging);
+		LeafBounds bounds = new LeafBounds();
+		
+		int i = 0;
+		int attempt = 0;
+		while(i != keys.length) {
+			
+			findLeafBounds(pageReader, keys[i], bounds);
+			
+			if (bounds.pageNum == 0) {
+				// empty tree
+				if (values[i] != null) {
+					doPut(keys[i], values[i], PUT);
+				}
+				applied[0] = ++i;
+				continue;
+			}
+			
+			int to = i + 1;
+			while(to != keys.length && isInBounds(pageReader, keys[to], bounds)) {
+				to++;
+			}
+			
+			pageReader.switchAddress(bounds.address);
+			int written = leafNode.write(pageReader, keys, values, i, to, pageManager, applied);
+			
+			if (written == -1) {
+				// page is frozen
+				contention.retry(Site.FROZEN_PAGE, ++attempt);
+				continue;
+			}
+			
+			i += written;
+			if (i != to) {
+				splitLeaf(bounds.pageNum, keys[i]);
+			}
 		}
+	
+	}
+	
+	/**
+	 * Leaf page of the last descent and the closest entries of the inner pages that bound keys of the leaf page
+	 */
+	
+	private static final class LeafBounds {
 		
+		long pageNum;
+		long address;
+		long lowerAddress;
+		int lowerPos;
+		long upperAddress;
+		int upperPos;
+	
 	}
-
-	private boolean doReplace(Object key, Object oldValue, Object newValue) {
+	
+	/**
+	 * Descends to the leaf page and collects its bounds
+	 * 
+	 * @param pageReader
+	 * @param key
+	 * @param bounds pageNum is 0 for empty tree
+	 */
+	
+	private void findLeafBounds(PageReader pageReader, Object key, LeafBounds bounds) {
+		
+		int[] entries = new int[2];
+		
+		bounds.pageNum = 0;
+		bounds.lowerAddress = 0;
+		bounds.upperAddress = 0;
 		
 		long pageNum = treeAddress.getPageNum();
-		if (pageNum == 0) {
-			return false;
+		
+		while(pageNum != 0) {
+			
+			long address = paging.getAddress(pageNum);
+			pageReader.switchAddress(address);
+			
+			char magic = pageReader.readChar();
+			
+			if (magic == MagicCodes.INNER_NODE.getMagic()) {
+				
+				pageNum = InnerNodePage.findChildBounds(paging, pageReader, key, entries);
+				
+				// deeper page has closer bounds
+				if (entries[0] != 0) {
+					bounds.lowerAddress = address;
+					bounds.lowerPos = entries[0];
+				}
+				if (entries[1] != 0) {
+					bounds.upperAddress = address;
+					bounds.upperPos = entries[1];
+				}
+			}
+			else if (magic == MagicCodes.LEAF_NODE.getMagic())  {
+				bounds.pageNum = pageNum;
+				bounds.address = address;
+				return;
+			}
+			else {
+				throw new PagingTreeException("unknown magic " + Integer.toHexString(magic) + " for page " + pageNum);
+			}
 		}
+	
+	}
+	
+	private boolean isInBounds(PageReader pageReader, Object key, LeafBounds bounds) {
 		
-		PageReader pageReader = new PageReader(paging, pageNum);
+		if (bounds.lowerAddress != 0) {
+			pageReader.switchAddress(bounds.lowerAddress);
+			pageReader.seek(InnerNodePage.getKeyPos(paging, bounds.lowerPos));
+			if (ValueHolder.compareTo(pageReader, key) > 0) {
+				return false;
+			}
+		}
 		
-		char magic = pageReader.readChar();
+		if (bounds.upperAddress != 0) {
+			pageReader.switchAddress(bounds.upperAddress);
+			pageReader.seek(InnerNodePage.getKeyPos(paging, bounds.upperPos));
+			if (ValueHolder.compareTo(pageReader, key) <= 0) {
+				return false;
+			}
+		}
 		
-		if (magic == MagicCodes.INNER_NODE.getMagic()) {
-			throw new IllegalStateException("unsupported INNER_NODE");
+		return true;
+	}
+	
+	private static boolean isComparable(Object[] keys) {
+		if (keys.length == 0 || !(keys[0] instanceof Comparable)) {
+			return false;
 		}
-		else if (magic == MagicCodes.LEAF_NODE.getMagic())  {
-			return leafNode.replace(pageReader, key, oldValue, newValue);
+		Class<?> keyClass = keys[0].getClass();
+		for (Object key : keys) {
+			if (key == null || key.getClass() != keyClass) {
+				return false;
+			}
 		}
-		else {
-			throw new PagingTreeException("unknown magic " + Integer.toHexString(magic) + " for page " + pageNum);
+		return true;
+	}
+	
+	/**
+	 * STRING key of the read operation is encoded to the buffer of the current thread
+	 * 
+	 * @param key
+	 * @return key to search
+	 */
+	
+	private Object readKey(Object key) {
+		if (key instanceof String) {
+			return utf8Keys.get().encode((String) key);
+		}
+		return key;
+	}
+	
+	/**
+	 * STRING key of the write operation is encoded to the new buffer, 
+	 * because the operation can call user code (MutableLongUpdater)
+	 * 
+	 * @param key or null
+	 * @return key to search
+	 */
+	
+	static Object writeKey(Object key) {
+		if (key instanceof String) {
+			return new Utf8Key((String) key);
+		}
+		if (key instanceof StripedLong) {
+			throw new PagingTreeException("striped long can not be a key");
+		}
+		return key;
+	}
+	
+	private Object doGet(Object key) {
+		
+		PageReader pageReader = pageReaders.get();
+		
+		long pageNum = findLeaf(pageReader, key);
+		if (pageNum == 0) {
+			return null;
 		}
 		
+		return leafNode.get(pageReader, key);
+		
 	}
 	
-	private Object doPut(Object key, Object value, ValuePredicate valuePredicate) {
+	/**
+	 * Finds value by using the reader of the current thread
+	 * 
+	 * @param key
+	 * @return reader pointing to the value or null if the key is not found
+	 */
+	
+	private PageReader findValue(Object key) {
 		
-		long pageNum = treeAddress.getPageNum();
+		PageReader pageReader = pageReaders.get();
+		
+		long pageNum = findLeaf(pageReader, key);
 		if (pageNum == 0) {
+			return null;
+		}
+		
+		return leafNode.seekValue(pageReader, key) ? pageReader : null;
+	
+	}
+	
+	private boolean doReplace(Object key, Object oldValue, Object newValue) {
+		
+		PageReader pageReader = new PageReader(paging);
+		
+		int attempt = 0;
+		while(true) {
 			
-			if (!valuePredicate.apply(false)) {
-				return null;
+			long pageNum = findLeaf(pageReader, key);
+			if (pageNum == 0) {
+				return false;
 			}
 			
-			// create new leaf page
-			long newPageNum = masterPage.allocatePage();
-			LeafNodePage.structBlank(paging, newPageNum, key, value);
-
-			if (treeAddress.casPageNum(0, newPageNum)) {
-				return null;
-			}
+			Object result = leafNode.replace(pageReader, key, oldValue, newValue, pageManager);
 			
-			masterPage.freePage(newPageNum, false);
-			ThreadUtil.loopSleep();
-			return doPut(key, value, valuePredicate);
+			if (result == LeafNode.SPLIT) {
+				splitLeaf(pageNum, key);
+			}
+			else if (result == LeafNode.RETRY) {
+				contention.retry(Site.FROZEN_PAGE, ++attempt);
+			}
+			else {
+				return (Boolean) result;
+			}
+		
 		}
 		
-		PageReader pageReader = new PageReader(paging, pageNum);
+	}
+	
+	/**
+	 * Put operation, the change is logged if the value is stored,
+	 * the update of the mutable long is logged by the value after the update
+	 */
+	
+	@SuppressWarnings("unchecked")
+	private V loggedPut(K key, V value, ValuePredicate valuePredicate) {
 		
-		char magic = pageReader.readChar();
+		TreeLog.Record record = lockLog(key, value instanceof MutableLongUpdater ? null : value);
+		V result = null;
+		boolean applied = false;
+		int epoch = epochGate.enter();
+		try {
+			result = (V) doPut(writeKey(key), value, valuePredicate);
+			
+			if (record == null) {
+				applied = true;
+			}
+			else if (value instanceof MutableLongUpdater) {
+				applied = result != null;
+				if (applied) {
+					record = log.update(record, doGet(writeKey(key)));
+				}
+			}
+			else {
+				applied = valuePredicate == PUT || (valuePredicate == PUT_IF_ABSENT ? result == null : result != null);
+			}
+		}
+		finally {
+			epochGate.exit(epoch);
+			unlockLog(record, applied);
+		}
+		commitLog(record);
+		return result;
+	}
+	
+	private TreeLog.Record lockLog(Object key, Object value) {
+		return log != null ? log.lock(treeName, key, value) : null;
+	}
+	
+	private void unlockLog(TreeLog.Record record, boolean applied) {
+		if (record != null) {
+			log.unlock(record, applied);
+		}
+	}
+	
+	private void commitLog(TreeLog.Record record) {
+		if (record != null) {
+			log.commit(record);
+		}
+	}
+	
+	private void doTruncate() {
+		long oldRoot = swapRoot(treeAddress, 0);
 		
-		if (magic == MagicCodes.INNER_NODE.getMagic()) {
-			throw new IllegalStateException("unsupported INNER_NODE");
+		if (oldRoot != 0) {
+			freeTree(oldRoot);
 		}
-		else if (magic == MagicCodes.LEAF_NODE.getMagic())  {
-			return leafNode.put(pageReader, key, value, valuePredicate);
+	}
+	
+	private void checkEntrySize(Object key, Object value) {
+		if (LeafNodePage.estimateEntrySize(paging, key, value) > LeafNodePage.getMaxEntrySize(paging) ||
+				InnerNodePage.estimateEntrySize(paging, key) > InnerNodePage.getMaxEntrySize(paging)) {
+			throw new PagingTreeException("too big entry for the key " + key);
+		}
+	}
+	
+	private Object doPut(Object key, Object value, ValuePredicate valuePredicate) {
+		
+		if (value instanceof MutableLongUpdater) {
+			checkEntrySize(key, 0L);
 		}
 		else {
-			throw new PagingTreeException("unknown magic " + Integer.toHexString(magic) + " for page " + pageNum);
+			checkEntrySize(key, value);
+		}
+		
+		PageReader pageReader = new PageReader(paging);
+		
+		int attempt = 0;
+		while(true) {
+		
+			long pageNum = findLeaf(pageReader, key);
+			if (pageNum == 0) {
+				
+				if (!valuePredicate.apply(false) || value instanceof MutableLongUpdater) {
+					return null;
+				}
+				
+				// create new leaf page
+				Object storedValue = value;
+				if (LeafNodePage.isDataPageValue(paging, value)) {
+					storedValue = DataPage.writeValue(paging, pageManager, value);
+				}
+				
+				long newPageNum = pageManager.allocatePage();
+				LeafNodePage.structBlank(paging, newPageNum, key, storedValue);
+				
+				if (treeAddress.casPageNum(0, newPageNum)) {
+					return null;
+				}
+				
+				// page was not published
+				pageManager.freePage(newPageNum, false);
+				if (storedValue instanceof DataPageRef) {
+					DataPage.freeValue(paging, pageManager, ((DataPageRef) storedValue).getPageNum(), false);
+				}
+				contention.retry(Site.TREE_ROOT, ++attempt);
+				continue;
+			}
+			
+			Object result = leafNode.put(pageReader, key, value, valuePredicate, pageManager);
+			
+			if (result == LeafNode.SPLIT) {
+				splitLeaf(pageNum, key);
+			}
+			else if (result == LeafNode.RETRY) {
+				contention.retry(Site.FROZEN_PAGE, ++attempt);
+			}
+			else {
+				return result;
+			}
+		
 		}
 		
 	}
-
+	
 	private Object doRemove(Object key) {
 		
+		PageReader pageReader = new PageReader(paging);
+		
+		int attempt = 0;
+		while(true) {
+			
+			long pageNum = findLeaf(pageReader, key);
+			if (pageNum == 0) {
+				return null;
+			}
+			
+			Object result = leafNode.remove(pageReader, key, pageManager);
+			
+			if (result != LeafNode.RETRY) {
+				return result;
+			}
+			
+			contention.retry(Site.FROZEN_PAGE, ++attempt);
+		}
+		
+	}
+	
+	private boolean doRemove(Object key, Object oldValue) {
+		
+		PageReader pageReader = new PageReader(paging);
+		
+		int attempt = 0;
+		while(true) {
+			
+			long pageNum = findLeaf(pageReader, key);
+			if (pageNum == 0) {
+				return false;
+			}
+			
+			Object result = leafNode.remove(pageReader, key, oldValue, pageManager);
+			
+			if (result != LeafNode.RETRY) {
+				return (Boolean) result;
+			}
+			
+			contention.retry(Site.FROZEN_PAGE, ++attempt);
+		}
+	
+	}
+	
+	/**
+	 * Finds leaf page for the key
+	 * 
+	 * @param pageReader is pointing to the leaf page after the call
+	 * @param key
+	 * @return pageNum of the leaf page or 0 for empty tree
+	 */
+	
+	private long findLeaf(PageReader pageReader, Object key) {
+		
 		long pageNum = treeAddress.getPageNum();
-		if (pageNum == 0) {
-			return null;
+		
+		while(pageNum != 0) {
+			
+			pageReader.switchAddress(paging.getAddress(pageNum));
+			
+			char magic = pageReader.readChar();
+			
+			if (magic == MagicCodes.INNER_NODE.getMagic()) {
+				pageNum = innerNode.findChild(pageReader, key);
+			}
+			else if (magic == MagicCodes.LEAF_NODE.getMagic())  {
+				return pageNum;
+			}
+			else {
+				throw new PagingTreeException("unknown magic " + Integer.toHexString(magic) + " for page " + pageNum);
+			}
+		
 		}
 		
-		PageReader pageReader = new PageReader(paging, pageNum);
-		char magic = pageReader.readChar();
+		return 0;
+	}
+	
+	/**
+	 * Finds parent page for the child page
+	 * 
+	 * @param pageReader is pointing to the parent page after the call
+	 * @param key is any key of the child page
+	 * @param childPageNum
+	 * @return pageNum of the parent page, 0 if child page is root, -1 if child page is not found
+	 */
+	
+	private long findParent(PageReader pageReader, Object key, long childPageNum) {
 		
-		if (magic == MagicCodes.INNER_NODE.getMagic()) {
-			throw new IllegalStateException("unsupported INNER_NODE");
+		long pageNum = treeAddress.getPageNum();
+		if (pageNum == childPageNum) {
+			return 0;
 		}
-		else if (magic == MagicCodes.LEAF_NODE.getMagic())  {
-			return leafNode.remove(pageReader, key);
+		
+		while(pageNum != 0) {
+			
+			pageReader.switchAddress(paging.getAddress(pageNum));
+			
+			char magic = pageReader.readChar();
+			
+			if (magic != MagicCodes.INNER_NODE.getMagic()) {
+				break;
+			}
+			
+			long child = innerNode.findChild(pageReader, key);
+			if (child == childPageNum) {
+				pageReader.reset();
+				return pageNum;
+			}
+			
+			pageNum = child;
 		}
-		else {
-			throw new PagingTreeException("unknown magic " + Integer.toHexString(magic) + " for page " + pageNum);
+		
+		return -1;
+	}
+	
+	/**
+	 * Splits or compacts leaf page, only one thread can freeze the page and split it.
+	 * Dead values and removed entries are dropped, compacted page replaces the frozen one.
+	 * 
+	 * @param pageNum
+	 * @param key is any key of the page
+	 */
+	
+	private void splitLeaf(long pageNum, Object key) {
+		
+		PageReader pageReader = new PageReader(paging, pageNum);
+		
+		if (!LeafNodePage.getWriterGate(paging, pageReader).freeze()) {
+			// split is in progress by another thread
+			contention.retry(Site.SPLIT, 1);
+			return;
 		}
 		
+		Split split = leafNode.split(pageReader, pageManager);
+		
+		replaceChild(pageNum, key, split);
+		
+		pageManager.freePage(pageNum, true);
 	}
 	
-	private boolean doRemove(Object key, Object oldValue) {
+	/**
+	 * Splits inner page, only one thread can freeze the page and split it
+	 * 
+	 * @param pageNum
+	 * @param key is any key of the page
+	 */
+	
+	private void splitInner(long pageNum, Object key) {
 		
-		long pageNum = treeAddress.getPageNum();
-		if (pageNum == 0) {
-			return false;
+		PageReader pageReader = new PageReader(paging, pageNum);
+		
+		if (!InnerNodePage.getWriterGate(paging, pageReader).freeze()) {
+			// split is in progress by another thread
+			contention.retry(Site.SPLIT, 1);
+			return;
 		}
 		
+		Split split = innerNode.split(pageReader, pageManager);
+		
+		replaceChild(pageNum, key, split);
+		
+		pageManager.freePage(pageNum, true);
+	}
+	
+	/**
+	 * Replaces frozen page by the split in the parent page or in the tree root
+	 * 
+	 * Root of the tree could be swapped by truncate or replaceWith during the split. The old tree is frozen
+	 * from the root by freeTree, that is why the split can not be linked to it and the frozen page is not reachable
+	 * from the new root. Pages of the split are not published then and are freed, the frozen page is always
+	 * freed by the splitter, see freeTree.
+	 * 
+	 * @param pageNum frozen page
+	 * @param key is any key of the frozen page
+	 * @param split
+	 */
+	
+	private void replaceChild(long pageNum, Object key, Split split) {
+		
+		PageReader pageReader = new PageReader(paging);
+		
+		int attempt = 0;
+		while(true) {
+			
+			long parentPageNum = findParent(pageReader, key, pageNum);
+			
+			Runnable hook = splitHook;
+			if (hook != null) {
+				hook.run();
+			}
+			
+			if (parentPageNum == 0) {
+				
+				long newRoot = split.getLesserPageNum();
+				if (!split.isReplace()) {
+					newRoot = pageManager.allocatePage();
+					InnerNodePage.structBlank(paging, newRoot, split.getKey(), split.getLesserPageNum(), split.getGreaterPageNum());
+				}
+				
+				if (treeAddress.casPageNum(pageNum, newRoot)) {
+					return;
+				}
+				
+				// root was swapped
+				if (!split.isReplace()) {
+					pageManager.freePage(newRoot, false);
+				}
+				contention.retry(Site.TREE_ROOT, ++attempt);
+				continue;
+			}
+			
+			if (parentPageNum == -1) {
+				// values of the split are shared with the frozen page, only pages of nodes are freed
+				pageManager.freePage(split.getLesserPageNum(), false);
+				if (!split.isReplace()) {
+					pageManager.freePage(split.getGreaterPageNum(), false);
+				}
+				return;
+			}
+			
+			WriterGate gate = InnerNodePage.getWriterGate(paging, pageReader);
+			if (!gate.enter()) {
+				// parent page is splitting
+				contention.retry(Site.FROZEN_PAGE, ++attempt);
+				continue;
+			}
+			
+			boolean replaced;
+			try {
+				replaced = innerNode.replaceChild(pageReader, key, pageNum, split);
+			}
+			finally {
+				gate.exit();
+			}
+			
+			if (replaced) {
+				return;
+			}
+			
+			splitInner(parentPageNum, key);
+		}
+		
+	}
+	
+	/**
+	 * Sets new root of the tree
+	 * 
+	 * @param rootAddress
+	 * @param newRoot
+	 * @return old root
+	 */
+	
+	private long swapRoot(PageNumCas rootAddress, long newRoot) {
+		int attempt = 0;
+		while(true) {
+			long oldRoot = rootAddress.getPageNum();
+			if (rootAddress.casPageNum(oldRoot, newRoot)) {
+				return oldRoot;
+			}
+			contention.retry(Site.TREE_ROOT, ++attempt);
+		}
+	}
+	
+	/**
+	 * Frees with delay all pages of the tree that is not reachable from the root anymore
+	 * 
+	 * @param pageNum root of the tree
+	 */
+	
+	private void freeTree(long pageNum) {
+		
 		PageReader pageReader = new PageReader(paging, pageNum);
 		char magic = pageReader.readChar();
 		
+		WriterGate gate;
 		if (magic == MagicCodes.INNER_NODE.getMagic()) {
-			throw new IllegalStateException("unsupported INNER_NODE");
+			gate = InnerNodePage.getWriterGate(paging, pageReader);
 		}
 		else if (magic == MagicCodes.LEAF_NODE.getMagic())  {
-			return leafNode.remove(pageReader, key, oldValue);
+			gate = LeafNodePage.getWriterGate(paging, pageReader);
 		}
 		else {
 			throw new PagingTreeException("unknown magic " + Integer.toHexString(magic) + " for page " + pageNum);
 		}
 		
+		// page is frozen before the walk: writers of the page are finished and splits of children can not be linked to it,
+		// page that is frozen by the splitter is freed by the splitter, but its children and values are freed here
+		boolean owned = gate.freeze();
+		
+		pageReader.reset();
+		pageReader.readChar();
+		
+		if (magic == MagicCodes.INNER_NODE.getMagic()) {
+			for (long child : innerNode.getChilds(pageReader)) {
+				freeTree(child);
+			}
+		}
+		else {
+			LeafNodePage.freeDataPageValues(paging, pageReader, pageManager, true);
+		}
+		
+		if (owned) {
+			pageManager.freePage(pageNum, true);
+		}
 	}
 	
 	public void printGraph(PrintStream ps) {
@@ -233,7 +1487,9 @@ public final class PagingTree<K, V> {
 		char magic = pageReader.readChar();
 		
 		if (magic == MagicCodes.INNER_NODE.getMagic()) {
-			throw new IllegalStateException("unsupported INNER_NODE");
+			ps.println("digraph{");
+			printPage(pageReader, pageNum, ps);
+			ps.println("}");
 		}
 		else if (magic == MagicCodes.LEAF_NODE.getMagic())  {
 			leafNode.printGraph(pageReader, ps);
@@ -242,7 +1498,36 @@ public final class PagingTree<K, V> {
 			throw new PagingTreeException("unknown magic " + Integer.toHexString(magic) + " for page " + pageNum);
 		}
 		
+	
+	}
+	
+	private void printPage(PageReader pageReader, long pageNum, PrintStream ps) {
+		
+		pageReader.switchAddress(paging.getAddress(pageNum));
+		char magic = pageReader.readChar();
+		
+		if (magic == MagicCodes.INNER_NODE.getMagic()) {
+			long[] childs = innerNode.printChilds(pageReader, pageNum, ps);
+			for (long child : childs) {
+				printPage(pageReader, child, ps);
+			}
+		}
+		else if (magic == MagicCodes.LEAF_NODE.getMagic())  {
+			ps.println("subgraph cluster_page" + pageNum + " {");
+			ps.println("\"page" + pageNum + "\"");
+			leafNode.printEntries(pageReader, ps);
+			ps.println("}");
+		}
+		else {
+			throw new PagingTreeException("unknown magic " + Integer.toHexString(magic) + " for page " + pageNum);
+		}
+		
+	}
+	
+	public interface EntryConsumer<K, V> {
 		
+		void accept(int index, K key, V value);
+	
 	}
 	
 	public interface ValuePredicate {
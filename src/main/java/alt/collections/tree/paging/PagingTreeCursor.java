@@ -0,0 +1,81 @@
+package alt.collections.tree.paging;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import alt.collections.tree.SimpleEntry;
+
+/**
+ * Cursor over the range of keys in the PagingTree
+ * 
+ * Cursor reads entries by batches, one leaf page per batch, and never keeps references to pages between batches.
+ * Each batch is found from the root by the first key of the next leaf page, that is why the cursor is 
+ * weakly consistent: it returns entries that were live at the moment of the read of their leaf page,
+ * keys are returned in the strict order without duplicates.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class PagingTreeCursor<K, V> implements Iterator<SimpleEntry<K, V>> {
+	
+	private final PagingTree<K, V> tree;
+	private final K fromKey;
+	private final K toKey;
+	private final boolean reverse;
+	
+	private final List<SimpleEntry<Object, Object>> batch = new ArrayList<SimpleEntry<Object, Object>>();
+	private int index = 0;
+	
+	private Object nextKey;
+	private boolean finished = false;
+	
+	public PagingTreeCursor(PagingTree<K, V> tree, K fromKey, K toKey, boolean reverse) {
+		this.tree = tree;
+		this.fromKey = fromKey;
+		this.toKey = toKey;
+		this.reverse = reverse;
+		this.nextKey = reverse ? toKey : fromKey;
+	}
+	
+	@Override
+	public boolean hasNext() {
+		
+		while(index == batch.size()) {
+			
+			if (finished) {
+				return false;
+			}
+			
+			batch.clear();
+			index = 0;
+			
+			nextKey = tree.readCursorBatch(nextKey, fromKey, toKey, reverse, batch);
+			
+			if (nextKey == null) {
+				finished = true;
+			}
+		}
+		
+		return true;
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public SimpleEntry<K, V> next() {
+		
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		
+		return (SimpleEntry<K, V>) (SimpleEntry<?, ?>) batch.get(index++);
+	}
+	
+	@Override
+	public void remove() {
+		throw new IllegalStateException("unsupported operation");
+	}
+
+}
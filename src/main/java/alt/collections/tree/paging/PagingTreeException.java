@@ -15,4 +15,8 @@ public class PagingTreeException extends RuntimeException {
 		super(str);
 	}
 	
+	public PagingTreeException(String str, Throwable cause) {
+		super(str, cause);
+	}
+
 }
@@ -0,0 +1,241 @@
+package alt.collections.tree.paging;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import alt.collections.concurrent.PageNumCas;
+import alt.collections.paging.Paging;
+import alt.collections.store.WriteAheadLog;
+import alt.collections.util.Requires;
+
+/**
+ * Paging Tree Store is the handle of the store that is shared by trees
+ * 
+ * Master page, virtual space of the Root Tree and roots of the trees are resolved once,
+ * tree is opened by the name without the search in the Root Tree after the first open.
+ * Roots are never removed from the Root Tree, that is why resolved roots are always valid.
+ * 
+ * New pages are allocated by threads from reserved runs of pages, see ChunkedPageManager,
+ * store must be closed to return unused reserved pages. Reservations of the process that died 
+ * are returned by the next exclusive open.
+ * 
+ * Store with the write ahead log replays it on open and logs changes of trees, see TreeLog.
+ * Such store is opened exclusively, counters of readers and reserved pages left by the dead process are reset, see MasterPage.getOrCreate.
+ * Checkpoint writes the image of the store and drops records before it, recovery restores the image
+ * and replays records after it. Load and replaceWith of trees are not logged, they are fenced from the checkpoint
+ * and are followed by the checkpoint.
+ * 
+ * Open handle is registered for the paging, the handle with the log replaces the one without it.
+ * Entry points by Paging use the registered handle, see of(Paging).
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class PagingTreeStore {
+	
+	public static final int DEFAULT_CHUNK_PAGES = 16;
+	
+	private static final Map<Paging, WeakReference<PagingTreeStore>> stores = new WeakHashMap<Paging, WeakReference<PagingTreeStore>>();
+	
+	private final Paging paging;
+	private final MasterPage masterPage;
+	private final PageManager pageManager;
+	private final NamedTreeMap namedTreeMap;
+	private final TreeLog log;
+	private final ConcurrentMap<String, PageNumCas> roots = new ConcurrentHashMap<String, PageNumCas>();
+	
+	public PagingTreeStore(Paging paging) {
+		this(paging, DEFAULT_CHUNK_PAGES);
+	}
+	
+	/**
+	 * Opens the store
+	 * 
+	 * @param paging
+	 * @param chunkPages number of pages reserved by the thread at once, 1 to allocate pages one by one
+	 */
+	
+	public PagingTreeStore(Paging paging, int chunkPages) {
+		this(paging, chunkPages, null);
+	}
+	
+	/**
+	 * Opens the store with the write ahead log, records of the log are applied to trees
+	 * 
+	 * @param paging
+	 * @param chunkPages number of pages reserved by the thread at once, 1 to allocate pages one by one
+	 * @param wal log of the store or null
+	 */
+	
+	public PagingTreeStore(Paging paging, int chunkPages, WriteAheadLog wal) {
+		Requires.nonNull(paging, "paging");
+		Requires.positive(chunkPages, "chunkPages");
+		
+		this.paging = paging;
+		
+		this.log = wal != null ? new TreeLog(paging, wal) : null;
+		if (log != null) {
+			log.restore();
+		}
+		
+		this.masterPage = wal != null ? MasterPage.getOrCreate(paging) : MasterPage.concurrentGetOrCreate(paging);
+		this.pageManager = chunkPages == 1 ? masterPage : new ChunkedPageManager(masterPage, chunkPages);
+		
+		PagedVirtualSpace pagedVirtualSpace = new PagedVirtualSpace(paging, masterPage, masterPage);
+		this.namedTreeMap = new NamedTreeImmutableMap(paging, pagedVirtualSpace, masterPage.getRootEntry());
+		
+		if (log != null) {
+			replay();
+			checkpoint();
+		}
+		
+		register(this);
+	}
+	
+	/**
+	 * Returns the registered handle of the store, the handle without the log and reserved runs of pages
+	 * is opened if there is none
+	 * 
+	 * @param paging
+	 * @return
+	 */
+	
+	public static PagingTreeStore of(Paging paging) {
+		Requires.nonNull(paging, "paging");
+		
+		synchronized(stores) {
+			PagingTreeStore store = find(paging);
+			if (store == null) {
+				store = new PagingTreeStore(paging, 1);
+			}
+			return store;
+		}
+	}
+	
+	public Paging getPaging() {
+		return paging;
+	}
+	
+	public MasterPage getMasterPage() {
+		return masterPage;
+	}
+	
+	public PageManager getPageManager() {
+		return pageManager;
+	}
+	
+	TreeLog getLog() {
+		return log;
+	}
+	
+	/**
+	 * Opens the tree, tree is created if it does not exist
+	 * 
+	 * @param treeName
+	 * @return
+	 */
+	
+	public <K, V> PagingTree<K, V> openTree(String treeName) {
+		return new PagingTree<K, V>(this, treeName);
+	}
+	
+	/**
+	 * Finds the root of the tree
+	 * 
+	 * @param treeName
+	 * @return null if the tree does not exist
+	 */
+	
+	public PageNumCas findRoot(String treeName) {
+		PageNumCas root = roots.get(treeName);
+		if (root == null) {
+			root = namedTreeMap.find(treeName);
+			if (root != null) {
+				roots.putIfAbsent(treeName, root);
+			}
+		}
+		return root;
+	}
+	
+	/**
+	 * Finds the root of the tree, tree is created if it does not exist
+	 * 
+	 * @param treeName
+	 * @return
+	 */
+	
+	public PageNumCas findOrCreateRoot(String treeName) {
+		PageNumCas root = roots.get(treeName);
+		if (root == null) {
+			root = namedTreeMap.findOrCreate(treeName);
+			roots.putIfAbsent(treeName, root);
+		}
+		return root;
+	}
+	
+	/**
+	 * Writes the image of the store and drops records of the log before it, changes of trees wait for the copy
+	 */
+	
+	public void checkpoint() {
+		if (log != null) {
+			log.checkpoint();
+		}
+	}
+	
+	/**
+	 * Returns unused reserved pages to the store, writers of trees must be stopped
+	 */
+	
+	public void close() {
+		if (pageManager instanceof ChunkedPageManager) {
+			((ChunkedPageManager) pageManager).release();
+		}
+		if (log != null) {
+			log.close();
+		}
+		synchronized(stores) {
+			if (find(paging) == this) {
+				stores.remove(paging);
+			}
+		}
+	}
+	
+	private static void register(PagingTreeStore store) {
+		synchronized(stores) {
+			PagingTreeStore registered = find(store.paging);
+			if (registered == null || (registered.log == null && store.log != null)) {
+				stores.put(store.paging, new WeakReference<PagingTreeStore>(store));
+			}
+		}
+	}
+	
+	private static PagingTreeStore find(Paging paging) {
+		WeakReference<PagingTreeStore> ref = stores.get(paging);
+		return ref != null ? ref.get() : null;
+	}
+	
+	private void replay() {
+		final Map<String, PagingTree<Object, Object>> trees = new HashMap<String, PagingTree<Object, Object>>();
+		
+		log.replay(new TreeLog.RecordHandler() {
+			
+			@Override
+			public void apply(byte op, String treeName, Object key, Object value) {
+				PagingTree<Object, Object> tree = trees.get(treeName);
+				if (tree == null) {
+					tree = openTree(treeName);
+					trees.put(treeName, tree);
+				}
+				tree.applyLogged(op, key, value);
+			}
+		
+		});
+	}
+
+}
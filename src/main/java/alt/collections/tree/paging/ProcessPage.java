@@ -0,0 +1,127 @@
+package alt.collections.tree.paging;
+
+import alt.collections.concurrent.EpochGate;
+import alt.collections.concurrent.IntegerCas;
+import alt.collections.concurrent.PageNumCas;
+import alt.collections.paging.PageReader;
+import alt.collections.paging.PageWriter;
+import alt.collections.paging.Paging;
+
+/**
+ * Process Page keeps the state of processes that use the store, the page is referenced by the master page
+ * 
+ * [magic:char], [readers:EpochGate.SIZE] from the second cache line, [chunks:ChunkSlot * N] after readers
+ * 
+ * Chunk Slot takes the cache line: [owner:int], [freeHead:pageNum], [next:pageNum], [end:pageNum]
+ * 
+ * Slot is claimed by the thread of the ChunkedPageManager and keeps its reservation: detached list
+ * of free pages linked by FreePage headers and the run of reserved pages [next, end).
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class ProcessPage {
+	
+	public static int getReadersPos() {
+		return EpochGate.CACHE_LINE;
+	}
+	
+	public static int getChunksPos() {
+		return getReadersPos() + EpochGate.SIZE;
+	}
+	
+	/**
+	 * Formats process page with zero counters and free slots
+	 * 
+	 * @param paging
+	 * @param pageNum
+	 */
+	
+	public static void structBlank(Paging paging, long pageNum) {
+		
+		if (getChunksPos() > paging.getPageSize()) {
+			throw new PagingTreeException("page size " + paging.getPageSize() + " is too small for readers");
+		}
+		
+		PageWriter pageWriter = new PageWriter(paging, pageNum);
+		
+		// magic
+		pageWriter.skip(2);
+		
+		// readers and chunks
+		pageWriter.seek(getReadersPos());
+		while(pageWriter.getPosition() + 4 <= paging.getPageSize()) {
+			pageWriter.writeInt(0);
+		}
+		
+		pageWriter.reset();
+		pageWriter.writeChar(MagicCodes.PROCESS.getMagic());
+	
+	}
+	
+	/**
+	 * Returns address of counters
+	 * 
+	 * @param paging
+	 * @param pageNum process page
+	 * @return address of EpochGate.SIZE bytes
+	 */
+	
+	public static long getReadersAddress(Paging paging, long pageNum) {
+		return getAddress(paging, pageNum) + getReadersPos();
+	}
+	
+	/**
+	 * Returns slots of chunks that fit in the page
+	 * 
+	 * @param paging
+	 * @param pageNum process page
+	 * @return
+	 */
+	
+	static ChunkSlot[] getChunkSlots(Paging paging, long pageNum) {
+		
+		long address = getAddress(paging, pageNum);
+		
+		ChunkSlot[] slots = new ChunkSlot[(paging.getPageSize() - getChunksPos()) / EpochGate.CACHE_LINE];
+		for (int i = 0; i != slots.length; ++i) {
+			slots[i] = new ChunkSlot(paging, address, getChunksPos() + EpochGate.CACHE_LINE * i);
+		}
+		return slots;
+	}
+	
+	private static long getAddress(Paging paging, long pageNum) {
+		
+		PageReader pageReader = new PageReader(paging, pageNum);
+		
+		char magic = pageReader.readChar();
+		if (magic != MagicCodes.PROCESS.getMagic()) {
+			throw new PagingTreeException("unexpected magic " + Integer.toHexString(magic) + " for process page " + pageNum);
+		}
+		
+		return pageReader.getAddress();
+	}
+	
+	/**
+	 * Reservation of pages by the thread, is modified only by the owner
+	 */
+	
+	static final class ChunkSlot {
+		
+		final IntegerCas owner;
+		final PageNumCas freeHead;
+		final PageNumCas next;
+		final PageNumCas end;
+		
+		ChunkSlot(Paging paging, long address, int ref) {
+			int pageNumSize = paging.getPageNum().size();
+			this.owner = new IntegerCas(address, ref, paging);
+			this.freeHead = new PageNumCas(address, ref + 4, paging.getPageNum(), paging);
+			this.next = new PageNumCas(address, ref + 4 + pageNumSize, paging.getPageNum(), paging);
+			this.end = new PageNumCas(address, ref + 4 + 2 * pageNumSize, paging.getPageNum(), paging);
+		}
+	
+	}
+
+}
@@ -0,0 +1,122 @@
+package alt.collections.tree.paging;
+
+import alt.collections.paging.PageReader;
+import alt.collections.paging.PageWriter;
+import alt.collections.paging.Paging;
+
+/**
+ * Retired Page keeps numbers of pages that were freed with delay,
+ * retired pages could be still used by readers and are not modified until reclamation
+ * 
+ * [magic:char], [pageTail:innerRef], [nextPage:pageNum], [retired:pageNum * n]
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class RetiredPage {
+	
+	public static final int PAGE_TAIL_POS = 2;
+	
+	public static int getNextPagePos(Paging paging) {
+		return 2 + paging.getInnerRef().size();
+	}
+	
+	public static int getHeapPos(Paging paging) {
+		return 2 + paging.getInnerRef().size() + paging.getPageNum().size();
+	}
+	
+	/**
+	 * Formats new page with a single retired page
+	 * 
+	 * @param paging
+	 * @param pageNum
+	 * @param nextPage next page of the retired list or 0
+	 * @param retiredPageNum
+	 */
+	
+	public static void structBlank(Paging paging, long pageNum, long nextPage, long retiredPageNum) {
+		
+		PageWriter pageWriter = new PageWriter(paging, pageNum);
+		
+		// magic
+		pageWriter.writeChar(MagicCodes.RETIRED.getMagic());
+		
+		// pageTail
+		pageWriter.writeInnerRef(getHeapPos(paging) + paging.getPageNum().size());
+		
+		// nextPage
+		pageWriter.writePageNum(nextPage);
+		
+		// retired
+		pageWriter.writePageNum(retiredPageNum);
+	
+	}
+	
+	/**
+	 * Adds retired page to the list page, caller must own the list
+	 * 
+	 * @param paging
+	 * @param pageNum
+	 * @param retiredPageNum
+	 * @return false if there is no space in the page
+	 */
+	
+	public static boolean tryAdd(Paging paging, long pageNum, long retiredPageNum) {
+		
+		PageReader pageReader = new PageReader(paging, pageNum);
+		
+		pageReader.seek(PAGE_TAIL_POS);
+		int tail = pageReader.readInnerRef();
+		
+		if (tail + paging.getPageNum().size() > paging.getPageSize()) {
+			return false;
+		}
+		
+		PageWriter pageWriter = new PageWriter(pageReader);
+		pageWriter.seek(tail);
+		pageWriter.writePageNum(retiredPageNum);
+		
+		pageWriter.seek(PAGE_TAIL_POS);
+		pageWriter.writeInnerRef(tail + paging.getPageNum().size());
+		
+		return true;
+	}
+	
+	/**
+	 * Reads retired pages
+	 * 
+	 * @param paging
+	 * @param pageNum
+	 * @return retired pages
+	 */
+	
+	public static long[] getRetiredPages(Paging paging, long pageNum) {
+		
+		PageReader pageReader = new PageReader(paging, pageNum);
+		
+		char magic = pageReader.readChar();
+		if (magic != MagicCodes.RETIRED.getMagic()) {
+			throw new PagingTreeException("unexpected magic " + Integer.toHexString(magic) + " for retired page " + pageNum);
+		}
+		
+		int tail = pageReader.readInnerRef();
+		int heapPos = getHeapPos(paging);
+		
+		long[] pages = new long[(tail - heapPos) / paging.getPageNum().size()];
+		
+		pageReader.seek(heapPos);
+		for (int i = 0; i != pages.length; ++i) {
+			pages[i] = pageReader.readPageNum();
+		}
+		
+		return pages;
+	}
+	
+	public static long getNextPage(Paging paging, long pageNum) {
+		PageReader pageReader = new PageReader(paging, pageNum);
+		pageReader.seek(getNextPagePos(paging));
+		return pageReader.readPageNum();
+	}
+
+}
@@ -0,0 +1,45 @@
+package alt.collections.tree.paging;
+
+/**
+ * Split object of the page
+ * 
+ * Page is replaced by lesser page and greater page separated by the key.
+ * If key is null then page is replaced only by lesser page.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class Split {
+	
+	private final long lesserPageNum;
+	private final Object key;
+	private final long greaterPageNum;
+	
+	public Split(long lesserPageNum, Object key, long greaterPageNum) {
+		this.lesserPageNum = lesserPageNum;
+		this.key = key;
+		this.greaterPageNum = greaterPageNum;
+	}
+	
+	public Split(long pageNum) {
+		this(pageNum, null, 0);
+	}
+	
+	public long getLesserPageNum() {
+		return lesserPageNum;
+	}
+	
+	public Object getKey() {
+		return key;
+	}
+	
+	public long getGreaterPageNum() {
+		return greaterPageNum;
+	}
+	
+	public boolean isReplace() {
+		return key == null;
+	}
+
+}
@@ -0,0 +1,77 @@
+package alt.collections.tree.paging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import alt.collections.paging.GrowablePaging;
+import alt.collections.paging.Paging;
+import alt.collections.store.WriteAheadLog;
+import alt.collections.util.Unsafe;
+
+/**
+ * Store Image is the copy of pages [0, storeTail) of the store, the base of records of the write ahead log
+ * 
+ * Pages after [storeTail] are not allocated, they are not copied and are not restored.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+final class StoreImage implements WriteAheadLog.Image {
+	
+	private final Paging paging;
+	
+	StoreImage(Paging paging) {
+		this.paging = paging;
+	}
+	
+	@Override
+	public void write(FileChannel channel) throws IOException {
+		
+		long storeTail = new MasterPage(paging, 0, false).getStoreTail();
+		
+		int pageSize = paging.getPageSize();
+		byte[] page = new byte[pageSize];
+		ByteBuffer buffer = ByteBuffer.wrap(page);
+		
+		for (long pageNum = 0; pageNum != storeTail; ++pageNum) {
+			Unsafe.INSTANCE.copyMemory(null, paging.getAddress(pageNum), page, Unsafe.BYTEARRAY_BASEOFFSET, pageSize);
+			buffer.clear();
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+	
+	@Override
+	public void read(FileChannel channel) throws IOException {
+		
+		int pageSize = paging.getPageSize();
+		if (channel.size() % pageSize != 0) {
+			throw new PagingTreeException("image of the store is not aligned by the page size " + channel.size());
+		}
+		
+		long storeTail = channel.size() / pageSize;
+		if (paging.getTotalPages() < storeTail && 
+				!(paging instanceof GrowablePaging && ((GrowablePaging) paging).grow(storeTail))) {
+			throw new PagingTreeException("store has no space for the image of " + storeTail + " pages");
+		}
+		
+		byte[] page = new byte[pageSize];
+		ByteBuffer buffer = ByteBuffer.wrap(page);
+		
+		for (long pageNum = 0; pageNum != storeTail; ++pageNum) {
+			buffer.clear();
+			while(buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					throw new PagingTreeException("image of the store is truncated at the page " + pageNum);
+				}
+			}
+			long address = paging.getAddress(pageNum);
+			Unsafe.INSTANCE.copyMemory(page, Unsafe.BYTEARRAY_BASEOFFSET, null, address, pageSize);
+			paging.markChanged(address);
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+package alt.collections.tree.paging;
+
+/**
+ * Striped Long is the counter value that is updated by many threads
+ * 
+ * Stored value spreads updates over cells in different cache lines, read returns the sum of cells.
+ * Value is updated by put(key, MutableLongUpdater) the same way as MutableLong.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class StripedLong {
+	
+	private long value;
+	
+	public StripedLong(long value) {
+		this.value = value;
+	}
+	
+	public long longValue() {
+		return value;
+	}
+	
+	@Override
+	public int hashCode() {
+		return (int)(value ^ (value >>> 32));
+	}
+	
+	@Override
+	public String toString() {
+		return Long.toString(value);
+	}
+
+}
@@ -0,0 +1,375 @@
+package alt.collections.tree.paging;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import alt.collections.concurrent.Backoffs;
+import alt.collections.paging.PageReader;
+import alt.collections.paging.PageWriter;
+import alt.collections.paging.Paging;
+import alt.collections.store.WriteAheadLog;
+import alt.collections.store.impl.DefaultMemStore;
+import alt.collections.util.PageSize;
+import alt.collections.util.Unsafe;
+
+/**
+ * Tree Log writes changes of trees to the write ahead log of the store
+ * 
+ * Record keeps the state of the entry after the change: put of the value or remove of the key,
+ * that is why the replay of records in order is idempotent. Conditional changes are logged only
+ * if they are applied, the update of the mutable long is logged by the value after the update.
+ * 
+ * Trees are lock-free, but records of the key must be in the order of changes. The change and the append
+ * of the record are done under the stripe lock of the key, commit waits for the group sync after the unlock.
+ * 
+ * Record is [byte op][string treeName][key][value] in the format of ValueHolder,
+ * records are encoded in scratch pages of the pool.
+ * 
+ * Changes are applied in place before their records are appended, the store could be torn by the crash
+ * in the middle of the split. Checkpoint writes the image of the store, see StoreImage, recovery restores
+ * the image and replays records after it. Checkpoint locks all stripes and the fence, so the image
+ * has no change in progress. Changes that are not ordered by keys (load, replaceWith, truncate) hold
+ * the fence shared.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+final class TreeLog {
+	
+	static final byte PUT = (byte) 'p';
+	static final byte REMOVE = (byte) 'r';
+	static final byte TRUNCATE = (byte) 't';
+	
+	private static final int STRIPES = 256;
+	
+	private final Paging paging;
+	private final WriteAheadLog wal;
+	private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+	private final ReentrantReadWriteLock fence = new ReentrantReadWriteLock();
+	private final StoreImage image;
+	private final Queue<DefaultMemStore> scratches = new ConcurrentLinkedQueue<DefaultMemStore>();
+	
+	interface RecordHandler {
+		
+		void apply(byte op, String treeName, Object key, Object value);
+	
+	}
+	
+	TreeLog(Paging paging, WriteAheadLog wal) {
+		this.paging = paging;
+		this.wal = wal;
+		this.image = new StoreImage(paging);
+		for (int i = 0; i != STRIPES; ++i) {
+			stripes[i] = new ReentrantLock();
+		}
+	}
+	
+	/**
+	 * Encodes the record of the change and locks the stripe of the key
+	 * 
+	 * @param treeName
+	 * @param key
+	 * @param value null to remove the key
+	 * @return locked record
+	 */
+	
+	Record lock(String treeName, Object key, Object value) {
+		Record record = record(treeName, key, value);
+		stripes[record.stripe].lock();
+		return record;
+	}
+	
+	/**
+	 * Encodes the record of the change in the batch, see lockAll
+	 * 
+	 * @param treeName
+	 * @param key
+	 * @param value null to remove the key
+	 * @return record
+	 */
+	
+	Record record(String treeName, Object key, Object value) {
+		return encode(value == null ? REMOVE : PUT, treeName, key, value);
+	}
+	
+	/**
+	 * Locks stripes of all records in ascending order
+	 * 
+	 * @param records
+	 */
+	
+	void lockAll(Record[] records) {
+		boolean[] locked = getStripes(records);
+		for (int i = 0; i != STRIPES; ++i) {
+			if (locked[i]) {
+				stripes[i].lock();
+			}
+		}
+	}
+	
+	/**
+	 * Sets the value after the update of the locked record
+	 * 
+	 * @param record
+	 * @param value
+	 * @return locked record
+	 */
+	
+	Record update(Record record, Object value) {
+		Record updated = record(record.treeName, record.key, value);
+		if (updated.stripe != record.stripe) {
+			throw new PagingTreeException("stripe of the key is changed " + record.key);
+		}
+		return updated;
+	}
+	
+	/**
+	 * Appends the record if the change is applied and unlocks the stripe
+	 * 
+	 * @param record
+	 * @param applied
+	 */
+	
+	void unlock(Record record, boolean applied) {
+		try {
+			if (applied) {
+				record.lsn = wal.append(record.bytes);
+			}
+		}
+		finally {
+			stripes[record.stripe].unlock();
+		}
+	}
+	
+	/**
+	 * Appends records of applied changes and unlocks stripes of all records
+	 * 
+	 * @param records
+	 * @param applied number of applied changes from the start of the batch
+	 */
+	
+	void unlockAll(Record[] records, int applied) {
+		try {
+			for (int i = 0; i != applied; ++i) {
+				records[i].lsn = wal.append(records[i].bytes);
+			}
+		}
+		finally {
+			boolean[] locked = getStripes(records);
+			for (int i = 0; i != STRIPES; ++i) {
+				if (locked[i]) {
+					stripes[i].unlock();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Appends the record of the change that is not ordered by keys
+	 * 
+	 * @param treeName
+	 * @return record
+	 */
+	
+	Record append(byte op, String treeName) {
+		Record record = encode(op, treeName, null, null);
+		record.lsn = wal.append(record.bytes);
+		return record;
+	}
+	
+	/**
+	 * Waits for the group sync of the appended record
+	 * 
+	 * @param record
+	 */
+	
+	void commit(Record record) {
+		if (record.lsn != 0) {
+			wal.commit(record.lsn);
+		}
+	}
+	
+	/**
+	 * Locks the fence for the change that is not ordered by keys, checkpoint waits for it
+	 */
+	
+	void lockFence() {
+		fence.readLock().lock();
+	}
+	
+	void unlockFence() {
+		fence.readLock().unlock();
+	}
+	
+	/**
+	 * Restores the image of the last checkpoint, must be called before the open of the master page
+	 */
+	
+	void restore() {
+		try {
+			wal.restore(image);
+		} catch (IOException e) {
+			throw new PagingTreeException("can not restore the image of the store", e);
+		}
+	}
+	
+	void replay(final RecordHandler handler) {
+		try {
+			wal.replay(new WriteAheadLog.RecordConsumer() {
+				
+				@Override
+				public void accept(byte[] bytes) {
+					decode(bytes, handler);
+				}
+			
+			});
+		} catch (IOException e) {
+			throw new PagingTreeException("can not replay the log", e);
+		}
+	}
+	
+	/**
+	 * Writes the image of the store and starts the new file of the log, changes wait for the copy of the image
+	 */
+	
+	void checkpoint() {
+		fence.writeLock().lock();
+		try {
+			for (int i = 0; i != STRIPES; ++i) {
+				stripes[i].lock();
+			}
+			try {
+				wal.checkpoint(image);
+			}
+			finally {
+				for (int i = STRIPES - 1; i >= 0; --i) {
+					stripes[i].unlock();
+				}
+			}
+		}
+		finally {
+			fence.writeLock().unlock();
+		}
+	}
+	
+	void close() {
+		DefaultMemStore scratch;
+		while((scratch = scratches.poll()) != null) {
+			scratch.free();
+		}
+	}
+	
+	private Record encode(byte op, String treeName, Object key, Object value) {
+		int size = 1 + PageWriter.estimateStringSize(treeName);
+		if (key != null) {
+			size += ValueHolder.estimateSize(key);
+		}
+		if (value != null) {
+			size += ValueHolder.estimateSize(value);
+		}
+		
+		DefaultMemStore scratch = takeScratch(size);
+		try {
+			PageWriter writer = new PageWriter(scratch, 0);
+			writer.writeByte(op);
+			writer.writeString(treeName);
+			
+			int keyFrom = writer.getPosition();
+			if (key != null) {
+				ValueHolder.writeValue(writer, key);
+			}
+			int keyTo = writer.getPosition();
+			
+			if (value != null) {
+				ValueHolder.writeValue(writer, value);
+			}
+			
+			byte[] bytes = new byte[writer.getPosition()];
+			new PageReader(scratch, 0).readBytesTo(bytes, 0, bytes.length);
+			
+			int hash = 0;
+			for (int i = keyFrom; i != keyTo; ++i) {
+				hash = 31 * hash + bytes[i];
+			}
+			hash ^= hash >>> 16;
+			
+			return new Record(treeName, key, bytes, (hash ^ (hash >>> 8)) & (STRIPES - 1));
+		}
+		finally {
+			scratches.add(scratch);
+		}
+	}
+	
+	private void decode(byte[] bytes, RecordHandler handler) {
+		DefaultMemStore scratch = takeScratch(bytes.length);
+		try {
+			long address = scratch.getAddress(0);
+			Unsafe.INSTANCE.copyMemory(bytes, Unsafe.BYTEARRAY_BASEOFFSET, null, address, bytes.length);
+			
+			PageReader reader = new PageReader(scratch, 0);
+			byte op = reader.readByte();
+			String treeName = reader.readString();
+			
+			Object key = op != TRUNCATE ? ValueHolder.readValue(reader) : null;
+			Object value = op == PUT ? ValueHolder.readValue(reader) : null;
+			
+			handler.apply(op, treeName, key, value);
+		}
+		finally {
+			scratches.add(scratch);
+		}
+	}
+	
+	/**
+	 * Takes the scratch page from the pool, the page is never less than the page of the store
+	 * 
+	 * @param size of the record
+	 * @return
+	 */
+	
+	private DefaultMemStore takeScratch(int size) {
+		DefaultMemStore scratch = scratches.poll();
+		if (scratch != null) {
+			if (scratch.getPageSize() >= size) {
+				return scratch;
+			}
+			scratch.free();
+		}
+		
+		int pageSize = paging.getPageSize();
+		while(pageSize < size) {
+			pageSize *= 2;
+		}
+		return new DefaultMemStore(new PageSize(pageSize), paging.getPageNum(), paging.getInnerRef(), Backoffs.spin(), pageSize);
+	}
+	
+	private static boolean[] getStripes(Record[] records) {
+		boolean[] locked = new boolean[STRIPES];
+		for (Record record : records) {
+			locked[record.stripe] = true;
+		}
+		return locked;
+	}
+	
+	static final class Record {
+		
+		final String treeName;
+		final Object key;
+		final byte[] bytes;
+		final int stripe;
+		long lsn;
+		
+		Record(String treeName, Object key, byte[] bytes, int stripe) {
+			this.treeName = treeName;
+			this.key = key;
+			this.bytes = bytes;
+			this.stripe = stripe;
+		}
+	
+	}
+
+}
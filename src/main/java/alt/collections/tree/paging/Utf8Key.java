@@ -0,0 +1,89 @@
+package alt.collections.tree.paging;
+
+import alt.collections.util.Requires;
+
+/**
+ * STRING key that is encoded once per operation, stored keys are compared with it byte by byte
+ * 
+ * Chars are encoded one by one as written by PageWriter.writeUtf8Char, surrogate chars take 3 bytes each,
+ * that is why the encoding is lossless and the byte order of keys is the order of Comparators.STRING
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public final class Utf8Key {
+	
+	private static final int INITIAL_CAPACITY = 64;
+	
+	private String str;
+	private byte[] bytes;
+	private int length;
+	
+	public Utf8Key() {
+		this.bytes = new byte[INITIAL_CAPACITY];
+	}
+	
+	public Utf8Key(String str) {
+		this.bytes = new byte[str.length() * 3];
+		encode(str);
+	}
+	
+	/**
+	 * Encodes the key, buffer is reused
+	 * 
+	 * @param str
+	 * @return this
+	 */
+	
+	public Utf8Key encode(String str) {
+		Requires.nonNull(str, "str");
+		
+		int maxLength = str.length() * 3;
+		if (bytes.length < maxLength) {
+			bytes = new byte[maxLength];
+		}
+		
+		int pos = 0;
+		for (int i = 0; i != str.length(); ++i) {
+			
+			int ch = str.charAt(i);
+			
+			if (ch <= 0x007F) {
+				bytes[pos++] = (byte) ch;
+			}
+			else if (ch <= 0x07FF) {
+				bytes[pos++] = (byte)(0xC0 | ch >> 6 & 0x1F);
+				bytes[pos++] = (byte)(0x80 | ch & 0x3F);
+			}
+			else {
+				bytes[pos++] = (byte)(0xE0 | ch >> 12 & 0x0F);
+				bytes[pos++] = (byte)(0x80 | ch >> 6 & 0x3F);
+				bytes[pos++] = (byte)(0x80 | ch & 0x3F);
+			}
+		
+		}
+		
+		this.str = str;
+		this.length = pos;
+		return this;
+	}
+	
+	public String getString() {
+		return str;
+	}
+	
+	public byte[] getBytes() {
+		return bytes;
+	}
+	
+	public int getLength() {
+		return length;
+	}
+	
+	@Override
+	public String toString() {
+		return str;
+	}
+
+}
@@ -1,5 +1,11 @@
 package alt.collections.tree.paging;
 
+import java.nio.CharBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
 import alt.collections.paging.PageReader;
 import alt.collections.paging.PageWriter;
 import alt.collections.util.Requires;
@@ -23,12 +29,26 @@ import alt.collections.util.Requires;
  * MUTABLE_LONG:
  * [ValueType.ATOMIC_LONG:byte], [value:long]
  *
+ * STRIPED_LONG:
+ * [ValueType.STRIPED_LONG:byte], [padding:0-7], [cell:long, padding:56] * STRIPEDLONG_CELLS
+ * cells are aligned by 8 bytes in the page and placed in different cache lines, value is the sum of cells
+ * 
  * BLOB:
  * [ValueType.BLOB:byte], [sizeInBytes:vLong], [blob:bytes]
  *
+ * INTEGER, DOUBLE, UUID:
+ * [ValueType:byte], [value:fixed 4, 8 or 16 bytes]
+ * 
  * DATAPAGE:
  * [ValueType.DATAPAGE:byte], [dataPage:pageNum], [nextDataPageRef:innerRef]
+ * 
+ * DATAPAGE is a reference to the STRING or BLOB value stored in the DataPage,
+ * [nextDataPageRef:innerRef] is the position of the value in the DataPage.
+ * Reading of the reference returns the stored value.
  *
+ * Codecs of the value types are registered in the table by the type byte,
+ * custom codecs can be added by register(TypedValue).
+ * 
  * @author Albert Shift
  *
  */
@@ -37,15 +57,104 @@ public final class ValueHolder {
 	
 	public static final int VALUETYPE_SIZE = 1;
 	public static final int MUTABLELONG_SIZE = 8;
+	public static final int STRIPEDLONG_CELLS = 8;
+	public static final int STRIPEDLONG_STRIDE = 64;
+	public static final int STRIPEDLONG_SIZE = 7 + (STRIPEDLONG_CELLS - 1) * STRIPEDLONG_STRIDE + 8;
 	
-	private static final TypedValue valueTypeHolders[] = new TypedValue[getMaxValueType()+1];
+	private static final int TYPES = 256;
 	private static final MutableLongValue MUTABLE_LONG_VALUE = new MutableLongValue();
+	private static final StripedLongValue STRIPED_LONG_VALUE = new StripedLongValue();
+	
+	private static final Object registryLock = new Object();
+	private static volatile TypedValue[] typedValues = new TypedValue[TYPES];
+	private static volatile Map<Class<?>, TypedValue> typedClasses = Collections.emptyMap();
+	
+	private static final ClassValue<TypedValue> classTypedValues = new ClassValue<TypedValue>() {
+		
+		@Override
+		protected TypedValue computeValue(Class<?> type) {
+			return typedClasses.get(type);
+		}
+	
+	};
 	
 	static {
-		valueTypeHolders[ValueType.STRING.ordinal()] = new StringValue();
-		valueTypeHolders[ValueType.LONG.ordinal()] = new LongValue();
-		valueTypeHolders[ValueType.MUTABLE_LONG.ordinal()] = MUTABLE_LONG_VALUE;
-		valueTypeHolders[ValueType.BLOB.ordinal()] = new BlobValue();
+		register(new DataPageValue());
+		register(new LongValue());
+		register(new StringValue());
+		register(new BlobValue());
+		register(MUTABLE_LONG_VALUE);
+		register(new IntegerValue());
+		register(new DoubleValue());
+		register(new UuidValue());
+		register(STRIPED_LONG_VALUE);
+		registerAlias(Utf8Key.class, getTypedValue(ValueType.STRING.getType()));
+	}
+	
+	/**
+	 * Registers codec of the value type, type byte and class of values must be unique.
+	 * Codec must be registered before the access to the trees that store values of this type.
+	 * 
+	 * @param typedValue
+	 */
+	
+	public static void register(TypedValue typedValue) {
+		Requires.nonNull(typedValue, "typedValue");
+		Class<?> valueClass = typedValue.getValueClass();
+		Requires.nonNull(valueClass, "valueClass");
+		
+		synchronized(registryLock) {
+			
+			int index = typedValue.getType() & 0xFF;
+			if (typedValues[index] != null) {
+				throw new PagingTreeException("value type " + index + " is already registered for " + typedValues[index].getValueClass());
+			}
+			if (typedClasses.containsKey(valueClass)) {
+				throw new PagingTreeException("value class " + valueClass + " is already registered");
+			}
+			
+			TypedValue[] newTypedValues = typedValues.clone();
+			newTypedValues[index] = typedValue;
+			
+			Map<Class<?>, TypedValue> newTypedClasses = new HashMap<Class<?>, TypedValue>(typedClasses);
+			newTypedClasses.put(valueClass, typedValue);
+			
+			typedValues = newTypedValues;
+			typedClasses = newTypedClasses;
+			classTypedValues.remove(valueClass);
+		}
+	}
+	
+	/**
+	 * Registers another class of values for the existing codec
+	 * 
+	 * @param valueClass
+	 * @param typedValue
+	 */
+	
+	private static void registerAlias(Class<?> valueClass, TypedValue typedValue) {
+		synchronized(registryLock) {
+			Map<Class<?>, TypedValue> newTypedClasses = new HashMap<Class<?>, TypedValue>(typedClasses);
+			newTypedClasses.put(valueClass, typedValue);
+			typedClasses = newTypedClasses;
+			classTypedValues.remove(valueClass);
+		}
+	}
+	
+	public static TypedValue getTypedValue(byte valueType) {
+		TypedValue typedValue = typedValues[valueType & 0xFF];
+		if (typedValue == null) {
+			throw new PagingTreeException("unknown value type " + valueType);
+		}
+		return typedValue;
+	}
+	
+	public static TypedValue getTypedValue(Object value) {
+		TypedValue typedValue = classTypedValues.get(value.getClass());
+		if (typedValue == null) {
+			throw new PagingTreeException("unknown value type " + value.getClass());
+		}
+		return typedValue;
 	}
 	
 	public static MutableLong updateMutableLong(PageReader reader, PageWriter writer, Object newValue) {
@@ -54,93 +163,247 @@ public final class ValueHolder {
 		return MUTABLE_LONG_VALUE.update(reader, writer, newValue);
 	}
 	
+	public static MutableLong updateStripedLong(PageReader reader, PageWriter writer, MutableLongUpdater updater) {
+		reader.skip(1);
+		writer.skip(1);
+		return STRIPED_LONG_VALUE.update(reader, writer, updater);
+	}
+	
+	/**
+	 * Compares stored value with the key, values of different types are ordered by the rank of the type
+	 * 
+	 * @param pageReader
+	 * @param key
+	 * @return
+	 */
+	
 	public static int compareTo(PageReader pageReader, Object key) {
 		byte valueType = pageReader.readByte();
-		ValueType vt = valueOf(valueType);
-		ValueType keyVt = detectValueType(key);
-		if (vt == keyVt) {
-			return valueTypeHolders[vt.ordinal()].compareTo(pageReader, key);
+		TypedValue typedValue = getTypedValue(valueType);
+		if (valueType == ValueType.DATAPAGE.getType()) {
+			return typedValue.compareTo(pageReader, key);
+		}
+		TypedValue keyTypedValue = getTypedValue(key);
+		if (typedValue == keyTypedValue) {
+			return typedValue.compareTo(pageReader, key);
 		}
 		else {
-			return vt.ordinal() - keyVt.ordinal();
+			return rankOf(valueType) - rankOf(keyTypedValue.getType());
 		}
 	}
 	
+	/**
+	 * Reads type of the stored value
+	 * 
+	 * @param pageReader
+	 * @return built-in value type or null for the custom type
+	 */
+	
 	public static ValueType getValueType(PageReader pageReader) {
 		byte valueType = pageReader.readByte();
 		return valueOf(valueType);
 	}
 	
 	public static int estimateSize(Object value) {
-		ValueType vt = detectValueType(value);
-		return VALUETYPE_SIZE + valueTypeHolders[vt.ordinal()].estimateSize(value);
+		return VALUETYPE_SIZE + getTypedValue(value).estimateSize(value);
 	}
 	
 	public static void writeValue(PageWriter pageWriter, Object value) {
-		ValueType vt = detectValueType(value);
-		pageWriter.writeByte(vt.getType());
-		valueTypeHolders[vt.ordinal()].write(pageWriter, value);
+		TypedValue typedValue = getTypedValue(value);
+		pageWriter.writeByte(typedValue.getType());
+		typedValue.write(pageWriter, value);
 	}
 	
 	public static Object readValue(PageReader pageReader) {
 		byte valueType = pageReader.readByte();
-		ValueType vt = valueOf(valueType);
-		return valueTypeHolders[vt.ordinal()].read(pageReader);
+		return getTypedValue(valueType).read(pageReader);
 	}
 	
-	public static ValueType detectValueType(Object value) {
-		if (value instanceof String) {
-			return ValueType.STRING;
+	/**
+	 * Reads LONG, MUTABLE_LONG, STRIPED_LONG or INTEGER value without boxing
+	 * 
+	 * @param pageReader
+	 * @return value
+	 */
+	
+	public static long readLong(PageReader pageReader) {
+		byte valueType = pageReader.readByte();
+		ValueType vt = valueOf(valueType);
+		if (vt == ValueType.LONG) {
+			return pageReader.readVLong();
 		}
-		if (value instanceof Long) {
-			return ValueType.LONG;
+		if (vt == ValueType.MUTABLE_LONG) {
+			return pageReader.readLong();
 		}
-		if (value instanceof MutableLong) {
-			return ValueType.MUTABLE_LONG;
+		if (vt == ValueType.INTEGER) {
+			return pageReader.readInt();
 		}
-		if (value instanceof byte[]) {
-			return ValueType.BLOB;
+		if (vt == ValueType.STRIPED_LONG) {
+			return StripedLongValue.sum(pageReader);
 		}
-		throw new PagingTreeException("unknown value type " + value.getClass());
+		throw new PagingTreeException("value type " + valueType + " is not a long");
 	}
 	
-	public static ValueType valueOf(byte valueType) {
-		if (valueType == ValueType.STRING.getType()) {
-			return ValueType.STRING;
+	/**
+	 * Copies bytes of the BLOB or STRING value to the buffer, STRING is copied in UTF-8 encoding
+	 * 
+	 * @param pageReader
+	 * @param buffer is filled only if the value fits in it
+	 * @return size of the value in bytes
+	 */
+	
+	public static int readBytesTo(PageReader pageReader, byte[] buffer) {
+		byte valueType = pageReader.readByte();
+		ValueType vt = valueOf(valueType);
+		if (vt == ValueType.BLOB || vt == ValueType.STRING) {
+			int sizeInBytes = (int) pageReader.readVLong();
+			Requires.range(sizeInBytes, 0, pageReader.pageSize().getPageSize(), "sizeInBytes");
+			if (sizeInBytes <= buffer.length) {
+				pageReader.readBytesTo(buffer, 0, sizeInBytes);
+			}
+			return sizeInBytes;
 		}
-		if (valueType == ValueType.LONG.getType()) {
-			return ValueType.LONG;
+		if (vt == ValueType.DATAPAGE) {
+			long pageNum = pageReader.readPageNum();
+			int dataRef = pageReader.readInnerRef();
+			return DataPage.readValueTo(pageReader.getPaging(), pageReader, pageNum, dataRef, buffer);
 		}
-		if (valueType == ValueType.MUTABLE_LONG.getType()) {
-			return ValueType.MUTABLE_LONG;
+		throw new PagingTreeException("value type " + valueType + " is not a BLOB or STRING");
+	}
+	
+	/**
+	 * Decodes chars of the STRING value to the buffer
+	 * 
+	 * @param pageReader
+	 * @param buffer
+	 * @return number of chars
+	 */
+	
+	public static int readCharsTo(PageReader pageReader, CharBuffer buffer) {
+		byte valueType = pageReader.readByte();
+		ValueType vt = valueOf(valueType);
+		if (vt == ValueType.STRING) {
+			int sizeInBytes = (int) pageReader.readVLong();
+			Requires.range(sizeInBytes, 0, pageReader.pageSize().getPageSize(), "sizeInBytes");
+			int endPosition = pageReader.getPosition() + sizeInBytes;
+			int chars = 0;
+			for (; pageReader.getPosition() < endPosition; ++chars) {
+				buffer.put(pageReader.readUtf8Char());
+			}
+			return chars;
 		}
-		if (valueType == ValueType.BLOB.getType()) {
-			return ValueType.BLOB;
+		if (vt == ValueType.DATAPAGE) {
+			long pageNum = pageReader.readPageNum();
+			int dataRef = pageReader.readInnerRef();
+			return DataPage.readCharsTo(pageReader.getPaging(), pageReader, pageNum, dataRef, buffer);
 		}
-		throw new PagingTreeException("unknown value type " + valueType);
+		throw new PagingTreeException("value type " + valueType + " is not a STRING");
+	}
+	
+	public static void skipValue(PageReader pageReader) {
+		byte valueType = pageReader.readByte();
+		getTypedValue(valueType).skip(pageReader);
+	}
+	
+	/**
+	 * Calculates size of the stored value, reader must be pointed to the value
+	 * 
+	 * @param pageReader
+	 * @return size in bytes
+	 */
+	
+	public static int sizeOf(PageReader pageReader) {
+		int position = pageReader.getPosition();
+		skipValue(pageReader);
+		return pageReader.getPosition() - position;
+	}
+	
+	/**
+	 * Detects type of the value
+	 * 
+	 * @param value
+	 * @return built-in value type or null for the custom type
+	 */
+	
+	public static ValueType detectValueType(Object value) {
+		return ValueType.valueOf(getTypedValue(value).getType());
+	}
+	
+	/**
+	 * Checks that the value type is registered
+	 * 
+	 * @param valueType
+	 * @return built-in value type or null for the custom type
+	 */
+	
+	public static ValueType valueOf(byte valueType) {
+		getTypedValue(valueType);
+		return ValueType.valueOf(valueType);
+	}
+	
+	/**
+	 * Built-in types keep the order of the enum, custom types follow them in order of the type byte
+	 * 
+	 * @param valueType
+	 * @return rank of the type
+	 */
+	
+	private static int rankOf(byte valueType) {
+		ValueType vt = ValueType.valueOf(valueType);
+		return vt != null ? vt.ordinal() : TYPES + (valueType & 0xFF);
 	}
 
+	/**
+	 * Codec of the value type
+	 * 
+	 * Stored value is prefixed by the type byte, codec reads and writes only the value part.
+	 */
+	
 	public interface TypedValue {
 		
+		byte getType();
+		
+		Class<?> getValueClass();
+		
 		int estimateSize(Object value);
 		
 		void write(PageWriter writer, Object value);
 		
 		Object read(PageReader reader);
 		
+		void skip(PageReader reader);
+		
 		int compareTo(PageReader reader, Object key);
 		
 	}
 	
 	public static class StringValue implements TypedValue {
+		
+		public byte getType() {
+			return ValueType.STRING.getType();
+		}
+		
+		public Class<?> getValueClass() {
+			return String.class;
+		}
 	
 		public int estimateSize(Object value) {
+			if (value instanceof Utf8Key) {
+				int sizeInBytes = ((Utf8Key) value).getLength();
+				return PageWriter.estimateVLongSize(sizeInBytes) + sizeInBytes;
+			}
 			String str = (String) value;
 			int sizeInBytes = PageWriter.estimateUtf8Size(str, 0, str.length());
 			return PageWriter.estimateVLongSize(sizeInBytes) + sizeInBytes;
 		}
 		
 		public void write(PageWriter writer, Object value) {
+			if (value instanceof Utf8Key) {
+				Utf8Key key = (Utf8Key) value;
+				writer.writeVLong(key.getLength());
+				writer.writeBytesFrom(key.getBytes(), 0, key.getLength());
+				return;
+			}
 			String str = (String) value;
 			int sizeInBytes = PageWriter.estimateUtf8Size(str, 0, str.length());
 			writer.writeVLong(sizeInBytes);
@@ -162,14 +425,25 @@ public final class ValueHolder {
 			
 			return new String(chars, 0, i);
 		}
+		
+		public void skip(PageReader reader) {
+			int sizeInBytes = (int) reader.readVLong();
+			reader.skip(sizeInBytes);
+		}
 
 		public int compareTo(PageReader reader, Object value) {
-			String str = (String) value;
 			
 			int bytes1 = (int) reader.readVLong();
 			Requires.positive(bytes1, "bytes1");
 			Requires.lessOrEquals(bytes1, reader.pageSize().getPageSize(), "bytes1");
 			
+			if (value instanceof Utf8Key) {
+				Utf8Key key = (Utf8Key) value;
+				return reader.compareToBytes(bytes1, key.getBytes(), key.getLength());
+			}
+			
+			String str = (String) value;
+			
 			int endPosition = reader.getPosition() + bytes1;
 			
 			int chars2 = str.length();
@@ -195,6 +469,14 @@ public final class ValueHolder {
 	
 	public static class LongValue implements TypedValue {
 		
+		public byte getType() {
+			return ValueType.LONG.getType();
+		}
+		
+		public Class<?> getValueClass() {
+			return Long.class;
+		}
+		
 		public int estimateSize(Object value) {
 			Long lvalue = (Long) value;
 			return PageWriter.estimateVLongSize(lvalue.longValue());
@@ -209,6 +491,10 @@ public final class ValueHolder {
 			return reader.readVLong();
 		}
 		
+		public void skip(PageReader reader) {
+			reader.readVLong();
+		}
+		
 		public int compareTo(PageReader reader, Object value) {
 			Long lvalue = (Long) value;
 			long thisVal = reader.readVLong();
@@ -220,6 +506,14 @@ public final class ValueHolder {
 	
 	public static class MutableLongValue implements TypedValue {
 		
+		public byte getType() {
+			return ValueType.MUTABLE_LONG.getType();
+		}
+		
+		public Class<?> getValueClass() {
+			return MutableLong.class;
+		}
+		
 		public int estimateSize(Object value) {
 			return MUTABLELONG_SIZE;
 		}
@@ -233,6 +527,10 @@ public final class ValueHolder {
 			return new MutableLong(reader.readLong());
 		}
 		
+		public void skip(PageReader reader) {
+			reader.skip(MUTABLELONG_SIZE);
+		}
+		
 		public MutableLong update(PageReader reader, PageWriter writer, Object value) {
 			if (value instanceof MutableLong) {
 				MutableLong newValue = (MutableLong) value;
@@ -257,8 +555,105 @@ public final class ValueHolder {
 		}
 	}
 	
+	public static class StripedLongValue implements TypedValue {
+		
+		public byte getType() {
+			return ValueType.STRIPED_LONG.getType();
+		}
+		
+		public Class<?> getValueClass() {
+			return StripedLong.class;
+		}
+		
+		public int estimateSize(Object value) {
+			return STRIPEDLONG_SIZE;
+		}
+		
+		public void write(PageWriter writer, Object value) {
+			StripedLong lvalue = (StripedLong) value;
+			int valuePos = writer.getPosition();
+			int cellsPos = align(valuePos);
+			for (int i = 0; i != STRIPEDLONG_CELLS; ++i) {
+				writer.seek(cellsPos + i * STRIPEDLONG_STRIDE);
+				writer.writeLong(i == 0 ? lvalue.longValue() : 0L);
+			}
+			writer.seek(valuePos + STRIPEDLONG_SIZE);
+		}
+		
+		public Object read(PageReader reader) {
+			return new StripedLong(sum(reader));
+		}
+		
+		public void skip(PageReader reader) {
+			reader.skip(STRIPEDLONG_SIZE);
+		}
+		
+		/**
+		 * Updates the cell of the current thread
+		 * 
+		 * @param reader
+		 * @param writer
+		 * @param updater
+		 * @return old value, sum of other cells is not an atomic snapshot
+		 */
+		
+		public MutableLong update(PageReader reader, PageWriter writer, MutableLongUpdater updater) {
+			int cellsPos = align(reader.getPosition());
+			int cell = (int) (Thread.currentThread().getId() % STRIPEDLONG_CELLS);
+			
+			writer.seek(cellsPos + cell * STRIPEDLONG_STRIDE);
+			long oldValue = updater.update(writer.writeLongCas()).longValue();
+			
+			for (int i = 0; i != STRIPEDLONG_CELLS; ++i) {
+				if (i != cell) {
+					reader.seek(cellsPos + i * STRIPEDLONG_STRIDE);
+					oldValue += reader.readLong();
+				}
+			}
+			return new MutableLong(oldValue);
+		}
+		
+		public int compareTo(PageReader reader, Object value) {
+			StripedLong lvalue = (StripedLong) value;
+			long thisVal = sum(reader);
+			long anotherVal = lvalue.longValue();
+			return (thisVal<anotherVal ? -1 : (thisVal==anotherVal ? 0 : 1));
+		}
+		
+		/**
+		 * Sums cells, reader is moved to the end of the value
+		 * 
+		 * @param reader
+		 * @return
+		 */
+		
+		public static long sum(PageReader reader) {
+			int valuePos = reader.getPosition();
+			int cellsPos = align(valuePos);
+			long sum = 0;
+			for (int i = 0; i != STRIPEDLONG_CELLS; ++i) {
+				reader.seek(cellsPos + i * STRIPEDLONG_STRIDE);
+				sum += reader.readLong();
+			}
+			reader.seek(valuePos + STRIPEDLONG_SIZE);
+			return sum;
+		}
+		
+		private static int align(int position) {
+			return (position + 7) & ~7;
+		}
+	}
+	
 	public static class BlobValue implements TypedValue {
 		
+		public byte getType() {
+			return ValueType.BLOB.getType();
+		}
+		
+		public Class<?> getValueClass() {
+			return byte[].class;
+		}
+		
 		public int estimateSize(Object value) {
 			byte[] blob = (byte[]) value;
 			return  PageWriter.estimateVLongSize(blob.length) + blob.length;
@@ -273,6 +668,11 @@ public final class ValueHolder {
 			return reader.readBytes();
 		}
 		
+		public void skip(PageReader reader) {
+			int len = (int) reader.readVLong();
+			reader.skip(len);
+		}
+		
 		public int compareTo(PageReader reader, Object value) {
 			byte[] blob = (byte[]) value;
 			int len1 = (int) reader.readVLong();
@@ -292,14 +692,175 @@ public final class ValueHolder {
 		
 	}
 	
-	private static final int getMaxValueType() {
-		int max = 0;
-		for (ValueType vt : ValueType.values()) {
-			if (max < vt.ordinal()) {
-				max = vt.ordinal();
+	public static class DataPageValue implements TypedValue {
+		
+		public byte getType() {
+			return ValueType.DATAPAGE.getType();
+		}
+		
+		public Class<?> getValueClass() {
+			return DataPageRef.class;
+		}
+		
+		public int estimateSize(Object value) {
+			// pageNum and innerRef are not bigger than long and int
+			return 8 + 4;
+		}
+		
+		public void write(PageWriter writer, Object value) {
+			DataPageRef ref = (DataPageRef) value;
+			writer.writePageNum(ref.getPageNum());
+			writer.writeInnerRef(ref.getDataRef());
+		}
+		
+		public Object read(PageReader reader) {
+			long pageNum = reader.readPageNum();
+			int dataRef = reader.readInnerRef();
+			return DataPage.readValue(reader.getPaging(), pageNum, dataRef);
+		}
+		
+		public void skip(PageReader reader) {
+			reader.readPageNum();
+			reader.readInnerRef();
+		}
+		
+		public int compareTo(PageReader reader, Object value) {
+			Object thisVal = read(reader);
+			if (thisVal instanceof String && value instanceof String) {
+				return ((String) thisVal).compareTo((String) value);
+			}
+			if (thisVal instanceof byte[] && value instanceof byte[]) {
+				byte[] blob1 = (byte[]) thisVal;
+				byte[] blob2 = (byte[]) value;
+				int n = Math.min(blob1.length, blob2.length);
+				for (int i = 0; i != n; ++i) {
+					int b1 = blob1[i] & 0xFF;
+					int b2 = blob2[i] & 0xFF;
+					if (b1 != b2) {
+					    return b1 - b2;
+					}
+				}
+				return blob1.length - blob2.length;
 			}
+			return rankOf(getTypedValue(thisVal).getType()) - rankOf(getTypedValue(value).getType());
 		}
-		return max;
+	
 	}
 	
+	public static class IntegerValue implements TypedValue {
+		
+		public byte getType() {
+			return ValueType.INTEGER.getType();
+		}
+		
+		public Class<?> getValueClass() {
+			return Integer.class;
+		}
+		
+		public int estimateSize(Object value) {
+			return 4;
+		}
+		
+		public void write(PageWriter writer, Object value) {
+			Integer ivalue = (Integer) value;
+			writer.writeInt(ivalue.intValue());
+		}
+		
+		public Object read(PageReader reader) {
+			return reader.readInt();
+		}
+		
+		public void skip(PageReader reader) {
+			reader.skip(4);
+		}
+		
+		public int compareTo(PageReader reader, Object value) {
+			Integer ivalue = (Integer) value;
+			int thisVal = reader.readInt();
+			int anotherVal = ivalue.intValue();
+			return (thisVal<anotherVal ? -1 : (thisVal==anotherVal ? 0 : 1));
+		}
+	
+	}
+	
+	public static class DoubleValue implements TypedValue {
+		
+		public byte getType() {
+			return ValueType.DOUBLE.getType();
+		}
+		
+		public Class<?> getValueClass() {
+			return Double.class;
+		}
+		
+		public int estimateSize(Object value) {
+			return 8;
+		}
+		
+		public void write(PageWriter writer, Object value) {
+			Double dvalue = (Double) value;
+			writer.writeDouble(dvalue.doubleValue());
+		}
+		
+		public Object read(PageReader reader) {
+			return reader.readDouble();
+		}
+		
+		public void skip(PageReader reader) {
+			reader.skip(8);
+		}
+		
+		public int compareTo(PageReader reader, Object value) {
+			Double dvalue = (Double) value;
+			return Double.compare(reader.readDouble(), dvalue.doubleValue());
+		}
+	
+	}
+	
+	public static class UuidValue implements TypedValue {
+		
+		public byte getType() {
+			return ValueType.UUID.getType();
+		}
+		
+		public Class<?> getValueClass() {
+			return UUID.class;
+		}
+		
+		public int estimateSize(Object value) {
+			return 16;
+		}
+		
+		public void write(PageWriter writer, Object value) {
+			UUID uuid = (UUID) value;
+			writer.writeLong(uuid.getMostSignificantBits());
+			writer.writeLong(uuid.getLeastSignificantBits());
+		}
+		
+		public Object read(PageReader reader) {
+			long mostSigBits = reader.readLong();
+			long leastSigBits = reader.readLong();
+			return new UUID(mostSigBits, leastSigBits);
+		}
+		
+		public void skip(PageReader reader) {
+			reader.skip(16);
+		}
+		
+		public int compareTo(PageReader reader, Object value) {
+			UUID uuid = (UUID) value;
+			// same order as UUID.compareTo
+			long mostSigBits = reader.readLong();
+			long anotherMostSigBits = uuid.getMostSignificantBits();
+			if (mostSigBits != anotherMostSigBits) {
+				return mostSigBits < anotherMostSigBits ? -1 : 1;
+			}
+			long leastSigBits = reader.readLong();
+			long anotherLeastSigBits = uuid.getLeastSignificantBits();
+			return (leastSigBits<anotherLeastSigBits ? -1 : (leastSigBits==anotherLeastSigBits ? 0 : 1));
+		}
+	
+	}
+	
+
 }
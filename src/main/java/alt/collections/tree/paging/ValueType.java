@@ -3,6 +3,7 @@ package alt.collections.tree.paging;
 /**
  * Value Type represents known specific value
  * 
+ * Order of the constants defines the order of keys with different types, new types must be added to the end.
  * 
  * @author Albert Shift
  *
@@ -14,7 +15,19 @@ public enum ValueType {
 	LONG((byte)'l'),
 	STRING((byte)'s'),
 	BLOB((byte)'b'),
-	MUTABLE_LONG((byte)'m');
+	MUTABLE_LONG((byte)'m'),
+	INTEGER((byte)'i'),
+	DOUBLE((byte)'f'),
+	UUID((byte)'u'),
+	STRIPED_LONG((byte)'c');
+	
+	private static final ValueType[] types = new ValueType[256];
+	
+	static {
+		for (ValueType vt : values()) {
+			types[vt.getType() & 0xFF] = vt;
+		}
+	}
 	
 	private byte value;
 	
@@ -25,5 +38,16 @@ public enum ValueType {
 	public byte getType() {
 		return value;
 	}
+	
+	/**
+	 * Finds built-in value type by the type byte
+	 * 
+	 * @param type
+	 * @return value type or null
+	 */
+	
+	public static ValueType valueOf(byte type) {
+		return types[type & 0xFF];
+	}
 
 }
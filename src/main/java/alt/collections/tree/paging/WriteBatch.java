@@ -0,0 +1,57 @@
+package alt.collections.tree.paging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import alt.collections.tree.SimpleEntry;
+import alt.collections.util.Requires;
+
+/**
+ * Batch of puts and removes that is applied by PagingTree.write
+ * 
+ * Batch is not thread safe, it can be reused after clear.
+ * 
+ * @author Albert Shift
+ * 
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+
+public final class WriteBatch<K, V> {
+	
+	private final List<SimpleEntry<K, V>> entries = new ArrayList<SimpleEntry<K, V>>();
+	
+	public WriteBatch<K, V> put(K key, V value) {
+		Requires.nonNull(key, "key");
+		Requires.nonNull(value, "value");
+		
+		entries.add(new SimpleEntry<K, V>(key, value));
+		return this;
+	}
+	
+	public WriteBatch<K, V> remove(K key) {
+		Requires.nonNull(key, "key");
+		
+		entries.add(new SimpleEntry<K, V>(key, null));
+		return this;
+	}
+	
+	public int size() {
+		return entries.size();
+	}
+	
+	public void clear() {
+		entries.clear();
+	}
+	
+	/**
+	 * Operations in order of adding, null value is remove
+	 * 
+	 * @return
+	 */
+	
+	List<SimpleEntry<K, V>> getEntries() {
+		return entries;
+	}
+
+}
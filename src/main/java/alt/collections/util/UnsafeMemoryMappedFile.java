@@ -1,13 +1,19 @@
 package alt.collections.util;
 
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
-import sun.nio.ch.FileChannelImpl;
-
 /**
+ * 
+ * Force writes dirty pages of the range by msync through MappedByteBuffer.force0,
+ * the whole file is synced by the channel if the method is not available.
+ * 
+ * Mapping needs FileChannelImpl.map0 and unmap0 of the JDK 7-8, see isAvailable.
  * 
  * @author Albert Shift
  *
@@ -18,17 +24,31 @@ public class UnsafeMemoryMappedFile {
 	public static final int MAP_READWRITE = 1;
 	public static final int MAP_PRIVATE = 2;
 	  
-    private static final Method map0 = getMethod(FileChannelImpl.class, "map0", int.class, long.class, long.class);
-    private static final Method unmap0 = getMethod(FileChannelImpl.class, "unmap0", long.class, long.class);
+    // class is not exported by the JDK 9+, it is resolved by the name
+    private static final Class<?> fileChannelImpl = findClass("sun.nio.ch.FileChannelImpl");
+    private static final Method map0 = fileChannelImpl != null ? findMethod(fileChannelImpl, "map0", int.class, long.class, long.class) : null;
+    private static final Method unmap0 = fileChannelImpl != null ? findMethod(fileChannelImpl, "unmap0", long.class, long.class) : null;
+    private static final Method force0 = findMethod(MappedByteBuffer.class, "force0", FileDescriptor.class, long.class, long.class);
+    
+    // force0 does not use the buffer, any direct buffer is the MappedByteBuffer
+    private static final ByteBuffer forceBuffer = force0 != null ? ByteBuffer.allocateDirect(1) : null;
 
+    private final String fileName;
+    private final MapFileMode mode;
     private long address;
     private final long size;
+    private RandomAccessFile syncFile;
 
     public UnsafeMemoryMappedFile(String fileName, MapFileMode mode, long size) throws Exception {
+    	if (!isAvailable()) {
+    		throw new IllegalStateException("memory mapping by FileChannelImpl.map0 is not available in the JVM");
+    	}
     	Requires.nonNull(fileName, "fileName");
     	Requires.positive(size, "size");
     	Requires.aligned(PageSize.UNSAFE_PAGESIZE, size, "size");
  
+        this.fileName = fileName;
+        this.mode = mode;
         RandomAccessFile raf = new RandomAccessFile(getFile(fileName), "rw");
         FileChannel ch = null;
 
@@ -45,7 +65,53 @@ public class UnsafeMemoryMappedFile {
         }
     }
 
+    /**
+     * Writes all dirty pages of the file to the disk
+     * 
+     * @throws Exception
+     */
+    
+    public void force() throws Exception {
+        force(0, size);
+    }
+    
+    /**
+     * Writes dirty pages of the range to the disk, only read-write mapping is synced
+     * 
+     * @param offset in the file
+     * @param length of the range
+     * @throws Exception
+     */
+    
+    public synchronized void force(long offset, long length) throws Exception {
+        if (address == 0 || mode != MapFileMode.READ_WRITE || length <= 0) {
+            return;
+        }
+        
+        long from = PageSize.UNSAFE_PAGESIZE.alignTop(offset);
+        length += offset - from;
+        
+        if (syncFile == null) {
+            syncFile = new RandomAccessFile(fileName, "rw");
+        }
+        
+        if (force0 != null) {
+            force0.invoke(forceBuffer, syncFile.getFD(), address + from, length);
+        }
+        else {
+            syncFile.getChannel().force(false);
+        }
+    }
+
     public synchronized void close() {
+        if (syncFile != null) {
+            try {
+                syncFile.close();
+            } catch (Exception e) {
+                // ignore
+            }
+            syncFile = null;
+        }
         if (address != 0) {
             try {
                 unmap0.invoke(null, address, size);
@@ -56,6 +122,16 @@ public class UnsafeMemoryMappedFile {
         }
     }
 
+    /**
+     * Checks that the JVM has methods of the mapping
+     * 
+     * @return true if files can be mapped
+     */
+    
+    public static boolean isAvailable() {
+    	return map0 != null && unmap0 != null;
+    }
+    
     public final long getAddress() {
         return address;
     }
@@ -74,6 +150,22 @@ public class UnsafeMemoryMappedFile {
         }
     }
     
+    public static Method findMethod(Class<?> cls, String name, Class<?>... params) {
+        try {
+            return getMethod(cls, name, params);
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+    
+    public static Class<?> findClass(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+	
 	public static File getFile(String fileName) {
 		File file = new File(fileName);
 		createParentDirectoriesIfNeeded(file);
@@ -0,0 +1,127 @@
+package alt.collections.concurrent;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.concurrent.Contention.Site;
+import alt.collections.paging.PageReader;
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.util.PageSize;
+
+/**
+ * Contention Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class ContentionTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(pageSize.getPageSize()).withBackoff(Backoffs.exponential(4, 1000, 100000)).build();
+	}
+	
+	@Test
+	public void testWriterGate() throws Exception {
+		
+		Contention contention = store.getContention();
+		Assert.assertEquals(0, contention.getRetries(Site.WRITER_GATE));
+		
+		PageReader reader = new PageReader(store, 0);
+		final WriterGate gate = new WriterGate(reader.readIntegerCas(), contention);
+		
+		Assert.assertTrue(gate.enter());
+		
+		final boolean[] frozen = new boolean[1];
+		Thread thread = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				frozen[0] = gate.freeze();
+			}
+		
+		});
+		thread.start();
+		
+		Thread.sleep(50);
+		gate.exit();
+		thread.join();
+		
+		Assert.assertTrue(frozen[0]);
+		Assert.assertFalse(gate.enter());
+		
+		// freeze waited for the writer
+		Assert.assertTrue(contention.getRetries(Site.WRITER_GATE) > 0);
+		Assert.assertEquals(0, contention.getRetries(Site.EPOCH_GATE));
+		
+		contention.reset();
+		Assert.assertEquals(0, contention.getRetries(Site.WRITER_GATE));
+	
+	}
+	
+	@Test
+	public void testStripes() throws Exception {
+		
+		final Contention contention = new Contention(Backoffs.spin());
+		
+		final int numThreads = 8;
+		final int numRetries = 10000;
+		
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i != numThreads; ++i) {
+			threads[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					for (int r = 0; r != numRetries; ++r) {
+						contention.retry(Site.NODE_VERSION, 1);
+					}
+				}
+			
+			});
+			threads[i].start();
+		}
+		
+		for (int i = 0; i != numThreads; ++i) {
+			threads[i].join();
+		}
+		
+		// counters of threads are summed on read
+		Assert.assertEquals(numThreads * numRetries, contention.getRetries(Site.NODE_VERSION));
+		Assert.assertEquals(0, contention.getRetries(Site.PAGE_HEAP));
+		
+		contention.reset();
+		Assert.assertEquals(0, contention.getRetries(Site.NODE_VERSION));
+	
+	}
+	
+	@Test
+	public void testBackoffs() throws Exception {
+		
+		Backoff[] backoffs = { Backoffs.spin(), Backoffs.yield(), Backoffs.park(1000), Backoffs.exponential(2, 1000, 8000) };
+		
+		for (Backoff backoff : backoffs) {
+			long t0 = System.nanoTime();
+			for (int attempt = 1; attempt != 20; ++attempt) {
+				backoff.backoff(attempt);
+			}
+			// max park time is bounded
+			Assert.assertTrue(System.nanoTime() - t0 < 1000000000L);
+		}
+	
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
@@ -0,0 +1,124 @@
+package alt.collections.concurrent;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.util.PageSize;
+
+/**
+ * Shared Exclusive Lock Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class SharedExclusiveLockTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testReaders() throws Exception {
+		
+		SharedExclusiveLock lock = new SharedExclusiveLock(store.getAddress(0), store.getContention());
+		
+		int first = lock.lockShared();
+		int second = lock.lockShared();
+		Assert.assertFalse(lock.isLockedExclusive());
+		lock.unlockShared(second);
+		lock.unlockShared(first);
+		
+		lock.lockExclusive();
+		Assert.assertTrue(lock.isLockedExclusive());
+		lock.unlockExclusive();
+		
+		// lock on the same memory is the same lock
+		SharedExclusiveLock other = new SharedExclusiveLock(store.getAddress(0), store.getContention());
+		lock.lockExclusive();
+		Assert.assertTrue(other.isLockedExclusive());
+		lock.unlockExclusive();
+	
+	}
+	
+	@Test
+	public void testParallel() throws Exception {
+		
+		final SharedExclusiveLock lock = new SharedExclusiveLock(store.getAddress(0), store.getContention());
+		
+		final int numThreads = 8;
+		final int iterations = 20000;
+		
+		final AtomicInteger readers = new AtomicInteger();
+		final AtomicInteger writers = new AtomicInteger();
+		final AtomicInteger violations = new AtomicInteger();
+		final long[] counter = new long[1];
+		
+		final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+		
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i != numThreads; ++i) {
+			final int thread = i;
+			threads[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					for (int k = 0; k != iterations; ++k) {
+						if (k % 10 == thread % 10) {
+							lock.lockExclusive();
+							if (writers.incrementAndGet() != 1 || readers.get() != 0) {
+								violations.incrementAndGet();
+							}
+							counter[0]++;
+							writers.decrementAndGet();
+							lock.unlockExclusive();
+						}
+						else {
+							int stripe = lock.lockShared();
+							readers.incrementAndGet();
+							if (writers.get() != 0) {
+								violations.incrementAndGet();
+							}
+							readers.decrementAndGet();
+							lock.unlockShared(stripe);
+						}
+					}
+				}
+			
+			});
+			threads[i].start();
+		}
+		
+		for (int i = 0; i != numThreads; ++i) {
+			threads[i].join();
+		}
+		
+		Assert.assertEquals(0, violations.get());
+		Assert.assertEquals(numThreads * iterations / 10, counter[0]);
+		Assert.assertFalse(lock.isLockedExclusive());
+	
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
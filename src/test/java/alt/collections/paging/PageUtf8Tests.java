@@ -59,7 +59,7 @@ public class PageUtf8Tests {
 			char[] chars = new char[] { (char)i };
 						
 			String str = new String(chars);
-			byte[] utf8 = str.getBytes("UTF-8");
+			byte[] utf8 = Character.isSurrogate(chars[0]) ? surrogateUtf8(chars[0]) : str.getBytes("UTF-8");
 			
 			writer.reset();
 			writer.writeString(str);
@@ -81,11 +81,19 @@ public class PageUtf8Tests {
 			reader.reset();
 			String act = reader.readString();
 			
-			Assert.assertEquals(new String(utf8, "UTF-8").charAt(0), act.charAt(0));
+			Assert.assertEquals(str, act);
 		}
 		
 	}
 	
+	/**
+	 * Surrogate char is encoded by 3 bytes like other chars of the range, not as '?'
+	 */
+	
+	private static byte[] surrogateUtf8(char ch) {
+		return new byte[] { (byte)(0xE0 | ch >> 12 & 0x0F), (byte)(0x80 | ch >> 6 & 0x3F), (byte)(0x80 | ch & 0x3F) };
+	}
+	
 	@After
 	public void free() throws Exception {
 		store.free();
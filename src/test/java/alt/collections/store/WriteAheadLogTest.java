@@ -0,0 +1,231 @@
+package alt.collections.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Write Ahead Log Test
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class WriteAheadLogTest {
+	
+	private static final String LOG_PATH = "target/wal/test.log";
+	
+	@Before
+	public void init() {
+		deleteLog();
+	}
+	
+	@Test
+	public void testReplay() throws Exception {
+		
+		WriteAheadLog wal = new WriteAheadLog(LOG_PATH);
+		long lsn = 0;
+		for (int i = 0; i != 100; ++i) {
+			lsn = wal.append(("record" + i).getBytes("UTF-8"));
+		}
+		wal.commit(lsn);
+		wal.write("last".getBytes("UTF-8"));
+		wal.close();
+		
+		wal = new WriteAheadLog(LOG_PATH);
+		List<String> records = replay(wal);
+		Assert.assertEquals(101, records.size());
+		Assert.assertEquals("record0", records.get(0));
+		Assert.assertEquals("last", records.get(100));
+		wal.close();
+	
+	}
+	
+	@Test
+	public void testTornTail() throws Exception {
+		
+		WriteAheadLog wal = new WriteAheadLog(LOG_PATH);
+		wal.write("first".getBytes("UTF-8"));
+		wal.write("second".getBytes("UTF-8"));
+		wal.close();
+		
+		// the crash in the middle of the last record
+		RandomAccessFile raf = new RandomAccessFile(LOG_PATH + ".1", "rw");
+		raf.setLength(raf.length() - 2);
+		raf.close();
+		
+		wal = new WriteAheadLog(LOG_PATH);
+		wal.write("third".getBytes("UTF-8"));
+		wal.close();
+		
+		wal = new WriteAheadLog(LOG_PATH);
+		List<String> records = replay(wal);
+		Assert.assertEquals(2, records.size());
+		Assert.assertEquals("first", records.get(0));
+		Assert.assertEquals("third", records.get(1));
+		wal.close();
+	
+	}
+	
+	@Test
+	public void testCheckpoint() throws Exception {
+		
+		WriteAheadLog wal = new WriteAheadLog(LOG_PATH);
+		wal.write("before".getBytes("UTF-8"));
+		
+		final boolean[] forced = new boolean[1];
+		wal.checkpoint(new Runnable() {
+			
+			@Override
+			public void run() {
+				forced[0] = true;
+			}
+		
+		});
+		
+		Assert.assertTrue(forced[0]);
+		Assert.assertEquals(1, wal.getFiles());
+		Assert.assertFalse(new File(LOG_PATH + ".1").exists());
+		
+		wal.write("after".getBytes("UTF-8"));
+		wal.close();
+		
+		wal = new WriteAheadLog(LOG_PATH);
+		List<String> records = replay(wal);
+		Assert.assertEquals(1, records.size());
+		Assert.assertEquals("after", records.get(0));
+		wal.close();
+	
+	}
+	
+	@Test
+	public void testImage() throws Exception {
+		
+		WriteAheadLog wal = new WriteAheadLog(LOG_PATH);
+		wal.write("before".getBytes("UTF-8"));
+		
+		BytesImage image = new BytesImage("image".getBytes("UTF-8"));
+		wal.checkpoint(image);
+		wal.write("after".getBytes("UTF-8"));
+		wal.close();
+		
+		Assert.assertFalse(new File(LOG_PATH + ".1").exists());
+		Assert.assertTrue(new File(LOG_PATH + ".image.2").exists());
+		
+		// records before the image are not replayed, the image is restored
+		wal = new WriteAheadLog(LOG_PATH);
+		BytesImage restored = new BytesImage(null);
+		Assert.assertTrue(wal.restore(restored));
+		Assert.assertEquals("image", new String(restored.bytes, "UTF-8"));
+		List<String> records = replay(wal);
+		Assert.assertEquals(1, records.size());
+		Assert.assertEquals("after", records.get(0));
+		
+		// the next image replaces the previous one
+		wal.checkpoint(new BytesImage("next".getBytes("UTF-8")));
+		wal.close();
+		Assert.assertFalse(new File(LOG_PATH + ".image.2").exists());
+		
+		wal = new WriteAheadLog(LOG_PATH);
+		Assert.assertTrue(wal.restore(restored));
+		Assert.assertEquals("next", new String(restored.bytes, "UTF-8"));
+		Assert.assertEquals(0, replay(wal).size());
+		wal.close();
+	
+	}
+	
+	@Test
+	public void testGroupCommit() throws Exception {
+		
+		final WriteAheadLog wal = new WriteAheadLog(LOG_PATH);
+		
+		final int numThreads = 8;
+		final int numRecords = 500;
+		
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i != numThreads; ++i) {
+			final int thread = i;
+			threads[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					for (int r = 0; r != numRecords; ++r) {
+						wal.write(new byte[] { (byte) thread, (byte) r });
+					}
+				}
+			
+			});
+			threads[i].start();
+		}
+		
+		for (int i = 0; i != numThreads; ++i) {
+			threads[i].join();
+		}
+		wal.close();
+		
+		WriteAheadLog reopened = new WriteAheadLog(LOG_PATH);
+		Assert.assertEquals(numThreads * numRecords, replay(reopened).size());
+		reopened.close();
+	
+	}
+	
+	@After
+	public void tearDown() {
+		deleteLog();
+	}
+	
+	private static List<String> replay(WriteAheadLog wal) throws Exception {
+		final List<String> records = new ArrayList<String>();
+		wal.replay(new WriteAheadLog.RecordConsumer() {
+			
+			@Override
+			public void accept(byte[] record) {
+				records.add(new String(record));
+			}
+		
+		});
+		return records;
+	}
+	
+	private static final class BytesImage implements WriteAheadLog.Image {
+		
+		byte[] bytes;
+		
+		BytesImage(byte[] bytes) {
+			this.bytes = bytes;
+		}
+		
+		@Override
+		public void write(FileChannel channel) throws IOException {
+			channel.write(ByteBuffer.wrap(bytes));
+		}
+		
+		@Override
+		public void read(FileChannel channel) throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while(buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			}
+			bytes = buffer.array();
+		}
+	
+	}
+	
+	private static void deleteLog() {
+		File[] files = new File(LOG_PATH).getParentFile().listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+	}
+
+}
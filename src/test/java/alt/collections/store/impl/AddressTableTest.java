@@ -0,0 +1,55 @@
+package alt.collections.store.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Address Table Test
+ * 
+ * @author Albert Shift
+ *
+ */
+public class AddressTableTest {
+	
+	@Test
+	public void testMapped() throws Exception {
+		
+		// segments are mapped in any order of addresses
+		long[] addresses = new long[] { 0x50000, 0x10000, 0x90000, 0x30000 };
+		long[] sizes = new long[] { 0x4000, 0x8000, 0x1000, 0x10000 };
+		
+		AddressTable addressTable = new AddressTable(addresses, sizes);
+		Assert.assertEquals(4, addressTable.getMappedSegments());
+		
+		for (int i = 0; i != addresses.length; ++i) {
+			Assert.assertEquals(i, addressTable.indexOf(addresses[i]));
+			Assert.assertEquals(i, addressTable.indexOf(addresses[i] + sizes[i] / 2));
+			Assert.assertEquals(i, addressTable.indexOf(addresses[i] + sizes[i] - 1));
+			Assert.assertEquals(-1, addressTable.indexOf(addresses[i] + sizes[i]));
+			Assert.assertEquals(-1, addressTable.indexOf(addresses[i] - 1));
+		}
+		
+		Assert.assertEquals(-1, addressTable.indexOf(0));
+		Assert.assertEquals(-1, addressTable.indexOf(Long.MAX_VALUE));
+	
+	}
+	
+	@Test
+	public void testUnmapped() throws Exception {
+		
+		long[] addresses = new long[] { 0x50000, 0, 0x10000, 0 };
+		long[] sizes = new long[] { 0x4000, 0x8000, 0x4000, 0x4000 };
+		
+		AddressTable addressTable = new AddressTable(addresses, sizes);
+		Assert.assertEquals(2, addressTable.getMappedSegments());
+		
+		Assert.assertEquals(0, addressTable.indexOf(0x50000 + 0x100));
+		Assert.assertEquals(2, addressTable.indexOf(0x10000 + 0x100));
+		Assert.assertEquals(-1, addressTable.indexOf(0x30000));
+		
+		Assert.assertEquals(0, new AddressTable(new long[2], sizes).getMappedSegments());
+		Assert.assertEquals(-1, new AddressTable(new long[2], sizes).indexOf(0x10000));
+	
+	}
+
+}
@@ -3,10 +3,14 @@ package alt.collections.store.impl;
 
 
 import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
 import org.junit.Test;
 
+import alt.collections.paging.GrowablePaging;
 import alt.collections.store.FileStore;
 import alt.collections.store.Stores;
+import alt.collections.util.UnsafeMemoryMappedFile;
 
 /**
  * 
@@ -15,6 +19,12 @@ import alt.collections.store.Stores;
  */
 public class MultipleFileStoreTest {
 
+	@Before
+	public void init() {
+		// segments are mapped by FileChannelImpl.map0 that is missing in the JDK 9+
+		Assume.assumeTrue(UnsafeMemoryMappedFile.isAvailable());
+	}
+	
 	@Test
 	public void test() throws Exception {
 		
@@ -23,5 +33,49 @@ public class MultipleFileStoreTest {
 		Assert.assertEquals(1500, fs.getTotalPages());
 		
 	}
+	
+	@Test
+	public void testLazyMapping() throws Exception {
+		
+		MultipleFileStore fs = (MultipleFileStore) Stores.fileStore(4096).addFiles("target/lazy/folder%s/segment%s.mmf", 100, 4 * 4096).lazyMapping().deleteOnExit().build();
+		
+		Assert.assertEquals(400, fs.getTotalPages());
+		Assert.assertFalse(fs.isMapped(10));
+		
+		long address = fs.getAddress(41);
+		Assert.assertTrue(fs.isMapped(10));
+		Assert.assertFalse(fs.isMapped(11));
+		Assert.assertEquals(address + 4096, fs.getAddress(42));
+		
+		fs.unmapSegment(10);
+		Assert.assertFalse(fs.isMapped(10));
+		fs.getAddress(41);
+		Assert.assertTrue(fs.isMapped(10));
+		
+		fs.close();
+	
+	}
+	
+	@Test
+	public void testGrowth() throws Exception {
+		
+		FileStore fs = Stores.fileStore(4096).addFile("target/growth/segment0.mmf", 4 * 4096)
+				.withGrowth("target/growth/folder%s/segment%s.mmf", 8 * 4096).deleteOnExit().build();
+		
+		GrowablePaging paging = (GrowablePaging) fs;
+		Assert.assertEquals(4, paging.getTotalPages());
+		Assert.assertEquals(8, paging.getGrowthPages());
+		
+		long address = paging.getAddress(3);
+		Assert.assertTrue(paging.grow(20));
+		Assert.assertEquals(20, paging.getTotalPages());
+		
+		// existing pages never move
+		Assert.assertEquals(address, paging.getAddress(3));
+		Assert.assertEquals(paging.getAddress(12) + 4096, paging.getAddress(13));
+		
+		fs.close();
+	
+	}
 
 }
@@ -0,0 +1,65 @@
+package alt.collections.store.impl;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Segment Table Test
+ * 
+ * @author Albert Shift
+ *
+ */
+public class SegmentTableTest {
+	
+	@Test
+	public void testUniform() throws Exception {
+		
+		doTest(new long[] { 16, 16, 16, 16 });
+		doTest(new long[] { 1, 1, 1 });
+		doTest(new long[] { 12, 12, 12 });
+	
+	}
+	
+	@Test
+	public void testMixed() throws Exception {
+		
+		doTest(new long[] { 8, 24, 4, 64 });
+		doTest(new long[] { 3, 5, 7 });
+		
+		Random random = new Random(5);
+		long[] segmentPages = new long[100];
+		for (int i = 0; i != segmentPages.length; ++i) {
+			segmentPages[i] = 1 + random.nextInt(100);
+		}
+		doTest(segmentPages);
+	
+	}
+	
+	@Test
+	public void testSearch() throws Exception {
+		
+		// table would be bigger than MAX_TABLE_SIZE
+		doTest(new long[] { SegmentTable.MAX_TABLE_SIZE, 1, SegmentTable.MAX_TABLE_SIZE });
+	
+	}
+	
+	private static void doTest(long[] segmentPages) {
+		
+		SegmentTable segmentTable = new SegmentTable(segmentPages);
+		
+		long pageNum = 0;
+		for (int i = 0; i != segmentPages.length; ++i) {
+			Assert.assertEquals(pageNum, segmentTable.getStartPage(i));
+			Assert.assertEquals(i, segmentTable.indexOf(pageNum));
+			Assert.assertEquals(i, segmentTable.indexOf(pageNum + segmentPages[i] / 2));
+			Assert.assertEquals(i, segmentTable.indexOf(pageNum + segmentPages[i] - 1));
+			pageNum += segmentPages[i];
+		}
+		
+		Assert.assertEquals(pageNum, segmentTable.getTotalPages());
+		Assert.assertEquals(segmentPages.length, segmentTable.getSegments());
+	}
+
+}
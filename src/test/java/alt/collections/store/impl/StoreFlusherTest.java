@@ -0,0 +1,198 @@
+package alt.collections.store.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import alt.collections.concurrent.Backoffs;
+import alt.collections.concurrent.IntegerCas;
+import alt.collections.paging.InnerRef;
+import alt.collections.paging.PageNum;
+import alt.collections.paging.PageReader;
+import alt.collections.paging.PageWriter;
+import alt.collections.store.FileStore;
+import alt.collections.util.PageSize;
+
+/**
+ * Store Flusher Test
+ * 
+ * @author Albert Shift
+ *
+ */
+public class StoreFlusherTest {
+	
+	private static final int CHUNK_PAGES = 1 << StoreFlusher.CHUNK_SHIFT;
+	
+	@Test
+	public void testFlush() throws Exception {
+		
+		RecordingStore store = new RecordingStore(10 * CHUNK_PAGES);
+		StoreFlusher flusher = new StoreFlusher(store, 0, Long.MAX_VALUE);
+		
+		try {
+			flusher.mark(0);
+			flusher.mark(CHUNK_PAGES + 5);
+			flusher.mark(3 * CHUNK_PAGES);
+			flusher.mark(9 * CHUNK_PAGES + 1);
+			Assert.assertEquals(4L * store.getPageSize() * CHUNK_PAGES, flusher.getMarkedBytes());
+			
+			// adjacent chunks are forced by one call
+			Assert.assertEquals(4, flusher.flush());
+			Assert.assertEquals("[0-512, 768-1024, 2304-2560]", store.takeForced());
+			
+			// chunks are forced twice
+			Assert.assertEquals(4, flusher.flush());
+			Assert.assertEquals("[0-512, 768-1024, 2304-2560]", store.takeForced());
+			Assert.assertEquals(0, flusher.getMarkedBytes());
+			
+			Assert.assertEquals(0, flusher.flush());
+			Assert.assertEquals("[]", store.takeForced());
+			
+			// mark between flushes restarts the chunk
+			flusher.mark(1);
+			flusher.flush();
+			flusher.mark(2);
+			flusher.flush();
+			flusher.flush();
+			Assert.assertEquals("[0-256, 0-256, 0-256]", store.takeForced());
+		}
+		finally {
+			flusher.close();
+			store.free();
+		}
+	
+	}
+	
+	@Test
+	public void testThreshold() throws Exception {
+		
+		RecordingStore store = new RecordingStore(10 * CHUNK_PAGES);
+		StoreFlusher flusher = new StoreFlusher(store, 0, 2L * store.getPageSize() * CHUNK_PAGES);
+		
+		try {
+			flusher.mark(0);
+			Thread.sleep(100);
+			Assert.assertEquals("[]", store.takeForced());
+			
+			flusher.mark(CHUNK_PAGES);
+			for (int i = 0; i != 100 && store.forced.isEmpty(); ++i) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals("[0-512]", store.takeForced());
+		}
+		finally {
+			flusher.close();
+			store.free();
+		}
+	
+	}
+	
+	@Test
+	public void testGrowth() throws Exception {
+		
+		RecordingStore store = new RecordingStore(CHUNK_PAGES);
+		StoreFlusher flusher = new StoreFlusher(store, 0, Long.MAX_VALUE);
+		
+		try {
+			flusher.ensureCapacity(CHUNK_PAGES * 70000L);
+			flusher.mark(CHUNK_PAGES * 69999L);
+			flusher.mark(0);
+			
+			// pages over total pages of the store are not forced
+			flusher.flush();
+			Assert.assertEquals("[0-256]", store.takeForced());
+		}
+		finally {
+			flusher.close();
+			store.free();
+		}
+	
+	}
+	
+	@Test
+	public void testMarkChanged() throws Exception {
+		
+		RecordingStore store = new RecordingStore(10 * CHUNK_PAGES);
+		StoreFlusher flusher = new StoreFlusher(store, 0, Long.MAX_VALUE);
+		store.flusher = flusher;
+		
+		try {
+			// reads do not mark chunks
+			PageReader reader = new PageReader(store, CHUNK_PAGES);
+			IntegerCas cas = reader.readIntegerCas();
+			cas.getInt();
+			Assert.assertFalse(cas.casInt(1, 2));
+			Assert.assertEquals(0, flusher.getMarkedBytes());
+			
+			// successful CAS marks the chunk of the page
+			Assert.assertTrue(cas.casInt(0, 1));
+			Assert.assertEquals("[256-512]", takeFlushed(store, flusher));
+			
+			PageWriter writer = new PageWriter(store, 3 * CHUNK_PAGES + 1);
+			writer.writeInt(1);
+			Assert.assertEquals("[768-1024]", takeFlushed(store, flusher));
+			
+			writer.switchAddress(store.getAddress(5 * CHUNK_PAGES));
+			Assert.assertEquals("[1280-1536]", takeFlushed(store, flusher));
+		}
+		finally {
+			flusher.close();
+			store.free();
+		}
+	
+	}
+	
+	/**
+	 * Forces marked chunks and cleans them by the second flush
+	 */
+	
+	private static String takeFlushed(RecordingStore store, StoreFlusher flusher) {
+		flusher.flush();
+		String result = store.takeForced();
+		flusher.flush();
+		store.takeForced();
+		return result;
+	}
+	
+	private static final class RecordingStore extends DefaultMemStore implements FileStore {
+		
+		final List<String> forced = new ArrayList<String>();
+		volatile StoreFlusher flusher;
+		
+		RecordingStore(long pages) {
+			super(PageSize.UNSAFE_PAGESIZE, PageNum.DEFAULT, InnerRef.DEFAULT, Backoffs.spin(), pages * PageSize.UNSAFE_PAGESIZE.getPageSize());
+		}
+		
+		@Override
+		public void close() {
+		}
+		
+		@Override
+		public void markChanged(long address) {
+			StoreFlusher flusher = this.flusher;
+			if (flusher != null) {
+				flusher.mark((address - getAddress(0)) / getPageSize());
+			}
+		}
+		
+		@Override
+		public void force() {
+			force(0, getTotalPages());
+		}
+		
+		@Override
+		public synchronized void force(long pageFrom, long pageTo) {
+			forced.add(pageFrom + "-" + pageTo);
+		}
+		
+		synchronized String takeForced() {
+			String result = forced.toString();
+			forced.clear();
+			return result;
+		}
+	
+	}
+
+}
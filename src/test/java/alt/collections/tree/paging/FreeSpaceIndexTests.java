@@ -0,0 +1,95 @@
+package alt.collections.tree.paging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.util.PageSize;
+
+/**
+ * Free Space Index Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class FreeSpaceIndexTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(2000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testFind() throws Exception {
+		
+		FreeSpaceIndex index = new FreeSpaceIndex();
+		List<Integer> freeSizes = new ArrayList<Integer>();
+		
+		Random random = new Random(5);
+		
+		for (int i = 0; i != 10000; ++i) {
+			
+			if (freeSizes.isEmpty() || random.nextInt(10) == 0) {
+				Assert.assertEquals(freeSizes.size(), index.addPage(4096));
+				freeSizes.add(4096);
+			}
+			
+			int size = random.nextInt(1000);
+			int page = index.find(size);
+			Assert.assertEquals(firstFit(freeSizes, size), page);
+			
+			if (page != -1) {
+				int freeSize = freeSizes.get(page) - size;
+				freeSizes.set(page, freeSize);
+				index.update(page, freeSize);
+			}
+		}
+		
+		Assert.assertEquals(-1, index.find(4097));
+	
+	}
+	
+	@Test
+	public void testNames() throws Exception {
+		
+		NamedTreeImmutableMap nameTree = new NamedTreeImmutableMap(store);
+		
+		// names span many continue pages
+		for (int i = 0; i != 5000; ++i) {
+			nameTree.findOrCreate("name" + i);
+		}
+		
+		for (int i = 0; i != 5000; ++i) {
+			Assert.assertNotNull(nameTree.find("name" + i));
+		}
+		Assert.assertEquals(5000, nameTree.getAllNames().size());
+	
+	}
+	
+	private static int firstFit(List<Integer> freeSizes, int size) {
+		for (int i = 0; i != freeSizes.size(); ++i) {
+			if (freeSizes.get(i) >= size) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
@@ -0,0 +1,211 @@
+package alt.collections.tree.paging;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.util.PageSize;
+
+/**
+ * Paging Tree Allocation Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeAllocationTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(20000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testChunks() throws Exception {
+		
+		MasterPage masterPage = MasterPage.concurrentGetOrCreate(store);
+		ChunkedPageManager pageManager = new ChunkedPageManager(masterPage, 8);
+		
+		long first = pageManager.allocatePage();
+		for (int i = 1; i != 8; ++i) {
+			Assert.assertEquals(first + i, pageManager.allocatePage());
+		}
+		Assert.assertEquals(first + 8, masterPage.getStoreTail());
+		
+		pageManager.allocatePage();
+		Assert.assertEquals(first + 16, masterPage.getStoreTail());
+		
+		// unused pages are reused by the next allocation
+		pageManager.release();
+		long storeTail = masterPage.getStoreTail();
+		for (int i = 0; i != 7; ++i) {
+			long pageNum = masterPage.allocatePage();
+			Assert.assertTrue(pageNum > first + 8 && pageNum < first + 16);
+		}
+		Assert.assertEquals(storeTail, masterPage.getStoreTail());
+	
+	}
+	
+	@Test
+	public void testFreeBatch() throws Exception {
+		
+		MasterPage masterPage = MasterPage.concurrentGetOrCreate(store);
+		ChunkedPageManager pageManager = new ChunkedPageManager(masterPage, 8);
+		
+		Set<Long> freed = new HashSet<Long>();
+		for (int i = 0; i != 3; ++i) {
+			freed.add(masterPage.allocatePage());
+		}
+		for (long pageNum : freed) {
+			masterPage.freePage(pageNum, false);
+		}
+		long storeTail = masterPage.getStoreTail();
+		
+		// free pages are taken to the chunk by one batch
+		Assert.assertTrue(freed.remove(pageManager.allocatePage()));
+		Assert.assertEquals(0, masterPage.allocateFreePage());
+		Assert.assertTrue(freed.remove(pageManager.allocatePage()));
+		Assert.assertTrue(freed.remove(pageManager.allocatePage()));
+		Assert.assertEquals(storeTail, masterPage.getStoreTail());
+		
+		// empty chunk reserves the run
+		pageManager.allocatePage();
+		Assert.assertEquals(storeTail + 8, masterPage.getStoreTail());
+		
+		pageManager.release();
+		Assert.assertTrue(masterPage.allocateFreePage() != 0);
+	
+	}
+	
+	@Test
+	public void testDeadThread() throws Exception {
+		
+		MasterPage masterPage = MasterPage.concurrentGetOrCreate(store);
+		final ChunkedPageManager pageManager = new ChunkedPageManager(masterPage, 8);
+		
+		final long[] first = new long[1];
+		Thread thread = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				first[0] = pageManager.allocatePage();
+			}
+		
+		});
+		thread.start();
+		thread.join();
+		long storeTail = masterPage.getStoreTail();
+		
+		// chunk of the dead thread is freed by the claim of the new thread
+		long pageNum = pageManager.allocatePage();
+		Assert.assertTrue(pageNum > first[0] && pageNum < first[0] + 8);
+		Assert.assertEquals(storeTail, masterPage.getStoreTail());
+	
+	}
+	
+	@Test
+	public void testDeadProcess() throws Exception {
+		
+		MasterPage masterPage = MasterPage.concurrentGetOrCreate(store);
+		ChunkedPageManager pageManager = new ChunkedPageManager(masterPage, 8);
+		
+		long first = pageManager.allocatePage();
+		long storeTail = masterPage.getStoreTail();
+		
+		// process dies without release, the exclusive open returns the rest of the run
+		masterPage = MasterPage.getOrCreate(store);
+		Set<Long> reserved = new HashSet<Long>();
+		for (int i = 0; i != 7; ++i) {
+			reserved.add(masterPage.allocateFreePage());
+		}
+		Assert.assertEquals(0, masterPage.allocateFreePage());
+		for (long pageNum : reserved) {
+			Assert.assertTrue(pageNum > first && pageNum < first + 8);
+			masterPage.freePage(pageNum, false);
+		}
+		
+		// batch of free pages detached to the chunk is returned as well
+		pageManager = new ChunkedPageManager(masterPage, 8);
+		Assert.assertTrue(reserved.remove(pageManager.allocatePage()));
+		Assert.assertEquals(0, masterPage.allocateFreePage());
+		
+		masterPage = MasterPage.getOrCreate(store);
+		for (int i = 0; i != 6; ++i) {
+			Assert.assertTrue(reserved.remove(masterPage.allocateFreePage()));
+		}
+		Assert.assertEquals(0, masterPage.allocateFreePage());
+		Assert.assertEquals(storeTail, masterPage.getStoreTail());
+	
+	}
+	
+	@Test
+	public void testParallel() throws Exception {
+		
+		final PagingTreeStore treeStore = new PagingTreeStore(store, 32);
+		
+		final int numThreads = 8;
+		final int numKeys = 5000;
+		
+		final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+		
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i != numThreads; ++i) {
+			final int thread = i;
+			threads[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					PagingTree<Long, Long> ptree = treeStore.openTree("tree" + thread % 2);
+					try {
+						barrier.await();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					for (long k = 0; k != numKeys; ++k) {
+						ptree.put(k * numThreads + thread, k);
+					}
+				}
+			
+			});
+			threads[i].start();
+		}
+		
+		for (int i = 0; i != numThreads; ++i) {
+			threads[i].join();
+		}
+		
+		treeStore.close();
+		
+		for (int thread = 0; thread != numThreads; ++thread) {
+			PagingTree<Long, Long> ptree = new PagingTree<Long, Long>(store, "tree" + thread % 2);
+			for (long k = 0; k != numKeys; ++k) {
+				Assert.assertEquals(Long.valueOf(k), ptree.get(k * numThreads + thread));
+			}
+		}
+		
+		// released pages are taken before the growth of the store
+		MasterPage masterPage = treeStore.getMasterPage();
+		long storeTail = masterPage.getStoreTail();
+		long pageNum = masterPage.allocatePage();
+		Assert.assertTrue(pageNum < storeTail);
+		Assert.assertEquals(storeTail, masterPage.getStoreTail());
+	
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
@@ -0,0 +1,173 @@
+package alt.collections.tree.paging;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.tree.SimpleEntry;
+import alt.collections.util.PageSize;
+
+/**
+ * Paging Tree Bulk Load Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeBulkLoadTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(20000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testSequential() throws Exception {
+		
+		PagingTree<Long, String> ptree = new PagingTree<Long, String>(store, "sequentialTree");
+		
+		List<SimpleEntry<Long, String>> entries = new ArrayList<SimpleEntry<Long, String>>();
+		for (long i = 0; i != 100000; ++i) {
+			entries.add(SimpleEntry.newEntry(i, "value" + i));
+		}
+		
+		ptree.load(entries.iterator());
+		
+		for (long i = 0; i != 100000; ++i) {
+			Assert.assertEquals("value" + i, ptree.get(i));
+		}
+		Assert.assertNull(ptree.get(100000L));
+		
+		long expected = 0;
+		for (SimpleEntry<Long, String> entry : ptree.entries()) {
+			Assert.assertEquals(Long.valueOf(expected++), entry.getKey());
+		}
+		Assert.assertEquals(100000, expected);
+		
+		// packed pages accept updates
+		for (long i = 0; i < 100000; i += 7) {
+			Assert.assertEquals("value" + i, ptree.put(i, "new" + i));
+		}
+		Assert.assertNull(ptree.put(-1L, "first"));
+		
+		for (long i = 0; i != 100000; ++i) {
+			Assert.assertEquals((i % 7 == 0 ? "new" : "value") + i, ptree.get(i));
+		}
+		Assert.assertEquals("first", ptree.get(-1L));
+	
+	}
+	
+	@Test
+	public void testRandom() throws Exception {
+		
+		PagingTree<String, Object> ptree = new PagingTree<String, Object>(store, "randomTree");
+		
+		Random random = new Random(5);
+		TreeMap<String, Object> map = new TreeMap<String, Object>();
+		
+		for (int i = 0; i != 20000; ++i) {
+			String key = "key" + random.nextInt(1000000);
+			if (i % 100 == 0) {
+				byte[] blob = new byte[random.nextInt(5000)];
+				random.nextBytes(blob);
+				map.put(key, blob);
+			}
+			else {
+				map.put(key, Long.valueOf(i));
+			}
+		}
+		
+		ptree.load(toEntries(map));
+		
+		for (Map.Entry<String, Object> entry : map.entrySet()) {
+			Object value = ptree.get(entry.getKey());
+			if (entry.getValue() instanceof byte[]) {
+				Assert.assertArrayEquals((byte[]) entry.getValue(), (byte[]) value);
+			}
+			else {
+				Assert.assertEquals(entry.getValue(), value);
+			}
+		}
+		
+		Iterator<String> keys = map.keySet().iterator();
+		for (SimpleEntry<String, Object> entry : ptree.entries()) {
+			Assert.assertEquals(keys.next(), entry.getKey());
+		}
+		Assert.assertFalse(keys.hasNext());
+	
+	}
+	
+	@Test
+	public void testEmpty() throws Exception {
+		
+		PagingTree<Long, Long> ptree = new PagingTree<Long, Long>(store, "emptyTree");
+		
+		ptree.load(new ArrayList<SimpleEntry<Long, Long>>().iterator());
+		Assert.assertNull(ptree.get(1L));
+		
+		Assert.assertNull(ptree.put(1L, 1L));
+		
+		try {
+			ptree.load(new ArrayList<SimpleEntry<Long, Long>>().iterator());
+			Assert.fail("tree is not empty");
+		}
+		catch(PagingTreeException e) {
+		}
+	
+	}
+	
+	@Test
+	public void testUnsorted() throws Exception {
+		
+		PagingTree<Long, Long> ptree = new PagingTree<Long, Long>(store, "unsortedTree");
+		
+		List<SimpleEntry<Long, Long>> entries = new ArrayList<SimpleEntry<Long, Long>>();
+		for (long i = 0; i != 10000; ++i) {
+			entries.add(SimpleEntry.newEntry(i, i));
+		}
+		entries.add(SimpleEntry.newEntry(5000L, 5000L));
+		
+		try {
+			ptree.load(entries.iterator());
+			Assert.fail("keys are not in order");
+		}
+		catch(PagingTreeException e) {
+		}
+		
+		Assert.assertNull(ptree.get(1L));
+		
+		// pages of the failed load are reused
+		entries.remove(entries.size() - 1);
+		ptree.load(entries.iterator());
+		Assert.assertEquals(Long.valueOf(9999L), ptree.get(9999L));
+	
+	}
+	
+	private static Iterator<SimpleEntry<String, Object>> toEntries(Map<String, Object> map) {
+		List<SimpleEntry<String, Object>> entries = new ArrayList<SimpleEntry<String, Object>>();
+		for (Map.Entry<String, Object> entry : map.entrySet()) {
+			entries.add(SimpleEntry.newEntry(entry.getKey(), entry.getValue()));
+		}
+		return entries.iterator();
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
@@ -0,0 +1,96 @@
+package alt.collections.tree.paging;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.paging.PageReader;
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.util.PageSize;
+
+/**
+ * Paging Tree Compaction Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeCompactionTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(1000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testUpdates() throws Exception {
+		
+		PagingTree<String, Long> ptree = new PagingTree<String, Long>(store, "updatesTree");
+		
+		for (long i = 0; i != 100000; ++i) {
+			ptree.put("counter" + (i % 10), i);
+		}
+		
+		for (long i = 0; i != 10; ++i) {
+			Assert.assertEquals(Long.valueOf(99990 + i), ptree.get("counter" + i));
+		}
+		
+		Assert.assertEquals(MagicCodes.LEAF_NODE.getMagic(), getRootMagic("updatesTree"));
+	
+	}
+	
+	@Test
+	public void testRemoves() throws Exception {
+		
+		PagingTree<Long, String> ptree = new PagingTree<Long, String>(store, "removesTree");
+		
+		for (long i = 0; i != 100000; ++i) {
+			Assert.assertNull(ptree.put(i, "value" + i));
+			Assert.assertEquals("value" + i, ptree.remove(i));
+		}
+		
+		Assert.assertNull(ptree.put(1L, "value"));
+		Assert.assertEquals("value", ptree.get(1L));
+		
+		Assert.assertEquals(MagicCodes.LEAF_NODE.getMagic(), getRootMagic("removesTree"));
+	
+	}
+	
+	@Test
+	public void testSplitAfterCompaction() throws Exception {
+		
+		PagingTree<Long, String> ptree = new PagingTree<Long, String>(store, "splitTree");
+		
+		for (long i = 0; i != 5000; ++i) {
+			Assert.assertNull(ptree.put(i, "value" + i));
+			Assert.assertEquals("value" + i, ptree.put(i, "new value" + i));
+		}
+		
+		for (long i = 0; i != 5000; ++i) {
+			Assert.assertEquals("new value" + i, ptree.get(i));
+		}
+		
+		Assert.assertEquals(MagicCodes.INNER_NODE.getMagic(), getRootMagic("splitTree"));
+	
+	}
+	
+	private char getRootMagic(String treeName) {
+		MasterPage masterPage = MasterPage.concurrentGetOrCreate(store);
+		PagedVirtualSpace pagedVirtualSpace = new PagedVirtualSpace(store, masterPage, masterPage);
+		NamedTreeMap namedTreeMap = new NamedTreeImmutableMap(store, pagedVirtualSpace, masterPage.getRootEntry());
+		long rootPageNum = namedTreeMap.findOrCreate(treeName).getPageNum();
+		return new PageReader(store, rootPageNum).readChar();
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
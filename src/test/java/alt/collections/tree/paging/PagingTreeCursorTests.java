@@ -0,0 +1,143 @@
+package alt.collections.tree.paging;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.tree.SimpleEntry;
+import alt.collections.util.PageSize;
+
+/**
+ * Paging Tree Cursor Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeCursorTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(20000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testEmpty() throws Exception {
+		
+		PagingTree<Long, String> ptree = new PagingTree<Long, String>(store, "emptyTree");
+		
+		Assert.assertFalse(ptree.entries().iterator().hasNext());
+		Assert.assertFalse(ptree.descendingRange(null, null).iterator().hasNext());
+	
+	}
+	
+	@Test
+	public void testSequential() throws Exception {
+		
+		PagingTree<Long, String> ptree = new PagingTree<Long, String>(store, "sequentialTree");
+		
+		for (long i = 0; i != 20000; ++i) {
+			ptree.put(i, "value" + i);
+		}
+		
+		long expected = 0;
+		for (SimpleEntry<Long, String> entry : ptree.entries()) {
+			Assert.assertEquals(Long.valueOf(expected), entry.getKey());
+			Assert.assertEquals("value" + expected, entry.getValue());
+			expected++;
+		}
+		Assert.assertEquals(20000, expected);
+		
+		expected = 19999;
+		for (SimpleEntry<Long, String> entry : ptree.descendingRange(null, null)) {
+			Assert.assertEquals(Long.valueOf(expected), entry.getKey());
+			expected--;
+		}
+		Assert.assertEquals(-1, expected);
+		
+		expected = 1000;
+		for (SimpleEntry<Long, String> entry : ptree.range(1000L, 5000L)) {
+			Assert.assertEquals(Long.valueOf(expected), entry.getKey());
+			expected++;
+		}
+		Assert.assertEquals(5000, expected);
+		
+		expected = 4999;
+		for (SimpleEntry<Long, String> entry : ptree.descendingRange(1000L, 5000L)) {
+			Assert.assertEquals(Long.valueOf(expected), entry.getKey());
+			expected--;
+		}
+		Assert.assertEquals(999, expected);
+	
+	}
+	
+	@Test
+	public void testRandom() throws Exception {
+		
+		PagingTree<String, Long> ptree = new PagingTree<String, Long>(store, "randomTree");
+		TreeMap<String, Long> map = new TreeMap<String, Long>();
+		
+		Random random = new Random(5);
+		
+		for (int i = 0; i != 20000; ++i) {
+			long key = random.nextInt(100000);
+			ptree.put("key" + key, key);
+			map.put("key" + key, key);
+		}
+		
+		for (int i = 0; i != 5000; ++i) {
+			long key = random.nextInt(100000);
+			ptree.remove("key" + key);
+			map.remove("key" + key);
+		}
+		
+		assertEquals(map.entrySet().iterator(), ptree.entries().iterator());
+		assertEquals(map.descendingMap().entrySet().iterator(), ptree.descendingRange(null, null).iterator());
+		
+		for (int i = 0; i != 100; ++i) {
+			String from = "key" + random.nextInt(100000);
+			String to = "key" + random.nextInt(100000);
+			if (from.compareTo(to) > 0) {
+				String tmp = from;
+				from = to;
+				to = tmp;
+			}
+			assertEquals(map.subMap(from, to).entrySet().iterator(), ptree.range(from, to).iterator());
+			assertEquals(map.subMap(from, true, to, false).descendingMap().entrySet().iterator(), ptree.descendingRange(from, to).iterator());
+			assertEquals(map.tailMap(from).entrySet().iterator(), ptree.range(from, null).iterator());
+			assertEquals(map.headMap(to, false).descendingMap().entrySet().iterator(), ptree.descendingRange(null, to).iterator());
+		}
+	
+	}
+	
+	private static void assertEquals(Iterator<Map.Entry<String, Long>> expected, Iterator<SimpleEntry<String, Long>> actual) {
+		
+		while(expected.hasNext()) {
+			Assert.assertTrue(actual.hasNext());
+			Map.Entry<String, Long> e = expected.next();
+			SimpleEntry<String, Long> a = actual.next();
+			Assert.assertEquals(e.getKey(), a.getKey());
+			Assert.assertEquals(e.getValue(), a.getValue());
+		}
+		
+		Assert.assertFalse(actual.hasNext());
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
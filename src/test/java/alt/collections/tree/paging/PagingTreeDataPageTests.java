@@ -0,0 +1,113 @@
+package alt.collections.tree.paging;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.util.PageSize;
+
+/**
+ * Paging Tree Data Page Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeDataPageTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(20000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testBigString() throws Exception {
+		
+		PagingTree<String, String> ptree = new PagingTree<String, String>(store, "bigStringTree");
+		
+		String small = makeString(100);
+		String big = makeString(3000);
+		String huge = makeString(50000) + "файл";
+		
+		Assert.assertNull(ptree.put("small", small));
+		Assert.assertNull(ptree.put("big", big));
+		Assert.assertNull(ptree.put("huge", huge));
+		
+		Assert.assertEquals(small, ptree.get("small"));
+		Assert.assertEquals(big, ptree.get("big"));
+		Assert.assertEquals(huge, ptree.get("huge"));
+		
+		Assert.assertEquals(big, ptree.put("big", small));
+		Assert.assertEquals(small, ptree.get("big"));
+		
+		Assert.assertTrue(ptree.replace("huge", huge, big));
+		Assert.assertFalse(ptree.replace("huge", huge, big));
+		Assert.assertEquals(big, ptree.get("huge"));
+		
+		Assert.assertFalse(ptree.remove("huge", huge));
+		Assert.assertTrue(ptree.remove("huge", big));
+		Assert.assertNull(ptree.get("huge"));
+	
+	}
+	
+	@Test
+	public void testBigBlob() throws Exception {
+		
+		PagingTree<Long, byte[]> ptree = new PagingTree<Long, byte[]>(store, "bigBlobTree");
+		
+		Random random = new Random(5);
+		
+		byte[][] blobs = new byte[200][];
+		for (int i = 0; i != blobs.length; ++i) {
+			blobs[i] = new byte[random.nextInt(10000)];
+			random.nextBytes(blobs[i]);
+			Assert.assertNull(ptree.put(Long.valueOf(i), blobs[i]));
+		}
+		
+		for (int i = 0; i != blobs.length; ++i) {
+			Assert.assertTrue(Arrays.equals(blobs[i], ptree.get(Long.valueOf(i))));
+		}
+	
+	}
+	
+	@Test
+	public void testSplit() throws Exception {
+		
+		PagingTree<Long, String> ptree = new PagingTree<Long, String>(store, "splitTree");
+		
+		String big = makeString(2000);
+		
+		for (long i = 0; i != 3000; ++i) {
+			Assert.assertNull(ptree.put(i, big + i));
+		}
+		
+		for (long i = 0; i != 3000; ++i) {
+			Assert.assertEquals(big + i, ptree.get(i));
+		}
+	
+	}
+	
+	private static String makeString(int length) {
+		StringBuilder str = new StringBuilder(length);
+		for (int i = 0; i != length; ++i) {
+			str.append((char) ('a' + i % 26));
+		}
+		return str.toString();
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
@@ -0,0 +1,95 @@
+package alt.collections.tree.paging;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.util.PageSize;
+
+/**
+ * Paging Tree Drop Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeDropTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(20000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testTruncate() throws Exception {
+		
+		MasterPage masterPage = MasterPage.concurrentGetOrCreate(store);
+		PagingTree<Long, String> ptree = new PagingTree<Long, String>(store, "truncateTree");
+		
+		String big = makeString(3000);
+		
+		long storeTail = 0;
+		for (int i = 0; i != 10; ++i) {
+			
+			for (long k = 0; k != 5000; ++k) {
+				ptree.put(k, k % 100 == 0 ? big + k : "value" + k);
+			}
+			Assert.assertEquals(big + 100, ptree.get(100L));
+			
+			ptree.truncate();
+			Assert.assertNull(ptree.get(1L));
+			Assert.assertFalse(ptree.entries().iterator().hasNext());
+			
+			if (i == 2) {
+				storeTail = masterPage.getStoreTail();
+			}
+		}
+		
+		// pages of the tree and data pages are reused, random levels of entries change the number of pages
+		Assert.assertTrue(masterPage.getStoreTail() < storeTail + 10);
+	
+	}
+	
+	@Test
+	public void testDrop() throws Exception {
+		
+		Assert.assertFalse(PagingTree.drop(store, "hour00"));
+		
+		PagingTree<Long, Long> hour = new PagingTree<Long, Long>(store, "hour00");
+		for (long k = 0; k != 10000; ++k) {
+			hour.put(k, k);
+		}
+		
+		PagingTree<Long, Long> next = new PagingTree<Long, Long>(store, "hour01");
+		next.put(1L, 1L);
+		
+		Assert.assertTrue(PagingTree.drop(store, "hour00"));
+		
+		// opened tree sees the drop
+		Assert.assertNull(hour.get(1L));
+		Assert.assertNull(new PagingTree<Long, Long>(store, "hour00").get(1L));
+		Assert.assertEquals(Long.valueOf(1L), next.get(1L));
+	
+	}
+	
+	private static String makeString(int length) {
+		StringBuilder str = new StringBuilder(length);
+		for (int i = 0; i != length; ++i) {
+			str.append((char) ('a' + i % 26));
+		}
+		return str.toString();
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
@@ -0,0 +1,196 @@
+package alt.collections.tree.paging;
+
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.concurrent.Contention;
+import alt.collections.paging.GrowablePaging;
+import alt.collections.paging.InnerRef;
+import alt.collections.paging.PageNum;
+import alt.collections.paging.Paging;
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.util.PageSize;
+
+/**
+ * Paging Tree Growth Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeGrowthTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(4000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testGrowth() throws Exception {
+		
+		final GrowingPaging paging = new GrowingPaging(store, 16, 64);
+		final PagingTreeStore treeStore = new PagingTreeStore(paging);
+		
+		final int numThreads = 4;
+		final int numKeys = 10000;
+		
+		final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+		
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i != numThreads; ++i) {
+			final int thread = i;
+			threads[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					PagingTree<Long, Long> ptree = treeStore.openTree("tree");
+					try {
+						barrier.await();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					for (long k = 0; k != numKeys; ++k) {
+						ptree.put(k * numThreads + thread, k);
+					}
+				}
+			
+			});
+			threads[i].start();
+		}
+		
+		for (int i = 0; i != numThreads; ++i) {
+			threads[i].join();
+		}
+		
+		PagingTree<Long, Long> ptree = treeStore.openTree("tree");
+		for (long k = 0; k != numKeys * numThreads; ++k) {
+			Assert.assertEquals(Long.valueOf(k / numThreads), ptree.get(k));
+		}
+		
+		Assert.assertTrue(paging.getTotalPages() > 16);
+		Assert.assertTrue(treeStore.getMasterPage().getStoreTail() <= paging.getTotalPages());
+	
+	}
+	
+	@Test
+	public void testLowWater() throws Exception {
+		
+		GrowingPaging paging = new GrowingPaging(store, 100, 64);
+		MasterPage masterPage = MasterPage.concurrentGetOrCreate(paging);
+		
+		// low-water mark is 100 - 64 / 4, tail moves over it by the page 83
+		while(masterPage.getStoreTail() < 83) {
+			masterPage.allocatePage();
+			Assert.assertEquals(100, paging.getTotalPages());
+		}
+		
+		masterPage.allocatePage();
+		Assert.assertEquals(164, paging.getTotalPages());
+	
+	}
+	
+	@Test(expected = PagingTreeException.class)
+	public void testLimit() throws Exception {
+		
+		GrowingPaging paging = new GrowingPaging(store, 16, 64);
+		PagingTree<Long, Long> ptree = new PagingTree<Long, Long>(paging, "tree");
+		
+		for (long k = 0; k != 10000000; ++k) {
+			ptree.put(k, k);
+		}
+	
+	}
+	
+	/**
+	 * Paging that opens pages of the MemStore step by step
+	 */
+	
+	public static final class GrowingPaging implements GrowablePaging {
+		
+		private final Paging paging;
+		private final long growthPages;
+		private volatile long totalPages;
+		
+		public GrowingPaging(Paging paging, long totalPages, long growthPages) {
+			this.paging = paging;
+			this.totalPages = totalPages;
+			this.growthPages = growthPages;
+		}
+		
+		@Override
+		public synchronized boolean grow(long minTotalPages) {
+			if (totalPages >= minTotalPages) {
+				return true;
+			}
+			if (minTotalPages > paging.getTotalPages()) {
+				return false;
+			}
+			totalPages = Math.min(Math.max(minTotalPages, totalPages + growthPages), paging.getTotalPages());
+			return true;
+		}
+		
+		@Override
+		public long getGrowthPages() {
+			return growthPages;
+		}
+		
+		@Override
+		public PageSize pageSize() {
+			return paging.pageSize();
+		}
+		
+		@Override
+		public long getAddress(long pageNum) {
+			if (pageNum >= totalPages) {
+				throw new IllegalArgumentException("page " + pageNum + " is out of " + totalPages);
+			}
+			return paging.getAddress(pageNum);
+		}
+		
+		@Override
+		public long getTotalPages() {
+			return totalPages;
+		}
+		
+		@Override
+		public void markChanged(long address) {
+			paging.markChanged(address);
+		}
+		
+		@Override
+		public PageNum getPageNum() {
+			return paging.getPageNum();
+		}
+		
+		@Override
+		public InnerRef getInnerRef() {
+			return paging.getInnerRef();
+		}
+		
+		@Override
+		public int getPageSize() {
+			return paging.getPageSize();
+		}
+		
+		@Override
+		public Contention getContention() {
+			return paging.getContention();
+		}
+	
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
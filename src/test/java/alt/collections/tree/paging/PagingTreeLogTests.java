@@ -0,0 +1,402 @@
+package alt.collections.tree.paging;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.paging.PageReader;
+import alt.collections.paging.PageWriter;
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.store.WriteAheadLog;
+import alt.collections.tree.SimpleEntry;
+import alt.collections.tree.paging.ValueHolder.TypedValue;
+import alt.collections.util.PageSize;
+import alt.collections.util.Unsafe;
+
+/**
+ * Paging Tree Log Tests
+ * 
+ * Lost store is simulated by the new empty memory store, the image of the last checkpoint is restored to it
+ * and the log brings back changes after the checkpoint.
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeLogTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	private static final String LOG_PATH = "target/wal/tree.log";
+	
+	static {
+		ValueHolder.register(new FailingValue());
+	}
+	
+	private MemStore store;
+	private MemStore recovered;
+	
+	@Before
+	public void init() throws Exception {
+		deleteLog();
+		store = Stores.memStore().withSize(5000 * pageSize.getPageSize()).build();
+		recovered = Stores.memStore().withSize(5000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testReplay() throws Exception {
+		
+		WriteAheadLog wal = new WriteAheadLog(LOG_PATH);
+		PagingTreeStore treeStore = new PagingTreeStore(store, PagingTreeStore.DEFAULT_CHUNK_PAGES, wal);
+		
+		PagingTree<Long, Object> ptree = treeStore.openTree("tree");
+		for (long i = 0; i != 1000; ++i) {
+			ptree.put(i, "value" + i);
+		}
+		ptree.remove(5L);
+		Assert.assertNull(ptree.remove(5L));
+		ptree.replace(6L, "replaced");
+		Assert.assertNotNull(ptree.putIfAbsent(7L, "not applied"));
+		Assert.assertTrue(ptree.replace(8L, "value8", "replaced8"));
+		Assert.assertFalse(ptree.remove(9L, "other"));
+		
+		ptree.put(2000L, new MutableLong(10L));
+		ptree.put(2000L, MutableLongUpdater.INCREMENTAL);
+		ptree.put(2000L, MutableLongUpdater.INCREMENTAL);
+		
+		ptree.write(new WriteBatch<Long, Object>().put(3000L, "batch").remove(10L).put(11L, "batch11"));
+		
+		PagingTree<String, String> stree = treeStore.openTree("strings");
+		stree.put("a", "1");
+		stree.put("b", "2");
+		stree.truncate();
+		stree.put("c", "3");
+		
+		treeStore.close();
+		wal.close();
+		
+		WriteAheadLog recoveredWal = new WriteAheadLog(LOG_PATH);
+		PagingTreeStore recoveredStore = new PagingTreeStore(recovered, PagingTreeStore.DEFAULT_CHUNK_PAGES, recoveredWal);
+		
+		PagingTree<Long, Object> rtree = recoveredStore.openTree("tree");
+		Assert.assertNull(rtree.get(5L));
+		Assert.assertEquals("replaced", rtree.get(6L));
+		Assert.assertEquals("value7", rtree.get(7L));
+		Assert.assertEquals("replaced8", rtree.get(8L));
+		Assert.assertEquals("value9", rtree.get(9L));
+		Assert.assertNull(rtree.get(10L));
+		Assert.assertEquals("batch11", rtree.get(11L));
+		Assert.assertEquals("batch", rtree.get(3000L));
+		Assert.assertEquals(12L, rtree.getLong(2000L));
+		Assert.assertTrue(rtree.get(2000L) instanceof MutableLong);
+		for (long i = 12; i != 1000; ++i) {
+			Assert.assertEquals("value" + i, rtree.get(i));
+		}
+		
+		PagingTree<String, String> rstree = recoveredStore.openTree("strings");
+		Assert.assertNull(rstree.get("a"));
+		Assert.assertEquals("3", rstree.get("c"));
+		
+		// replay is followed by the checkpoint
+		Assert.assertEquals(1, recoveredWal.getFiles());
+		
+		recoveredStore.close();
+		recoveredWal.close();
+	
+	}
+	
+	@Test
+	public void testCheckpoint() throws Exception {
+		
+		WriteAheadLog wal = new WriteAheadLog(LOG_PATH);
+		PagingTreeStore treeStore = new PagingTreeStore(store, PagingTreeStore.DEFAULT_CHUNK_PAGES, wal);
+		
+		PagingTree<Long, Long> ptree = treeStore.openTree("tree");
+		ptree.put(1L, 1L);
+		treeStore.checkpoint();
+		ptree.put(2L, 2L);
+		
+		treeStore.close();
+		wal.close();
+		
+		WriteAheadLog recoveredWal = new WriteAheadLog(LOG_PATH);
+		PagingTreeStore recoveredStore = new PagingTreeStore(recovered, PagingTreeStore.DEFAULT_CHUNK_PAGES, recoveredWal);
+		
+		// records before the checkpoint are in the image
+		PagingTree<Long, Long> rtree = recoveredStore.openTree("tree");
+		Assert.assertEquals(Long.valueOf(1L), rtree.get(1L));
+		Assert.assertEquals(Long.valueOf(2L), rtree.get(2L));
+		Assert.assertEquals(1, recoveredWal.getFiles());
+		
+		recoveredStore.close();
+		recoveredWal.close();
+	
+	}
+	
+	@Test
+	public void testTornStore() throws Exception {
+		
+		WriteAheadLog wal = new WriteAheadLog(LOG_PATH);
+		PagingTreeStore treeStore = new PagingTreeStore(store, PagingTreeStore.DEFAULT_CHUNK_PAGES, wal);
+		
+		PagingTree<Long, String> ptree = treeStore.openTree("tree");
+		for (long i = 0; i != 1000; ++i) {
+			ptree.put(i, "value" + i);
+		}
+		treeStore.checkpoint();
+		
+		// splits after the checkpoint are applied in place
+		for (long i = 1000; i != 5000; ++i) {
+			ptree.put(i, "value" + i);
+		}
+		long storeTail = treeStore.getMasterPage().getStoreTail();
+		
+		treeStore.close();
+		wal.close();
+		
+		// the crash leaves only a part of changed pages on the disk
+		Unsafe.INSTANCE.copyMemory(store.getAddress(0), recovered.getAddress(0), storeTail * store.getPageSize());
+		for (long pageNum = 1; pageNum < storeTail; pageNum += 2) {
+			Unsafe.INSTANCE.setMemory(recovered.getAddress(pageNum), store.getPageSize(), (byte) 0x5A);
+		}
+		
+		WriteAheadLog recoveredWal = new WriteAheadLog(LOG_PATH);
+		PagingTreeStore recoveredStore = new PagingTreeStore(recovered, PagingTreeStore.DEFAULT_CHUNK_PAGES, recoveredWal);
+		
+		PagingTree<Long, String> rtree = recoveredStore.openTree("tree");
+		for (long i = 0; i != 5000; ++i) {
+			Assert.assertEquals("value" + i, rtree.get(i));
+		}
+		
+		recoveredStore.close();
+		recoveredWal.close();
+	
+	}
+	
+	@Test
+	public void testLoadAndReplace() throws Exception {
+		
+		WriteAheadLog wal = new WriteAheadLog(LOG_PATH);
+		PagingTreeStore treeStore = new PagingTreeStore(store, PagingTreeStore.DEFAULT_CHUNK_PAGES, wal);
+		
+		PagingTree<Long, String> live = treeStore.openTree("live");
+		PagingTree<Long, String> shadow = treeStore.openTree("live.shadow");
+		live.put(1L, "old");
+		
+		List<SimpleEntry<Long, String>> entries = new ArrayList<SimpleEntry<Long, String>>();
+		for (long i = 0; i != 1000; ++i) {
+			entries.add(SimpleEntry.newEntry(i, "loaded" + i));
+		}
+		
+		// load and swap are not logged, they are in the image of the checkpoint
+		shadow.load(entries.iterator());
+		live.replaceWith(shadow);
+		live.put(2000L, "after");
+		
+		treeStore.close();
+		wal.close();
+		
+		WriteAheadLog recoveredWal = new WriteAheadLog(LOG_PATH);
+		PagingTreeStore recoveredStore = new PagingTreeStore(recovered, PagingTreeStore.DEFAULT_CHUNK_PAGES, recoveredWal);
+		
+		PagingTree<Long, String> rtree = recoveredStore.openTree("live");
+		for (long i = 0; i != 1000; ++i) {
+			Assert.assertEquals("loaded" + i, rtree.get(i));
+		}
+		Assert.assertEquals("after", rtree.get(2000L));
+		Assert.assertNull(recoveredStore.<Long, String> openTree("live.shadow").get(1L));
+		
+		recoveredStore.close();
+		recoveredWal.close();
+	
+	}
+	
+	@Test
+	public void testParallel() throws Exception {
+		
+		WriteAheadLog wal = new WriteAheadLog(LOG_PATH);
+		final PagingTreeStore treeStore = new PagingTreeStore(store, PagingTreeStore.DEFAULT_CHUNK_PAGES, wal);
+		final PagingTree<Long, Long> ptree = treeStore.openTree("tree");
+		
+		final int numThreads = 8;
+		final int numKeys = 200;
+		final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+		
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i != numThreads; ++i) {
+			final long thread = i;
+			threads[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					// threads put the same keys, the log keeps the order of the tree
+					for (long k = 0; k != numKeys; ++k) {
+						ptree.put(k, thread);
+						ptree.put(numKeys + k * numThreads + thread, k);
+					}
+				}
+			
+			});
+			threads[i].start();
+		}
+		
+		for (int i = 0; i != numThreads; ++i) {
+			threads[i].join();
+		}
+		
+		treeStore.close();
+		wal.close();
+		
+		WriteAheadLog recoveredWal = new WriteAheadLog(LOG_PATH);
+		PagingTreeStore recoveredStore = new PagingTreeStore(recovered, PagingTreeStore.DEFAULT_CHUNK_PAGES, recoveredWal);
+		PagingTree<Long, Long> rtree = recoveredStore.openTree("tree");
+		
+		for (long k = 0; k != numKeys; ++k) {
+			Assert.assertEquals(ptree.get(k), rtree.get(k));
+			for (int thread = 0; thread != numThreads; ++thread) {
+				Assert.assertEquals(Long.valueOf(k), rtree.get(numKeys + k * numThreads + thread));
+			}
+		}
+		
+		recoveredStore.close();
+		recoveredWal.close();
+	
+	}
+	
+	@Test
+	public void testPagingEntryPoints() throws Exception {
+		
+		WriteAheadLog wal = new WriteAheadLog(LOG_PATH);
+		PagingTreeStore treeStore = new PagingTreeStore(store, PagingTreeStore.DEFAULT_CHUNK_PAGES, wal);
+		
+		// trees opened by the paging use the handle with the log
+		Assert.assertSame(treeStore, PagingTreeStore.of(store));
+		new PagingTree<Long, Long>(store, "tree").put(1L, 1L);
+		new PagingTree<Long, Long>(store, "dropped").put(2L, 2L);
+		Assert.assertTrue(PagingTree.drop(store, "dropped"));
+		
+		treeStore.close();
+		wal.close();
+		Assert.assertNotSame(treeStore, PagingTreeStore.of(store));
+		
+		WriteAheadLog recoveredWal = new WriteAheadLog(LOG_PATH);
+		PagingTreeStore recoveredStore = new PagingTreeStore(recovered, PagingTreeStore.DEFAULT_CHUNK_PAGES, recoveredWal);
+		
+		Assert.assertEquals(Long.valueOf(1L), recoveredStore.<Long, Long> openTree("tree").get(1L));
+		Assert.assertNull(recoveredStore.<Long, Long> openTree("dropped").get(2L));
+		
+		recoveredStore.close();
+		recoveredWal.close();
+	
+	}
+	
+	@Test
+	public void testFailedBatch() throws Exception {
+		
+		WriteAheadLog wal = new WriteAheadLog(LOG_PATH);
+		PagingTreeStore treeStore = new PagingTreeStore(store, PagingTreeStore.DEFAULT_CHUNK_PAGES, wal);
+		
+		PagingTree<Long, Object> ptree = treeStore.openTree("tree");
+		ptree.put(1L, "value1");
+		
+		try {
+			ptree.write(new WriteBatch<Long, Object>().put(1L, "batch1").put(2L, new Failing()).put(3L, "batch3"));
+			Assert.fail("batch is applied");
+		}
+		catch(IllegalStateException e) {
+			// the write of the value failed
+		}
+		
+		// operation before the failure is applied and logged
+		Assert.assertEquals("batch1", ptree.get(1L));
+		Assert.assertNull(ptree.get(3L));
+		
+		treeStore.close();
+		wal.close();
+		
+		WriteAheadLog recoveredWal = new WriteAheadLog(LOG_PATH);
+		PagingTreeStore recoveredStore = new PagingTreeStore(recovered, PagingTreeStore.DEFAULT_CHUNK_PAGES, recoveredWal);
+		
+		PagingTree<Long, Object> rtree = recoveredStore.openTree("tree");
+		Assert.assertEquals("batch1", rtree.get(1L));
+		Assert.assertNull(rtree.get(2L));
+		Assert.assertNull(rtree.get(3L));
+		
+		recoveredStore.close();
+		recoveredWal.close();
+	
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+		recovered.free();
+		deleteLog();
+	}
+	
+	/**
+	 * Value that is encoded to the record of the log, but fails the next write to the tree
+	 */
+	
+	public static final class Failing {
+		
+		int writes;
+	
+	}
+	
+	public static final class FailingValue implements TypedValue {
+		
+		public byte getType() {
+			return (byte) 'F';
+		}
+		
+		public Class<?> getValueClass() {
+			return Failing.class;
+		}
+		
+		public int estimateSize(Object value) {
+			return 8;
+		}
+		
+		public void write(PageWriter writer, Object value) {
+			if (++((Failing) value).writes > 1) {
+				throw new IllegalStateException("failing value");
+			}
+			writer.writeLong(0L);
+		}
+		
+		public Object read(PageReader reader) {
+			return new Failing();
+		}
+		
+		public void skip(PageReader reader) {
+			reader.skip(8);
+		}
+		
+		public int compareTo(PageReader reader, Object value) {
+			return 0;
+		}
+	
+	}
+	
+	private static void deleteLog() {
+		File[] files = new File(LOG_PATH).getParentFile().listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,283 @@
+package alt.collections.tree.paging;
+
+import java.lang.management.ManagementFactory;
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.tree.Comparators;
+import alt.collections.tree.SimpleEntry;
+import alt.collections.util.PageSize;
+
+/**
+ * Paging Tree Read Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeReadTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(2000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testGetLong() throws Exception {
+		
+		PagingTree<Long, Object> ptree = new PagingTree<Long, Object>(store, "getLongTree");
+		
+		for (long i = 0; i != 5000; ++i) {
+			ptree.put(i, i * 1000000L);
+		}
+		ptree.put(-1L, new MutableLong(77L));
+		
+		for (long i = 0; i != 5000; ++i) {
+			Assert.assertTrue(ptree.containsKey(i));
+			Assert.assertEquals(i * 1000000L, ptree.getLong(i));
+		}
+		
+		Assert.assertEquals(77L, ptree.getLong(-1L));
+		Assert.assertFalse(ptree.containsKey(5000L));
+		Assert.assertEquals(-5L, ptree.getLong(5000L, -5L));
+		
+		ptree.remove(10L);
+		Assert.assertFalse(ptree.containsKey(10L));
+		Assert.assertEquals(0L, ptree.getLong(10L));
+	
+	}
+	
+	@Test
+	public void testGetInto() throws Exception {
+		
+		PagingTree<String, Object> ptree = new PagingTree<String, Object>(store, "getIntoTree");
+		
+		String small = "значение";
+		String huge = makeString(20000) + "файл😀";
+		byte[] blob = new byte[7000];
+		Arrays.fill(blob, (byte) 5);
+		
+		ptree.put("small", small);
+		ptree.put("huge", huge);
+		ptree.put("blob", blob);
+		
+		byte[] bytes = new byte[30000];
+		byte[] utf8 = small.getBytes(StandardCharsets.UTF_8);
+		Assert.assertEquals(utf8.length, ptree.getInto("small", bytes));
+		Assert.assertTrue(Arrays.equals(utf8, Arrays.copyOf(bytes, utf8.length)));
+		
+		utf8 = huge.getBytes(StandardCharsets.UTF_8);
+		Assert.assertEquals(utf8.length, ptree.getInto("huge", bytes));
+		Assert.assertTrue(Arrays.equals(utf8, Arrays.copyOf(bytes, utf8.length)));
+		
+		Assert.assertEquals(blob.length, ptree.getInto("blob", bytes));
+		Assert.assertTrue(Arrays.equals(blob, Arrays.copyOf(bytes, blob.length)));
+		
+		Assert.assertEquals(blob.length, ptree.getInto("blob", new byte[10]));
+		Assert.assertEquals(-1, ptree.getInto("none", bytes));
+		
+		CharBuffer chars = CharBuffer.allocate(30000);
+		Assert.assertEquals(small.length(), ptree.getInto("small", chars));
+		Assert.assertEquals(huge.length(), ptree.getInto("huge", chars));
+		chars.flip();
+		Assert.assertEquals(small + huge, chars.toString());
+		
+		chars = CharBuffer.allocate(100);
+		chars.put('x');
+		try {
+			ptree.getInto("huge", chars);
+			Assert.fail("expected overflow");
+		}
+		catch(BufferOverflowException e) {
+			Assert.assertEquals(1, chars.position());
+		}
+		Assert.assertEquals(-1, ptree.getInto("none", chars));
+	
+	}
+	
+	@Test
+	public void testNoAllocation() throws Exception {
+		
+		java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+			return;
+		}
+		com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+		
+		PagingTree<String, Object> ptree = new PagingTree<String, Object>(store, "noAllocationTree");
+		
+		String[] keys = new String[2000];
+		for (int i = 0; i != keys.length; ++i) {
+			keys[i] = "key" + i;
+			ptree.put(keys[i], i % 2 == 0 ? (Object) Long.valueOf(i) : "value" + i);
+		}
+		
+		byte[] bytes = new byte[100];
+		CharBuffer chars = CharBuffer.allocate(100);
+		
+		long sum = 0;
+		for (int r = 0; r != 3; ++r) {
+			
+			long threadId = Thread.currentThread().getId();
+			long allocated = allocationBean.getThreadAllocatedBytes(threadId);
+			
+			for (int i = 0; i != keys.length; ++i) {
+				if (i % 2 == 0) {
+					sum += ptree.getLong(keys[i]);
+				}
+				else {
+					sum += ptree.getInto(keys[i], bytes);
+					chars.clear();
+					sum += ptree.getInto(keys[i], chars);
+				}
+				if (ptree.containsKey(keys[i])) {
+					sum++;
+				}
+			}
+			
+			allocated = allocationBean.getThreadAllocatedBytes(threadId) - allocated;
+			if (r != 0) {
+				Assert.assertEquals(0L, allocated);
+			}
+		}
+		
+		Assert.assertTrue(sum > 0);
+	
+	}
+	
+	@Test
+	public void testStringKeys() throws Exception {
+		
+		PagingTree<String, Long> ptree = new PagingTree<String, Long>(store, "stringKeysTree");
+		TreeMap<String, Long> expected = new TreeMap<String, Long>(Comparators.STRING);
+		
+		char[] alphabet = { 'a', 'b', '\u00e9', '\u0444', '\uffe0', '\ud83d', '\ude00', '\u0000' };
+		
+		Random random = new Random(5);
+		for (long i = 0; i != 5000; ++i) {
+			StringBuilder key = new StringBuilder("common prefix ");
+			int length = random.nextInt(20);
+			for (int j = 0; j != length; ++j) {
+				key.append(alphabet[random.nextInt(alphabet.length)]);
+			}
+			expected.put(key.toString(), i);
+			ptree.put(key.toString(), i);
+		}
+		
+		for (Map.Entry<String, Long> entry : expected.entrySet()) {
+			Assert.assertEquals(entry.getValue().longValue(), ptree.getLong(entry.getKey(), -1L));
+		}
+		
+		Iterator<String> keys = expected.keySet().iterator();
+		for (SimpleEntry<String, Long> entry : ptree.entries()) {
+			Assert.assertEquals(keys.next(), entry.getKey());
+		}
+		Assert.assertFalse(keys.hasNext());
+		
+		// surrogate chars are stored without loss, keys do not alias '?'
+		PagingTree<String, Long> stree = new PagingTree<String, Long>(store, "surrogateKeysTree");
+		stree.put("smile \ud83d\ude00", 1L);
+		stree.put("smile ??", 2L);
+		Assert.assertEquals(1L, stree.getLong("smile \ud83d\ude00", -1L));
+		Assert.assertEquals(2L, stree.getLong("smile ??", -1L));
+		Assert.assertEquals("smile ??", stree.entries().iterator().next().getKey());
+	
+	}
+	
+	@Test
+	public void testGetAll() throws Exception {
+		
+		final PagingTree<Long, String> ptree = new PagingTree<Long, String>(store, "getAllTree");
+		
+		for (long i = 0; i != 20000; i += 2) {
+			ptree.put(i, "value" + i);
+		}
+		
+		Random random = new Random(5);
+		List<Long> keys = new ArrayList<Long>();
+		for (int i = 0; i != 500; ++i) {
+			keys.add((long) random.nextInt(21000));
+		}
+		
+		Map<Long, String> result = ptree.getAll(keys);
+		for (Long key : keys) {
+			Assert.assertEquals(ptree.get(key), result.get(key));
+		}
+		
+		// unsorted keys and nested operations in the consumer
+		final int[] found = new int[1];
+		ptree.getAll(keys, new PagingTree.EntryConsumer<Long, String>() {
+			
+			@Override
+			public void accept(int index, Long key, String value) {
+				Assert.assertEquals(ptree.get(key), value);
+				if (value != null) {
+					found[0]++;
+				}
+			}
+		
+		});
+		Assert.assertEquals(result.size(), new HashSet<Long>(keys).size() - countMissing(keys));
+		Assert.assertTrue(found[0] >= result.size());
+		
+		PagingTree<String, Long> stree = new PagingTree<String, Long>(store, "getAllStringTree");
+		List<String> skeys = new ArrayList<String>();
+		for (long i = 0; i != 3000; ++i) {
+			stree.put("key" + i, i);
+			skeys.add("key" + (i * 7 % 3500));
+		}
+		
+		Map<String, Long> sresult = stree.getAll(skeys);
+		for (String key : skeys) {
+			Assert.assertEquals(stree.get(key), sresult.get(key));
+		}
+		
+		Assert.assertTrue(ptree.getAll(new ArrayList<Long>()).isEmpty());
+	
+	}
+	
+	private static int countMissing(List<Long> keys) {
+		Set<Long> missing = new HashSet<Long>();
+		for (Long key : keys) {
+			if (key % 2 != 0 || key >= 20000) {
+				missing.add(key);
+			}
+		}
+		return missing.size();
+	}
+	
+	private static String makeString(int length) {
+		StringBuilder str = new StringBuilder(length);
+		for (int i = 0; i != length; ++i) {
+			str.append((char) ('a' + i % 26));
+		}
+		return str.toString();
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
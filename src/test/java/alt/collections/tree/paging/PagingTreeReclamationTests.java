@@ -0,0 +1,246 @@
+package alt.collections.tree.paging;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.concurrent.EpochGate;
+import alt.collections.paging.PageWriter;
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.util.PageSize;
+
+/**
+ * Paging Tree Reclamation Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeReclamationTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(400 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testFreeList() throws Exception {
+		
+		MasterPage masterPage = MasterPage.concurrentGetOrCreate(store);
+		
+		long first = masterPage.allocatePage();
+		long second = masterPage.allocatePage();
+		
+		masterPage.freePage(first, false);
+		masterPage.freePage(second, false);
+		
+		long storeTail = masterPage.getStoreTail();
+		
+		Assert.assertEquals(second, masterPage.allocatePage());
+		Assert.assertEquals(first, masterPage.allocatePage());
+		Assert.assertEquals(storeTail, masterPage.getStoreTail());
+	
+	}
+	
+	@Test
+	public void testExclusiveOpen() throws Exception {
+		
+		MasterPage masterPage = MasterPage.concurrentGetOrCreate(store);
+		
+		// reader of the dead process
+		int epoch = masterPage.getEpochGate().enter();
+		
+		EpochGate epochGate = MasterPage.getOrCreate(store).getEpochGate();
+		Assert.assertTrue(epochGate.advance(epoch));
+		Assert.assertTrue(epochGate.isQuiescent(EpochGate.next(epoch)));
+	
+	}
+	
+	@Test
+	public void testLegacyFormat() throws Exception {
+		
+		new PageWriter(store, 0).writeChar(MagicCodes.LEGACY_MASTER.getMagic());
+		
+		try {
+			MasterPage.concurrentGetOrCreate(store);
+			Assert.fail("legacy store is opened");
+		}
+		catch(PagingTreeException e) {
+			Assert.assertTrue(e.getMessage().contains("version 1"));
+		}
+	
+	}
+	
+	@Test
+	public void testUpgrade() throws Exception {
+		
+		MasterPage masterPage = MasterPage.concurrentGetOrCreate(store);
+		long pageNum = masterPage.allocatePage();
+		long storeTail = masterPage.getStoreTail();
+		
+		// header of the version 2 keeps counters of readers in place of the process page
+		PageWriter pageWriter = new PageWriter(store, 0);
+		pageWriter.seek(MasterPage.getProcessPagePos(store));
+		for (int i = 0; i != 3; ++i) {
+			pageWriter.writeInt(0);
+		}
+		pageWriter.seek(2);
+		pageWriter.writeChar((char) 2);
+		
+		masterPage = MasterPage.concurrentGetOrCreate(store);
+		Assert.assertEquals(storeTail + 1, masterPage.getStoreTail());
+		
+		EpochGate epochGate = masterPage.getEpochGate();
+		int epoch = epochGate.enter();
+		masterPage.freePage(pageNum, true);
+		Assert.assertTrue(masterPage.allocatePage() != pageNum);
+		epochGate.exit(epoch);
+		
+		// store is upgraded once
+		storeTail = masterPage.getStoreTail();
+		Assert.assertEquals(storeTail, MasterPage.getOrCreate(store).getStoreTail());
+	
+	}
+	
+	@Test
+	public void testDelayedFree() throws Exception {
+		
+		MasterPage masterPage = MasterPage.concurrentGetOrCreate(store);
+		EpochGate epochGate = masterPage.getEpochGate();
+		
+		long pageNum = masterPage.allocatePage();
+		
+		int epoch = epochGate.enter();
+		masterPage.freePage(pageNum, true);
+		
+		Set<Long> allocated = new HashSet<Long>();
+		for (int i = 0; i != 10; ++i) {
+			long newPageNum = masterPage.allocatePage();
+			Assert.assertTrue(newPageNum != pageNum);
+			allocated.add(newPageNum);
+		}
+		
+		epochGate.exit(epoch);
+		
+		for (long newPageNum : allocated) {
+			masterPage.freePage(newPageNum, true);
+		}
+		
+		boolean reused = false;
+		for (int i = 0; i != 20 && !reused; ++i) {
+			reused = masterPage.allocatePage() == pageNum;
+		}
+		Assert.assertTrue(reused);
+	
+	}
+	
+	@Test
+	public void testSplitPagesReused() throws Exception {
+		
+		PagingTree<Long, String> ptree = new PagingTree<Long, String>(store, "splitReusedTree");
+		
+		for (int round = 0; round != 50; ++round) {
+			
+			for (long i = 0; i != 2000; ++i) {
+				Assert.assertNull(ptree.put(i, "value" + i + "_" + round));
+			}
+			
+			for (long i = 0; i != 2000; ++i) {
+				Assert.assertEquals("value" + i + "_" + round, ptree.remove(i));
+			}
+		}
+	
+	}
+	
+	@Test
+	public void testDataPagesReused() throws Exception {
+		
+		PagingTree<String, String> ptree = new PagingTree<String, String>(store, "dataReusedTree");
+		
+		StringBuilder str = new StringBuilder();
+		for (int i = 0; i != 20000; ++i) {
+			str.append((char) ('a' + i % 26));
+		}
+		String big = str.toString();
+		
+		for (int i = 0; i != 1000; ++i) {
+			ptree.put("key", big + i);
+			Assert.assertEquals(big + i, ptree.get("key"));
+		}
+		
+		Assert.assertEquals(big + 999, ptree.remove("key"));
+		Assert.assertNull(ptree.get("key"));
+	
+	}
+	
+	@Test
+	public void testParallel() throws Exception {
+		
+		final PagingTree<Long, Long> ptree = new PagingTree<Long, Long>(store, "parallelReusedTree");
+		
+		final int numThreads = 4;
+		final int numKeys = 2000;
+		
+		final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i != numThreads; ++i) {
+			final int thread = i;
+			threads[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+						for (long round = 0; round != 20; ++round) {
+							for (long k = 0; k != numKeys; ++k) {
+								long key = k * numThreads + thread;
+								ptree.put(key, key + round);
+							}
+							for (long k = 0; k != numKeys; ++k) {
+								long key = k * numThreads + thread;
+								Assert.assertEquals(Long.valueOf(key + round), ptree.get(key));
+								if (round != 19) {
+									ptree.remove(key);
+								}
+							}
+						}
+					} catch (Throwable e) {
+						error.compareAndSet(null, e);
+					}
+				}
+			
+			});
+			threads[i].start();
+		}
+		
+		for (int i = 0; i != numThreads; ++i) {
+			threads[i].join();
+		}
+		
+		Assert.assertNull(error.get());
+		
+		for (long key = 0; key != numKeys * numThreads; ++key) {
+			Assert.assertEquals(Long.valueOf(key + 19), ptree.get(key));
+		}
+	
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
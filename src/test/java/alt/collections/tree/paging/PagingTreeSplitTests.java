@@ -0,0 +1,156 @@
+package alt.collections.tree.paging;
+
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.util.PageSize;
+
+/**
+ * Paging Tree Split Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeSplitTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(20000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testSequential() throws Exception {
+		
+		PagingTree<Long, String> ptree = new PagingTree<Long, String>(store, "sequentialTree");
+		
+		for (long i = 0; i != 50000; ++i) {
+			Assert.assertNull(ptree.put(i, "value" + i));
+		}
+		
+		for (long i = 0; i != 50000; ++i) {
+			Assert.assertEquals("value" + i, ptree.get(i));
+		}
+		
+		Assert.assertNull(ptree.get(50000L));
+	
+	}
+	
+	@Test
+	public void testDescending() throws Exception {
+		
+		PagingTree<Long, String> ptree = new PagingTree<Long, String>(store, "descendingTree");
+		
+		for (long i = 50000; i != 0; --i) {
+			Assert.assertNull(ptree.put(i, "value" + i));
+		}
+		
+		for (long i = 1; i != 50001; ++i) {
+			Assert.assertEquals("value" + i, ptree.get(i));
+		}
+		
+		Assert.assertNull(ptree.get(0L));
+	
+	}
+	
+	@Test
+	public void testRandom() throws Exception {
+		
+		PagingTree<String, Long> ptree = new PagingTree<String, Long>(store, "randomTree");
+		
+		Random random = new Random(5);
+		
+		for (int i = 0; i != 30000; ++i) {
+			long key = random.nextInt(1000000);
+			ptree.put("key" + key, key);
+		}
+		
+		random = new Random(5);
+		
+		for (int i = 0; i != 30000; ++i) {
+			long key = random.nextInt(1000000);
+			Assert.assertEquals(Long.valueOf(key), ptree.get("key" + key));
+		}
+		
+		random = new Random(5);
+		
+		for (int i = 0; i != 30000; ++i) {
+			long key = random.nextInt(1000000);
+			ptree.remove("key" + key);
+			Assert.assertNull(ptree.get("key" + key));
+		}
+	
+	}
+	
+	@Test
+	public void testUpdates() throws Exception {
+		
+		PagingTree<String, String> ptree = new PagingTree<String, String>(store, "updatesTree");
+		
+		for (int i = 0; i != 20000; ++i) {
+			ptree.put("key", "value" + i);
+		}
+		
+		Assert.assertEquals("value19999", ptree.get("key"));
+	
+	}
+	
+	@Test
+	public void testParallel() throws Exception {
+		
+		final PagingTree<Long, Long> ptree = new PagingTree<Long, Long>(store, "parallelTree");
+		
+		final int numThreads = 8;
+		final int numKeys = 20000;
+		
+		final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+		
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i != numThreads; ++i) {
+			final int thread = i;
+			threads[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					for (long k = 0; k != numKeys; ++k) {
+						long key = k * numThreads + thread;
+						ptree.put(key, key);
+					}
+				}
+			
+			});
+			threads[i].start();
+		}
+		
+		for (int i = 0; i != numThreads; ++i) {
+			threads[i].join();
+		}
+		
+		for (long key = 0; key != numKeys * numThreads; ++key) {
+			Assert.assertEquals(Long.valueOf(key), ptree.get(key));
+		}
+	
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
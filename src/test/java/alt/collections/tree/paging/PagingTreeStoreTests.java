@@ -0,0 +1,115 @@
+package alt.collections.tree.paging;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.util.PageSize;
+
+/**
+ * Paging Tree Store Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeStoreTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(20000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testOpen() throws Exception {
+		
+		PagingTreeStore treeStore = new PagingTreeStore(store);
+		
+		for (long i = 0; i != 1000; ++i) {
+			PagingTree<Long, Long> ptree = treeStore.openTree("tree" + i);
+			ptree.put(i, i);
+		}
+		
+		for (long i = 0; i != 1000; ++i) {
+			PagingTree<Long, Long> ptree = treeStore.openTree("tree" + i);
+			Assert.assertEquals(Long.valueOf(i), ptree.get(i));
+		}
+		
+		// trees of another handle are the same
+		PagingTree<Long, Long> ptree = new PagingTree<Long, Long>(store, "tree5");
+		Assert.assertEquals(Long.valueOf(5L), ptree.get(5L));
+		
+		Assert.assertNull(treeStore.findRoot("tree1000"));
+		Assert.assertTrue(PagingTree.drop(treeStore, "tree5"));
+		Assert.assertNull(treeStore.<Long, Long>openTree("tree5").get(5L));
+	
+	}
+	
+	@Test
+	public void testParallel() throws Exception {
+		
+		final PagingTreeStore treeStore = new PagingTreeStore(store);
+		
+		final int numThreads = 8;
+		final int numTrees = 300;
+		
+		final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+		
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i != numThreads; ++i) {
+			final int thread = i;
+			threads[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					for (long k = 0; k != numTrees; ++k) {
+						PagingTree<Long, Long> ptree = treeStore.openTree("tree" + (k + thread) % numTrees);
+						ptree.put(k * numThreads + thread, k);
+					}
+				}
+			
+			});
+			threads[i].start();
+		}
+		
+		for (int i = 0; i != numThreads; ++i) {
+			threads[i].join();
+		}
+		
+		List<String> names = new NamedTreeImmutableMap(store).getAllNames();
+		Assert.assertEquals(numTrees, names.size());
+		Set<String> uniqueNames = new HashSet<String>(names);
+		Assert.assertEquals(numTrees, uniqueNames.size());
+		
+		for (int thread = 0; thread != numThreads; ++thread) {
+			for (long k = 0; k != numTrees; ++k) {
+				PagingTree<Long, Long> ptree = new PagingTree<Long, Long>(store, "tree" + (k + thread) % numTrees);
+				Assert.assertEquals(Long.valueOf(k), ptree.get(k * numThreads + thread));
+			}
+		}
+	
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
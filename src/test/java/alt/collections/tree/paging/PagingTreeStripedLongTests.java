@@ -0,0 +1,113 @@
+package alt.collections.tree.paging;
+
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.util.PageSize;
+
+/**
+ * Paging Tree Striped Long Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeStripedLongTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(2000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testCounter() throws Exception {
+		
+		PagingTree<Long, Object> ptree = new PagingTree<Long, Object>(store, "countersTree");
+		
+		ptree.put(1L, new StripedLong(10L));
+		Assert.assertEquals(10L, ptree.getLong(1L));
+		
+		MutableLong oldValue = (MutableLong) ptree.put(1L, MutableLongUpdater.INCREMENTAL);
+		Assert.assertEquals(10L, oldValue.longValue());
+		Assert.assertEquals(11L, ((StripedLong) ptree.get(1L)).longValue());
+		
+		// replace by the plain value
+		ptree.put(1L, 5L);
+		Assert.assertEquals(Long.valueOf(5L), ptree.get(1L));
+		
+		try {
+			new PagingTree<Object, Object>(store, "keysTree").put(new StripedLong(1L), 1L);
+			Assert.fail("striped long key");
+		}
+		catch(PagingTreeException e) {
+		}
+	
+	}
+	
+	@Test
+	public void testParallel() throws Exception {
+		
+		final PagingTree<Long, Object> ptree = new PagingTree<Long, Object>(store, "countersTree");
+		
+		final int numThreads = 8;
+		final int increments = 20000;
+		final long numCounters = 4;
+		
+		for (long i = 0; i != numCounters; ++i) {
+			ptree.put(i * 1000, new StripedLong(0L));
+		}
+		
+		final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+		
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i != numThreads; ++i) {
+			final int thread = i;
+			threads[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					for (int k = 0; k != increments; ++k) {
+						ptree.put((k % numCounters) * 1000, MutableLongUpdater.INCREMENTAL);
+						if (k % 10 == 0) {
+							// splits move counters to new pages
+							long key = (k / 10) * numThreads + thread;
+							ptree.put(key * 1000 + 1, key);
+						}
+					}
+				}
+			
+			});
+			threads[i].start();
+		}
+		
+		for (int i = 0; i != numThreads; ++i) {
+			threads[i].join();
+		}
+		
+		for (long i = 0; i != numCounters; ++i) {
+			Assert.assertEquals(numThreads * increments / numCounters, ptree.getLong(i * 1000));
+		}
+	
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
@@ -0,0 +1,275 @@
+package alt.collections.tree.paging;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.tree.SimpleEntry;
+import alt.collections.util.PageSize;
+
+/**
+ * Paging Tree Swap Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeSwapTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(20000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testReplace() throws Exception {
+		
+		PagingTree<Long, String> live = new PagingTree<Long, String>(store, "liveTree");
+		PagingTree<Long, String> shadow = new PagingTree<Long, String>(store, "liveTree.shadow");
+		
+		for (long i = 0; i != 10000; ++i) {
+			live.put(i, "old" + i);
+		}
+		
+		shadow.load(entries(5000, "new").iterator());
+		Assert.assertEquals("old1", live.get(1L));
+		
+		live.replaceWith(shadow);
+		
+		Assert.assertEquals("new1", live.get(1L));
+		Assert.assertNull(live.get(5000L));
+		Assert.assertNull(shadow.get(1L));
+		
+		// shadow is empty and can be loaded again
+		shadow.load(entries(5000, "next").iterator());
+		live.replaceWith(shadow);
+		Assert.assertEquals("next1", live.get(1L));
+	
+	}
+	
+	@Test
+	public void testReuse() throws Exception {
+		
+		MasterPage masterPage = MasterPage.concurrentGetOrCreate(store);
+		
+		PagingTree<Long, String> live = new PagingTree<Long, String>(store, "reuseTree");
+		PagingTree<Long, String> shadow = new PagingTree<Long, String>(store, "reuseTree.shadow");
+		
+		long storeTail = 0;
+		for (int i = 0; i != 20; ++i) {
+			shadow.load(entries(20000, "value").iterator());
+			live.replaceWith(shadow);
+			if (i == 2) {
+				storeTail = masterPage.getStoreTail();
+			}
+		}
+		
+		// pages of old trees are reused
+		Assert.assertEquals(storeTail, masterPage.getStoreTail());
+		Assert.assertEquals("value19999", live.get(19999L));
+	
+	}
+	
+	@Test
+	public void testReaders() throws Exception {
+		
+		final PagingTree<Long, String> live = new PagingTree<Long, String>(store, "readersTree");
+		PagingTree<Long, String> shadow = new PagingTree<Long, String>(store, "readersTree.shadow");
+		
+		live.load(entries(10000, "v0_").iterator());
+		
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicReference<String> error = new AtomicReference<String>();
+		
+		Thread[] readers = new Thread[4];
+		for (int i = 0; i != readers.length; ++i) {
+			readers[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					long key = 0;
+					while(!stop.get()) {
+						String value = live.get(key);
+						if (value == null || !value.endsWith("_" + key)) {
+							error.compareAndSet(null, "key " + key + " value " + value);
+						}
+						key = (key + 7) % 10000;
+					}
+				}
+			
+			});
+			readers[i].start();
+		}
+		
+		for (int i = 1; i != 30; ++i) {
+			shadow.load(entries(10000, "v" + i + "_").iterator());
+			live.replaceWith(shadow);
+		}
+		
+		stop.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		
+		Assert.assertNull(error.get());
+		Assert.assertEquals("v29_1", live.get(1L));
+	
+	}
+	
+	@Test
+	public void testTruncateWithWriters() throws Exception {
+		
+		final PagingTree<Long, String> live = new PagingTree<Long, String>(store, "writersTree");
+		
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		
+		final Thread[] writers = new Thread[4];
+		for (int i = 0; i != writers.length; ++i) {
+			final long thread = i;
+			writers[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					long key = thread;
+					try {
+						while(!stop.get()) {
+							live.put(key, "value" + key);
+							key = (key + writers.length) % 2000;
+						}
+					}
+					catch(Throwable e) {
+						error.compareAndSet(null, e);
+					}
+				}
+			
+			});
+			writers[i].start();
+		}
+		
+		// root is swapped by truncate while writers split it
+		for (int i = 0; i != 200; ++i) {
+			live.truncate();
+			Thread.sleep(1);
+		}
+		
+		stop.set(true);
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		
+		Assert.assertNull(error.get());
+		
+		live.put(1L, "last");
+		Assert.assertEquals("last", live.get(1L));
+		
+		// every page is in the free list once, double free links the page to itself
+		MasterPage masterPage = PagingTreeStore.of(store).getMasterPage();
+		long storeTail = masterPage.getStoreTail();
+		Set<Long> free = new HashSet<Long>();
+		for (long pageNum = masterPage.allocateFreePage(); pageNum != 0; pageNum = masterPage.allocateFreePage()) {
+			Assert.assertTrue(pageNum < storeTail);
+			Assert.assertTrue("double free of page " + pageNum, free.add(pageNum));
+		}
+		Assert.assertEquals("last", live.get(1L));
+	
+	}
+	
+	@Test
+	public void testTruncateDuringRootSplit() throws Exception {
+		testTruncateDuringSplit(1);
+	}
+	
+	@Test
+	public void testTruncateDuringLeafSplit() throws Exception {
+		// second split links the leaf to the inner root
+		testTruncateDuringSplit(2);
+	}
+	
+	/**
+	 * Truncates the tree after the splitter has found the parent and before it links the split
+	 */
+	
+	private void testTruncateDuringSplit(final int splitNum) throws Exception {
+		
+		final PagingTree<Long, String> live = new PagingTree<Long, String>(store, "splitTree");
+		long inUse = inUsePages();
+		
+		final AtomicInteger splits = new AtomicInteger();
+		live.splitHook = new Runnable() {
+			
+			@Override
+			public void run() {
+				if (splits.incrementAndGet() == splitNum) {
+					live.truncate();
+				}
+			}
+		
+		};
+		
+		long key = 0;
+		while(splits.get() < splitNum) {
+			live.put(key, "value" + key);
+			key++;
+		}
+		live.splitHook = null;
+		
+		// put of the split is retried in the new root
+		Assert.assertEquals("value" + (key - 1), live.get(key - 1));
+		Assert.assertNull(live.get(0L));
+		
+		live.truncate();
+		Assert.assertEquals(inUse, inUsePages());
+	
+	}
+	
+	/**
+	 * Drains the free list and returns it back, double free links the page to itself
+	 * 
+	 * @return pages of the store that are not free
+	 */
+	
+	private long inUsePages() {
+		
+		MasterPage masterPage = PagingTreeStore.of(store).getMasterPage();
+		long storeTail = masterPage.getStoreTail();
+		Set<Long> free = new HashSet<Long>();
+		for (long pageNum = masterPage.allocateFreePage(); pageNum != 0; pageNum = masterPage.allocateFreePage()) {
+			Assert.assertTrue(pageNum < storeTail);
+			Assert.assertTrue("double free of page " + pageNum, free.add(pageNum));
+		}
+		for (long pageNum : free) {
+			masterPage.freePage(pageNum, false);
+		}
+		return storeTail - free.size();
+	}
+	
+	private static List<SimpleEntry<Long, String>> entries(int count, String prefix) {
+		List<SimpleEntry<Long, String>> entries = new ArrayList<SimpleEntry<Long, String>>(count);
+		for (long i = 0; i != count; ++i) {
+			entries.add(SimpleEntry.newEntry(i, prefix + i));
+		}
+		return entries;
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}
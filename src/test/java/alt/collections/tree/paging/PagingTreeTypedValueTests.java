@@ -0,0 +1,188 @@
+package alt.collections.tree.paging;
+
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.paging.PageReader;
+import alt.collections.paging.PageWriter;
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.tree.SimpleEntry;
+import alt.collections.tree.paging.ValueHolder.TypedValue;
+import alt.collections.util.PageSize;
+
+/**
+ * Paging Tree Typed Value Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeTypedValueTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private static final PointValue POINT_VALUE = new PointValue();
+	
+	static {
+		ValueHolder.register(POINT_VALUE);
+	}
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(2000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testPrimitives() throws Exception {
+		
+		PagingTree<Object, Object> ptree = new PagingTree<Object, Object>(store, "primitivesTree");
+		
+		for (int i = -500; i != 500; ++i) {
+			ptree.put(Integer.valueOf(i), Double.valueOf(i / 3.0));
+			ptree.put(Double.valueOf(i / 7.0), Integer.valueOf(i));
+		}
+		
+		for (int i = -500; i != 500; ++i) {
+			Assert.assertEquals(Double.valueOf(i / 3.0), ptree.get(Integer.valueOf(i)));
+			Assert.assertEquals(Integer.valueOf(i), ptree.get(Double.valueOf(i / 7.0)));
+			Assert.assertEquals(i, ptree.getLong(Double.valueOf(i / 7.0)));
+		}
+		
+		Integer last = null;
+		int integers = 0;
+		for (SimpleEntry<Object, Object> entry : ptree.entries()) {
+			if (entry.getKey() instanceof Integer) {
+				Integer key = (Integer) entry.getKey();
+				if (last != null) {
+					Assert.assertTrue(last < key);
+				}
+				last = key;
+				integers++;
+			}
+		}
+		Assert.assertEquals(1000, integers);
+	
+	}
+	
+	@Test
+	public void testUuid() throws Exception {
+		
+		PagingTree<UUID, UUID> ptree = new PagingTree<UUID, UUID>(store, "uuidTree");
+		TreeMap<UUID, UUID> expected = new TreeMap<UUID, UUID>();
+		
+		Random random = new Random(5);
+		for (int i = 0; i != 3000; ++i) {
+			UUID key = new UUID(random.nextLong(), random.nextLong());
+			UUID value = new UUID(random.nextLong(), random.nextLong());
+			expected.put(key, value);
+			ptree.put(key, value);
+		}
+		
+		int i = 0;
+		for (SimpleEntry<UUID, UUID> entry : ptree.entries()) {
+			Assert.assertEquals(expected.firstKey(), entry.getKey());
+			Assert.assertEquals(expected.remove(entry.getKey()), entry.getValue());
+			i++;
+		}
+		Assert.assertEquals(3000, i);
+		Assert.assertTrue(expected.isEmpty());
+	
+	}
+	
+	@Test
+	public void testCustom() throws Exception {
+		
+		PagingTree<Point, String> ptree = new PagingTree<Point, String>(store, "customTree");
+		
+		for (int x = 0; x != 30; ++x) {
+			for (int y = 0; y != 30; ++y) {
+				ptree.put(new Point(x, y), x + ":" + y);
+			}
+		}
+		
+		for (int x = 0; x != 30; ++x) {
+			for (int y = 0; y != 30; ++y) {
+				Assert.assertEquals(x + ":" + y, ptree.get(new Point(x, y)));
+			}
+		}
+		
+		Assert.assertNull(ptree.get(new Point(30, 0)));
+		
+		try {
+			ValueHolder.register(new PointValue());
+			Assert.fail("expected duplicate type");
+		}
+		catch(PagingTreeException e) {
+		}
+	
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+	
+	public static final class Point {
+		
+		private final int x;
+		private final int y;
+		
+		public Point(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+	
+	}
+	
+	public static final class PointValue implements TypedValue {
+		
+		public byte getType() {
+			return (byte) 'P';
+		}
+		
+		public Class<?> getValueClass() {
+			return Point.class;
+		}
+		
+		public int estimateSize(Object value) {
+			return 8;
+		}
+		
+		public void write(PageWriter writer, Object value) {
+			Point point = (Point) value;
+			writer.writeInt(point.x);
+			writer.writeInt(point.y);
+		}
+		
+		public Object read(PageReader reader) {
+			int x = reader.readInt();
+			int y = reader.readInt();
+			return new Point(x, y);
+		}
+		
+		public void skip(PageReader reader) {
+			reader.skip(8);
+		}
+		
+		public int compareTo(PageReader reader, Object value) {
+			Point point = (Point) value;
+			int x = reader.readInt();
+			if (x != point.x) {
+				return x < point.x ? -1 : 1;
+			}
+			int y = reader.readInt();
+			return y < point.y ? -1 : (y == point.y ? 0 : 1);
+		}
+	
+	}
+
+}
@@ -0,0 +1,175 @@
+package alt.collections.tree.paging;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import alt.collections.store.MemStore;
+import alt.collections.store.Stores;
+import alt.collections.tree.SimpleEntry;
+import alt.collections.util.PageSize;
+
+/**
+ * Paging Tree Write Batch Tests
+ * 
+ * @author Albert Shift
+ *
+ */
+
+public class PagingTreeWriteBatchTests {
+	
+	private static final PageSize pageSize = PageSize.UNSAFE_PAGESIZE;
+	
+	private MemStore store;
+	
+	@Before
+	public void init() throws Exception {
+		store = Stores.memStore().withSize(20000 * pageSize.getPageSize()).build();
+	}
+	
+	@Test
+	public void testRandom() throws Exception {
+		
+		PagingTree<Long, String> ptree = new PagingTree<Long, String>(store, "batchRandomTree");
+		TreeMap<Long, String> expected = new TreeMap<Long, String>();
+		
+		Random random = new Random(5);
+		String big = makeString(3000);
+		
+		for (int b = 0; b != 20; ++b) {
+			
+			WriteBatch<Long, String> batch = new WriteBatch<Long, String>();
+			
+			for (int i = 0; i != 2000; ++i) {
+				long key = random.nextInt(20000);
+				int op = random.nextInt(10);
+				if (op == 0) {
+					batch.remove(key);
+					expected.remove(key);
+				}
+				else {
+					String value = op == 1 ? big + key : "value" + key + ":" + b;
+					batch.put(key, value);
+					expected.put(key, value);
+				}
+			}
+			
+			ptree.write(batch);
+		}
+		
+		assertEquals(expected, ptree);
+	
+	}
+	
+	@Test
+	public void testSameKey() throws Exception {
+		
+		PagingTree<String, Long> ptree = new PagingTree<String, Long>(store, "batchSameKeyTree");
+		
+		ptree.put("b", 0L);
+		
+		WriteBatch<String, Long> batch = new WriteBatch<String, Long>();
+		batch.put("a", 1L).put("a", 2L);
+		batch.remove("b").put("b", 3L);
+		batch.put("c", 4L).remove("c");
+		batch.put("d", 5L).put("e", 6L).put("d", 7L);
+		ptree.write(batch);
+		
+		Assert.assertEquals(Long.valueOf(2L), ptree.get("a"));
+		Assert.assertEquals(Long.valueOf(3L), ptree.get("b"));
+		Assert.assertNull(ptree.get("c"));
+		Assert.assertEquals(Long.valueOf(7L), ptree.get("d"));
+		Assert.assertEquals(Long.valueOf(6L), ptree.get("e"));
+		
+		int count = 0;
+		for (SimpleEntry<String, Long> entry : ptree.entries()) {
+			Assert.assertNotNull(entry.getValue());
+			count++;
+		}
+		Assert.assertEquals(4, count);
+	
+	}
+	
+	@Test
+	public void testParallel() throws Exception {
+		
+		final PagingTree<Long, Long> ptree = new PagingTree<Long, Long>(store, "batchParallelTree");
+		
+		final int numThreads = 4;
+		final int numBatches = 40;
+		final int batchSize = 500;
+		
+		final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+		
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i != numThreads; ++i) {
+			final int thread = i;
+			threads[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					for (int b = 0; b != numBatches; ++b) {
+						WriteBatch<Long, Long> batch = new WriteBatch<Long, Long>();
+						for (long k = 0; k != batchSize; ++k) {
+							long key = ((b * batchSize) + k) * numThreads + thread;
+							batch.put(key, key);
+						}
+						ptree.write(batch);
+					}
+				}
+			
+			});
+			threads[i].start();
+		}
+		
+		for (int i = 0; i != numThreads; ++i) {
+			threads[i].join();
+		}
+		
+		long expectedKey = 0;
+		for (SimpleEntry<Long, Long> entry : ptree.entries()) {
+			Assert.assertEquals(Long.valueOf(expectedKey), entry.getKey());
+			Assert.assertEquals(Long.valueOf(expectedKey), entry.getValue());
+			expectedKey++;
+		}
+		Assert.assertEquals((long) numThreads * numBatches * batchSize, expectedKey);
+	
+	}
+	
+	private static <K, V> void assertEquals(Map<K, V> expected, PagingTree<K, V> ptree) {
+		Iterator<Map.Entry<K, V>> i = expected.entrySet().iterator();
+		for (SimpleEntry<K, V> entry : ptree.entries()) {
+			Assert.assertTrue(i.hasNext());
+			Map.Entry<K, V> expectedEntry = i.next();
+			Assert.assertEquals(expectedEntry.getKey(), entry.getKey());
+			Assert.assertEquals(expectedEntry.getValue(), entry.getValue());
+		}
+		Assert.assertFalse(i.hasNext());
+	}
+	
+	private static String makeString(int length) {
+		StringBuilder str = new StringBuilder(length);
+		for (int i = 0; i != length; ++i) {
+			str.append((char) ('a' + i % 26));
+		}
+		return str.toString();
+	}
+	
+	@After
+	public void free() throws Exception {
+		store.free();
+	}
+
+}